@@ -0,0 +1,94 @@
+package org.xbib.net.benchmark;
+
+import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.xbib.net.PercentDecoder;
+import org.xbib.net.PercentEncoder;
+import org.xbib.net.PercentEncoders;
+import org.xbib.net.URL;
+
+/**
+ * Percent-coding and parsing of long query strings, which mostly consist of characters
+ * that need no escaping, compared with the JDK URL encoder and decoder.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1024m")
+@Timeout(time = 10, timeUnit = TimeUnit.MINUTES)
+public class PercentCodingBenchmark {
+
+	@Param({ "64", "1024", "16384" })
+	int length;
+
+	String plain;
+
+	String encoded;
+
+	String url;
+
+	PercentEncoder encoder;
+
+	PercentDecoder decoder;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		StringBuilder sb = new StringBuilder();
+		int i = 0;
+		while (sb.length() < length) {
+			sb.append("parameter").append(i).append("=value").append(i).append("-abcdefghijklmnopqrstuvwxyz");
+			i++;
+		}
+		plain = sb.substring(0, length);
+		encoded = plain.substring(0, length - 3) + "%20";
+		url = "https://example.com/search?" + plain.replace("=value", "&value=");
+		encoder = PercentEncoders.getUnreservedEncoder(StandardCharsets.UTF_8);
+		decoder = new PercentDecoder();
+	}
+
+	@Benchmark
+	public String encode() throws Exception {
+		return encoder.encode(plain);
+	}
+
+	@Benchmark
+	public String encodeJdk() {
+		return URLEncoder.encode(plain, StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public String decodeUnchanged() throws Exception {
+		return decoder.decode(plain);
+	}
+
+	@Benchmark
+	public String decode() throws Exception {
+		return decoder.decode(encoded);
+	}
+
+	@Benchmark
+	public String decodeJdk() {
+		return URLDecoder.decode(encoded, StandardCharsets.UTF_8);
+	}
+
+	@Benchmark
+	public URL parse() throws Exception {
+		return URL.parser().parse(url, false);
+	}
+}
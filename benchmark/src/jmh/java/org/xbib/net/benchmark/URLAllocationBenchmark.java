@@ -0,0 +1,74 @@
+package org.xbib.net.benchmark;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xbib.net.URL;
+import org.xbib.net.URLBuilder;
+import org.xbib.net.URLParser;
+
+/**
+ * Allocation of parsing and serializing URLs with new and with reused, thread-confined parsers and builders.
+ * Run with the GC profiler to compare the allocation rates, e.g. {@code -prof gc}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@State(Scope.Thread)
+@Warmup(iterations = 3)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1024m")
+@Threads(4)
+@Timeout(time = 10, timeUnit = TimeUnit.MINUTES)
+public class URLAllocationBenchmark {
+
+	URLParser parser;
+
+	URLBuilder builder;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		parser = URL.parser();
+		builder = URL.builder();
+	}
+
+	@Benchmark
+	public void parseNew(Blackhole bh) throws Exception {
+		for (String input : URLParserBenchmark.INPUTS) {
+			bh.consume(URL.parser().parse(input, false).toExternalForm());
+		}
+	}
+
+	@Benchmark
+	public void parseReused(Blackhole bh) throws Exception {
+		for (String input : URLParserBenchmark.INPUTS) {
+			bh.consume(parser.parse(input, false).toExternalForm());
+		}
+	}
+
+	@Benchmark
+	public void buildNew(Blackhole bh) {
+		for (int i = 0; i < 8; i++) {
+			bh.consume(URL.http().host("example.com").port(8080).pathSegments("a", "b" + i)
+					.queryParam("q", "x y").build().toExternalForm());
+		}
+	}
+
+	@Benchmark
+	public void buildReused(Blackhole bh) {
+		for (int i = 0; i < 8; i++) {
+			bh.consume(builder.reset().scheme("http").host("example.com").port(8080).pathSegments("a", "b" + i)
+					.queryParam("q", "x y").build().toExternalForm());
+		}
+	}
+}
@@ -0,0 +1,78 @@
+package org.xbib.net.benchmark;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Timeout;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+import org.xbib.net.URL;
+import org.xbib.net.URLResolver;
+
+/**
+ * Resolving the links of a page one by one, as a batch, and as a parallel batch.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@State(Scope.Benchmark)
+@Warmup(iterations = 3)
+@Measurement(iterations = 3)
+@Fork(value = 1, jvmArgsAppend = "-Xmx1024m")
+@Timeout(time = 10, timeUnit = TimeUnit.MINUTES)
+public class URLResolverBenchmark {
+
+	URLResolver resolver;
+
+	List<String> links;
+
+	@Setup(Level.Trial)
+	public void setup() {
+		resolver = URL.base("https://example.org/a/b/c/index.html?q=1");
+		links = new ArrayList<>();
+		for (int i = 0; i < 10000; i++) {
+			switch (i % 4) {
+				case 0:
+					links.add("page" + i + ".html");
+					break;
+				case 1:
+					links.add("../../docs/" + i + "/?lang=en");
+					break;
+				case 2:
+					links.add("/static/img/" + i + ".png");
+					break;
+				default:
+					links.add("#section" + i);
+					break;
+			}
+		}
+	}
+
+	@Benchmark
+	public void resolveEach(Blackhole bh) throws Exception {
+		for (String link : links) {
+			bh.consume(resolver.resolve(URL.parser().parse(link, false)));
+		}
+	}
+
+	@Benchmark
+	public void resolveAll(Blackhole bh) {
+		bh.consume(resolver.resolveAll(links));
+	}
+
+	@Benchmark
+	public void resolveAllParallel(Blackhole bh) {
+		bh.consume(resolver.resolveAll(links, ForkJoinPool.commonPool()));
+	}
+}
@@ -30,7 +30,7 @@ public class PathResolver<T> implements org.xbib.net.path.PathResolver<T> {
 
     private static final Pattern PARAMETER_NAME_PATTERN = Pattern.compile("[a-zA-Z_][a-zA-Z_\\d]*");
 
-    private static final CharMatcher RESERVED_URL_CHARS = CharMatcher.anyOf(":/?#[]{}");
+    private static final CharMatcher RESERVED_URL_CHARS = CharMatcher.anyOf(":/?#[]{}").precomputed();
 
     private final Builder<T> builder;
 
@@ -151,22 +151,37 @@ public class Path {
         }
         StringTokenizer st = new StringTokenizer(string, pathSeparator);
         while (st.hasMoreTokens()) {
-            String token = st.nextToken();
-            if (trimTokens) {
-                token = token.trim();
-            }
-            if (token.length() > 0) {
-                if (!caseSensitive) {
-                    token = token.toLowerCase(Locale.ROOT);
-                }
-                PathSegment pathSegment = new PathSegment();
-                pathSegment.setString(token);
-                pathSegments.add(pathSegment);
-            }
+            addSegment(pathSegments, st.nextToken(), trimTokens, caseSensitive);
+        }
+        return pathSegments;
+    }
+
+    /**
+     * Create path segments from the segments of a normalized path, which are separated by "/".
+     *
+     * @param segments the segments of a normalized path
+     * @param trimTokens true if the segments should be trimmed
+     * @param caseSensitive false if the segments should be in lower case
+     * @return the path segments
+     */
+    public static List<PathSegment> tokenize(PathNormalizer.Segments segments, boolean trimTokens, boolean caseSensitive) {
+        List<PathSegment> pathSegments = new ArrayList<>(segments.getCount());
+        for (int i = 0; i < segments.getCount(); i++) {
+            addSegment(pathSegments, segments.get(i), trimTokens, caseSensitive);
         }
         return pathSegments;
     }
 
+    private static void addSegment(List<PathSegment> pathSegments, String string,
+                                   boolean trimTokens, boolean caseSensitive) {
+        String token = trimTokens ? string.trim() : string;
+        if (token.length() > 0) {
+            PathSegment pathSegment = new PathSegment();
+            pathSegment.setString(caseSensitive ? token : token.toLowerCase(Locale.ROOT));
+            pathSegments.add(pathSegment);
+        }
+    }
+
     private void initCounters() {
         singleWildcards = 0;
         doubleWildcards = 0;
@@ -16,7 +16,7 @@ public class PathMatcher extends Path {
 
     private static final Pattern MATCH_ALL_PATTERN = Pattern.compile("(.*)");
 
-    private static final CharMatcher RESERVED_URL_CHARS = CharMatcher.anyOf(":/?#[]{}");
+    private static final CharMatcher RESERVED_URL_CHARS = CharMatcher.anyOf(":/?#[]{}").precomputed();
 
     private static final String DEFAULT_PATTERN = "(.*)";
 
@@ -42,8 +42,11 @@ public class PathResolver<T> implements org.xbib.net.path.PathResolver<T> {
     public void resolve(String method, String path, ResultListener<T> listener) {
         Objects.requireNonNull(method, "method");
         Objects.requireNonNull(path, "path");
-        List<PathSegment> pathSegments = PathMatcher.tokenize(PathNormalizer.normalize(path),
-                builder.pathSeparator, builder.trimTokens, builder.caseSensitive);
+        // the segments of the normalizer are separated by "/", so they need not be split again
+        List<PathSegment> pathSegments = "/".equals(builder.pathSeparator) ?
+                Path.tokenize(PathNormalizer.segments(path), builder.trimTokens, builder.caseSensitive) :
+                PathMatcher.tokenize(PathNormalizer.normalize(path),
+                        builder.pathSeparator, builder.trimTokens, builder.caseSensitive);
         ParameterBuilder parameterBuilder = Parameter.builder().domain(PATH_DOMAIN).enableSort();
         resolve(pathSegments, 0, parameterBuilder, listener);
     }
@@ -1,3 +1,4 @@
+import org.xbib.net.HostResolver;
 import org.xbib.net.buffer.DataBufferFactory;
 import org.xbib.net.buffer.DefaultDataBufferFactory;
 
@@ -15,7 +16,9 @@ module org.xbib.net {
     exports org.xbib.net.util;
     requires transitive org.xbib.datastructures.common;
     requires java.management;
+    requires jdk.unsupported;
     requires transitive java.logging;
     uses DataBufferFactory;
+    uses HostResolver;
     provides DataBufferFactory with DefaultDataBufferFactory;
 }
@@ -0,0 +1,215 @@
+package org.xbib.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A host resolver that caches the results of a delegate resolver.
+ *
+ * The cache is bounded in size. Successful lookups are cached for a time-to-live,
+ * failed lookups are cached for a separate, usually shorter, negative time-to-live.
+ * When the cache is full, the oldest entries are evicted first.
+ * Concurrent lookups of the same host name are coalesced into a single lookup
+ * by the delegate resolver.
+ *
+ * This class is thread-safe.
+ */
+public class CachingHostResolver implements HostResolver {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+    public static final Duration DEFAULT_TTL = Duration.ofSeconds(30L);
+
+    public static final Duration DEFAULT_NEGATIVE_TTL = Duration.ofSeconds(10L);
+
+    private final HostResolver delegate;
+
+    private final int maximumSize;
+
+    private final long ttlNanos;
+
+    private final long negativeTtlNanos;
+
+    private final Map<String, Entry> cache;
+
+    private final Queue<String> insertionOrder;
+
+    private final Map<String, CompletableFuture<InetAddress>> lookups;
+
+    public CachingHostResolver(HostResolver delegate) {
+        this(delegate, DEFAULT_MAXIMUM_SIZE, DEFAULT_TTL, DEFAULT_NEGATIVE_TTL);
+    }
+
+    /**
+     * Create a caching host resolver.
+     *
+     * @param delegate the resolver to perform the lookups
+     * @param maximumSize the maximum number of cached host names
+     * @param ttl the time-to-live of resolved host names
+     * @param negativeTtl the time-to-live of host names that could not be resolved
+     */
+    public CachingHostResolver(HostResolver delegate, int maximumSize, Duration ttl, Duration negativeTtl) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("'maximumSize' must be larger than 0");
+        }
+        this.delegate = delegate;
+        this.maximumSize = maximumSize;
+        this.ttlNanos = ttl.toNanos();
+        this.negativeTtlNanos = negativeTtl.toNanos();
+        this.cache = new ConcurrentHashMap<>();
+        this.insertionOrder = new ConcurrentLinkedQueue<>();
+        this.lookups = new ConcurrentHashMap<>();
+    }
+
+    /**
+     * Resolve a host name. A lookup that is not cached is performed by the delegate resolver
+     * on the current thread, unless a lookup of the same host name is already in progress.
+     */
+    @Override
+    public InetAddress resolve(String hostname) throws UnknownHostException {
+        String key = hostname.toLowerCase(Locale.ROOT);
+        Entry entry = cache.get(key);
+        if (entry != null && entry.expires - System.nanoTime() > 0L) {
+            return entry.get();
+        }
+        CompletableFuture<InetAddress> future = new CompletableFuture<>();
+        CompletableFuture<InetAddress> existing = lookups.putIfAbsent(key, future);
+        if (existing != null) {
+            try {
+                return existing.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new UnknownHostException(hostname + ": interrupted");
+            } catch (ExecutionException e) {
+                throw unknownHost(hostname, e.getCause());
+            }
+        }
+        InetAddress address;
+        try {
+            address = delegate.resolve(hostname);
+        } catch (UnknownHostException | RuntimeException e) {
+            throw complete(key, hostname, future, null, e);
+        }
+        complete(key, hostname, future, address, null);
+        return address;
+    }
+
+    @Override
+    public CompletableFuture<InetAddress> resolveAsync(String hostname) {
+        String key = hostname.toLowerCase(Locale.ROOT);
+        Entry entry = cache.get(key);
+        if (entry != null && entry.expires - System.nanoTime() > 0L) {
+            return entry.toFuture();
+        }
+        CompletableFuture<InetAddress> future = new CompletableFuture<>();
+        CompletableFuture<InetAddress> existing = lookups.putIfAbsent(key, future);
+        if (existing != null) {
+            return existing;
+        }
+        try {
+            delegate.resolveAsync(hostname).whenComplete((address, throwable) ->
+                    complete(key, hostname, future, address, throwable));
+        } catch (RuntimeException e) {
+            complete(key, hostname, future, null, e);
+        }
+        return future;
+    }
+
+    /**
+     * Return the number of cached host names.
+     * @return the cache size
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Remove all cached host names.
+     */
+    public void clear() {
+        cache.clear();
+        insertionOrder.clear();
+    }
+
+    private void put(String key, Entry entry) {
+        if (cache.put(key, entry) == null) {
+            insertionOrder.add(key);
+        }
+        while (cache.size() > maximumSize) {
+            String eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            cache.remove(eldest);
+        }
+    }
+
+    /**
+     * Cache the result of a lookup and complete the future of the lookup.
+     *
+     * @return the failure of the lookup, or null if the lookup succeeded
+     */
+    private UnknownHostException complete(String key, String hostname, CompletableFuture<InetAddress> future,
+                                          InetAddress address, Throwable throwable) {
+        if (throwable == null) {
+            put(key, new Entry(address, null, System.nanoTime() + ttlNanos));
+            lookups.remove(key, future);
+            future.complete(address);
+            return null;
+        }
+        UnknownHostException e = unknownHost(hostname, throwable);
+        put(key, new Entry(null, e, System.nanoTime() + negativeTtlNanos));
+        lookups.remove(key, future);
+        future.completeExceptionally(e);
+        return e;
+    }
+
+    private static UnknownHostException unknownHost(String hostname, Throwable throwable) {
+        Throwable t = throwable;
+        while (t instanceof CompletionException && t.getCause() != null) {
+            t = t.getCause();
+        }
+        if (t instanceof UnknownHostException) {
+            return (UnknownHostException) t;
+        }
+        UnknownHostException e = new UnknownHostException(hostname);
+        e.initCause(t);
+        return e;
+    }
+
+    private static class Entry {
+
+        private final InetAddress address;
+
+        private final UnknownHostException failure;
+
+        private final long expires;
+
+        Entry(InetAddress address, UnknownHostException failure, long expires) {
+            this.address = address;
+            this.failure = failure;
+            this.expires = expires;
+        }
+
+        InetAddress get() throws UnknownHostException {
+            if (failure != null) {
+                throw failure;
+            }
+            return address;
+        }
+
+        CompletableFuture<InetAddress> toFuture() {
+            return failure == null ? CompletableFuture.completedFuture(address) :
+                    CompletableFuture.failedFuture(failure);
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.xbib.net;
+
+/**
+ * Bulk scanning of character sequences for URL delimiters and for characters that need
+ * percent-encoding.
+ *
+ * A set of ASCII characters is represented by two 64-bit masks, one for the characters
+ * below 64 and one for the characters from 64 to 127. A membership test is a shift and a mask,
+ * without a table lookup or a branch per candidate character. Searches for a single character
+ * in a string are delegated to {@link String#indexOf(int, int)}, which is vectorized by the JVM.
+ */
+final class CharScanner {
+
+    /**
+     * The characters that end a host: {@code / ?}.
+     */
+    static final long HOST_END_LOW = lowMask("/?");
+
+    static final long HOST_END_HIGH = highMask("/?");
+
+    private CharScanner() {
+    }
+
+    static long lowMask(String chars) {
+        long mask = 0L;
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            if (c < 64) {
+                mask |= 1L << c;
+            }
+        }
+        return mask;
+    }
+
+    static long highMask(String chars) {
+        long mask = 0L;
+        for (int i = 0; i < chars.length(); i++) {
+            char c = chars.charAt(i);
+            if (c >= 64 && c < 128) {
+                mask |= 1L << c;
+            }
+        }
+        return mask;
+    }
+
+    static long lowMask(boolean[] table) {
+        long mask = 0L;
+        for (int c = 0; c < 64; c++) {
+            if (table[c]) {
+                mask |= 1L << c;
+            }
+        }
+        return mask;
+    }
+
+    static long highMask(boolean[] table) {
+        long mask = 0L;
+        for (int c = 64; c < 128; c++) {
+            if (table[c]) {
+                mask |= 1L << c;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Test if a character is in an ASCII character set.
+     *
+     * @param c the character
+     * @param low the mask of the characters below 64
+     * @param high the mask of the characters from 64 to 127
+     * @return true if the character is in the set
+     */
+    static boolean matches(char c, long low, long high) {
+        // the shift distance of a long is taken modulo 64
+        return c < 128 && (((c < 64 ? low : high) >>> c) & 1L) != 0L;
+    }
+
+    /**
+     * Find the first occurence of a character.
+     *
+     * @param input the input
+     * @param ch the character
+     * @param from the start position, inclusive
+     * @param to the end position, exclusive
+     * @return the position of the character, or -1
+     */
+    static int indexOf(CharSequence input, char ch, int from, int to) {
+        if (input instanceof String) {
+            int i = ((String) input).indexOf(ch, from);
+            return i < to ? i : -1;
+        }
+        for (int i = from; i < to; i++) {
+            if (input.charAt(i) == ch) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first character that is in an ASCII character set.
+     *
+     * @param input the input
+     * @param from the start position, inclusive
+     * @param to the end position, exclusive
+     * @param low the mask of the characters below 64
+     * @param high the mask of the characters from 64 to 127
+     * @return the position of the first matching character, or -1
+     */
+    static int indexOfAny(CharSequence input, int from, int to, long low, long high) {
+        int i = from;
+        // four characters per iteration, the common case is that none of them matches
+        for (; i + 3 < to; i += 4) {
+            char c0 = input.charAt(i);
+            char c1 = input.charAt(i + 1);
+            char c2 = input.charAt(i + 2);
+            char c3 = input.charAt(i + 3);
+            if (matches(c0, low, high) | matches(c1, low, high) |
+                    matches(c2, low, high) | matches(c3, low, high)) {
+                break;
+            }
+        }
+        for (; i < to; i++) {
+            if (matches(input.charAt(i), low, high)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the first character that is not in an ASCII character set. All non-ASCII characters
+     * are not in the set.
+     *
+     * @param input the input
+     * @param from the start position, inclusive
+     * @param to the end position, exclusive
+     * @param low the mask of the characters below 64
+     * @param high the mask of the characters from 64 to 127
+     * @return the position of the first character that does not match, or -1
+     */
+    static int indexOfNone(CharSequence input, int from, int to, long low, long high) {
+        int i = from;
+        for (; i + 3 < to; i += 4) {
+            char c0 = input.charAt(i);
+            char c1 = input.charAt(i + 1);
+            char c2 = input.charAt(i + 2);
+            char c3 = input.charAt(i + 3);
+            if (!(matches(c0, low, high) & matches(c1, low, high) &
+                    matches(c2, low, high) & matches(c3, low, high))) {
+                break;
+            }
+        }
+        for (; i < to; i++) {
+            if (!matches(input.charAt(i), low, high)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
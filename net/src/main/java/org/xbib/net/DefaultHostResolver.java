@@ -0,0 +1,45 @@
+package org.xbib.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import org.xbib.net.util.NamedThreadFactory;
+
+/**
+ * The default host resolver, using {@link InetAddress#getByName(String)}.
+ * Asynchronous lookups are executed on a pool of daemon threads.
+ */
+public class DefaultHostResolver implements HostResolver {
+
+    private static final Executor DEFAULT_EXECUTOR =
+            Executors.newCachedThreadPool(new NamedThreadFactory("host-resolver"));
+
+    private final Executor executor;
+
+    public DefaultHostResolver() {
+        this(DEFAULT_EXECUTOR);
+    }
+
+    public DefaultHostResolver(Executor executor) {
+        this.executor = executor;
+    }
+
+    @Override
+    public InetAddress resolve(String hostname) throws UnknownHostException {
+        return InetAddress.getByName(hostname);
+    }
+
+    @Override
+    public CompletableFuture<InetAddress> resolveAsync(String hostname) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return resolve(hostname);
+            } catch (UnknownHostException e) {
+                throw new CompletionException(e);
+            }
+        }, executor);
+    }
+}
@@ -0,0 +1,44 @@
+package org.xbib.net;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A resolver of host names to internet addresses.
+ *
+ * Implementations can be registered with {@link NetworkUtils#setHostResolver(HostResolver)},
+ * by the {@link java.util.ServiceLoader} mechanism, or per builder and parser with
+ * {@link URLBuilder#hostResolver(HostResolver)} and {@link URLParser#hostResolver(HostResolver)}.
+ *
+ * Implementations must be thread-safe.
+ */
+public interface HostResolver {
+
+    /**
+     * Resolve a host name, blocking the current thread if necessary.
+     *
+     * @param hostname the host name
+     * @return the internet address
+     * @throws UnknownHostException if the host name can not be resolved
+     */
+    InetAddress resolve(String hostname) throws UnknownHostException;
+
+    /**
+     * Resolve a host name without blocking the current thread. The default implementation
+     * resolves synchronously and returns a completed future.
+     *
+     * @param hostname the host name
+     * @return a future with the internet address, completed exceptionally with
+     * an {@link UnknownHostException} if the host name can not be resolved
+     */
+    default CompletableFuture<InetAddress> resolveAsync(String hostname) {
+        CompletableFuture<InetAddress> future = new CompletableFuture<>();
+        try {
+            future.complete(resolve(hostname));
+        } catch (UnknownHostException e) {
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+}
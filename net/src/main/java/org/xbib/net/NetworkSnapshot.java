@@ -0,0 +1,554 @@
+package org.xbib.net;
+
+import java.net.Inet4Address;
+import java.net.Inet6Address;
+import java.net.InetAddress;
+import java.net.InterfaceAddress;
+import java.net.NetworkInterface;
+import java.net.SocketException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * An immutable inventory of the network interfaces and their addresses at one point in time.
+ *
+ * A snapshot is captured with a single enumeration of the network interfaces, including sub-interfaces.
+ * The state of the interfaces, i.e. whether they are up or loopback interfaces, and their addresses are read
+ * once, so queries on a snapshot do not perform system calls. Interfaces are indexed by name, index and address,
+ * and addresses by address family.
+ *
+ * Two snapshots can be compared with {@link #diff(NetworkSnapshot)}. {@link NetworkUtils} keeps a current snapshot,
+ * refreshes it on demand or on a schedule, and notifies {@link Listener}s of the differences.
+ *
+ * This class is thread-safe.
+ */
+public final class NetworkSnapshot {
+
+    /**
+     * A snapshot without interfaces.
+     */
+    public static final NetworkSnapshot EMPTY = new NetworkSnapshot(List.of(), Instant.EPOCH);
+
+    private final List<InterfaceState> interfaces;
+
+    private final Instant timestamp;
+
+    private final Map<String, InterfaceState> byName;
+
+    private final Map<Integer, InterfaceState> byIndex;
+
+    private final Map<InetAddress, InterfaceState> byAddress;
+
+    private final List<InterfaceState> activeInterfaces;
+
+    private final List<InterfaceState> nonLoopbackInterfaces;
+
+    private final List<InetAddress> addresses;
+
+    private final List<InetAddress> activeAddresses;
+
+    private final List<InetAddress> ipv4Addresses;
+
+    private final List<InetAddress> ipv6Addresses;
+
+    private final NetworkProtocolVersion availableProtocols;
+
+    private final NetworkProtocolVersion activeProtocols;
+
+    NetworkSnapshot(List<InterfaceState> interfaceStates, Instant timestamp) {
+        List<InterfaceState> list = new ArrayList<>(interfaceStates);
+        list.sort(Comparator.comparingInt(InterfaceState::getIndex));
+        this.interfaces = Collections.unmodifiableList(list);
+        this.timestamp = timestamp;
+        this.byName = new HashMap<>();
+        this.byIndex = new HashMap<>();
+        this.byAddress = new HashMap<>();
+        List<InterfaceState> active = new ArrayList<>();
+        List<InterfaceState> nonLoopback = new ArrayList<>();
+        List<InetAddress> all = new ArrayList<>();
+        List<InetAddress> activeAll = new ArrayList<>();
+        for (InterfaceState state : list) {
+            byName.put(state.getName(), state);
+            byIndex.putIfAbsent(state.getIndex(), state);
+            for (InetAddress address : state.getAddresses()) {
+                byAddress.putIfAbsent(address, state);
+                all.add(address);
+                if (state.isUp()) {
+                    activeAll.add(address);
+                }
+            }
+            if (state.isUp()) {
+                active.add(state);
+            }
+            if (!state.isLoopback()) {
+                nonLoopback.add(state);
+            }
+        }
+        all.sort(NetworkSnapshot::compareAddresses);
+        activeAll.sort(NetworkSnapshot::compareAddresses);
+        List<InetAddress> ipv4 = new ArrayList<>();
+        List<InetAddress> ipv6 = new ArrayList<>();
+        for (InetAddress address : all) {
+            if (address instanceof Inet4Address) {
+                ipv4.add(address);
+            } else if (address instanceof Inet6Address) {
+                ipv6.add(address);
+            }
+        }
+        this.activeInterfaces = Collections.unmodifiableList(active);
+        this.nonLoopbackInterfaces = Collections.unmodifiableList(nonLoopback);
+        this.addresses = Collections.unmodifiableList(all);
+        this.activeAddresses = Collections.unmodifiableList(activeAll);
+        this.ipv4Addresses = Collections.unmodifiableList(ipv4);
+        this.ipv6Addresses = Collections.unmodifiableList(ipv6);
+        this.availableProtocols = protocols(all);
+        this.activeProtocols = protocols(activeAll);
+    }
+
+    /**
+     * Capture a snapshot of the network interfaces of this host.
+     *
+     * @return the snapshot
+     * @throws SocketException if the network interfaces can not be enumerated
+     */
+    public static NetworkSnapshot capture() throws SocketException {
+        Map<String, InterfaceState> states = new LinkedHashMap<>();
+        Enumeration<NetworkInterface> enumeration = NetworkInterface.getNetworkInterfaces();
+        if (enumeration != null) {
+            while (enumeration.hasMoreElements()) {
+                NetworkInterface networkInterface = enumeration.nextElement();
+                states.putIfAbsent(networkInterface.getName(), new InterfaceState(networkInterface));
+                Enumeration<NetworkInterface> subInterfaces = networkInterface.getSubInterfaces();
+                while (subInterfaces.hasMoreElements()) {
+                    NetworkInterface subInterface = subInterfaces.nextElement();
+                    states.putIfAbsent(subInterface.getName(), new InterfaceState(subInterface));
+                }
+            }
+        }
+        return new NetworkSnapshot(new ArrayList<>(states.values()), Instant.now());
+    }
+
+    /**
+     * Return the time when this snapshot was captured.
+     * @return the timestamp
+     */
+    public Instant getTimestamp() {
+        return timestamp;
+    }
+
+    public boolean isEmpty() {
+        return interfaces.isEmpty();
+    }
+
+    /**
+     * Return all interfaces, sorted by index.
+     * @return the interfaces
+     */
+    public List<InterfaceState> getInterfaces() {
+        return interfaces;
+    }
+
+    public List<InterfaceState> getActiveInterfaces() {
+        return activeInterfaces;
+    }
+
+    public List<InterfaceState> getNonLoopbackInterfaces() {
+        return nonLoopbackInterfaces;
+    }
+
+    /**
+     * Return the interfaces with at least one address of a protocol version.
+     *
+     * @param networkProtocolVersion the protocol version
+     * @return the interfaces
+     */
+    public List<InterfaceState> getInterfaces(NetworkProtocolVersion networkProtocolVersion) {
+        List<InterfaceState> list = new ArrayList<>();
+        for (InterfaceState state : interfaces) {
+            if (state.supports(networkProtocolVersion)) {
+                list.add(state);
+            }
+        }
+        return list;
+    }
+
+    public InterfaceState getInterface(String name) {
+        return byName.get(name);
+    }
+
+    public InterfaceState getInterface(int index) {
+        return byIndex.get(index);
+    }
+
+    /**
+     * Return the interface an address is assigned to.
+     *
+     * @param address the address
+     * @return the interface, or null if the address is not a local address
+     */
+    public InterfaceState getInterface(InetAddress address) {
+        return byAddress.get(address);
+    }
+
+    public boolean isLocalAddress(InetAddress address) {
+        return byAddress.containsKey(address);
+    }
+
+    /**
+     * Return the addresses of all interfaces, sorted by their bytes.
+     * @return the addresses
+     */
+    public List<InetAddress> getAddresses() {
+        return addresses;
+    }
+
+    /**
+     * Return the addresses of the interfaces that are up, sorted by their bytes.
+     * @return the addresses
+     */
+    public List<InetAddress> getActiveAddresses() {
+        return activeAddresses;
+    }
+
+    /**
+     * Return the addresses of a protocol version, sorted by their bytes. For {@code IPV46}, all addresses
+     * are returned.
+     *
+     * @param networkProtocolVersion the protocol version
+     * @return the addresses
+     */
+    public List<InetAddress> getAddresses(NetworkProtocolVersion networkProtocolVersion) {
+        switch (networkProtocolVersion) {
+            case IPV4:
+                return ipv4Addresses;
+            case IPV6:
+                return ipv6Addresses;
+            case IPV46:
+                return addresses;
+            default:
+                return List.of();
+        }
+    }
+
+    /**
+     * Return the protocol versions of the addresses of all interfaces.
+     * @return the protocol versions
+     */
+    public NetworkProtocolVersion getAvailableProtocols() {
+        return availableProtocols;
+    }
+
+    /**
+     * Return the protocol versions of the addresses of the interfaces that are up.
+     * @return the protocol versions
+     */
+    public NetworkProtocolVersion getActiveProtocols() {
+        return activeProtocols;
+    }
+
+    /**
+     * Compare this snapshot to a previous snapshot.
+     *
+     * @param previous the previous snapshot
+     * @return the differences from the previous snapshot to this snapshot
+     */
+    public Diff diff(NetworkSnapshot previous) {
+        return new Diff(previous, this);
+    }
+
+    @Override
+    public String toString() {
+        return "NetworkSnapshot[timestamp=" + timestamp + ",interfaces=" + interfaces + "]";
+    }
+
+    private static NetworkProtocolVersion protocols(List<InetAddress> addresses) {
+        boolean hasIPv4 = false;
+        boolean hasIPv6 = false;
+        for (InetAddress address : addresses) {
+            if (address instanceof Inet4Address) {
+                hasIPv4 = true;
+            } else if (address instanceof Inet6Address) {
+                hasIPv6 = true;
+            }
+        }
+        if (hasIPv4 && hasIPv6) {
+            return NetworkProtocolVersion.IPV46;
+        }
+        if (hasIPv4) {
+            return NetworkProtocolVersion.IPV4;
+        }
+        if (hasIPv6) {
+            return NetworkProtocolVersion.IPV6;
+        }
+        return NetworkProtocolVersion.NONE;
+    }
+
+    private static int compareAddresses(InetAddress left, InetAddress right) {
+        return Arrays.compareUnsigned(left.getAddress(), right.getAddress());
+    }
+
+    /**
+     * The state of a network interface at the time of a snapshot.
+     */
+    public static final class InterfaceState {
+
+        private final NetworkInterface networkInterface;
+
+        private final String name;
+
+        private final String displayName;
+
+        private final int index;
+
+        private final boolean up;
+
+        private final boolean loopback;
+
+        private final boolean virtual;
+
+        private final List<InetAddress> addresses;
+
+        private final List<InterfaceAddress> interfaceAddresses;
+
+        InterfaceState(NetworkInterface networkInterface) {
+            this(networkInterface, networkInterface.getName(), networkInterface.getDisplayName(),
+                    networkInterface.getIndex(), isUp(networkInterface), isLoopback(networkInterface),
+                    networkInterface.isVirtual(), Collections.list(networkInterface.getInetAddresses()),
+                    networkInterface.getInterfaceAddresses());
+        }
+
+        InterfaceState(NetworkInterface networkInterface, String name, String displayName, int index,
+                       boolean up, boolean loopback, boolean virtual,
+                       List<InetAddress> addresses, List<InterfaceAddress> interfaceAddresses) {
+            this.networkInterface = networkInterface;
+            this.name = name;
+            this.displayName = displayName;
+            this.index = index;
+            this.up = up;
+            this.loopback = loopback;
+            this.virtual = virtual;
+            this.addresses = List.copyOf(addresses);
+            this.interfaceAddresses = List.copyOf(interfaceAddresses);
+        }
+
+        /**
+         * Return the network interface. Queries on the network interface return its current state, not the state
+         * at the time of the snapshot.
+         * @return the network interface
+         */
+        public NetworkInterface getNetworkInterface() {
+            return networkInterface;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDisplayName() {
+            return displayName;
+        }
+
+        public int getIndex() {
+            return index;
+        }
+
+        public boolean isUp() {
+            return up;
+        }
+
+        public boolean isLoopback() {
+            return loopback;
+        }
+
+        public boolean isVirtual() {
+            return virtual;
+        }
+
+        public List<InetAddress> getAddresses() {
+            return addresses;
+        }
+
+        public List<InterfaceAddress> getInterfaceAddresses() {
+            return interfaceAddresses;
+        }
+
+        /**
+         * Checks if this interface has an address of a protocol version. For {@code IPV46}, any address matches.
+         *
+         * @param networkProtocolVersion the protocol version
+         * @return true if the interface has an address of the protocol version
+         */
+        public boolean supports(NetworkProtocolVersion networkProtocolVersion) {
+            for (InetAddress address : addresses) {
+                switch (networkProtocolVersion) {
+                    case IPV4:
+                        if (address instanceof Inet4Address) {
+                            return true;
+                        }
+                        break;
+                    case IPV6:
+                        if (address instanceof Inet6Address) {
+                            return true;
+                        }
+                        break;
+                    case IPV46:
+                        return true;
+                    default:
+                        return false;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return name + "[index=" + index + (up ? ",up" : "") + (loopback ? ",loopback" : "") +
+                    ",addresses=" + addresses + "]";
+        }
+
+        private boolean sameState(InterfaceState other) {
+            return up == other.up && loopback == other.loopback && index == other.index &&
+                    addresses.equals(other.addresses);
+        }
+
+        private static boolean isUp(NetworkInterface networkInterface) {
+            try {
+                return networkInterface.isUp();
+            } catch (SocketException e) {
+                return false;
+            }
+        }
+
+        private static boolean isLoopback(NetworkInterface networkInterface) {
+            try {
+                return networkInterface.isLoopback();
+            } catch (SocketException e) {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * The differences between two snapshots. Interfaces are matched by name, addresses by value.
+     */
+    public static final class Diff {
+
+        private final NetworkSnapshot previous;
+
+        private final NetworkSnapshot current;
+
+        private final List<InterfaceState> addedInterfaces;
+
+        private final List<InterfaceState> removedInterfaces;
+
+        private final List<InterfaceState> changedInterfaces;
+
+        private final List<InetAddress> addedAddresses;
+
+        private final List<InetAddress> removedAddresses;
+
+        Diff(NetworkSnapshot previous, NetworkSnapshot current) {
+            this.previous = previous;
+            this.current = current;
+            List<InterfaceState> added = new ArrayList<>();
+            List<InterfaceState> changed = new ArrayList<>();
+            for (InterfaceState state : current.interfaces) {
+                InterfaceState previousState = previous.byName.get(state.getName());
+                if (previousState == null) {
+                    added.add(state);
+                } else if (!state.sameState(previousState)) {
+                    changed.add(state);
+                }
+            }
+            List<InterfaceState> removed = new ArrayList<>();
+            for (InterfaceState state : previous.interfaces) {
+                if (!current.byName.containsKey(state.getName())) {
+                    removed.add(state);
+                }
+            }
+            this.addedInterfaces = Collections.unmodifiableList(added);
+            this.removedInterfaces = Collections.unmodifiableList(removed);
+            this.changedInterfaces = Collections.unmodifiableList(changed);
+            this.addedAddresses = difference(current.addresses, previous.addresses);
+            this.removedAddresses = difference(previous.addresses, current.addresses);
+        }
+
+        public NetworkSnapshot getPrevious() {
+            return previous;
+        }
+
+        public NetworkSnapshot getCurrent() {
+            return current;
+        }
+
+        public List<InterfaceState> getAddedInterfaces() {
+            return addedInterfaces;
+        }
+
+        public List<InterfaceState> getRemovedInterfaces() {
+            return removedInterfaces;
+        }
+
+        /**
+         * Return the interfaces of the current snapshot which were present in the previous snapshot,
+         * but changed their state, index, or addresses.
+         * @return the changed interfaces
+         */
+        public List<InterfaceState> getChangedInterfaces() {
+            return changedInterfaces;
+        }
+
+        public List<InetAddress> getAddedAddresses() {
+            return addedAddresses;
+        }
+
+        public List<InetAddress> getRemovedAddresses() {
+            return removedAddresses;
+        }
+
+        public boolean isEmpty() {
+            return addedInterfaces.isEmpty() && removedInterfaces.isEmpty() && changedInterfaces.isEmpty() &&
+                    addedAddresses.isEmpty() && removedAddresses.isEmpty();
+        }
+
+        @Override
+        public String toString() {
+            return "Diff[addedInterfaces=" + addedInterfaces + ",removedInterfaces=" + removedInterfaces +
+                    ",changedInterfaces=" + changedInterfaces + ",addedAddresses=" + addedAddresses +
+                    ",removedAddresses=" + removedAddresses + "]";
+        }
+
+        private static List<InetAddress> difference(List<InetAddress> left, List<InetAddress> right) {
+            Set<InetAddress> set = new LinkedHashSet<>(left);
+            right.forEach(set::remove);
+            return List.copyOf(set);
+        }
+    }
+
+    /**
+     * A listener for changes of the network interfaces, registered with
+     * {@link NetworkUtils#addNetworkListener(Listener)}.
+     */
+    @FunctionalInterface
+    public interface Listener {
+
+        /**
+         * Called after a refreshed snapshot differs from the previous snapshot. Listeners are called on a
+         * thread that refreshed a snapshot, after queries are released, with one difference at a time in the order
+         * the snapshots were captured, and should return quickly.
+         *
+         * @param diff the differences
+         */
+        void changed(Diff diff);
+    }
+}
@@ -9,21 +9,26 @@ import java.net.InterfaceAddress;
 import java.net.NetworkInterface;
 import java.net.SocketException;
 import java.net.UnknownHostException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.Comparator;
 import java.util.EnumSet;
 import java.util.Enumeration;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
 import java.util.Properties;
-import java.util.concurrent.CountDownLatch;
+import java.util.Queue;
+import java.util.ServiceLoader;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.function.Predicate;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -43,12 +48,36 @@ public class NetworkUtils {
 
     private static final String IPV6_SETTING = "java.net.preferIPv6Addresses";
 
-    private static final CountDownLatch latch = new CountDownLatch(1);
+    /**
+     * The default maximum age of the cached network snapshot.
+     */
+    public static final Duration DEFAULT_NETWORK_SNAPSHOT_MAX_AGE = Duration.ofSeconds(1L);
 
-    private static final InterfaceWaiter interfaceWaiter = new InterfaceWaiter();
+    private static final Logger logger = Logger.getLogger("network");
+
+    private static final Object snapshotLock = new Object();
+
+    private static final List<NetworkSnapshot.Listener> networkListeners = new CopyOnWriteArrayList<>();
+
+    /**
+     * The differences of refreshed snapshots that are not yet delivered to the listeners, in capture order.
+     */
+    private static final Queue<NetworkSnapshot.Diff> pendingDiffs = new ConcurrentLinkedQueue<>();
+
+    private static final AtomicInteger notifying = new AtomicInteger();
+
+    private static final AtomicBoolean refreshing = new AtomicBoolean();
+
+    private static volatile CachedSnapshot cachedSnapshot;
+
+    private static volatile long networkSnapshotMaxAgeNanos = DEFAULT_NETWORK_SNAPSHOT_MAX_AGE.toNanos();
+
+    private static ScheduledExecutorService networkMonitor;
 
     private static InetAddress localAddress;
 
+    private static volatile HostResolver hostResolver;
+
     private NetworkUtils() {
         throw new UnsupportedOperationException();
     }
@@ -155,55 +184,39 @@ public class NetworkUtils {
     }
 
     public static List<InetAddress> getAllAvailableAddresses() {
-        List<InetAddress> allAddresses = new ArrayList<>();
-        for (NetworkInterface networkInterface : getAllNetworkInterfaces()) {
-            Enumeration<InetAddress> addrs = networkInterface.getInetAddresses();
-            while (addrs.hasMoreElements()) {
-                allAddresses.add(addrs.nextElement());
-            }
-        }
-        sortAddresses(allAddresses);
-        return allAddresses;
+        return new ArrayList<>(getNetworkSnapshot().getAddresses());
     }
 
     public static boolean isIpv4Available() {
-        return getAllAvailableAddresses().stream().anyMatch(addr -> addr instanceof Inet4Address);
+        return supports(getNetworkSnapshot().getAvailableProtocols(), NetworkProtocolVersion.IPV4);
     }
 
     public static boolean isIpv6Available() {
-        return getAllAvailableAddresses().stream().anyMatch(addr -> addr instanceof Inet6Address);
+        return supports(getNetworkSnapshot().getAvailableProtocols(), NetworkProtocolVersion.IPV6);
     }
 
     public static List<InetAddress> getAllActiveAddresses() {
-        List<InetAddress> allAddresses = new ArrayList<>();
-        for (NetworkInterface networkInterface : getActiveInterfaces()) {
-            Enumeration<InetAddress> addrs = networkInterface.getInetAddresses();
-            while (addrs.hasMoreElements()) {
-                allAddresses.add(addrs.nextElement());
-            }
-        }
-        sortAddresses(allAddresses);
-        return allAddresses;
+        return new ArrayList<>(getNetworkSnapshot().getActiveAddresses());
     }
 
     public static boolean isIpv4Active() {
-        return getAllActiveAddresses().stream().anyMatch(addr -> addr instanceof Inet4Address);
+        return supports(getNetworkSnapshot().getActiveProtocols(), NetworkProtocolVersion.IPV4);
     }
 
     public static boolean isIpv6Active() {
-        return getAllActiveAddresses().stream().anyMatch(addr -> addr instanceof Inet6Address);
+        return supports(getNetworkSnapshot().getActiveProtocols(), NetworkProtocolVersion.IPV6);
     }
 
     public static List<NetworkInterface> getAllNetworkInterfaces() {
-        return getInterfaces(n -> true);
+        return toNetworkInterfaces(getNetworkSnapshot().getInterfaces());
     }
 
     public static List<NetworkInterface> getNonLoopbackNetworkInterfaces() {
-        return getInterfaces(NetworkUtils::isNonLoopBack);
+        return toNetworkInterfaces(getNetworkSnapshot().getNonLoopbackInterfaces());
     }
 
     public static List<NetworkInterface> getActiveInterfaces() {
-        return getInterfaces(NetworkUtils::isUp);
+        return toNetworkInterfaces(getNetworkSnapshot().getActiveInterfaces());
     }
 
     public static List<InetAddress> getAddresses(List<NetworkInterface> networkInterfaces,
@@ -272,26 +285,7 @@ public class NetworkUtils {
     }
 
     public static NetworkProtocolVersion findAvailableProtocols() {
-        boolean hasIPv4 = false;
-        boolean hasIPv6 = false;
-        for (InetAddress addr : getAllAvailableAddresses()) {
-            if (addr instanceof Inet4Address) {
-                hasIPv4 = true;
-            }
-            if (addr instanceof Inet6Address) {
-                hasIPv6 = true;
-            }
-        }
-        if (hasIPv4 && hasIPv6) {
-            return NetworkProtocolVersion.IPV46;
-        }
-        if (hasIPv4) {
-            return NetworkProtocolVersion.IPV4;
-        }
-        if (hasIPv6) {
-            return NetworkProtocolVersion.IPV6;
-        }
-        return NetworkProtocolVersion.NONE;
+        return getNetworkSnapshot().getAvailableProtocols();
     }
 
     public static InetAddress resolveInetAddress(String hostname, String defaultValue) throws IOException {
@@ -344,7 +338,39 @@ public class NetworkUtils {
         if ("0.0.0.0".equals(host) || "::".equals(host)) {
             return new InetSocketAddress(0).getAddress();
         }
-        return InetAddress.getByName(host);
+        return getHostResolver().resolve(host);
+    }
+
+    /**
+     * Return the host resolver for resolving host names. If no host resolver was set,
+     * the first resolver found by the {@link ServiceLoader} is used, or a
+     * {@link CachingHostResolver} over the {@link DefaultHostResolver}.
+     *
+     * @return the host resolver
+     */
+    public static HostResolver getHostResolver() {
+        HostResolver resolver = hostResolver;
+        if (resolver == null) {
+            synchronized (NetworkUtils.class) {
+                resolver = hostResolver;
+                if (resolver == null) {
+                    Iterator<HostResolver> iterator = ServiceLoader.load(HostResolver.class).iterator();
+                    resolver = iterator.hasNext() ? iterator.next() :
+                            new CachingHostResolver(new DefaultHostResolver());
+                    hostResolver = resolver;
+                }
+            }
+        }
+        return resolver;
+    }
+
+    /**
+     * Set the host resolver for resolving host names.
+     *
+     * @param resolver the host resolver
+     */
+    public static void setHostResolver(HostResolver resolver) {
+        hostResolver = Objects.requireNonNull(resolver);
     }
 
     public static InetAddress resolvePublicHostAddress(String host) throws IOException {
@@ -369,13 +395,8 @@ public class NetworkUtils {
         for (NetworkInterface networkInterface : waitForNetworkInterfaces()) {
             if (predicate.test(networkInterface)) {
                 networkInterfaces.add(networkInterface);
-                Enumeration<NetworkInterface> subInterfaces = networkInterface.getSubInterfaces();
-                while (subInterfaces.hasMoreElements()) {
-                    networkInterfaces.add(subInterfaces.nextElement());
-                }
             }
         }
-        sortInterfaces(networkInterfaces);
         return networkInterfaces;
     }
 
@@ -383,48 +404,213 @@ public class NetworkUtils {
         return waitForNetworkInterfaces(30L, TimeUnit.SECONDS);
     }
 
+    /**
+     * Return the network interfaces, including sub-interfaces, sorted by index. If there are no network
+     * interfaces, the network snapshot is refreshed periodically until network interfaces are present.
+     *
+     * @param period the period between refreshes
+     * @param timeUnit the time unit of the period
+     * @return the network interfaces
+     */
     public static List<NetworkInterface> waitForNetworkInterfaces(long period, TimeUnit timeUnit) {
-        if (latch.getCount() == 0L) {
-            return interfaceWaiter.interfaces;
+        NetworkSnapshot snapshot = getNetworkSnapshot();
+        if (snapshot.isEmpty()) {
+            logger.log(Level.INFO, "waiting for network interfaces");
+            try {
+                while ((snapshot = refreshNetworkSnapshot()).isEmpty()) {
+                    timeUnit.sleep(period);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("interrupted while waiting for network interfaces");
+            }
+            logger.log(Level.INFO, "network interfaces present: " + snapshot.getInterfaces());
+        }
+        return toNetworkInterfaces(snapshot.getInterfaces());
+    }
+
+    /**
+     * Return the current network snapshot. The snapshot is captured on first use, and captured again
+     * if it is older than the maximum age, or if it is refreshed on demand or by the network monitor.
+     * A snapshot that is older than the maximum age is captured again by one querying thread, while
+     * the other threads get the previous snapshot.
+     *
+     * @return the network snapshot
+     */
+    public static NetworkSnapshot getNetworkSnapshot() {
+        CachedSnapshot cached = cachedSnapshot;
+        if (cached != null && System.nanoTime() - cached.captured < networkSnapshotMaxAgeNanos) {
+            return cached.snapshot;
         }
-        ScheduledExecutorService service = Executors.newSingleThreadScheduledExecutor();
-        ScheduledFuture<?> future = service.scheduleAtFixedRate(interfaceWaiter, 0L, period, timeUnit);
+        if (cached != null && !refreshing.compareAndSet(false, true)) {
+            // another thread is capturing a new snapshot
+            return cached.snapshot;
+        }
+        NetworkSnapshot snapshot;
         try {
-            latch.await();
-            future.cancel(true);
-            service.shutdownNow();
-            return interfaceWaiter.interfaces;
-        } catch (InterruptedException e) {
-            throw new IllegalStateException("timeout while waiting for network interfaces");
+            synchronized (snapshotLock) {
+                cached = cachedSnapshot;
+                if (cached != null && System.nanoTime() - cached.captured < networkSnapshotMaxAgeNanos) {
+                    return cached.snapshot;
+                }
+                snapshot = refresh();
+            }
+        } finally {
+            refreshing.set(false);
+        }
+        notifyListeners();
+        return snapshot;
+    }
+
+    /**
+     * Capture a new network snapshot now, and notify the network listeners if it differs from
+     * the previous snapshot.
+     *
+     * @return the new network snapshot
+     */
+    public static NetworkSnapshot refreshNetworkSnapshot() {
+        NetworkSnapshot snapshot;
+        synchronized (snapshotLock) {
+            snapshot = refresh();
+        }
+        notifyListeners();
+        return snapshot;
+    }
+
+    /**
+     * Replace the current network snapshot with the given snapshot, and notify the network listeners if it
+     * differs from the previous snapshot. For tests, which cannot change the network of the host.
+     *
+     * @param snapshot the new network snapshot
+     * @return the new network snapshot
+     */
+    static NetworkSnapshot refreshNetworkSnapshot(NetworkSnapshot snapshot) {
+        synchronized (snapshotLock) {
+            update(snapshot);
+        }
+        notifyListeners();
+        return snapshot;
+    }
+
+    /**
+     * Set the maximum age of the cached network snapshot. With a zero duration, every query captures
+     * a new snapshot.
+     *
+     * @param maxAge the maximum age
+     */
+    public static void setNetworkSnapshotMaxAge(Duration maxAge) {
+        if (maxAge.isNegative()) {
+            throw new IllegalArgumentException("'maxAge' must not be negative");
+        }
+        networkSnapshotMaxAgeNanos = maxAge.toNanos();
+    }
+
+    /**
+     * Start refreshing the network snapshot at a fixed rate on a daemon thread, so changes are reported
+     * to the network listeners without queries. A running network monitor is replaced.
+     *
+     * @param period the period between refreshes
+     */
+    public static void startNetworkMonitor(Duration period) {
+        if (period.isNegative() || period.isZero()) {
+            throw new IllegalArgumentException("'period' must be positive");
+        }
+        synchronized (NetworkUtils.class) {
+            stopNetworkMonitor();
+            networkMonitor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "network-monitor");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long nanos = period.toNanos();
+            networkMonitor.scheduleAtFixedRate(NetworkUtils::refreshNetworkSnapshot, nanos, nanos,
+                    TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Stop the network monitor, if it is running.
+     */
+    public static void stopNetworkMonitor() {
+        synchronized (NetworkUtils.class) {
+            if (networkMonitor != null) {
+                networkMonitor.shutdownNow();
+                networkMonitor = null;
+            }
         }
     }
 
-    private static class InterfaceWaiter implements Runnable {
+    /**
+     * Add a listener for changes of the network snapshot.
+     *
+     * @param listener the listener
+     */
+    public static void addNetworkListener(NetworkSnapshot.Listener listener) {
+        networkListeners.add(Objects.requireNonNull(listener));
+    }
 
-        private final List<NetworkInterface> interfaces = new ArrayList<>();
+    public static void removeNetworkListener(NetworkSnapshot.Listener listener) {
+        networkListeners.remove(listener);
+    }
 
-        private final Logger logger = Logger.getLogger("network");
+    private static NetworkSnapshot refresh() {
+        NetworkSnapshot snapshot;
+        try {
+            snapshot = NetworkSnapshot.capture();
+        } catch (SocketException e) {
+            // getNetworkInterfaces() throws socket exception if no network is configured
+            logger.log(Level.WARNING, e.getMessage());
+            CachedSnapshot cached = cachedSnapshot;
+            snapshot = cached != null ? cached.snapshot : NetworkSnapshot.EMPTY;
+        }
+        update(snapshot);
+        return snapshot;
+    }
+
+    private static void update(NetworkSnapshot snapshot) {
+        CachedSnapshot cached = cachedSnapshot;
+        NetworkSnapshot previous = cached != null ? cached.snapshot : NetworkSnapshot.EMPTY;
+        cachedSnapshot = new CachedSnapshot(snapshot, System.nanoTime());
+        if (snapshot != previous && !networkListeners.isEmpty()) {
+            NetworkSnapshot.Diff diff = snapshot.diff(previous);
+            if (!diff.isEmpty()) {
+                pendingDiffs.add(diff);
+            }
+        }
+    }
 
-        @Override
-        public void run() {
-            try {
-                interfaces.clear();
-                logger.log(Level.INFO, "waiting for network interfaces");
-                Enumeration<NetworkInterface> networkInterfaceEnumeration = NetworkInterface.getNetworkInterfaces();
-                if (networkInterfaceEnumeration.hasMoreElements()) {
-                    do {
-                        NetworkInterface networkInterface = networkInterfaceEnumeration.nextElement();
-                        interfaces.add(networkInterface);
-                    } while (networkInterfaceEnumeration.hasMoreElements());
-                    logger.log(Level.INFO, "network interfaces present: " + interfaces);
-                    if (!interfaces.isEmpty()) {
-                        latch.countDown();
+    /**
+     * Deliver the pending differences to the network listeners, outside of the snapshot lock. One thread
+     * delivers at a time, so the listeners get the differences in capture order; a thread that finds
+     * another thread delivering leaves its differences to that thread.
+     */
+    private static void notifyListeners() {
+        if (pendingDiffs.isEmpty() || notifying.getAndIncrement() != 0) {
+            return;
+        }
+        do {
+            NetworkSnapshot.Diff diff;
+            while ((diff = pendingDiffs.poll()) != null) {
+                for (NetworkSnapshot.Listener listener : networkListeners) {
+                    try {
+                        listener.changed(diff);
+                    } catch (RuntimeException e) {
+                        logger.log(Level.WARNING, e.getMessage(), e);
                     }
                 }
-            } catch (Exception e) {
-                // getNetworkInterfaces() throws socket exception if no network is configured
-                logger.log(Level.WARNING, e.getMessage());
             }
+        } while (notifying.decrementAndGet() != 0);
+    }
+
+    private static class CachedSnapshot {
+
+        private final NetworkSnapshot snapshot;
+
+        private final long captured;
+
+        CachedSnapshot(NetworkSnapshot snapshot, long captured) {
+            this.snapshot = snapshot;
+            this.captured = captured;
         }
     }
 
@@ -591,12 +777,16 @@ public class NetworkUtils {
         return sb.toString();
     }
 
-    private static boolean isUp(NetworkInterface networkInterface) {
-        try {
-            return networkInterface.isUp();
-        } catch (SocketException e) {
-            return false;
+    private static boolean supports(NetworkProtocolVersion available, NetworkProtocolVersion networkProtocolVersion) {
+        return available == networkProtocolVersion || available == NetworkProtocolVersion.IPV46;
+    }
+
+    private static List<NetworkInterface> toNetworkInterfaces(List<NetworkSnapshot.InterfaceState> states) {
+        List<NetworkInterface> networkInterfaces = new ArrayList<>(states.size());
+        for (NetworkSnapshot.InterfaceState state : states) {
+            networkInterfaces.add(state.getNetworkInterface());
         }
+        return networkInterfaces;
     }
 
     private static boolean isNonLoopBack(NetworkInterface networkInterface) {
@@ -607,17 +797,6 @@ public class NetworkUtils {
         }
     }
 
-    private static int compareBytes(byte[] left, byte[] right) {
-        for (int i = 0, j = 0; i < left.length && j < right.length; i++, j++) {
-            int a = left[i] & 0xff;
-            int b = right[j] & 0xff;
-            if (a != b) {
-                return a - b;
-            }
-        }
-        return left.length - right.length;
-    }
-
     private static void compressLongestRunOfZeroes(int[] hextets) {
         int bestRunStart = -1;
         int bestRunLength = -1;
@@ -660,12 +839,4 @@ public class NetworkUtils {
         }
         return sb.toString();
     }
-
-    private static void sortInterfaces(List<NetworkInterface> interfaces) {
-        interfaces.sort(Comparator.comparingInt(NetworkInterface::getIndex));
-    }
-
-    private static void sortAddresses(List<InetAddress> addressList) {
-        addressList.sort((o1, o2) -> compareBytes(o1.getAddress(), o2.getAddress()));
-    }
 }
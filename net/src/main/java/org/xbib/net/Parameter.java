@@ -1,13 +1,12 @@
 package org.xbib.net;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Iterator;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 import org.xbib.datastructures.common.ImmutableList;
 import org.xbib.datastructures.common.LinkedHashSetMultiMap;
@@ -18,12 +17,19 @@ public class Parameter implements Iterable<Pair<String, Object>>, Comparable<Par
 
     private static final Parameter EMPTY = Parameter.builder().build();
 
+    /**
+     * Parameters with more pairs than this are looked up by an index of the names.
+     */
+    private static final int INDEX_THRESHOLD = 8;
+
     private final ParameterBuilder builder;
 
     private final ImmutableList<Pair<String, Object>> list;
 
     private final String queryString;
 
+    private volatile ParameterIndex index;
+
     Parameter(ParameterBuilder builder,
               ImmutableList<Pair<String, Object>> list,
               String queryString) {
@@ -174,48 +180,78 @@ public class Parameter implements Iterable<Pair<String, Object>>, Comparable<Par
     }
 
     public List<Object> getAll(String domain, String key) {
-        Optional<Parameter> optional = builder.parameterMap.values().stream().filter(p -> domain.equals(p.getDomain())).findFirst();
-        if (optional.isPresent()) {
-            return optional.get().getAll(domain, key);
+        Parameter parameter = builder.parameterMap.get(domain);
+        if (parameter != null) {
+            return parameter.getAll(domain, key);
+        }
+        checkDomain(domain);
+        List<Object> values = new ArrayList<>();
+        ParameterIndex parameterIndex = index();
+        if (parameterIndex != null) {
+            for (int i = parameterIndex.first(key); i >= 0; i = parameterIndex.next(i)) {
+                values.add(list.get(i).getValue());
+            }
         } else {
-            if (!builder.domain.equals(domain)) {
-                throw new IllegalArgumentException("domain mismatch");
+            for (Pair<String, Object> pair : list) {
+                if (key.equals(pair.getKey())) {
+                    values.add(pair.getValue());
+                }
             }
-            return list.stream()
-                    .filter(p -> key.equals(p.getKey()))
-                    .map(Pair::getValue)
-                    .collect(Collectors.toList());
         }
+        return values;
     }
 
     public boolean containsKey(String domain, String key) {
-        Optional<Parameter> optional = builder.parameterMap.values().stream().filter(p -> domain.equals(p.getDomain())).findFirst();
-        if (optional.isPresent()) {
-            return optional.get().containsKey(domain, key);
-        } else {
-            if (!builder.domain.equals(domain)) {
-                throw new IllegalArgumentException("domain mismatch");
-            }
-            return list.stream().anyMatch(p -> key.equals(p.getKey()));
+        Parameter parameter = builder.parameterMap.get(domain);
+        if (parameter != null) {
+            return parameter.containsKey(domain, key);
         }
+        checkDomain(domain);
+        return indexOf(key) >= 0;
     }
 
     public Object get(String domain, String key) {
-        Optional<Parameter> optional = builder.parameterMap.values().stream().filter(p -> domain.equals(p.getDomain())).findFirst();
-        if (optional.isPresent()) {
-            return optional.get().getAll(domain, key);
-        } else {
-            if (!builder.domain.equals(domain)) {
-                throw new IllegalArgumentException("domain mismatch");
-            }
-            return list.stream()
-                    .filter(p -> key.equals(p.getKey()))
-                    .map(Pair::getValue)
-                    .findFirst().orElse(null);
+        Parameter parameter = builder.parameterMap.get(domain);
+        if (parameter != null) {
+            return parameter.getAll(domain, key);
         }
+        checkDomain(domain);
+        int i = indexOf(key);
+        return i >= 0 ? list.get(i).getValue() : null;
     }
 
     public String getAsQueryString() {
         return queryString;
     }
+
+    private void checkDomain(String domain) {
+        if (!builder.domain.equals(domain)) {
+            throw new IllegalArgumentException("domain mismatch");
+        }
+    }
+
+    private int indexOf(String key) {
+        ParameterIndex parameterIndex = index();
+        if (parameterIndex != null) {
+            return parameterIndex.first(key);
+        }
+        for (int i = 0; i < list.size(); i++) {
+            if (key.equals(list.get(i).getKey())) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private ParameterIndex index() {
+        if (list.size() <= INDEX_THRESHOLD) {
+            return null;
+        }
+        ParameterIndex parameterIndex = index;
+        if (parameterIndex == null) {
+            parameterIndex = ParameterIndex.of(list);
+            index = parameterIndex;
+        }
+        return parameterIndex;
+    }
 }
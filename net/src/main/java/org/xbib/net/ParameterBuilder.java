@@ -1,13 +1,18 @@
 package org.xbib.net;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.io.UncheckedIOException;
 import java.lang.reflect.Array;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.charset.Charset;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnmappableCharacterException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.Iterator;
@@ -18,6 +23,7 @@ import org.xbib.datastructures.common.ImmutableList;
 import org.xbib.datastructures.common.MultiMap;
 import org.xbib.datastructures.common.Pair;
 import org.xbib.datastructures.common.PairValidator;
+import org.xbib.net.buffer.DataBuffer;
 
 public class ParameterBuilder implements PairValidator {
 
@@ -30,6 +36,8 @@ public class ParameterBuilder implements PairValidator {
 
     private static final Integer MAX_PARAMS_IN_QUERY_STRING = 1024;
 
+    private static final int SCRATCH_BUFFER_SIZE = 8192;
+
     private final List<Pair<String, Object>> list;
 
     String domain;
@@ -44,6 +52,8 @@ public class ParameterBuilder implements PairValidator {
 
     private int limit;
 
+    private long byteLimit;
+
     private PairValidator pairValidator;
 
     private ParameterValidator parameterValidator;
@@ -62,6 +72,8 @@ public class ParameterBuilder implements PairValidator {
 
     private boolean enableQueryString;
 
+    private ParameterIndex index;
+
     ParameterBuilder() {
         this.list = new ArrayList<>();
         this.parameterMap = new HashMap<>();
@@ -74,6 +86,7 @@ public class ParameterBuilder implements PairValidator {
         this.parameterMap = builder.parameterMap;
         this.domain = builder.domain;
         this.limit = builder.limit;
+        this.byteLimit = builder.byteLimit;
         this.charset = builder.charset;
         this.percentDecoder = builder.percentDecoder;
         this.percentEncoder = builder.percentEncoder;
@@ -129,6 +142,18 @@ public class ParameterBuilder implements PairValidator {
         return this;
     }
 
+    /**
+     * Set the maximum number of bytes that are read from a percent-encoded body stream.
+     * The default is 0, which means no limit.
+     *
+     * @param byteLimit the maximum number of bytes
+     * @return this builder
+     */
+    public ParameterBuilder byteLimit(long byteLimit) {
+        this.byteLimit = byteLimit;
+        return this;
+    }
+
     public ParameterBuilder pairValidator(PairValidator validator) {
         this.pairValidator = validator;
         return this;
@@ -187,21 +212,94 @@ public class ParameterBuilder implements PairValidator {
         if (percentDecoder == null) {
             charset(StandardCharsets.UTF_8);
         }
-        // watch out for "plus" encoding, replace it with a space character
-        String s = body.replace('+', ' ');
-        while (s != null) {
-            Pair<String, Object> pairs = indexOf(AMPERSAND_CHAR, s);
-            Pair<String, Object> pair = indexOf(EQUAL_CHAR, pairs.getKey());
-            if (pair.getKey() != null && !pair.getKey().isEmpty()) {
+        int pos = 0;
+        while (pos <= body.length()) {
+            int end = body.indexOf(AMPERSAND_CHAR, pos);
+            if (end < 0) {
+                end = body.length();
+            }
+            int i = body.indexOf(EQUAL_CHAR, pos);
+            if (i < 0 || i > end) {
+                i = end;
+            }
+            if (i > pos) {
                 try {
-                    add(percentDecoder.decode(pair.getKey()),
-                            pair.getValue() instanceof CharSequence ? percentDecoder.decode((CharSequence) pair.getValue()) : pair.getValue());
+                    // watch out for "plus" encoding, replace it with a space character
+                    String name = percentDecoder.decode(body.substring(pos, i).replace('+', ' '));
+                    String value = i < end ? percentDecoder.decode(body.substring(i + 1, end).replace('+', ' ')) : null;
+                    add(name, value);
                 } catch (MalformedInputException | UnmappableCharacterException e) {
                     throw new UncheckedIOException(e);
                 }
             }
-            s = pairs.getValue() !=null ? pairs.getValue().toString() : null;
+            pos = end + 1;
+        }
+        return this;
+    }
+
+    /**
+     * Decode an application/x-www-form-urlencoded body from a channel and add the parameters.
+     * The body is decoded while it is read, with a scratch buffer of fixed size, so only the bytes
+     * of the current parameter are held in memory.
+     *
+     * @param channel the channel
+     * @param charset the charset of the decoded bytes
+     * @return this builder
+     * @throws IOException if the channel can not be read
+     * @throws IllegalArgumentException if the parameter limit or the byte limit is exceeded
+     */
+    public ParameterBuilder addPercentEncodedBody(ReadableByteChannel channel, Charset charset) throws IOException {
+        BodyDecoder bodyDecoder = new BodyDecoder(charset);
+        ByteBuffer byteBuffer = ByteBuffer.allocate(SCRATCH_BUFFER_SIZE);
+        while (channel.read(byteBuffer) >= 0) {
+            byteBuffer.flip();
+            bodyDecoder.decode(byteBuffer.array(), byteBuffer.position(), byteBuffer.limit());
+            byteBuffer.clear();
+        }
+        bodyDecoder.finish();
+        return this;
+    }
+
+    /**
+     * Decode an application/x-www-form-urlencoded body from an input stream and add the parameters.
+     * The body is decoded while it is read, with a scratch buffer of fixed size, so only the bytes
+     * of the current parameter are held in memory.
+     *
+     * @param inputStream the input stream
+     * @param charset the charset of the decoded bytes
+     * @return this builder
+     * @throws IOException if the input stream can not be read
+     * @throws IllegalArgumentException if the parameter limit or the byte limit is exceeded
+     */
+    public ParameterBuilder addPercentEncodedBody(InputStream inputStream, Charset charset) throws IOException {
+        BodyDecoder bodyDecoder = new BodyDecoder(charset);
+        byte[] bytes = new byte[SCRATCH_BUFFER_SIZE];
+        int n;
+        while ((n = inputStream.read(bytes)) >= 0) {
+            bodyDecoder.decode(bytes, 0, n);
+        }
+        bodyDecoder.finish();
+        return this;
+    }
+
+    /**
+     * Decode an application/x-www-form-urlencoded body from the readable bytes of a data buffer and add
+     * the parameters. The bytes are read from the data buffer.
+     *
+     * @param dataBuffer the data buffer
+     * @param charset the charset of the decoded bytes
+     * @return this builder
+     * @throws IllegalArgumentException if the parameter limit or the byte limit is exceeded
+     */
+    public ParameterBuilder addPercentEncodedBody(DataBuffer dataBuffer, Charset charset) {
+        BodyDecoder bodyDecoder = new BodyDecoder(charset);
+        byte[] bytes = new byte[Math.min(SCRATCH_BUFFER_SIZE, dataBuffer.readableByteCount())];
+        int n;
+        while ((n = Math.min(bytes.length, dataBuffer.readableByteCount())) > 0) {
+            dataBuffer.read(bytes, 0, n);
+            bodyDecoder.decode(bytes, 0, n);
         }
+        bodyDecoder.finish();
         return this;
     }
 
@@ -216,7 +314,7 @@ public class ParameterBuilder implements PairValidator {
         }
         Pair<String, Object> pair = apply(Pair.of(name, value));
         if (pair != null) {
-            if (enableDuplicates || !list.contains(pair)) {
+            if (enableDuplicates || !contains(pair)) {
                 list.add(pair);
             }
         }
@@ -235,6 +333,7 @@ public class ParameterBuilder implements PairValidator {
     public Parameter build() {
         if (enableSort) {
             list.sort(Comparator.comparing(Pair::getKey));
+            index = null;
         }
         String queryString = null;
         if (enableQueryString) {
@@ -303,6 +402,22 @@ public class ParameterBuilder implements PairValidator {
         return list.iterator();
     }
 
+    private boolean contains(Pair<String, Object> pair) {
+        if (pair.getKey() == null) {
+            return list.contains(pair);
+        }
+        if (index == null || index.size() > list.size()) {
+            index = new ParameterIndex();
+        }
+        index.update(list);
+        for (int i = index.first(pair.getKey()); i >= 0; i = index.next(i)) {
+            if (list.get(i).equals(pair)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     private String encodeQueryString()
             throws MalformedInputException, UnmappableCharacterException {
         Iterator<Pair<String, Object>> it = list.iterator();
@@ -369,10 +484,208 @@ public class ParameterBuilder implements PairValidator {
         }
     }
 
-    private static Pair<String, Object> indexOf(char ch, String input) {
-        int i = input.indexOf(ch);
-        String k = i >= 0 ? input.substring(0, i) : input;
-        Object v = i >= 0 ? input.substring(i + 1) : null;
-        return Pair.of(k, v);
+    private static int hexDigit(char c) {
+        return (c >= '0' && c <= '9') ? c - '0' :
+                (c >= 'A' && c <= 'F') ? c - 'A' + 10 :
+                        (c >= 'a' && c <= 'f') ? c - 'a' + 10 : -1;
+    }
+
+    /**
+     * Decodes the bytes of an application/x-www-form-urlencoded body, in chunks of any size.
+     * A percent-encoded byte may be split across chunks. The decoded bytes of the current name and value
+     * are collected in a buffer that grows with the longest parameter.
+     * Malformed percent-encoding is decoded as by {@link #addPercentEncodedBody(String)}. Since it depends on
+     * the characters, not the bytes, that follow the percent sign, the rest of a name or value after a malformed
+     * escape is collected undecoded, and decoded as a string at the end of the name or value.
+     */
+    private class BodyDecoder {
+
+        private final Charset charset;
+
+        private byte[] bytes;
+
+        private int length;
+
+        private int nameLength;
+
+        private int percent;
+
+        private int hex;
+
+        private byte hexByte;
+
+        private byte[] rawBytes;
+
+        private int rawLength;
+
+        private boolean raw;
+
+        /**
+         * True if the name of the current parameter is not empty before decoding.
+         */
+        private boolean hasName;
+
+        private long count;
+
+        BodyDecoder(Charset charset) {
+            this.charset = charset;
+            this.bytes = new byte[128];
+            this.nameLength = -1;
+        }
+
+        void decode(byte[] input, int offset, int end) {
+            count += end - offset;
+            if (byteLimit > 0L && count > byteLimit) {
+                throw new IllegalArgumentException("byte limit " + byteLimit + " exceeded");
+            }
+            for (int i = offset; i < end; i++) {
+                byte b = input[i];
+                if (nameLength < 0 && b != '&' && b != '=') {
+                    hasName = true;
+                }
+                if (raw && b != '&' && (b != '=' || nameLength >= 0)) {
+                    putRaw(b);
+                    continue;
+                }
+                if (percent > 0 && b != '&' && (b != '=' || nameLength >= 0)) {
+                    int digit = Character.digit(b, 16);
+                    if (digit < 0) {
+                        startRaw(b);
+                    } else if (percent == 1) {
+                        hex = digit;
+                        hexByte = b;
+                        percent = 2;
+                    } else {
+                        percent = 0;
+                        put((byte) (hex << 4 | digit));
+                    }
+                    continue;
+                }
+                endRaw();
+                endPercent();
+                switch (b) {
+                    case '&':
+                        addPair();
+                        break;
+                    case '=':
+                        if (nameLength < 0) {
+                            nameLength = length;
+                        } else {
+                            put(b);
+                        }
+                        break;
+                    case '+':
+                        put((byte) ' ');
+                        break;
+                    case '%':
+                        percent = 1;
+                        break;
+                    default:
+                        put(b);
+                        break;
+                }
+            }
+        }
+
+        void finish() {
+            addPair();
+        }
+
+        private void put(byte b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, length * 2);
+            }
+            bytes[length++] = b;
+        }
+
+        private void putRaw(byte b) {
+            if (rawLength == rawBytes.length) {
+                rawBytes = Arrays.copyOf(rawBytes, rawLength * 2);
+            }
+            rawBytes[rawLength++] = b;
+        }
+
+        /**
+         * Start collecting the rest of a name or a value undecoded, at a percent sign that is not followed
+         * by two hex digits.
+         */
+        private void startRaw(byte b) {
+            if (rawBytes == null) {
+                rawBytes = new byte[16];
+            }
+            raw = true;
+            rawLength = 0;
+            putRaw((byte) '%');
+            if (percent == 2) {
+                putRaw(hexByte);
+            }
+            putRaw(b);
+            percent = 0;
+        }
+
+        /**
+         * Decode the undecoded rest of a name or a value, as the {@link PercentDecoder} does with
+         * {@link CodingErrorAction#REPLACE}: a percent sign that is followed by less than two chars is dropped,
+         * and a percent sign and the two chars after it are replaced by an invalid byte if the chars are not
+         * hex digits.
+         */
+        private void endRaw() {
+            if (!raw) {
+                return;
+            }
+            raw = false;
+            String string = new String(rawBytes, 0, rawLength, charset).replace('+', ' ');
+            int length = string.length();
+            int start = 0;
+            for (int i = 0; i < length; i++) {
+                if (string.charAt(i) != '%') {
+                    continue;
+                }
+                putString(string, start, i);
+                if (i + 2 < length) {
+                    int hi = hexDigit(string.charAt(i + 1));
+                    int lo = hexDigit(string.charAt(i + 2));
+                    put(hi < 0 || lo < 0 ? (byte) 0xff : (byte) (hi << 4 | lo));
+                    i += 2;
+                }
+                start = i + 1;
+            }
+            putString(string, start, length);
+        }
+
+        private void putString(String string, int start, int end) {
+            if (start < end) {
+                for (byte b : string.substring(start, end).getBytes(charset)) {
+                    put(b);
+                }
+            }
+        }
+
+        /**
+         * End an incomplete percent-encoded byte at the end of a name or a value. As in the
+         * {@link PercentDecoder}, the percent sign is dropped and a following char is kept.
+         */
+        private void endPercent() {
+            if (percent == 2) {
+                put(hexByte);
+            }
+            percent = 0;
+        }
+
+        private void addPair() {
+            endRaw();
+            endPercent();
+            if (nameLength < 0) {
+                if (hasName) {
+                    add(new String(bytes, 0, length, charset), null);
+                }
+            } else if (hasName) {
+                add(new String(bytes, 0, nameLength, charset),
+                        new String(bytes, nameLength, length - nameLength, charset));
+            }
+            length = 0;
+            nameLength = -1;
+            hasName = false;
+        }
     }
 }
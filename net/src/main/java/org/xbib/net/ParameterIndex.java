@@ -0,0 +1,153 @@
+package org.xbib.net;
+
+import java.util.Arrays;
+import java.util.List;
+import org.xbib.datastructures.common.Pair;
+
+/**
+ * An index of the names of a list of parameter pairs, for looking up the pairs of a name
+ * without scanning the list.
+ *
+ * The index is an open-addressing hash table from a name to the first and the last position of the name
+ * in the list, and an array of links from each position to the next position of the same name,
+ * so the positions of a name are visited in list order. Pairs without a name are counted but not indexed.
+ *
+ * This class is not thread-safe.
+ */
+final class ParameterIndex {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    private String[] names;
+
+    private int[] first;
+
+    private int[] last;
+
+    private int[] next;
+
+    private int mask;
+
+    private int count;
+
+    private int nameCount;
+
+    ParameterIndex() {
+        this(INITIAL_CAPACITY);
+    }
+
+    ParameterIndex(int expectedSize) {
+        int capacity = INITIAL_CAPACITY;
+        while (capacity < 2 * expectedSize) {
+            capacity <<= 1;
+        }
+        this.names = new String[capacity];
+        this.first = new int[capacity];
+        this.last = new int[capacity];
+        this.mask = capacity - 1;
+        this.next = new int[Math.max(expectedSize, INITIAL_CAPACITY)];
+    }
+
+    /**
+     * Create an index of the names of a list of pairs.
+     *
+     * @param list the list
+     * @return the index
+     */
+    static ParameterIndex of(List<Pair<String, Object>> list) {
+        ParameterIndex index = new ParameterIndex(list.size());
+        index.update(list);
+        return index;
+    }
+
+    /**
+     * Add the positions of the list that are not indexed yet.
+     *
+     * @param list the list, which must only have been appended to since the last update
+     */
+    void update(List<Pair<String, Object>> list) {
+        for (int i = count; i < list.size(); i++) {
+            add(list.get(i).getKey());
+        }
+    }
+
+    /**
+     * Return the number of positions that are indexed.
+     *
+     * @return the number of positions
+     */
+    int size() {
+        return count;
+    }
+
+    /**
+     * Return the first position of a name.
+     *
+     * @param name the name
+     * @return the first position, or -1 if the name is not indexed
+     */
+    int first(String name) {
+        int slot = slot(name);
+        return names[slot] != null ? first[slot] : -1;
+    }
+
+    /**
+     * Return the next position of the name at a position.
+     *
+     * @param position the position
+     * @return the next position, or -1 if there is no next position
+     */
+    int next(int position) {
+        return next[position];
+    }
+
+    private void add(String name) {
+        int position = count++;
+        if (position == next.length) {
+            next = Arrays.copyOf(next, next.length * 2);
+        }
+        next[position] = -1;
+        if (name == null) {
+            return;
+        }
+        int slot = slot(name);
+        if (names[slot] == null) {
+            names[slot] = name;
+            first[slot] = position;
+            last[slot] = position;
+            if (++nameCount * 2 > names.length) {
+                rehash();
+            }
+        } else {
+            next[last[slot]] = position;
+            last[slot] = position;
+        }
+    }
+
+    private int slot(String name) {
+        int h = name.hashCode();
+        int slot = (h ^ (h >>> 16)) & mask;
+        while (names[slot] != null && !names[slot].equals(name)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    private void rehash() {
+        String[] oldNames = names;
+        int[] oldFirst = first;
+        int[] oldLast = last;
+        names = new String[oldNames.length * 2];
+        first = new int[names.length];
+        last = new int[names.length];
+        mask = names.length - 1;
+        for (int i = 0; i < oldNames.length; i++) {
+            if (oldNames[i] != null) {
+                int slot = slot(oldNames[i]);
+                names[slot] = oldNames[i];
+                first[slot] = oldFirst[i];
+                last[slot] = oldLast[i];
+            }
+        }
+    }
+}
@@ -1,11 +1,16 @@
 package org.xbib.net;
 
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.StringTokenizer;
+import java.util.Arrays;
 
 /**
  *  Path normalizer.
+ *
+ *  Consecutive separators are collapsed, and the dot-segments "." and ".." are removed. A ".." that
+ *  removes the last segment makes the path a directory path, with a trailing separator.
+ *  A ".." at the beginning of a path is dropped.
+ *
+ *  Paths are normalized in a single pass, the offsets of the kept segments are held on an int stack.
+ *  A path that is already normal is returned as it is.
  */
 public class PathNormalizer {
 
@@ -13,48 +18,225 @@ public class PathNormalizer {
 
     private static final String SEPARATOR_STRING = "/";
 
+    private static final int INITIAL_STACK_SIZE = 16;
+
     private PathNormalizer() {
     }
 
+    /**
+     * Normalize a path.
+     *
+     * @param p the path
+     * @return the normalized path, the given path instance if the path is already normal,
+     * or "/" if the path is null or empty
+     */
     public static String normalize(String p) {
-        String path = p;
-        if (path == null || "".equals(path) || SEPARATOR_STRING.equals(path)) {
+        if (p == null || p.isEmpty() || SEPARATOR_STRING.equals(p)) {
             return SEPARATOR_STRING;
         }
-        path = path.replaceAll("/+", SEPARATOR_STRING);
-        int leadingSlashes = 0;
-        while (leadingSlashes < path.length() && path.charAt(leadingSlashes) == SEPARATOR_CHAR) {
-            ++leadingSlashes;
-        }
-        boolean isDir = (path.charAt(path.length() - 1) == SEPARATOR_CHAR);
-        StringTokenizer st = new StringTokenizer(path, SEPARATOR_STRING);
-        LinkedList<String> list = new LinkedList<>();
-        while (st.hasMoreTokens()) {
-            String token = st.nextToken();
-            if ("..".equals(token)) {
-                if (!list.isEmpty() && !"..".equals(list.getLast())) {
-                    list.removeLast();
-                    if (!st.hasMoreTokens()) {
+        if (isNormal(p)) {
+            return p;
+        }
+        char[] chars = p.toCharArray();
+        return new String(chars, 0, normalize(chars, 0, chars.length));
+    }
+
+    /**
+     * Normalize a path in a char array, in place. The normalized path is never longer than the path,
+     * and an empty path remains empty.
+     *
+     * @param chars the char array
+     * @param offset the offset of the path in the char array
+     * @param length the length of the path
+     * @return the length of the normalized path, which begins at the offset
+     */
+    public static int normalize(char[] chars, int offset, int length) {
+        if (length == 0) {
+            return 0;
+        }
+        int end = offset + length;
+        boolean isDir = chars[end - 1] == SEPARATOR_CHAR;
+        int w = chars[offset] == SEPARATOR_CHAR ? offset + 1 : offset;
+        // the output positions of the kept segments, including their leading separator
+        int[] stack = null;
+        int count = 0;
+        int r = offset;
+        while (r < end) {
+            while (r < end && chars[r] == SEPARATOR_CHAR) {
+                r++;
+            }
+            if (r == end) {
+                break;
+            }
+            int start = r;
+            while (r < end && chars[r] != SEPARATOR_CHAR) {
+                r++;
+            }
+            int segmentLength = r - start;
+            if (segmentLength == 1 && chars[start] == '.') {
+                continue;
+            }
+            if (segmentLength == 2 && chars[start] == '.' && chars[start + 1] == '.') {
+                if (count > 0) {
+                    w = stack[--count];
+                    if (!hasMoreSegments(chars, r, end)) {
                         isDir = true;
                     }
                 }
-            } else if (!".".equals(token) && !"".equals(token)) {
-                list.add(token);
+                continue;
+            }
+            if (stack == null) {
+                stack = new int[INITIAL_STACK_SIZE];
+            } else if (count == stack.length) {
+                stack = Arrays.copyOf(stack, count * 2);
+            }
+            stack[count++] = w;
+            if (count > 1) {
+                chars[w++] = SEPARATOR_CHAR;
+            }
+            if (w != start) {
+                System.arraycopy(chars, start, chars, w, segmentLength);
+            }
+            w += segmentLength;
+        }
+        if (isDir && count > 0) {
+            chars[w++] = SEPARATOR_CHAR;
+        }
+        return w - offset;
+    }
+
+    /**
+     * Normalize a path and return the normalized path with the boundaries of its segments, so the path
+     * does not need to be split again.
+     *
+     * @param path the path
+     * @return the segments of the normalized path
+     */
+    public static Segments segments(String path) {
+        String normalizedPath = normalize(path);
+        int[] offsets = new int[INITIAL_STACK_SIZE];
+        int count = 0;
+        int i = 0;
+        int length = normalizedPath.length();
+        while (i < length) {
+            if (normalizedPath.charAt(i) == SEPARATOR_CHAR) {
+                i++;
+                continue;
+            }
+            int end = normalizedPath.indexOf(SEPARATOR_CHAR, i);
+            if (end < 0) {
+                end = length;
+            }
+            if (2 * count + 2 > offsets.length) {
+                offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            }
+            offsets[2 * count] = i;
+            offsets[2 * count + 1] = end;
+            count++;
+            i = end;
+        }
+        return new Segments(normalizedPath, offsets, count);
+    }
+
+    private static boolean isNormal(String path) {
+        int length = path.length();
+        int start = 0;
+        while (start < length) {
+            int end = path.indexOf(SEPARATOR_CHAR, start);
+            if (end < 0) {
+                end = length;
+            }
+            int segmentLength = end - start;
+            if ((segmentLength == 0 && start > 0)
+                    || (segmentLength == 1 && path.charAt(start) == '.')
+                    || (segmentLength == 2 && path.charAt(start) == '.' && path.charAt(start + 1) == '.')) {
+                return false;
+            }
+            start = end + 1;
+        }
+        return true;
+    }
+
+    private static boolean hasMoreSegments(char[] chars, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (chars[i] != SEPARATOR_CHAR) {
+                return true;
             }
         }
-        StringBuilder sb = new StringBuilder();
-        while (leadingSlashes-- > 0) {
-            sb.append(SEPARATOR_CHAR);
+        return false;
+    }
+
+    /**
+     * A normalized path with the boundaries of its segments.
+     */
+    public static final class Segments {
+
+        private final String path;
+
+        private final int[] offsets;
+
+        private final int count;
+
+        private Segments(String path, int[] offsets, int count) {
+            this.path = path;
+            this.offsets = offsets;
+            this.count = count;
         }
-        for (Iterator<String> it = list.iterator(); it.hasNext();) {
-            sb.append(it.next());
-            if (it.hasNext()) {
-                sb.append(SEPARATOR_CHAR);
+
+        /**
+         * Get the normalized path.
+         * @return the normalized path
+         */
+        public String getPath() {
+            return path;
+        }
+
+        /**
+         * Get the number of segments of the normalized path.
+         * @return the number of segments
+         */
+        public int getCount() {
+            return count;
+        }
+
+        /**
+         * Get the start of a segment in the normalized path.
+         * @param i the number of the segment
+         * @return the offset of the first char of the segment
+         */
+        public int getStart(int i) {
+            checkIndex(i);
+            return offsets[2 * i];
+        }
+
+        /**
+         * Get the end of a segment in the normalized path.
+         * @param i the number of the segment
+         * @return the offset after the last char of the segment
+         */
+        public int getEnd(int i) {
+            checkIndex(i);
+            return offsets[2 * i + 1];
+        }
+
+        /**
+         * Get a segment of the normalized path.
+         * @param i the number of the segment
+         * @return the segment
+         */
+        public String get(int i) {
+            return path.substring(getStart(i), getEnd(i));
+        }
+
+        private void checkIndex(int i) {
+            if (i < 0 || i >= count) {
+                throw new IndexOutOfBoundsException("segment " + i + " of " + count);
             }
         }
-        if (isDir && sb.length() > 0 && sb.charAt(sb.length() - 1) != SEPARATOR_CHAR) {
-            sb.append(SEPARATOR_CHAR);
+
+        @Override
+        public String toString() {
+            return path;
         }
-        return sb.toString();
     }
 }
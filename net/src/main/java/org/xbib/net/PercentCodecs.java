@@ -0,0 +1,143 @@
+package org.xbib.net;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+
+/**
+ * A set of percent encoders and a percent decoder for a charset, confined to a thread.
+ *
+ * Encoders and decoders keep buffers and are not thread-safe, but they can be reused for any number
+ * of inputs. {@link #get(Charset, CodingErrorAction)} returns the set of the current thread, so
+ * {@link URL}, {@link URLBuilder} and {@link URLParser} do not create encoders and decoders per URL.
+ * Each thread keeps the sets of a few recently used charsets. The encoders report malformed input
+ * and unmappable characters, the decoder uses the coding error action of the set.
+ *
+ * A set, and the encoders and the decoder obtained from it, must only be used by the thread that called
+ * {@link #get(Charset, CodingErrorAction)}, and must not be kept across calls that may also use the set,
+ * because encoding and decoding are not reentrant.
+ */
+public final class PercentCodecs {
+
+    private static final int SETS_PER_THREAD = 4;
+
+    private static final ThreadLocal<PercentCodecs[]> CODECS =
+            ThreadLocal.withInitial(() -> new PercentCodecs[SETS_PER_THREAD]);
+
+    private final Charset charset;
+
+    private final CodingErrorAction codingErrorAction;
+
+    private PercentEncoder queryEncoder;
+
+    private PercentEncoder queryParamEncoder;
+
+    private PercentEncoder regNameEncoder;
+
+    private PercentEncoder pathEncoder;
+
+    private PercentEncoder matrixEncoder;
+
+    private PercentEncoder fragmentEncoder;
+
+    private PercentEncoder unreservedEncoder;
+
+    private PercentDecoder decoder;
+
+    private PercentCodecs(Charset charset, CodingErrorAction codingErrorAction) {
+        this.charset = charset;
+        this.codingErrorAction = codingErrorAction;
+    }
+
+    /**
+     * Get the set of the current thread for a charset.
+     *
+     * @param charset the charset
+     * @param codingErrorAction the coding error action of the decoder
+     * @return the set of encoders and the decoder
+     */
+    public static PercentCodecs get(Charset charset, CodingErrorAction codingErrorAction) {
+        PercentCodecs[] sets = CODECS.get();
+        for (int i = 0; i < sets.length; i++) {
+            PercentCodecs codecs = sets[i];
+            if (codecs == null) {
+                codecs = new PercentCodecs(charset, codingErrorAction);
+                sets[i] = codecs;
+                return codecs;
+            }
+            if (codecs.codingErrorAction == codingErrorAction && codecs.charset.equals(charset)) {
+                return codecs;
+            }
+        }
+        // replace the least recently created set
+        PercentCodecs codecs = new PercentCodecs(charset, codingErrorAction);
+        System.arraycopy(sets, 0, sets, 1, sets.length - 1);
+        sets[0] = codecs;
+        return codecs;
+    }
+
+    public Charset getCharset() {
+        return charset;
+    }
+
+    public CodingErrorAction getCodingErrorAction() {
+        return codingErrorAction;
+    }
+
+    public PercentEncoder getQueryEncoder() {
+        if (queryEncoder == null) {
+            queryEncoder = PercentEncoders.getQueryEncoder(charset);
+        }
+        return queryEncoder;
+    }
+
+    public PercentEncoder getQueryParamEncoder() {
+        if (queryParamEncoder == null) {
+            queryParamEncoder = PercentEncoders.getQueryParamEncoder(charset);
+        }
+        return queryParamEncoder;
+    }
+
+    public PercentEncoder getRegNameEncoder() {
+        if (regNameEncoder == null) {
+            regNameEncoder = PercentEncoders.getRegNameEncoder(charset);
+        }
+        return regNameEncoder;
+    }
+
+    public PercentEncoder getPathEncoder() {
+        if (pathEncoder == null) {
+            pathEncoder = PercentEncoders.getPathEncoder(charset);
+        }
+        return pathEncoder;
+    }
+
+    public PercentEncoder getMatrixEncoder() {
+        if (matrixEncoder == null) {
+            matrixEncoder = PercentEncoders.getMatrixEncoder(charset);
+        }
+        return matrixEncoder;
+    }
+
+    public PercentEncoder getFragmentEncoder() {
+        if (fragmentEncoder == null) {
+            fragmentEncoder = PercentEncoders.getFragmentEncoder(charset);
+        }
+        return fragmentEncoder;
+    }
+
+    public PercentEncoder getUnreservedEncoder() {
+        if (unreservedEncoder == null) {
+            unreservedEncoder = PercentEncoders.getUnreservedEncoder(charset);
+        }
+        return unreservedEncoder;
+    }
+
+    public PercentDecoder getDecoder() {
+        if (decoder == null) {
+            decoder = new PercentDecoder(charset.newDecoder()
+                    .onMalformedInput(codingErrorAction)
+                    .onUnmappableCharacter(codingErrorAction));
+        }
+        return decoder;
+    }
+}
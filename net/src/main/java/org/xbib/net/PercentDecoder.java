@@ -1,17 +1,24 @@
 package org.xbib.net;
 
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnmappableCharacterException;
+import org.xbib.net.buffer.DataBuffer;
 
 /**
  * Decodes percent-encoded strings.
  *
+ * Input without %-encoded data is returned as it is. If the charset is ASCII-compatible, %-encoded
+ * single byte characters are decoded without the charset decoder.
+ *
  * This class is not thread-safe.
  */
 public class PercentDecoder {
@@ -33,6 +40,21 @@ public class PercentDecoder {
      */
     private ByteBuffer encodedBuf;
 
+    /**
+     * Decoded bytes below this limit are single byte characters of the charset.
+     */
+    private final int asciiLimit;
+
+    /**
+     * Encodes characters that are not %-encoded when decoding to octets. Created on first use.
+     */
+    private CharsetEncoder encoder;
+
+    /**
+     * The characters of the current run of non-ASCII characters to be encoded to octets.
+     */
+    private CharBuffer unencodedCharBuf;
+
     public PercentDecoder() {
         this(StandardCharsets.UTF_8.newDecoder()
                 .onUnmappableCharacter(CodingErrorAction.REPORT)
@@ -59,6 +81,9 @@ public class PercentDecoder {
         this.encodedBuf = ByteBuffer.allocate(initialEncodedByteBufSize);
         this.decodedCharBuf = CharBuffer.allocate(decodedCharBufSize);
         this.decoder = charsetDecoder;
+        Charset charset = charsetDecoder.charset();
+        this.asciiLimit = StandardCharsets.ISO_8859_1.equals(charset) ? 0x100 :
+                StandardCharsets.UTF_8.equals(charset) || StandardCharsets.US_ASCII.equals(charset) ? 0x80 : 0;
     }
 
     /**
@@ -66,7 +91,8 @@ public class PercentDecoder {
      *
      * @param input Input with %-encoded representation of characters in this instance's configured character set, e.g.
      *              "%20" for a space character
-     * @return Corresponding string with %-encoded data decoded and converted to their corresponding characters
+     * @return Corresponding string with %-encoded data decoded and converted to their corresponding characters. If
+     * the input contains no %-encoded data and is a string, the input instance is returned.
      * @throws MalformedInputException      if decoder is configured to report errors and malformed input is detected
      * @throws UnmappableCharacterException if decoder is configured to report errors and an unmappable character is
      *                                      detected
@@ -75,17 +101,96 @@ public class PercentDecoder {
         if (input == null) {
             return null;
         }
+        int i = indexOfPercent(input);
+        if (i < 0) {
+            return input.toString();
+        }
         outputBuf.setLength(0);
-        outputBuf.ensureCapacity((input.length() / 8));
-        encodedBuf.clear();
+        outputBuf.ensureCapacity(input.length());
+        outputBuf.append(input, 0, i);
+        try {
+            decode(input, i, outputBuf);
+        } catch (MalformedInputException | UnmappableCharacterException e) {
+            throw e;
+        } catch (IOException e) {
+            // a string builder does not throw
+            throw new IllegalStateException(e);
+        }
+        return outputBuf.toString();
+    }
+
+    /**
+     * Decode a percent-encoded character sequence and append the decoded characters to an appendable.
+     *
+     * @param input      Input with %-encoded representation of characters in this instance's configured character set
+     * @param appendable the appendable
+     * @throws IOException if the appendable fails, or if the decoder is configured to report errors and malformed
+     *                     or unmappable input is detected
+     */
+    public void decode(CharSequence input, Appendable appendable) throws IOException {
+        if (input == null) {
+            return;
+        }
+        int i = indexOfPercent(input);
+        if (i < 0) {
+            appendable.append(input);
+            return;
+        }
+        appendable.append(input, 0, i);
+        decode(input, i, appendable);
+    }
+
+    /**
+     * Decode a percent-encoded character sequence into the octets it represents and put them into a byte buffer.
+     * Characters that are not %-encoded are encoded with this instance's configured character set.
+     *
+     * @param input      Input with %-encoded octets
+     * @param byteBuffer the byte buffer
+     * @throws MalformedInputException if decoder is configured to report errors and malformed input is detected
+     * @throws java.nio.BufferOverflowException if the byte buffer has not enough space remaining
+     */
+    public void decode(CharSequence input, ByteBuffer byteBuffer) throws MalformedInputException {
+        decodeBytes(input, byteBuffer::put);
+    }
+
+    /**
+     * Decode a percent-encoded character sequence into the octets it represents and write them into a data buffer.
+     * Characters that are not %-encoded are encoded with this instance's configured character set.
+     *
+     * @param input      Input with %-encoded octets
+     * @param dataBuffer the data buffer
+     * @throws MalformedInputException if decoder is configured to report errors and malformed input is detected
+     */
+    public void decode(CharSequence input, DataBuffer dataBuffer) throws MalformedInputException {
+        if (input != null) {
+            dataBuffer.ensureCapacity(input.length());
+        }
+        decodeBytes(input, dataBuffer::write);
+    }
+
+    private static int indexOfPercent(CharSequence input) {
+        if (input instanceof String) {
+            return ((String) input).indexOf('%');
+        }
         for (int i = 0; i < input.length(); i++) {
+            if (input.charAt(i) == '%') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void decode(CharSequence input, int from, Appendable output) throws IOException {
+        encodedBuf.clear();
+        int length = input.length();
+        for (int i = from; i < length; i++) {
             char c = input.charAt(i);
             if (c != '%') {
-                handleEncodedBytes();
-                outputBuf.append(c);
+                handleEncodedBytes(output);
+                output.append(c);
                 continue;
             }
-            if (i + 2 >= input.length()) {
+            if (i + 2 >= length) {
                 CodingErrorAction codingErrorAction = decoder.malformedInputAction();
                 if (codingErrorAction == CodingErrorAction.REPORT) {
                     throw new MalformedInputException(i);
@@ -94,31 +199,133 @@ public class PercentDecoder {
                     continue;
                 }
             }
-            if (encodedBuf.remaining() == 0) {
-                ByteBuffer largerBuf = ByteBuffer.allocate(encodedBuf.capacity() * 2);
-                encodedBuf.flip();
-                largerBuf.put(encodedBuf);
-                encodedBuf = largerBuf;
+            int b1 = decode(input.charAt(++i));
+            int b2 = decode(input.charAt(++i));
+            if (b1 == -1 || b2 == -1) {
+                CodingErrorAction codingErrorAction = decoder.malformedInputAction();
+                if (codingErrorAction == CodingErrorAction.REPORT) {
+                    throw new MalformedInputException(i);
+                }
+                if (codingErrorAction == CodingErrorAction.REPLACE) {
+                    putEncodedByte((byte) 0xff);
+                }
+            } else {
+                int b = b1 << 4 | b2;
+                if (b < asciiLimit) {
+                    // single byte character, no need to go through the charset decoder
+                    handleEncodedBytes(output);
+                    output.append((char) b);
+                } else {
+                    putEncodedByte((byte) b);
+                }
+            }
+        }
+        handleEncodedBytes(output);
+    }
+
+    private void decodeBytes(CharSequence input, ByteSink sink) throws MalformedInputException {
+        if (input == null) {
+            return;
+        }
+        int length = input.length();
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (c != '%') {
+                if (c < 0x80) {
+                    sink.put((byte) c);
+                } else {
+                    int end = i + 1;
+                    while (end < length && input.charAt(end) >= 0x80) {
+                        end++;
+                    }
+                    encode(input, i, end, sink);
+                    i = end - 1;
+                }
+                continue;
+            }
+            if (i + 2 >= length) {
+                CodingErrorAction codingErrorAction = decoder.malformedInputAction();
+                if (codingErrorAction == CodingErrorAction.REPORT) {
+                    throw new MalformedInputException(i);
+                }
+                if (codingErrorAction == CodingErrorAction.REPLACE) {
+                    continue;
+                }
             }
-            int c1 = input.charAt(++i);
-            int c2 = input.charAt(++i);
-            byte b1 = (byte) decode((char) c1);
-            byte b2 = (byte) decode((char) c2);
+            int b1 = decode(input.charAt(++i));
+            int b2 = decode(input.charAt(++i));
             if (b1 == -1 || b2 == -1) {
                 CodingErrorAction codingErrorAction = decoder.malformedInputAction();
                 if (codingErrorAction == CodingErrorAction.REPORT) {
                     throw new MalformedInputException(i);
                 }
                 if (codingErrorAction == CodingErrorAction.REPLACE) {
-                    encodedBuf.put((byte) 0xff);
+                    sink.put((byte) 0xff);
                 }
             } else {
-                byte b = (byte) ((b1 & 0xf) << 4 | (b2 & 0xf));
-                encodedBuf.put(b);
+                sink.put((byte) (b1 << 4 | b2));
             }
         }
-        handleEncodedBytes();
-        return outputBuf.toString();
+    }
+
+    /**
+     * Encode a run of non-ASCII characters with the charset, like {@link String#getBytes(Charset)} does,
+     * but without creating a string for them.
+     */
+    private void encode(CharSequence input, int from, int to, ByteSink sink) {
+        if (encoder == null) {
+            encoder = decoder.charset().newEncoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE);
+            unencodedCharBuf = CharBuffer.allocate(16);
+            int minBytes = 2 * (int) Math.ceil(encoder.maxBytesPerChar());
+            if (encodedBuf.capacity() < minBytes) {
+                encodedBuf = ByteBuffer.allocate(minBytes);
+            }
+        }
+        encoder.reset();
+        unencodedCharBuf.clear();
+        int i = from;
+        boolean endOfInput = false;
+        while (!endOfInput) {
+            while (i < to && unencodedCharBuf.hasRemaining()) {
+                unencodedCharBuf.put(input.charAt(i++));
+            }
+            endOfInput = i == to;
+            unencodedCharBuf.flip();
+            CoderResult coderResult;
+            do {
+                encodedBuf.clear();
+                coderResult = encoder.encode(unencodedCharBuf, encodedBuf, endOfInput);
+                putEncodedBytes(sink);
+            } while (coderResult.isOverflow());
+            // keeps a high surrogate whose low surrogate is not read yet
+            unencodedCharBuf.compact();
+        }
+        CoderResult coderResult;
+        do {
+            encodedBuf.clear();
+            coderResult = encoder.flush(encodedBuf);
+            putEncodedBytes(sink);
+        } while (coderResult.isOverflow());
+        encodedBuf.clear();
+    }
+
+    private void putEncodedBytes(ByteSink sink) {
+        encodedBuf.flip();
+        while (encodedBuf.hasRemaining()) {
+            sink.put(encodedBuf.get());
+        }
+    }
+
+    private void putEncodedByte(byte b) {
+        if (encodedBuf.remaining() == 0) {
+            ByteBuffer largerBuf = ByteBuffer.allocate(encodedBuf.capacity() * 2);
+            encodedBuf.flip();
+            largerBuf.put(encodedBuf);
+            encodedBuf = largerBuf;
+        }
+        encodedBuf.put(b);
     }
 
     private static int decode(char c) {
@@ -130,7 +337,7 @@ public class PercentDecoder {
     /**
      * Decode any buffered encoded bytes and write them to the output buf.
      */
-    private void handleEncodedBytes() throws MalformedInputException, UnmappableCharacterException {
+    private void handleEncodedBytes(Appendable output) throws IOException {
         if (encodedBuf.position() == 0) {
             return;
         }
@@ -142,7 +349,7 @@ public class PercentDecoder {
             coderResult = decoder.decode(encodedBuf, decodedCharBuf, false);
             throwIfError(coderResult);
             decodedCharBuf.flip();
-            outputBuf.append(decodedCharBuf);
+            output.append(decodedCharBuf);
         }
         decodedCharBuf.clear();
         coderResult = decoder.decode(encodedBuf, decodedCharBuf, true);
@@ -154,20 +361,20 @@ public class PercentDecoder {
             throw new IllegalStateException("expected underflow, but instead final decode returned " + coderResult);
         }
         decodedCharBuf.flip();
-        outputBuf.append(decodedCharBuf);
+        output.append(decodedCharBuf);
         encodedBuf.clear();
-        flush();
+        flush(output);
     }
 
     /**
      * Must only be called when the input encoded bytes buffer is empty.
      */
-    private void flush() throws MalformedInputException, UnmappableCharacterException {
+    private void flush(Appendable output) throws IOException {
         CoderResult coderResult;
         decodedCharBuf.clear();
         coderResult = decoder.flush(decodedCharBuf);
         decodedCharBuf.flip();
-        outputBuf.append(decodedCharBuf);
+        output.append(decodedCharBuf);
         throwIfError(coderResult);
         if (coderResult != CoderResult.UNDERFLOW) {
             throw new IllegalStateException("decoder flush resulted in " + coderResult);
@@ -190,4 +397,10 @@ public class PercentDecoder {
             throw new UnmappableCharacterException(coderResult.length());
         }
     }
+
+    @FunctionalInterface
+    private interface ByteSink {
+
+        void put(byte b);
+    }
 }
@@ -1,12 +1,20 @@
 package org.xbib.net;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
 import java.nio.ByteBuffer;
 import java.nio.CharBuffer;
+import java.nio.charset.Charset;
 import java.nio.charset.CharsetEncoder;
 import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnmappableCharacterException;
 import java.util.BitSet;
+import org.xbib.net.buffer.DataBuffer;
+import org.xbib.net.buffer.DataBufferAppendable;
 
 /**
  * Encodes unsafe characters as a sequence of %XX hex-encoded bytes.
@@ -14,22 +22,37 @@ import java.util.BitSet;
  * This is typically done when encoding components of URLs. See {@link PercentEncoders} for pre-configured
  * PercentEncoder instances.
  *
+ * Safe characters are looked up in a precomputed table, and runs of safe characters are found by
+ * {@link CharScanner}. If the charset is ASCII-compatible, unsafe ASCII
+ * characters are encoded without the charset encoder, and for UTF-8, all well-formed input is encoded
+ * without the charset encoder.
+ *
  * This class is not thread-safe.
  */
 public class PercentEncoder {
 
     private static final char[] HEX_CODE = "0123456789ABCDEF".toCharArray();
 
-    private final BitSet safeChars;
+    private final boolean[] safeChars;
+
+    private final long safeLow;
+
+    private final long safeHigh;
+
+    private final BitSet nonAsciiSafeChars;
 
     private final CharsetEncoder encoder;
 
-    private final StringBuilderPercentEncoderOutputHandler stringHandler;
+    private final boolean asciiCompatible;
+
+    private final boolean utf8;
 
     private final ByteBuffer encodedBytes;
 
     private final CharBuffer unsafeCharsToEncode;
 
+    private final StringBuilder stringBuilder;
+
     /**
      * @param safeChars      the set of chars to NOT encode, stored as a bitset with the int positions corresponding to
      *                       those chars set to true. Treated as read only.
@@ -37,74 +60,237 @@ public class PercentEncoder {
      *                       across threads.
      */
     PercentEncoder(BitSet safeChars, CharsetEncoder charsetEncoder) {
+        this(toTable(safeChars), safeChars.length() > 128 ? safeChars.get(128, safeChars.length()) : null,
+                charsetEncoder);
+    }
+
+    /**
+     * @param safeChars      the table of ASCII chars to NOT encode. Treated as read only.
+     * @param charsetEncoder charset encoder to encode characters with. Make sure to not re-use CharsetEncoder instances
+     *                       across threads.
+     */
+    PercentEncoder(boolean[] safeChars, CharsetEncoder charsetEncoder) {
+        this(safeChars, null, charsetEncoder);
+    }
+
+    private PercentEncoder(boolean[] safeChars, BitSet nonAsciiSafeChars, CharsetEncoder charsetEncoder) {
         this.safeChars = safeChars;
+        this.safeLow = CharScanner.lowMask(safeChars);
+        this.safeHigh = CharScanner.highMask(safeChars);
+        this.nonAsciiSafeChars = nonAsciiSafeChars;
         this.encoder = charsetEncoder;
-        this.stringHandler = new StringBuilderPercentEncoderOutputHandler();
+        Charset charset = charsetEncoder.charset();
+        this.utf8 = StandardCharsets.UTF_8.equals(charset);
+        this.asciiCompatible = utf8 || StandardCharsets.US_ASCII.equals(charset) ||
+                StandardCharsets.ISO_8859_1.equals(charset);
         int maxBytesPerChar = 1 + (int) encoder.maxBytesPerChar();
-        encodedBytes = ByteBuffer.allocate(maxBytesPerChar * 2);
-        unsafeCharsToEncode = CharBuffer.allocate(2);
+        this.encodedBytes = ByteBuffer.allocate(maxBytesPerChar * 2);
+        this.unsafeCharsToEncode = CharBuffer.allocate(2);
+        this.stringBuilder = new StringBuilder();
+    }
+
+    /**
+     * Encode the input and return the resulting text as a String.
+     *
+     * @param input input string
+     * @return the input string with every character that's not in safeChars turned into its byte representation via the
+     * instance's encoder and then percent-encoded. If no character needs to be encoded and the input is a string,
+     * the input instance is returned.
+     * @throws MalformedInputException      if encoder is configured to report errors and malformed input is detected
+     * @throws UnmappableCharacterException if encoder is configured to report errors and an unmappable character is
+     *                                      detected
+     */
+    public String encode(CharSequence input) throws MalformedInputException, UnmappableCharacterException {
+        if (input == null) {
+            return null;
+        }
+        int i = indexOfUnsafe(input, 0);
+        if (i < 0) {
+            return input.toString();
+        }
+        stringBuilder.setLength(0);
+        stringBuilder.ensureCapacity(input.length() + 16);
+        stringBuilder.append(input, 0, i);
+        try {
+            encode(input, i, stringBuilder);
+        } catch (MalformedInputException | UnmappableCharacterException e) {
+            throw e;
+        } catch (IOException e) {
+            // never thrown by a string builder
+            throw new UncheckedIOException(e);
+        }
+        return stringBuilder.toString();
     }
 
     /**
-     * Encode the input and pass output chars to a handler.
+     * Encode the input and append the resulting text to an appendable.
      *
-     * @param input   input string
-     * @param handler handler to call on each output character
+     * @param input      input string
+     * @param appendable the appendable
+     * @throws IOException if the appendable fails, or if the encoder is configured to report errors and
+     *                     malformed or unmappable input is detected
+     */
+    public void encode(CharSequence input, Appendable appendable) throws IOException {
+        if (input == null) {
+            return;
+        }
+        int i = indexOfUnsafe(input, 0);
+        if (i < 0) {
+            appendable.append(input);
+            return;
+        }
+        appendable.append(input, 0, i);
+        encode(input, i, appendable);
+    }
+
+    /**
+     * Encode the input and put the resulting US-ASCII bytes into a byte buffer.
+     *
+     * @param input      input string
+     * @param byteBuffer the byte buffer
+     * @throws MalformedInputException      if encoder is configured to report errors and malformed input is detected
+     * @throws UnmappableCharacterException if encoder is configured to report errors and an unmappable character is
+     *                                      detected
+     * @throws java.nio.BufferOverflowException if the byte buffer has not enough space remaining
+     */
+    public void encode(CharSequence input, ByteBuffer byteBuffer)
+            throws MalformedInputException, UnmappableCharacterException {
+        encodeToBytes(input, new ByteBufferAppendable(byteBuffer));
+    }
+
+    /**
+     * Encode the input and write the resulting US-ASCII bytes into a data buffer.
+     *
+     * @param input      input string
+     * @param dataBuffer the data buffer
      * @throws MalformedInputException      if encoder is configured to report errors and malformed input is detected
      * @throws UnmappableCharacterException if encoder is configured to report errors and an unmappable character is
      *                                      detected
      */
-    private void encode(CharSequence input, StringBuilderPercentEncoderOutputHandler handler)
+    public void encode(CharSequence input, DataBuffer dataBuffer)
+            throws MalformedInputException, UnmappableCharacterException {
+        if (input != null) {
+            dataBuffer.ensureCapacity(input.length());
+        }
+        encodeToBytes(input, new DataBufferAppendable(dataBuffer));
+    }
+
+    /**
+     * Return true if at least one character of the input must be percent-encoded.
+     *
+     * @param input the input
+     * @return true if encoding is required
+     */
+    public boolean needsEncoding(CharSequence input) {
+        return input != null && indexOfUnsafe(input, 0) >= 0;
+    }
+
+    private void encodeToBytes(CharSequence input, Appendable appendable)
             throws MalformedInputException, UnmappableCharacterException {
-        for (int i = 0; i < input.length(); i++) {
+        try {
+            encode(input, appendable);
+        } catch (MalformedInputException | UnmappableCharacterException e) {
+            throw e;
+        } catch (IOException e) {
+            // never thrown by buffer appendables
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private int indexOfUnsafe(CharSequence input, int from) {
+        int length = input.length();
+        if (nonAsciiSafeChars == null) {
+            return CharScanner.indexOfNone(input, from, length, safeLow, safeHigh);
+        }
+        for (int i = from; i < length; i++) {
+            if (!isSafe(input.charAt(i))) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isSafe(char c) {
+        return c < 128 ? safeChars[c] : nonAsciiSafeChars != null && nonAsciiSafeChars.get(c - 128);
+    }
+
+    /**
+     * Encode the input, beginning at a given position, and pass output chars to an appendable.
+     *
+     * @param input      input string
+     * @param from       the position of the first char to encode
+     * @param appendable the appendable
+     * @throws IOException if the appendable fails, or if the encoder is configured to report errors and
+     *                     malformed or unmappable input is detected
+     */
+    private void encode(CharSequence input, int from, Appendable appendable) throws IOException {
+        int length = input.length();
+        int i = from;
+        while (i < length) {
+            int end = indexOfUnsafe(input, i);
+            if (end < 0) {
+                end = length;
+            }
+            if (end > i) {
+                appendable.append(input, i, end);
+                i = end;
+                continue;
+            }
             char c = input.charAt(i);
-            int cp = Character.codePointAt(String.valueOf(c), 0);
-            if (safeChars.get(cp)) {
-                handler.onOutputChar(c);
+            if (c < 128 && asciiCompatible) {
+                appendEncodedByte(appendable, c);
+                i++;
+                continue;
+            }
+            if (utf8 && !Character.isSurrogate(c)) {
+                if (c < 0x800) {
+                    appendEncodedByte(appendable, 0xc0 | (c >> 6));
+                } else {
+                    appendEncodedByte(appendable, 0xe0 | (c >> 12));
+                    appendEncodedByte(appendable, 0x80 | ((c >> 6) & 0x3f));
+                }
+                appendEncodedByte(appendable, 0x80 | (c & 0x3f));
+                i++;
                 continue;
             }
             unsafeCharsToEncode.clear();
             unsafeCharsToEncode.append(c);
             if (Character.isHighSurrogate(c)) {
-                if (input.length() > i + 1) {
+                if (length > i + 1) {
                     char lowSurrogate = input.charAt(i + 1);
                     if (Character.isLowSurrogate(lowSurrogate)) {
+                        if (utf8) {
+                            int cp = Character.toCodePoint(c, lowSurrogate);
+                            appendEncodedByte(appendable, 0xf0 | (cp >> 18));
+                            appendEncodedByte(appendable, 0x80 | ((cp >> 12) & 0x3f));
+                            appendEncodedByte(appendable, 0x80 | ((cp >> 6) & 0x3f));
+                            appendEncodedByte(appendable, 0x80 | (cp & 0x3f));
+                            i += 2;
+                            continue;
+                        }
                         unsafeCharsToEncode.append(lowSurrogate);
                         i++;
                     } else {
                         throw new IllegalArgumentException("invalid UTF-16: character "
                                 + i + " is a high surrogate (\\u"
-                                + Integer.toHexString(cp) + "), but char " + (i + 1)
+                                + Integer.toHexString(c) + "), but char " + (i + 1)
                                 + " is not a low surrogate (\\u"
-                                + Integer.toHexString(Character.codePointAt(String.valueOf(lowSurrogate), 0)) + ")");
+                                + Integer.toHexString(lowSurrogate) + ")");
                     }
                 } else {
                     throw new IllegalArgumentException("invalid UTF-16: the last character in the input string "
-                            + "was a high surrogate (\\u" + Integer.toHexString(cp) + ")");
+                            + "was a high surrogate (\\u" + Integer.toHexString(c) + ")");
                 }
             }
-            flushUnsafeCharBuffer(handler);
+            flushUnsafeCharBuffer(appendable);
+            i++;
         }
     }
 
-    /**
-     * Encode the input and return the resulting text as a String.
-     *
-     * @param input input string
-     * @return the input string with every character that's not in safeChars turned into its byte representation via the
-     * instance's encoder and then percent-encoded
-     * @throws MalformedInputException      if encoder is configured to report errors and malformed input is detected
-     * @throws UnmappableCharacterException if encoder is configured to report errors and an unmappable character is
-     *                                      detected
-     */
-    public String encode(CharSequence input) throws MalformedInputException, UnmappableCharacterException {
-        if (input == null) {
-            return null;
-        }
-        stringHandler.reset();
-        stringHandler.ensureCapacity(input.length());
-        encode(input, stringHandler);
-        return stringHandler.getContents();
+    private static void appendEncodedByte(Appendable appendable, int b) throws IOException {
+        appendable.append('%');
+        appendable.append(HEX_CODE[b >> 4 & 0xF]);
+        appendable.append(HEX_CODE[b & 0xF]);
     }
 
     /**
@@ -112,10 +298,9 @@ public class PercentEncoder {
      *
      * Side effects: unsafeCharsToEncode will be read from and cleared. encodedBytes will be cleared and written to.
      *
-     * @param handler where the encoded versions of the contents of unsafeCharsToEncode will be written
+     * @param appendable where the encoded versions of the contents of unsafeCharsToEncode will be written
      */
-    private void flushUnsafeCharBuffer(StringBuilderPercentEncoderOutputHandler handler)
-            throws MalformedInputException, UnmappableCharacterException {
+    private void flushUnsafeCharBuffer(Appendable appendable) throws IOException {
         // need to read from the char buffer, which was most recently written to
         unsafeCharsToEncode.flip();
         encodedBytes.clear();
@@ -126,10 +311,7 @@ public class PercentEncoder {
         throwIfError(result);
         encodedBytes.flip();
         while (encodedBytes.hasRemaining()) {
-            byte b = encodedBytes.get();
-            handler.onOutputChar('%');
-            handler.onOutputChar(HEX_CODE[b >> 4 & 0xF]);
-            handler.onOutputChar(HEX_CODE[b & 0xF]);
+            appendEncodedByte(appendable, encodedBytes.get());
         }
     }
 
@@ -151,28 +333,57 @@ public class PercentEncoder {
         }
     }
 
-    static class StringBuilderPercentEncoderOutputHandler {
+    static boolean[] toTable(BitSet bitSet) {
+        boolean[] table = new boolean[128];
+        for (int i = 0; i < table.length; i++) {
+            table[i] = bitSet.get(i);
+        }
+        return table;
+    }
 
-        private final StringBuilder stringBuilder;
+    /**
+     * Writes the US-ASCII output of the encoder as bytes into a byte buffer.
+     * Characters that are not US-ASCII are written in UTF-8.
+     */
+    static class ByteBufferAppendable implements Appendable {
 
-        StringBuilderPercentEncoderOutputHandler() {
-            stringBuilder = new StringBuilder();
-        }
+        private final ByteBuffer byteBuffer;
 
-        String getContents() {
-            return stringBuilder.toString();
+        ByteBufferAppendable(ByteBuffer byteBuffer) {
+            this.byteBuffer = byteBuffer;
         }
 
-        void reset() {
-            stringBuilder.setLength(0);
+        @Override
+        public Appendable append(CharSequence csq) {
+            return append(csq, 0, csq.length());
         }
 
-        void ensureCapacity(int length) {
-            stringBuilder.ensureCapacity(length);
+        @Override
+        public Appendable append(CharSequence csq, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = csq.charAt(i);
+                if (c >= 128) {
+                    CoderResult result = StandardCharsets.UTF_8.newEncoder()
+                            .onMalformedInput(CodingErrorAction.REPLACE)
+                            .onUnmappableCharacter(CodingErrorAction.REPLACE)
+                            .encode(CharBuffer.wrap(csq, i, end), byteBuffer, true);
+                    if (result.isOverflow()) {
+                        throw new BufferOverflowException();
+                    }
+                    return this;
+                }
+                byteBuffer.put((byte) c);
+            }
+            return this;
         }
 
-        void onOutputChar(char c) {
-            stringBuilder.append(c);
+        @Override
+        public Appendable append(char c) {
+            if (c >= 128) {
+                return append(Character.toString(c), 0, 1);
+            }
+            byteBuffer.put((byte) c);
+            return this;
         }
     }
 }
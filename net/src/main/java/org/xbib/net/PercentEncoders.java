@@ -53,43 +53,54 @@ public class PercentEncoders {
         addFragment(FRAGMENT_BIT_SET);
     }
 
+    /*
+     * The encoders look up safe chars in tables, which are derived once from the bit sets.
+     */
+    private static final boolean[] UNRESERVED_TABLE = PercentEncoder.toTable(UNRESERVED_BIT_SET);
+    private static final boolean[] REG_NAME_TABLE = PercentEncoder.toTable(REG_NAME_BIT_SET);
+    private static final boolean[] PATH_TABLE = PercentEncoder.toTable(PATH_BIT_SET);
+    private static final boolean[] MATRIX_TABLE = PercentEncoder.toTable(MATRIX_BIT_SET);
+    private static final boolean[] QUERY_TABLE = PercentEncoder.toTable(QUERY_BIT_SET);
+    private static final boolean[] QUERY_PARAM_TABLE = PercentEncoder.toTable(QUERY_PARAM_BIT_SET);
+    private static final boolean[] FRAGMENT_TABLE = PercentEncoder.toTable(FRAGMENT_BIT_SET);
+
     public static PercentEncoder getUnreservedEncoder(Charset charset) {
-        return new PercentEncoder(UNRESERVED_BIT_SET,
+        return new PercentEncoder(UNRESERVED_TABLE,
                 charset.newEncoder().onMalformedInput(REPORT).onUnmappableCharacter(REPORT));
     }
 
     public static PercentEncoder getCookieEncoder(Charset charset) {
-        return new PercentEncoder(UNRESERVED_BIT_SET,
+        return new PercentEncoder(UNRESERVED_TABLE,
                 charset.newEncoder().onMalformedInput(REPORT).onUnmappableCharacter(REPORT));
     }
 
     public static PercentEncoder getRegNameEncoder(Charset charset) {
-        return new PercentEncoder(REG_NAME_BIT_SET,
+        return new PercentEncoder(REG_NAME_TABLE,
                 charset.newEncoder().onMalformedInput(REPORT).onUnmappableCharacter(REPORT));
     }
 
     public static PercentEncoder getPathEncoder(Charset charset) {
-        return new PercentEncoder(PATH_BIT_SET,
+        return new PercentEncoder(PATH_TABLE,
                 charset.newEncoder().onMalformedInput(REPORT).onUnmappableCharacter(REPORT));
     }
 
     public static PercentEncoder getMatrixEncoder(Charset charset) {
-        return new PercentEncoder(MATRIX_BIT_SET,
+        return new PercentEncoder(MATRIX_TABLE,
                 charset.newEncoder().onMalformedInput(REPORT).onUnmappableCharacter(REPORT));
     }
 
     public static PercentEncoder getQueryEncoder(Charset charset) {
-        return new PercentEncoder(QUERY_BIT_SET,
+        return new PercentEncoder(QUERY_TABLE,
                 charset.newEncoder().onMalformedInput(REPORT).onUnmappableCharacter(REPORT));
     }
 
     public static PercentEncoder getQueryParamEncoder(Charset charset) {
-        return new PercentEncoder(QUERY_PARAM_BIT_SET,
+        return new PercentEncoder(QUERY_PARAM_TABLE,
                 charset.newEncoder().onMalformedInput(REPORT).onUnmappableCharacter(REPORT));
     }
 
     public static PercentEncoder getFragmentEncoder(Charset charset) {
-        return new PercentEncoder(FRAGMENT_BIT_SET,
+        return new PercentEncoder(FRAGMENT_TABLE,
                 charset.newEncoder().onMalformedInput(REPORT).onUnmappableCharacter(REPORT));
     }
 
@@ -1,14 +1,18 @@
 package org.xbib.net;
 
 import org.xbib.datastructures.common.Pair;
+import org.xbib.net.buffer.DataBuffer;
+import org.xbib.net.buffer.DataBufferAppendable;
 import org.xbib.net.scheme.Scheme;
 import org.xbib.net.scheme.SchemeRegistry;
 
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
 import java.net.MalformedURLException;
 import java.net.URI;
+import java.nio.ByteBuffer;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CodingErrorAction;
@@ -67,20 +71,12 @@ public class URL implements Comparable<URL> {
 
     static final String DOUBLE_SLASH = "//";
 
+    private static volatile URLCache cache;
+
     private final transient URLBuilder builder;
 
     private final transient Scheme scheme;
 
-    private final transient PercentEncoder queryParamEncoder;
-
-    private final transient PercentEncoder regNameEncoder;
-
-    private final transient PercentEncoder pathEncoder;
-
-    private final transient PercentEncoder matrixEncoder;
-
-    private final transient PercentEncoder fragmentEncoder;
-
     private final String hostinfo;
 
     private final String path;
@@ -96,11 +92,6 @@ public class URL implements Comparable<URL> {
     URL(URLBuilder builder) {
         this.builder = builder;
         this.scheme = SchemeRegistry.getInstance().getScheme(builder.scheme);
-        this.queryParamEncoder = PercentEncoders.getQueryParamEncoder(builder.charset);
-        this.regNameEncoder = PercentEncoders.getRegNameEncoder(builder.charset);
-        this.pathEncoder = PercentEncoders.getPathEncoder(builder.charset);
-        this.matrixEncoder = PercentEncoders.getMatrixEncoder(builder.charset);
-        this.fragmentEncoder = PercentEncoders.getFragmentEncoder(builder.charset);
         this.hostinfo = encodeHostInfo();
         this.path = encodePath();
         this.query = encodeQuery();
@@ -144,6 +135,27 @@ public class URL implements Comparable<URL> {
         return NULL_URL;
     }
 
+    /**
+     * Set the cache that is consulted by {@link #create(String)} and {@link URLResolver#resolve(String)}.
+     * With a cache, {@link #create(String)} returns the same URL instance for repeated inputs, so the
+     * returned URLs must not be changed by {@link #mutator()}. A URL that may be changed is parsed
+     * with {@link #parser()}.
+     *
+     * @param urlCache the URL cache, or null for no caching
+     */
+    public static void setCache(URLCache urlCache) {
+        cache = urlCache;
+    }
+
+    /**
+     * Get the URL cache.
+     *
+     * @return the URL cache, or null if no cache is set
+     */
+    public static URLCache getCache() {
+        return cache;
+    }
+
     public static URL from(String input) {
         return from(input, StandardCharsets.UTF_8, CodingErrorAction.REPORT, true, false);
     }
@@ -160,6 +172,11 @@ public class URL implements Comparable<URL> {
                            Charset charset, CodingErrorAction codingErrorAction,
                            boolean resolve, boolean disableException) {
         try {
+            URLCache urlCache = cache;
+            if (urlCache != null && !resolve &&
+                    StandardCharsets.UTF_8.equals(charset) && codingErrorAction == CodingErrorAction.REPORT) {
+                return urlCache.parse(input);
+            }
             return parser(charset, codingErrorAction).parse(input, resolve);
         } catch (URLSyntaxException | MalformedInputException | UnmappableCharacterException e) {
             if (disableException) {
@@ -244,6 +261,12 @@ public class URL implements Comparable<URL> {
         }
     }
 
+    /**
+     * Return the builder that holds the state of this URL. Changes made with the builder change this URL.
+     * URLs returned by a {@link URLCache} are shared and must not be changed.
+     *
+     * @return the builder of this URL
+     */
     public URLBuilder mutator() {
         return builder;
     }
@@ -254,7 +277,7 @@ public class URL implements Comparable<URL> {
 
     private String decode(String input) {
         try {
-            return builder.percentDecoder.decode(input);
+            return builder.codecs().getDecoder().decode(input);
         } catch (MalformedInputException | UnmappableCharacterException e) {
             throw new IllegalArgumentException(e);
         }
@@ -324,6 +347,10 @@ public class URL implements Comparable<URL> {
         return hostinfo;
     }
 
+    Scheme scheme() {
+        return scheme;
+    }
+
     public ProtocolVersion getProtocolVersion() {
         return builder.protocolVersion;
     }
@@ -430,6 +457,28 @@ public class URL implements Comparable<URL> {
         return scheme != null ? scheme.normalize(this) : this;
     }
 
+    /**
+     * Compute a stable 64-bit fingerprint of the normalized external form of this URL,
+     * without building the normalized form.
+     *
+     * @return the fingerprint
+     * @see URLFingerprints
+     */
+    public long fingerprint() {
+        return URLFingerprints.of(this);
+    }
+
+    /**
+     * Compute a stable 128-bit fingerprint of the normalized external form of this URL,
+     * without building the normalized form.
+     *
+     * @return the fingerprint as two longs, the first is the 64-bit fingerprint
+     * @see URLFingerprints
+     */
+    public long[] fingerprint128() {
+        return URLFingerprints.of128(this);
+    }
+
     public String toExternalForm() {
         if (externalStringRepresentation != null) {
             return externalStringRepresentation;
@@ -473,19 +522,152 @@ public class URL implements Comparable<URL> {
     }
 
     private String writeExternalForm() {
-        StringBuilder sb = new StringBuilder();
+        StringBuilder sb = new StringBuilder(length(false));
+        try {
+            writeTo(sb, false);
+        } catch (IOException e) {
+            // never thrown by a string builder
+            throw new UncheckedIOException(e);
+        }
+        return sb.toString();
+    }
+
+    /**
+     * Write the external form of this URL to an appendable. The percent-encoded components of the URL
+     * are written as they are, without building the external form as a string.
+     *
+     * @param appendable the appendable
+     * @throws IOException if the appendable fails
+     */
+    public void writeTo(Appendable appendable) throws IOException {
+        writeTo(appendable, false);
+    }
+
+    /**
+     * Write the external form, or the origin form, of this URL to an appendable. The origin form is
+     * the path and the query, as in an HTTP request line. An empty path is written as "/" in the origin form.
+     *
+     * @param appendable the appendable
+     * @param originForm true for the origin form, false for the external form
+     * @throws IOException if the appendable fails
+     */
+    public void writeTo(Appendable appendable, boolean originForm) throws IOException {
+        if (originForm) {
+            appendable.append(isNullOrEmpty(path) ? Character.toString(SEPARATOR_CHAR) : path);
+            if (query != null) {
+                appendable.append(QUESTION_CHAR).append(query);
+            }
+            return;
+        }
+        if (externalStringRepresentation != null) {
+            appendable.append(externalStringRepresentation);
+            return;
+        }
         if (!isNullOrEmpty(builder.scheme)) {
-            sb.append(builder.scheme).append(COLON_CHAR);
+            appendable.append(builder.scheme).append(COLON_CHAR);
         }
         if (isOpaque()) {
-            sb.append(builder.schemeSpecificPart);
-        } else {
-            appendHostInfo(sb, true, true);
-            appendPath(sb, true);
-            appendQuery(sb, true, true);
-            appendFragment(sb, true, true);
+            appendable.append(builder.schemeSpecificPart);
+            return;
         }
-        return sb.toString();
+        if (builder.host != null) {
+            appendable.append(scheme != null ? DOUBLE_SLASH : Character.toString(SEPARATOR_CHAR)).append(hostinfo);
+        }
+        appendable.append(path);
+        if (query != null) {
+            appendable.append(QUESTION_CHAR).append(query);
+        }
+        if (fragment != null) {
+            appendable.append(NUMBER_SIGN_CHAR).append(fragment);
+        }
+    }
+
+    /**
+     * Write the external form of this URL into a byte buffer. The form is written in US-ASCII,
+     * characters that are not US-ASCII, for example in a query that is not encoded, are written in UTF-8.
+     *
+     * @param byteBuffer the byte buffer
+     * @throws java.nio.BufferOverflowException if the byte buffer has not enough space remaining
+     */
+    public void writeTo(ByteBuffer byteBuffer) {
+        writeTo(byteBuffer, false);
+    }
+
+    /**
+     * Write the external form, or the origin form, of this URL into a byte buffer. The form is written in US-ASCII,
+     * characters that are not US-ASCII, for example in a query that is not encoded, are written in UTF-8.
+     *
+     * @param byteBuffer the byte buffer
+     * @param originForm true for the origin form, false for the external form
+     * @throws java.nio.BufferOverflowException if the byte buffer has not enough space remaining
+     */
+    public void writeTo(ByteBuffer byteBuffer, boolean originForm) {
+        writeToBytes(new PercentEncoder.ByteBufferAppendable(byteBuffer), originForm);
+    }
+
+    /**
+     * Write the external form of this URL into a data buffer. The form is written in US-ASCII,
+     * characters that are not US-ASCII, for example in a query that is not encoded, are written in UTF-8.
+     *
+     * @param dataBuffer the data buffer
+     */
+    public void writeTo(DataBuffer dataBuffer) {
+        writeTo(dataBuffer, false);
+    }
+
+    /**
+     * Write the external form, or the origin form, of this URL into a data buffer. The form is written in US-ASCII,
+     * characters that are not US-ASCII, for example in a query that is not encoded, are written in UTF-8.
+     *
+     * @param dataBuffer the data buffer
+     * @param originForm true for the origin form, false for the external form
+     */
+    public void writeTo(DataBuffer dataBuffer, boolean originForm) {
+        dataBuffer.ensureCapacity(length(originForm));
+        writeToBytes(new DataBufferAppendable(dataBuffer), originForm);
+    }
+
+    private void writeToBytes(Appendable appendable, boolean originForm) {
+        try {
+            writeTo(appendable, originForm);
+        } catch (IOException e) {
+            // never thrown by buffer appendables
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Return the number of chars of the external form, or the origin form, of this URL.
+     */
+    private int length(boolean originForm) {
+        int length = 0;
+        if (originForm) {
+            length += isNullOrEmpty(path) ? 1 : path.length();
+            if (query != null) {
+                length += query.length() + 1;
+            }
+            return length;
+        }
+        if (externalStringRepresentation != null) {
+            return externalStringRepresentation.length();
+        }
+        if (!isNullOrEmpty(builder.scheme)) {
+            length += builder.scheme.length() + 1;
+        }
+        if (isOpaque()) {
+            return length + builder.schemeSpecificPart.length();
+        }
+        if (builder.host != null) {
+            length += (scheme != null ? 2 : 1) + hostinfo.length();
+        }
+        length += path.length();
+        if (query != null) {
+            length += query.length() + 1;
+        }
+        if (fragment != null) {
+            length += fragment.length() + 1;
+        }
+        return length;
     }
 
     private String encodeHostInfo() {
@@ -527,7 +709,7 @@ public class URL implements Comparable<URL> {
                     default:
                         if (encoded) {
                             try {
-                                String encodedHostName = regNameEncoder.encode(builder.host);
+                                String encodedHostName = builder.codecs().getRegNameEncoder().encode(builder.host);
                                 validateHostnameCharacters(encodedHostName);
                                 sb.append(encodedHostName);
                             } catch (CharacterCodingException e) {
@@ -541,7 +723,7 @@ public class URL implements Comparable<URL> {
             } else {
                 if (encoded) {
                     try {
-                        String encodedHostName = regNameEncoder.encode(builder.host);
+                        String encodedHostName = builder.codecs().getRegNameEncoder().encode(builder.host);
                         validateHostnameCharacters(encodedHostName);
                         sb.append(encodedHostName);
                     } catch (CharacterCodingException e) {
@@ -583,6 +765,8 @@ public class URL implements Comparable<URL> {
     }
 
     private void appendPath(StringBuilder sb, boolean encoded) {
+        PercentEncoder pathEncoder = encoded ? builder.codecs().getPathEncoder() : null;
+        PercentEncoder matrixEncoder = encoded ? builder.codecs().getMatrixEncoder() : null;
         Iterator<URLBuilder.PathSegment> it = builder.pathSegments.iterator();
         while (it.hasNext()) {
             URLBuilder.PathSegment pathSegment = it.next();
@@ -623,6 +807,7 @@ public class URL implements Comparable<URL> {
             if (withQuestionMark) {
                 sb.append(QUESTION_CHAR);
             }
+            PercentEncoder queryParamEncoder = withEncoding ? builder.codecs().getQueryParamEncoder() : null;
             Iterator<Pair<String, Object>> it = builder.queryParams.iterator();
             while (it.hasNext()) {
                 Pair<String, Object> queryParam = it.next();
@@ -657,7 +842,7 @@ public class URL implements Comparable<URL> {
             }
             if (encoded) {
                 try {
-                    sb.append(fragmentEncoder.encode(builder.fragment));
+                    sb.append(builder.codecs().getFragmentEncoder().encode(builder.fragment));
                 } catch (CharacterCodingException e) {
                     throw new IllegalArgumentException(e);
                 }
@@ -7,7 +7,6 @@ import java.net.InetAddress;
 import java.net.UnknownHostException;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
-import java.nio.charset.CharsetDecoder;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
@@ -27,15 +26,11 @@ public class URLBuilder {
 
     static final PathSegment EMPTY_SEGMENT = new PathSegment(EMPTY);
 
-    PercentEncoder regNameEncoder;
-
-    PercentEncoder percentEncoder;
-
-    PercentDecoder percentDecoder;
+    HostResolver hostResolver;
 
     ParameterBuilder queryParams;
 
-    final List<PathSegment> pathSegments;
+    List<PathSegment> pathSegments;
 
     Charset charset;
 
@@ -61,11 +56,37 @@ public class URLBuilder {
 
     boolean fatalResolveErrorsEnabled;
 
+    /**
+     * True if the path segments and the query parameters are shared with a built URL, or with the builder
+     * of the URL, and must be copied before they are changed.
+     */
+    private boolean shared;
+
     URLBuilder() {
         this.pathSegments = new ArrayList<>();
         charset(StandardCharsets.UTF_8, CodingErrorAction.REPLACE);
     }
 
+    private URLBuilder(URLBuilder builder) {
+        this.pathSegments = builder.pathSegments;
+        this.hostResolver = builder.hostResolver;
+        this.queryParams = builder.queryParams;
+        this.shared = true;
+        builder.shared = true;
+        this.charset = builder.charset;
+        this.codingErrorAction = builder.codingErrorAction;
+        this.scheme = builder.scheme;
+        this.schemeSpecificPart = builder.schemeSpecificPart;
+        this.userInfo = builder.userInfo;
+        this.host = builder.host;
+        this.hostAddress = builder.hostAddress;
+        this.protocolVersion = builder.protocolVersion;
+        this.port = builder.port;
+        this.query = builder.query;
+        this.fragment = builder.fragment;
+        this.fatalResolveErrorsEnabled = builder.fatalResolveErrorsEnabled;
+    }
+
     /**
      * Set the character set of the URL. Default is UTF-8.
      *
@@ -76,16 +97,49 @@ public class URLBuilder {
     public URLBuilder charset(Charset charset, CodingErrorAction codingErrorAction) {
         this.charset = charset;
         this.codingErrorAction = codingErrorAction;
-        this.percentEncoder = PercentEncoders.getQueryEncoder(charset);
-        this.regNameEncoder = PercentEncoders.getRegNameEncoder(charset);
-        CharsetDecoder charsetDecoder = charset.newDecoder()
-                .onMalformedInput(codingErrorAction)
-                .onUnmappableCharacter(codingErrorAction);
-        this.percentDecoder = new PercentDecoder(charsetDecoder);
         this.queryParams = Parameter.builder();
         return this;
     }
 
+    /**
+     * Clear the URL components of this builder, so the builder can be reused for another URL.
+     * The charset, the host resolver and the resolve error setting are kept.
+     * URLs that have been built before are not affected.
+     *
+     * @return this builder
+     */
+    public URLBuilder reset() {
+        if (shared) {
+            pathSegments = new ArrayList<>();
+            queryParams = Parameter.builder();
+            shared = false;
+        } else {
+            pathSegments.clear();
+            if (!queryParams.isEmpty()) {
+                queryParams = Parameter.builder();
+            }
+        }
+        scheme = null;
+        schemeSpecificPart = null;
+        userInfo = null;
+        host = null;
+        hostAddress = null;
+        protocolVersion = null;
+        port = null;
+        query = null;
+        fragment = null;
+        return this;
+    }
+
+    /**
+     * Get the percent encoders and the percent decoder of the current thread for the charset of this builder.
+     *
+     * @return the percent codecs
+     */
+    PercentCodecs codecs() {
+        return PercentCodecs.get(charset, codingErrorAction);
+    }
+
     public URLBuilder scheme(String scheme) {
         if (!URL.isNullOrEmpty(scheme)) {
             validateSchemeCharacters(scheme.toLowerCase(Locale.ROOT));
@@ -111,6 +165,7 @@ public class URLBuilder {
     public URLBuilder userInfo(String user, String pass) {
         try {
             // allow colons in usernames and passwords by percent-encoding them here
+            PercentEncoder regNameEncoder = codecs().getRegNameEncoder();
             this.userInfo = regNameEncoder.encode(user) + URL.COLON_CHAR + regNameEncoder.encode(pass);
         } catch (MalformedInputException | UnmappableCharacterException e) {
             throw new IllegalArgumentException(e);
@@ -143,6 +198,17 @@ public class URLBuilder {
         return this;
     }
 
+    /**
+     * Set the resolver for host names. Default is the resolver of {@link NetworkUtils#getHostResolver()}.
+     *
+     * @param hostResolver the host resolver
+     * @return this builder
+     */
+    public URLBuilder hostResolver(HostResolver hostResolver) {
+        this.hostResolver = hostResolver;
+        return this;
+    }
+
     public URLBuilder resolveFromHost(String hostname) {
         if (hostname == null) {
             return this;
@@ -151,26 +217,34 @@ public class URLBuilder {
             host(EMPTY);
             return this;
         }
+        HostResolver resolver = hostResolver != null ? hostResolver : NetworkUtils.getHostResolver();
         try {
-            InetAddress inetAddress = InetAddress.getByName(hostname);
-            hostAddress = inetAddress.getHostAddress();
-            host(inetAddress.getHostName(), inetAddress instanceof Inet6Address ?
-                    ProtocolVersion.IPV6 : inetAddress instanceof Inet4Address ?
-                    ProtocolVersion.IPV4 : ProtocolVersion.NONE);
-            return this;
+            return resolvedHost(resolver.resolve(hostname));
         } catch (UnknownHostException e) {
-            if (fatalResolveErrorsEnabled) {
-                throw new IllegalStateException(e);
-            }
-            if (e.getMessage() != null && !e.getMessage().endsWith("invalid IPv6 address") &&
-                    hostname.charAt(0) != URL.LEFT_BRACKET_CHAR &&
-                    hostname.charAt(hostname.length() - 1) != URL.RIGHT_BRACKET_CHAR) {
-                try {
-                    String idna = IDN.toASCII(percentDecoder.decode(hostname));
-                    host(idna, ProtocolVersion.NONE);
-                } catch (CharacterCodingException e2) {
-                    throw new IllegalArgumentException(e2);
-                }
+            return unresolvedHost(hostname, e);
+        }
+    }
+
+    URLBuilder resolvedHost(InetAddress inetAddress) {
+        hostAddress = inetAddress.getHostAddress();
+        host(inetAddress.getHostName(), inetAddress instanceof Inet6Address ?
+                ProtocolVersion.IPV6 : inetAddress instanceof Inet4Address ?
+                ProtocolVersion.IPV4 : ProtocolVersion.NONE);
+        return this;
+    }
+
+    URLBuilder unresolvedHost(String hostname, UnknownHostException e) {
+        if (fatalResolveErrorsEnabled) {
+            throw new IllegalStateException(e);
+        }
+        if (e.getMessage() != null && !e.getMessage().endsWith("invalid IPv6 address") &&
+                hostname.charAt(0) != URL.LEFT_BRACKET_CHAR &&
+                hostname.charAt(hostname.length() - 1) != URL.RIGHT_BRACKET_CHAR) {
+            try {
+                String idna = IDN.toASCII(codecs().getDecoder().decode(hostname));
+                host(idna, ProtocolVersion.NONE);
+            } catch (CharacterCodingException e2) {
+                throw new IllegalArgumentException(e2);
             }
         }
         return this;
@@ -187,7 +261,7 @@ public class URLBuilder {
 
     public URLBuilder path(String path) {
         try {
-            URL.parser(charset, codingErrorAction).parsePathWithQueryAndFragment(this, path);
+            URLParser.parsePathWithQueryAndFragment(this, path);
         } catch (CharacterCodingException e) {
             throw new IllegalArgumentException(e);
         }
@@ -202,6 +276,7 @@ public class URLBuilder {
     }
 
     public URLBuilder pathSegment(String segment) {
+        unshare();
         if (pathSegments.isEmpty() && !URL.isNullOrEmpty(host) && !URL.isNullOrEmpty(segment)) {
             pathSegments.add(EMPTY_SEGMENT);
         }
@@ -224,6 +299,7 @@ public class URLBuilder {
      * @return this
      */
     public URLBuilder queryParam(String name, Object value) {
+        unshare();
         queryParams.add(name, value);
         return this;
     }
@@ -252,6 +328,7 @@ public class URLBuilder {
      * @return this
      */
     public URLBuilder matrixParam(String name, String value) {
+        unshare();
         if (pathSegments.isEmpty()) {
             pathSegment(EMPTY);
         }
@@ -272,8 +349,33 @@ public class URLBuilder {
         return this;
     }
 
+    /**
+     * Build the URL. The URL gets a snapshot of the state of this builder, so this builder can be
+     * reset and reused afterwards. The path segments and the query parameters are not copied, but handed
+     * over to the URL, and copied by this builder or by the {@link URL#mutator()} of the URL only if
+     * they are changed afterwards.
+     *
+     * @return the URL
+     */
     public URL build() {
-        return new URL(this);
+        return new URL(new URLBuilder(this));
+    }
+
+    /**
+     * Copy the path segments and the query parameters, if they are shared, before they are changed.
+     */
+    private void unshare() {
+        if (shared) {
+            List<PathSegment> list = new ArrayList<>(pathSegments.size());
+            for (PathSegment pathSegment : pathSegments) {
+                list.add(pathSegment == EMPTY_SEGMENT ? pathSegment : new PathSegment(pathSegment));
+            }
+            pathSegments = list;
+            ParameterBuilder parameterBuilder = Parameter.builder();
+            queryParams.iterator().forEachRemaining(parameterBuilder::add);
+            queryParams = parameterBuilder;
+            shared = false;
+        }
     }
 
     /**
@@ -316,6 +418,11 @@ public class URLBuilder {
             this.params = new ArrayList<>();
         }
 
+        PathSegment(PathSegment pathSegment) {
+            this.segment = pathSegment.segment;
+            this.params = new ArrayList<>(pathSegment.params);
+        }
+
         public String getSegment() {
             return segment;
         }
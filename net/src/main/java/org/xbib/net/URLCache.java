@@ -0,0 +1,223 @@
+package org.xbib.net;
+
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnmappableCharacterException;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of parsed URLs, keyed on the raw input string.
+ *
+ * The cache is opt-in. When it is set by {@link URL#setCache(URLCache)}, it is consulted by
+ * {@link URL#create(String)}, so repeated inputs return the same {@link URL} instance, and by
+ * {@link URLResolver#resolve(String)} for specifications without a host. Cached URLs are parsed
+ * with UTF-8, without host name resolution, and their string forms are computed before they are
+ * shared. Cached URLs are shared between all callers and must not be changed by {@link URL#mutator()}.
+ *
+ * The cache is bounded by the number of entries and by a weight, which is the total length
+ * of the cached input strings. Entries are evicted in insertion order, but an entry that has been
+ * hit since it was inserted gets a second chance and is moved to the end of the queue, for at most
+ * one pass over the queue per eviction.
+ *
+ * This class is thread-safe.
+ */
+public class URLCache {
+
+    public static final int DEFAULT_MAXIMUM_SIZE = 100000;
+
+    public static final long DEFAULT_MAXIMUM_WEIGHT = 16L * 1024L * 1024L;
+
+    private final int maximumSize;
+
+    private final long maximumWeight;
+
+    private final Map<String, Entry> cache;
+
+    private final Queue<Entry> insertionOrder;
+
+    private final AtomicLong weight;
+
+    private final LongAdder hits;
+
+    private final LongAdder misses;
+
+    private final LongAdder evictions;
+
+    public URLCache() {
+        this(DEFAULT_MAXIMUM_SIZE, DEFAULT_MAXIMUM_WEIGHT);
+    }
+
+    /**
+     * Create a URL cache.
+     *
+     * @param maximumSize the maximum number of cached URLs
+     * @param maximumWeight the maximum total length of the cached input strings
+     */
+    public URLCache(int maximumSize, long maximumWeight) {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("'maximumSize' must be larger than 0");
+        }
+        if (maximumWeight <= 0L) {
+            throw new IllegalArgumentException("'maximumWeight' must be larger than 0");
+        }
+        this.maximumSize = maximumSize;
+        this.maximumWeight = maximumWeight;
+        this.cache = new ConcurrentHashMap<>();
+        this.insertionOrder = new ConcurrentLinkedQueue<>();
+        this.weight = new AtomicLong();
+        this.hits = new LongAdder();
+        this.misses = new LongAdder();
+        this.evictions = new LongAdder();
+    }
+
+    /**
+     * Return the cached URL for the input, or parse the input and cache the URL.
+     *
+     * @param input the input
+     * @return the URL
+     * @throws URLSyntaxException if the input is not a valid URL
+     * @throws MalformedInputException if the input is malformed
+     * @throws UnmappableCharacterException if the input contains unmappable characters
+     */
+    public URL parse(String input) throws URLSyntaxException, MalformedInputException, UnmappableCharacterException {
+        if (input == null) {
+            return URL.parser().parse(null, false);
+        }
+        URL url = get(input);
+        if (url != null) {
+            return url;
+        }
+        return put(input, URL.parser(StandardCharsets.UTF_8, CodingErrorAction.REPORT).parse(input, false));
+    }
+
+    /**
+     * Return the cached URL for the input.
+     *
+     * @param input the input
+     * @return the URL, or null if the input is not cached
+     */
+    public URL get(String input) {
+        Entry entry = cache.get(input);
+        if (entry == null) {
+            misses.increment();
+            return null;
+        }
+        entry.referenced = true;
+        hits.increment();
+        return entry.url;
+    }
+
+    /**
+     * Add a URL to the cache, unless the input is already cached.
+     *
+     * @param input the input
+     * @param url the URL for the input
+     * @return the cached URL, which is the given URL or the URL that was cached before
+     */
+    public URL put(String input, URL url) {
+        if (input.length() > maximumWeight) {
+            return url;
+        }
+        // compute the string forms now, so they are not computed again by each reader
+        url.toString();
+        url.toExternalForm();
+        Entry entry = new Entry(input, url);
+        Entry existing = cache.putIfAbsent(input, entry);
+        if (existing != null) {
+            return existing.url;
+        }
+        insertionOrder.add(entry);
+        weight.addAndGet(input.length());
+        evict();
+        return url;
+    }
+
+    /**
+     * Return the number of cached URLs.
+     * @return the cache size
+     */
+    public int size() {
+        return cache.size();
+    }
+
+    /**
+     * Return the total length of the cached input strings.
+     * @return the weight
+     */
+    public long weight() {
+        return weight.get();
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    /**
+     * Remove all cached URLs. The counters are not reset.
+     */
+    public void clear() {
+        Entry entry;
+        while ((entry = insertionOrder.poll()) != null) {
+            if (cache.remove(entry.input, entry)) {
+                weight.addAndGet(-entry.input.length());
+            }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "URLCache[size=" + size() + ",weight=" + weight() +
+                ",hits=" + hitCount() + ",misses=" + missCount() + ",evictions=" + evictionCount() + "]";
+    }
+
+    /**
+     * Evict entries until the cache is within its bounds. Second chances are given for at most one pass over
+     * the entries, so concurrent hits can not keep the eviction from making progress.
+     */
+    private void evict() {
+        int chances = cache.size();
+        while (cache.size() > maximumSize || weight.get() > maximumWeight) {
+            Entry eldest = insertionOrder.poll();
+            if (eldest == null) {
+                break;
+            }
+            if (eldest.referenced && chances-- > 0) {
+                eldest.referenced = false;
+                insertionOrder.add(eldest);
+                continue;
+            }
+            if (cache.remove(eldest.input, eldest)) {
+                weight.addAndGet(-eldest.input.length());
+                evictions.increment();
+            }
+        }
+    }
+
+    private static class Entry {
+
+        private final String input;
+
+        private final URL url;
+
+        private volatile boolean referenced;
+
+        Entry(String input, URL url) {
+            this.input = input;
+            this.url = url;
+        }
+    }
+}
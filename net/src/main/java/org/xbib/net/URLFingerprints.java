@@ -0,0 +1,303 @@
+package org.xbib.net;
+
+import java.util.Arrays;
+import org.xbib.net.scheme.Scheme;
+import org.xbib.net.scheme.SchemeRegistry;
+
+/**
+ * Stable 64-bit and 128-bit fingerprints of URLs, for deduplication.
+ *
+ * A fingerprint is a hash of the normalized external form of a URL, computed in one pass
+ * over the URL components, without building the normalized form as a string.
+ * The rules of {@link URL#normalize()} are applied: the host is lower case, the default port
+ * of the scheme is omitted, and for schemes that normalize paths, the dot-segments of the path are
+ * removed as by {@link PathNormalizer#normalize(String)}. In addition, the scheme is case-folded.
+ *
+ * {@link #of(CharSequence)} hashes the components as they appear in the input, without re-encoding.
+ * For inputs with canonical percent-encoding, this is the same fingerprint as the fingerprint of the parsed URL.
+ *
+ * The fingerprints are computed by two lanes of 64-bit FNV-1a over the UTF-16 chars, each finished
+ * by the 64-bit finalizer of MurmurHash3. The values are stable across JVMs and releases and may be persisted.
+ */
+public final class URLFingerprints {
+
+    private URLFingerprints() {
+    }
+
+    /**
+     * Compute the 64-bit fingerprint of a URL.
+     *
+     * @param url the URL
+     * @return the fingerprint
+     */
+    public static long of(URL url) {
+        Hasher hasher = new Hasher();
+        add(hasher, url);
+        return hasher.hash64();
+    }
+
+    /**
+     * Compute the 128-bit fingerprint of a URL.
+     *
+     * @param url the URL
+     * @return the fingerprint as two longs, the first is the 64-bit fingerprint
+     */
+    public static long[] of128(URL url) {
+        Hasher hasher = new Hasher();
+        add(hasher, url);
+        return hasher.hash128();
+    }
+
+    /**
+     * Compute the 64-bit fingerprint of a URL input, without parsing the input to a {@link URL}.
+     *
+     * @param input the input
+     * @return the fingerprint
+     * @throws IllegalArgumentException if the input is not a valid URL
+     */
+    public static long of(CharSequence input) {
+        Hasher hasher = new Hasher();
+        add(hasher, input);
+        return hasher.hash64();
+    }
+
+    /**
+     * Compute the 128-bit fingerprint of a URL input, without parsing the input to a {@link URL}.
+     *
+     * @param input the input
+     * @return the fingerprint as two longs, the first is the 64-bit fingerprint
+     * @throws IllegalArgumentException if the input is not a valid URL
+     */
+    public static long[] of128(CharSequence input) {
+        Hasher hasher = new Hasher();
+        add(hasher, input);
+        return hasher.hash128();
+    }
+
+    private static void add(Hasher hasher, URL url) {
+        String schemeName = url.getScheme();
+        if (!URL.isNullOrEmpty(schemeName)) {
+            hasher.addLowerCase(schemeName, 0, schemeName.length());
+            hasher.add(URL.COLON_CHAR);
+        }
+        if (url.isOpaque()) {
+            String ssp = url.getSchemeSpecificPart();
+            hasher.add(ssp, 0, ssp.length());
+            return;
+        }
+        if (url.getHost() != null) {
+            addSlashes(hasher, schemeName);
+            // the host info is lower case and without default port
+            String hostInfo = url.getHostInfo();
+            hasher.add(hostInfo, 0, hostInfo.length());
+        }
+        String path = url.getPath();
+        Scheme scheme = url.scheme();
+        if (scheme != null && scheme.isNormalizingPath()) {
+            addNormalizedPath(hasher, path, 0, path != null ? path.length() : 0);
+        } else if (path != null) {
+            hasher.add(path, 0, path.length());
+        }
+        String query = url.getQuery();
+        if (!URL.isNullOrEmpty(query)) {
+            hasher.add(URL.QUESTION_CHAR);
+            hasher.add(query, 0, query.length());
+        }
+        String fragment = url.getFragment();
+        if (!URL.isNullOrEmpty(fragment)) {
+            hasher.add(URL.NUMBER_SIGN_CHAR);
+            hasher.add(fragment, 0, fragment.length());
+        }
+    }
+
+    private static void add(Hasher hasher, CharSequence input) {
+        URLView view;
+        try {
+            view = URL.parser().view(input);
+        } catch (URLSyntaxException e) {
+            throw new IllegalArgumentException(e);
+        }
+        if (!view.isValid()) {
+            return;
+        }
+        String schemeName = view.getScheme();
+        Scheme scheme = SchemeRegistry.getInstance().getScheme(schemeName);
+        if (schemeName != null) {
+            hasher.addLowerCase(schemeName, 0, schemeName.length());
+            hasher.add(URL.COLON_CHAR);
+        }
+        if (view.isOpaque()) {
+            hasher.add(input, view.getSchemeSpecificPartStart(), input.length());
+            return;
+        }
+        if (view.getHostStart() >= 0) {
+            addSlashes(hasher, schemeName);
+            if (view.getHostEnd() > view.getHostStart()) {
+                if (view.getUserInfoStart() >= 0 && view.getUserInfoEnd() > view.getUserInfoStart()) {
+                    hasher.add(input, view.getUserInfoStart(), view.getUserInfoEnd());
+                    hasher.add(URL.AT_CHAR);
+                }
+                hasher.addLowerCase(input, view.getHostStart(), view.getHostEnd());
+                Integer port = view.getPort();
+                if (scheme != null && port != null && port != scheme.getDefaultPort()) {
+                    hasher.add(URL.COLON_CHAR);
+                    if (port != -1) {
+                        hasher.add(port);
+                    }
+                }
+            }
+        }
+        int pathStart = view.getPathStart();
+        int pathEnd = view.getPathEnd();
+        if (scheme != null && scheme.isNormalizingPath()) {
+            addNormalizedPath(hasher, input, Math.max(pathStart, 0), Math.max(pathEnd, 0));
+        } else if (pathStart >= 0) {
+            hasher.add(input, pathStart, pathEnd);
+        }
+        if (view.getQueryEnd() > view.getQueryStart()) {
+            hasher.add(URL.QUESTION_CHAR);
+            hasher.add(input, view.getQueryStart(), view.getQueryEnd());
+        }
+        if (view.getFragmentEnd() > view.getFragmentStart()) {
+            hasher.add(URL.NUMBER_SIGN_CHAR);
+            hasher.add(input, view.getFragmentStart(), view.getFragmentEnd());
+        }
+    }
+
+    private static void addSlashes(Hasher hasher, String schemeName) {
+        if (schemeName != null) {
+            hasher.add(URL.SEPARATOR_CHAR);
+        }
+        hasher.add(URL.SEPARATOR_CHAR);
+    }
+
+    /**
+     * Add the path with the rules of {@link PathNormalizer#normalize(String)}. The segments are kept
+     * as offsets on a stack. A backslash counts as a separator, as in the URL parser.
+     */
+    private static void addNormalizedPath(Hasher hasher, CharSequence input, int start, int end) {
+        if (start == end || (end - start == 1 && isSeparator(input.charAt(start)))) {
+            hasher.add(URL.SEPARATOR_CHAR);
+            return;
+        }
+        boolean leadingSlash = isSeparator(input.charAt(start));
+        boolean isDir = isSeparator(input.charAt(end - 1));
+        int[] segments = new int[16];
+        int count = 0;
+        int i = start;
+        while (i < end) {
+            while (i < end && isSeparator(input.charAt(i))) {
+                i++;
+            }
+            if (i == end) {
+                break;
+            }
+            int segmentStart = i;
+            while (i < end && !isSeparator(input.charAt(i))) {
+                i++;
+            }
+            int length = i - segmentStart;
+            if (length == 2 && input.charAt(segmentStart) == '.' && input.charAt(segmentStart + 1) == '.') {
+                if (count > 0) {
+                    count--;
+                    if (!hasMoreSegments(input, i, end)) {
+                        isDir = true;
+                    }
+                }
+            } else if (length != 1 || input.charAt(segmentStart) != '.') {
+                if (2 * count + 2 > segments.length) {
+                    segments = Arrays.copyOf(segments, segments.length * 2);
+                }
+                segments[2 * count] = segmentStart;
+                segments[2 * count + 1] = i;
+                count++;
+            }
+        }
+        if (leadingSlash) {
+            hasher.add(URL.SEPARATOR_CHAR);
+        }
+        for (int j = 0; j < count; j++) {
+            if (j > 0) {
+                hasher.add(URL.SEPARATOR_CHAR);
+            }
+            hasher.add(input, segments[2 * j], segments[2 * j + 1]);
+        }
+        if (isDir && count > 0) {
+            hasher.add(URL.SEPARATOR_CHAR);
+        }
+    }
+
+    private static boolean hasMoreSegments(CharSequence input, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (!isSeparator(input.charAt(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isSeparator(char c) {
+        return c == URL.SEPARATOR_CHAR || c == '\\';
+    }
+
+    /**
+     * Two lanes of FNV-1a with different offset bases.
+     */
+    private static class Hasher {
+
+        private static final long PRIME = 0x100000001b3L;
+
+        private long h1 = 0xcbf29ce484222325L;
+
+        private long h2 = 0x84222325cbf29ce4L;
+
+        private long length;
+
+        void add(char c) {
+            h1 = (h1 ^ c) * PRIME;
+            h2 = (h2 ^ c) * PRIME;
+            length++;
+        }
+
+        void add(CharSequence s, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = s.charAt(i);
+                add(c == '\\' ? URL.SEPARATOR_CHAR : c);
+            }
+        }
+
+        void addLowerCase(CharSequence s, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = s.charAt(i);
+                add(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+            }
+        }
+
+        void add(int n) {
+            if (n >= 10) {
+                add(n / 10);
+            }
+            add((char) ('0' + n % 10));
+        }
+
+        long hash64() {
+            return fmix64(h1 ^ length);
+        }
+
+        long[] hash128() {
+            long a = fmix64(h1 ^ length);
+            long b = fmix64(h2 ^ Long.rotateLeft(length, 32));
+            return new long[] { a, b + a };
+        }
+
+        private static long fmix64(long k) {
+            long h = k;
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            h ^= h >>> 33;
+            return h;
+        }
+    }
+}
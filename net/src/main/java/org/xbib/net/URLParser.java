@@ -1,16 +1,25 @@
 package org.xbib.net;
 
+import java.net.UnknownHostException;
 import java.nio.charset.CharacterCodingException;
 import java.nio.charset.Charset;
 import java.nio.charset.CodingErrorAction;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.UnmappableCharacterException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import org.xbib.datastructures.common.Pair;
 import org.xbib.net.scheme.Scheme;
 import org.xbib.net.scheme.SchemeRegistry;
 
 /**
  * A URL parser class.
+ *
+ * A parser can be reused for any number of inputs. Each parse starts with a {@link #reset()},
+ * and each URL gets a copy of the parser state, so one parser per thread can parse many URLs
+ * without creating new parsers, builders, encoders or decoders.
+ *
+ * This class is not thread-safe. A parser must be confined to a thread, or be used by one thread at a time.
  */
 public class URLParser {
 
@@ -23,6 +32,27 @@ public class URLParser {
         builder.charset(charset, codingErrorAction);
     }
 
+    /**
+     * Set the resolver for host names.
+     *
+     * @param hostResolver the host resolver
+     * @return this parser
+     */
+    public URLParser hostResolver(HostResolver hostResolver) {
+        builder.hostResolver(hostResolver);
+        return this;
+    }
+
+    /**
+     * Clear the state of the last parse. The charset and the host resolver are kept.
+     *
+     * @return this parser
+     */
+    public URLParser reset() {
+        builder.reset();
+        return this;
+    }
+
     public URL parse(String input)
             throws URLSyntaxException, MalformedInputException, UnmappableCharacterException {
         return parse(input, true);
@@ -30,6 +60,7 @@ public class URLParser {
 
     public URL parse(String input, boolean resolve)
             throws URLSyntaxException, MalformedInputException, UnmappableCharacterException {
+        builder.reset();
         if (URL.isNullOrEmpty(input)) {
             return URL.NULL_URL;
         }
@@ -71,6 +102,54 @@ public class URLParser {
         return builder.build();
     }
 
+    /**
+     * Parse the input and resolve the host name without blocking the current thread.
+     * The input is parsed on the current thread, the host name is resolved asynchronously
+     * by the host resolver, and the URL is built when the host name has been resolved.
+     *
+     * @param input the input
+     * @return a future with the URL, completed exceptionally if the input can not be parsed
+     */
+    public CompletableFuture<URL> parseAsync(String input) {
+        URL url;
+        try {
+            url = parse(input, false);
+        } catch (URLSyntaxException | MalformedInputException | UnmappableCharacterException | RuntimeException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        String host = url.getHost();
+        if (url == URL.NULL_URL || URL.isNullOrEmpty(host)) {
+            return CompletableFuture.completedFuture(url);
+        }
+        // continue with the state of the URL, the parser may be reused in the meantime
+        URLBuilder urlBuilder = url.mutator();
+        HostResolver resolver = builder.hostResolver != null ? builder.hostResolver : NetworkUtils.getHostResolver();
+        return resolver.resolveAsync(host).handle((inetAddress, throwable) -> {
+            if (throwable == null) {
+                return urlBuilder.resolvedHost(inetAddress).build();
+            }
+            Throwable t = throwable instanceof CompletionException && throwable.getCause() != null ?
+                    throwable.getCause() : throwable;
+            if (t instanceof UnknownHostException) {
+                return urlBuilder.unresolvedHost(host, (UnknownHostException) t).build();
+            }
+            throw new CompletionException(t);
+        });
+    }
+
+    /**
+     * Scan the input once and return a flyweight view that records the URL component boundaries
+     * as offsets. Component strings are created and decoded lazily by the getters of the view.
+     * Host names are never resolved.
+     *
+     * @param input the input
+     * @return the URL view
+     * @throws URLSyntaxException if the port is invalid
+     */
+    public URLView view(CharSequence input) throws URLSyntaxException {
+        return new URLView(input, builder.charset, builder.codingErrorAction);
+    }
+
     String parseScheme(URLBuilder builder, String input) {
         Pair<String, String> p = URL.indexOf(URL.COLON_CHAR, input);
         if (p.getValue() == null) {
@@ -89,7 +168,7 @@ public class URLParser {
         if (i > 0) {
             remaining = input.substring(i + 1);
             String userInfo = input.substring(0, i);
-            builder.userInfo(builder.percentDecoder.decode(userInfo));
+            builder.userInfo(builder.codecs().getDecoder().decode(userInfo));
         }
         return remaining;
     }
@@ -128,27 +207,45 @@ public class URLParser {
                 return -1;
             }
         }
-        try {
-            int port = Integer.parseInt(portStr);
-            if (port > 0 && port < 65536) {
-                return port;
-            } else {
-                throw new URLSyntaxException("invalid port");
+        return parsePort(portStr, 0, portStr.length());
+    }
+
+    /**
+     * Parse a port number, which consists of ASCII digits only, as by RFC 3986.
+     * A sign or any other character is rejected.
+     *
+     * @param input the input
+     * @param start the start of the port in the input
+     * @param end the end of the port in the input
+     * @return the port
+     * @throws URLSyntaxException if the port is not numeric or out of range
+     */
+    static int parsePort(CharSequence input, int start, int end) throws URLSyntaxException {
+        int port = 0;
+        for (int i = start; i < end; i++) {
+            char c = input.charAt(i);
+            if (c < '0' || c > '9') {
+                throw new URLSyntaxException("no numeric port: " + input.subSequence(start, end));
             }
-        } catch (NumberFormatException e) {
-            throw new URLSyntaxException("no numeric port: " + portStr);
+            port = Math.min(port * 10 + (c - '0'), 65536);
+        }
+        if (port > 0 && port < 65536) {
+            return port;
+        } else {
+            throw new URLSyntaxException("invalid port");
         }
     }
 
-    void parsePathWithQueryAndFragment(URLBuilder builder, String inputStr)
+    static void parsePathWithQueryAndFragment(URLBuilder builder, String inputStr)
             throws MalformedInputException, UnmappableCharacterException {
         String input = inputStr;
         if (input == null) {
             return;
         }
+        PercentDecoder decoder = builder.codecs().getDecoder();
         int i = input.lastIndexOf(URL.NUMBER_SIGN_CHAR);
         if (i >= 0) {
-            builder.fragment(builder.percentDecoder.decode(input.substring(i + 1)));
+            builder.fragment(decoder.decode(input.substring(i + 1)));
             input = input.substring(0, i);
         }
         i = input.indexOf(URL.QUESTION_CHAR);
@@ -171,8 +268,8 @@ public class URLParser {
                         Pair<String, String> pathWithMatrixElem = URL.indexOf(URL.SEMICOLON_CHAR, t);
                         String matrixElem = pathWithMatrixElem.getKey();
                         Pair<String, String> p = URL.indexOf(URL.EQUAL_CHAR, matrixElem);
-                        builder.matrixParam(builder.percentDecoder.decode(p.getKey()),
-                                builder.percentDecoder.decode(p.getValue()));
+                        builder.matrixParam(decoder.decode(p.getKey()),
+                                decoder.decode(p.getValue()));
                         t = pathWithMatrixElem.getValue();
                     }
                 } else {
@@ -182,11 +279,11 @@ public class URLParser {
                         Pair<String, String> pathWithMatrixElem = URL.indexOf(URL.SEMICOLON_CHAR, t);
                         String segment = pathWithMatrixElem.getKey();
                         if (i == 0) {
-                            builder.pathSegment(builder.percentDecoder.decode(segment));
+                            builder.pathSegment(decoder.decode(segment));
                         } else {
                             Pair<String, String> p = URL.indexOf(URL.EQUAL_CHAR, segment);
-                            builder.matrixParam(builder.percentDecoder.decode(p.getKey()),
-                                    builder.percentDecoder.decode(p.getValue()));
+                            builder.matrixParam(decoder.decode(p.getKey()),
+                                    decoder.decode(p.getValue()));
                         }
                         t = pathWithMatrixElem.getValue();
                         i++;
@@ -200,23 +297,24 @@ public class URLParser {
         }
     }
 
-    void parseQuery(URLBuilder builder, String query)
+    static void parseQuery(URLBuilder builder, String query)
             throws MalformedInputException, UnmappableCharacterException {
         if (query == null) {
             return;
         }
+        PercentDecoder decoder = builder.codecs().getDecoder();
         String s = query;
         while (s != null) {
             Pair<String, String> p = URL.indexOf(URL.AMPERSAND_CHAR, s);
             Pair<String, String> param = URL.indexOf(URL.EQUAL_CHAR, p.getKey());
             if (!URL.isNullOrEmpty(param.getKey())) {
-                builder.queryParam(builder.percentDecoder.decode(param.getKey()),
-                        builder.percentDecoder.decode(param.getValue()));
+                builder.queryParam(decoder.decode(param.getKey()),
+                        decoder.decode(param.getValue()));
             }
             s = p.getValue();
         }
         if (builder.queryParams.isEmpty()) {
-            builder.query(builder.percentDecoder.decode(query));
+            builder.query(decoder.decode(query));
         } else {
             builder.query(query);
         }
@@ -1,23 +1,73 @@
 package org.xbib.net;
 
+import java.nio.charset.CharacterCodingException;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.UnmappableCharacterException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.stream.Stream;
 
 /**
  * The URL resolver class is a class for resolving a relative URL specification to a base URL.
+ *
+ * The components of the base URL are derived once, when the resolver is created, so a resolver
+ * should be reused for all specifications that are resolved against the same base.
+ * The batch methods {@link #resolveAll(List)}, {@link #resolveAll(List, ForkJoinPool)} and
+ * {@link #resolveAll(Stream)} also reuse the parser and the builder.
+ *
+ * This class is thread-safe.
  */
 public class URLResolver {
 
     private static final String EMPTY = "";
 
+    /**
+     * The minimum number of specifications that are resolved by one task of a fork/join pool.
+     */
+    private static final int BATCH_SIZE = 256;
+
     private final URL base;
 
+    private final String baseDecodedHost;
+
+    private final String basePath;
+
+    private final String baseQuery;
+
+    private final String baseFragment;
+
+    /**
+     * The resolved segments of the directory of the base path, for merging with relative paths.
+     */
+    private final List<String> baseDirectorySegments;
+
     URLResolver(URL base) {
         this.base = base;
+        this.baseDecodedHost = base.getDecodedHost();
+        this.basePath = base.getPath();
+        this.baseQuery = base.getQuery();
+        this.baseFragment = base.getFragment();
+        this.baseDirectorySegments = new ArrayList<>();
+        if (!URL.isNullOrEmpty(basePath)) {
+            addSegments(baseDirectorySegments, basePath.substring(0, basePath.lastIndexOf(URL.SEPARATOR_CHAR) + 1)
+                    .split("/", -1));
+        }
     }
 
+    /**
+     * Resolve a relative URL specification. The host name of the specification is resolved, if it has one.
+     * If a URL cache is set, a specification that can not have a host is parsed by the cache, which gives the same
+     * result, since host name resolution is the only difference between the cache and the parser.
+     *
+     * @param relative the relative URL specification
+     * @return the resolved URL
+     * @throws URLSyntaxException if the specification is not a valid URL
+     * @throws MalformedInputException if the specification is malformed
+     * @throws UnmappableCharacterException if the specification contains unmappable characters
+     */
     public URL resolve(String relative)
             throws URLSyntaxException, MalformedInputException, UnmappableCharacterException {
         if (relative == null) {
@@ -27,19 +77,77 @@ public class URLResolver {
             return base;
         }
         // TODO(jprante) parser(charset, codingErrorAction)
-        URL url = URL.parser().parse(relative);
+        URLCache urlCache = URL.getCache();
+        // the cache does not resolve host names
+        URL url = urlCache != null && !mayHaveHost(relative) ? urlCache.parse(relative) :
+                URL.parser().parse(relative);
         return resolve(url);
     }
 
     public URL resolve(URL relative)
             throws URLSyntaxException {
+        return resolve(relative, new URLBuilder());
+    }
+
+    /**
+     * Resolve a list of relative URL specifications with one parser. The specifications are parsed without
+     * host name resolution. Specifications that are not valid are resolved to null.
+     *
+     * @param relatives the relative URL specifications
+     * @return the resolved URLs, in the order of the specifications
+     */
+    public List<URL> resolveAll(List<String> relatives) {
+        Batch batch = new Batch();
+        List<URL> list = new ArrayList<>(relatives.size());
+        for (String relative : relatives) {
+            list.add(batch.resolve(relative));
+        }
+        return list;
+    }
+
+    /**
+     * Resolve a list of relative URL specifications in parallel. The list is split into parts, and each
+     * part is resolved by a task of the pool, with one parser per task. The specifications are parsed without
+     * host name resolution. Specifications that are not valid are resolved to null.
+     *
+     * @param relatives the relative URL specifications
+     * @param pool the fork/join pool
+     * @return the resolved URLs, in the order of the specifications
+     */
+    public List<URL> resolveAll(List<String> relatives, ForkJoinPool pool) {
+        if (relatives.size() <= BATCH_SIZE) {
+            return resolveAll(relatives);
+        }
+        URL[] urls = new URL[relatives.size()];
+        pool.invoke(new ResolveTask(relatives, urls, 0, urls.length));
+        return Arrays.asList(urls);
+    }
+
+    /**
+     * Resolve a stream of relative URL specifications. A sequential stream is resolved with one parser,
+     * a parallel stream with one parser per thread. The specifications are parsed without
+     * host name resolution. Specifications that are not valid are resolved to null.
+     *
+     * @param relatives the relative URL specifications
+     * @return the stream of resolved URLs, in the order of the specifications
+     */
+    public Stream<URL> resolveAll(Stream<String> relatives) {
+        if (relatives.isParallel()) {
+            ThreadLocal<Batch> batches = ThreadLocal.withInitial(Batch::new);
+            return relatives.map(relative -> batches.get().resolve(relative));
+        }
+        Batch batch = new Batch();
+        return relatives.map(batch::resolve);
+    }
+
+    private URL resolve(URL relative, URLBuilder builder)
+            throws URLSyntaxException {
         if (relative == null || relative.equals(URL.NULL_URL)) {
             throw new URLSyntaxException("relative URL is invalid");
         }
         if (!base.isAbsolute()) {
             throw new URLSyntaxException("base URL is not absolute");
         }
-        URLBuilder builder = new URLBuilder();
         if (relative.isOpaque()) {
             builder.scheme(relative.getScheme());
             builder.schemeSpecificPart(relative.getSchemeSpecificPart());
@@ -62,49 +170,53 @@ public class URLResolver {
         if (relative.getHost() != null) {
             builder.host(relative.getDecodedHost(), relative.getProtocolVersion()).port(relative.getPort());
         } else {
-            builder.host(base.getDecodedHost(), base.getProtocolVersion()).port(base.getPort());
+            builder.host(baseDecodedHost, base.getProtocolVersion()).port(base.getPort());
         }
-        builder.path(resolvePath(base, relative));
+        builder.path(resolvePath(relative));
         return builder.build();
     }
 
-    private String resolvePath(URL base, URL relative) {
-        String basePath = base.getPath();
-        String baseQuery = base.getQuery();
-        String baseFragment = base.getFragment();
+    /**
+     * Check if a specification may have an authority, which requires a double slash, or a backslash
+     * that the parser takes for a slash, before the query and the fragment.
+     */
+    private static boolean mayHaveHost(String spec) {
+        for (int i = 0; i < spec.length() - 1; i++) {
+            char c = spec.charAt(i);
+            if (c == URL.QUESTION_CHAR || c == URL.NUMBER_SIGN_CHAR) {
+                return false;
+            }
+            if ((c == URL.SEPARATOR_CHAR || c == '\\') &&
+                    (spec.charAt(i + 1) == URL.SEPARATOR_CHAR || spec.charAt(i + 1) == '\\')) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private String resolvePath(URL relative) {
         String relPath = relative.getPath();
         String relQuery = relative.getQuery();
         String relFragment = relative.getFragment();
         boolean isBase = false;
-        String merged;
-        List<String> result = new ArrayList<>();
+        String[] parts;
+        List<String> result;
         if (URL.isNullOrEmpty(relPath)) {
-            merged = basePath;
+            if (URL.isNullOrEmpty(basePath)) {
+                return EMPTY;
+            }
+            parts = basePath.split("/", -1);
+            result = new ArrayList<>();
             isBase = true;
         } else if (relPath.charAt(0) != URL.SEPARATOR_CHAR && !URL.isNullOrEmpty(basePath)) {
-            merged = basePath.substring(0, basePath.lastIndexOf(URL.SEPARATOR_CHAR) + 1) + relPath;
+            // merge with the base directory, which always ends with a separator
+            parts = relPath.split("/", -1);
+            result = new ArrayList<>(baseDirectorySegments);
         } else {
-            merged = relPath;
-        }
-        if (URL.isNullOrEmpty(merged)) {
-            return EMPTY;
-        }
-        String[] parts = merged.split("/", -1);
-        for (String part : parts) {
-            switch (part) {
-                case EMPTY:
-                case ".":
-                    break;
-                case "..":
-                    if (result.size() > 0) {
-                        result.remove(result.size() - 1);
-                    }
-                    break;
-                default:
-                    result.add(part);
-                    break;
-            }
+            parts = relPath.split("/", -1);
+            result = new ArrayList<>();
         }
+        addSegments(result, parts);
         if (parts.length > 0) {
             switch (parts[parts.length - 1]) {
                 case EMPTY:
@@ -133,4 +245,88 @@ public class URLResolver {
         }
         return sb.toString();
     }
+
+    private static void addSegments(List<String> result, String[] parts) {
+        for (String part : parts) {
+            switch (part) {
+                case EMPTY:
+                case ".":
+                    break;
+                case "..":
+                    if (result.size() > 0) {
+                        result.remove(result.size() - 1);
+                    }
+                    break;
+                default:
+                    result.add(part);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Resolves specifications with one parser and one builder.
+     */
+    private class Batch {
+
+        private final URLParser parser;
+
+        private final URLBuilder builder;
+
+        private final URLCache urlCache;
+
+        Batch() {
+            this.parser = URL.parser();
+            this.builder = new URLBuilder();
+            this.urlCache = URL.getCache();
+        }
+
+        URL resolve(String relative) {
+            if (relative == null) {
+                return null;
+            }
+            if (relative.isEmpty()) {
+                return base;
+            }
+            try {
+                URL url = urlCache != null ? urlCache.parse(relative) : parser.parse(relative, false);
+                return URLResolver.this.resolve(url, builder.reset());
+            } catch (URLSyntaxException | CharacterCodingException | IllegalArgumentException e) {
+                return null;
+            }
+        }
+    }
+
+    private class ResolveTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final transient List<String> relatives;
+
+        private final transient URL[] urls;
+
+        private final int from;
+
+        private final int to;
+
+        ResolveTask(List<String> relatives, URL[] urls, int from, int to) {
+            this.relatives = relatives;
+            this.urls = urls;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= BATCH_SIZE) {
+                Batch batch = new Batch();
+                for (int i = from; i < to; i++) {
+                    urls[i] = batch.resolve(relatives.get(i));
+                }
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ResolveTask(relatives, urls, from, mid), new ResolveTask(relatives, urls, mid, to));
+        }
+    }
 }
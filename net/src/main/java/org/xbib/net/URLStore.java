@@ -0,0 +1,516 @@
+package org.xbib.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.NoSuchElementException;
+
+/**
+ * A compact, read-only, sorted store of URLs.
+ *
+ * The external forms of the URLs are sorted by their UTF-8 bytes, and stored front-coded
+ * in off-heap blocks: the first URL of a block is stored in full, every following URL as the length
+ * of the prefix it shares with its predecessor and the remaining suffix. Lookups are a binary search
+ * over the first URLs of the blocks, followed by a scan of one block. The heap cost of a store
+ * is independent of the number of URLs.
+ *
+ * A store can be written to a file, and opened from the file by memory-mapping. The data is split
+ * into segments, so stores larger than 2 GB can be mapped.
+ *
+ * This class is thread-safe.
+ */
+public class URLStore implements Iterable<URLView> {
+
+    public static final int DEFAULT_BLOCK_SIZE = 16;
+
+    private static final int MAGIC = 0x5855524c;
+
+    private static final int VERSION = 1;
+
+    private static final int HEADER_SIZE = 32;
+
+    private static final int DEFAULT_SEGMENT_SIZE = 1 << 30;
+
+    private final int blockSize;
+
+    private final int size;
+
+    private final int maxLength;
+
+    /**
+     * The position of each block, the segment number in the upper and the offset in the lower 32 bits.
+     */
+    private final ByteBuffer index;
+
+    private final ByteBuffer[] segments;
+
+    private URLStore(int blockSize, int size, int maxLength, ByteBuffer index, ByteBuffer[] segments) {
+        this.blockSize = blockSize;
+        this.size = size;
+        this.maxLength = maxLength;
+        this.index = index;
+        this.segments = segments;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Open a store from a file that was written by {@link #writeTo(Path)}. The file is memory-mapped.
+     *
+     * @param path the path of the file
+     * @return the store
+     * @throws IOException if the file can not be mapped or is not a URL store
+     */
+    public static URLStore open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0L, HEADER_SIZE);
+            if (header.getInt(0) != MAGIC) {
+                throw new IOException("not a URL store: " + path);
+            }
+            if (header.getInt(4) != VERSION) {
+                throw new IOException("unsupported URL store version " + header.getInt(4) + ": " + path);
+            }
+            int blockSize = header.getInt(8);
+            int size = header.getInt(12);
+            int maxLength = header.getInt(16);
+            int blockCount = header.getInt(20);
+            int segmentCount = header.getInt(24);
+            long position = HEADER_SIZE;
+            ByteBuffer segmentTable = channel.map(FileChannel.MapMode.READ_ONLY, position, segmentCount * 4L);
+            position += segmentCount * 4L;
+            ByteBuffer index = channel.map(FileChannel.MapMode.READ_ONLY, position, blockCount * 8L);
+            position += blockCount * 8L;
+            ByteBuffer[] segments = new ByteBuffer[segmentCount];
+            for (int i = 0; i < segmentCount; i++) {
+                int length = segmentTable.getInt(i * 4);
+                segments[i] = channel.map(FileChannel.MapMode.READ_ONLY, position, length);
+                position += length;
+            }
+            return new URLStore(blockSize, size, maxLength, index, segments);
+        }
+    }
+
+    /**
+     * Write this store to a file, which can be opened by {@link #open(Path)}.
+     *
+     * @param path the path of the file
+     * @throws IOException if the file can not be written
+     */
+    public void writeTo(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + segments.length * 4);
+            header.putInt(MAGIC).putInt(VERSION).putInt(blockSize).putInt(size)
+                    .putInt(maxLength).putInt(blockCount()).putInt(segments.length).putInt(0);
+            for (ByteBuffer segment : segments) {
+                header.putInt(segment.capacity());
+            }
+            header.flip();
+            writeFully(channel, header);
+            writeFully(channel, index.duplicate().clear());
+            for (ByteBuffer segment : segments) {
+                writeFully(channel, segment.duplicate().clear());
+            }
+        }
+    }
+
+    /**
+     * Return the number of URLs in this store.
+     * @return the number of URLs
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Return the number of bytes of the URL data and the block index.
+     * @return the number of bytes
+     */
+    public long sizeInBytes() {
+        long n = index.capacity();
+        for (ByteBuffer segment : segments) {
+            n += segment.capacity();
+        }
+        return n;
+    }
+
+    public boolean contains(URL url) {
+        return indexOf(url) >= 0;
+    }
+
+    public boolean contains(CharSequence externalForm) {
+        return indexOf(externalForm) >= 0;
+    }
+
+    /**
+     * Find the position of a URL in the sort order of this store.
+     *
+     * @param url the URL
+     * @return the position, or -1 if the URL is not in this store
+     */
+    public int indexOf(URL url) {
+        return indexOf(url.toExternalForm());
+    }
+
+    /**
+     * Find the position of an external form of a URL in the sort order of this store.
+     *
+     * @param externalForm the external form of a URL
+     * @return the position, or -1 if the external form is not in this store
+     */
+    public int indexOf(CharSequence externalForm) {
+        byte[] key = externalForm.toString().getBytes(StandardCharsets.UTF_8);
+        int low = 0;
+        int high = blockCount() - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int cmp = compareFirst(mid, key);
+            if (cmp < 0) {
+                low = mid + 1;
+            } else if (cmp > 0) {
+                high = mid - 1;
+            } else {
+                return mid * blockSize;
+            }
+        }
+        if (high < 0) {
+            return -1;
+        }
+        // the key can only be in block 'high', after its first URL
+        BlockReader reader = new BlockReader(high);
+        reader.next();
+        while (reader.hasNext()) {
+            reader.next();
+            int cmp = Arrays.compareUnsigned(reader.bytes, 0, reader.length, key, 0, key.length);
+            if (cmp == 0) {
+                return reader.position;
+            }
+            if (cmp > 0) {
+                break;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Get the external form of the URL at a position.
+     *
+     * @param position the position
+     * @return the external form
+     */
+    public String get(int position) {
+        if (position < 0 || position >= size) {
+            throw new IndexOutOfBoundsException("position=" + position + " size=" + size);
+        }
+        BlockReader reader = new BlockReader(position / blockSize);
+        do {
+            reader.next();
+        } while (reader.position < position);
+        return reader.toString();
+    }
+
+    /**
+     * Get the URL at a position.
+     *
+     * @param position the position
+     * @return the URL
+     */
+    public URL getURL(int position) {
+        return URL.create(get(position));
+    }
+
+    /**
+     * Iterate over the URLs of this store in sort order. The views are created one by one.
+     *
+     * @return the iterator
+     */
+    @Override
+    public Iterator<URLView> iterator() {
+        return new Iterator<>() {
+
+            private BlockReader reader;
+
+            private int block;
+
+            @Override
+            public boolean hasNext() {
+                return reader != null && reader.hasNext() || block < blockCount();
+            }
+
+            @Override
+            public URLView next() {
+                if (reader == null || !reader.hasNext()) {
+                    if (block >= blockCount()) {
+                        throw new NoSuchElementException();
+                    }
+                    reader = new BlockReader(block++);
+                }
+                reader.next();
+                try {
+                    return URL.parser().view(reader.toString());
+                } catch (URLSyntaxException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+        };
+    }
+
+    private int blockCount() {
+        return index.capacity() / 8;
+    }
+
+    private int compareFirst(int block, byte[] key) {
+        long pos = index.getLong(block * 8);
+        ByteBuffer segment = segments[(int) (pos >>> 32)];
+        int offset = (int) pos;
+        long v = readVarInt(segment, offset);
+        int length = (int) v;
+        offset += (int) (v >>> 32);
+        int n = Math.min(length, key.length);
+        for (int i = 0; i < n; i++) {
+            int cmp = Integer.compare(segment.get(offset + i) & 0xff, key[i] & 0xff);
+            if (cmp != 0) {
+                return cmp;
+            }
+        }
+        return Integer.compare(length, key.length);
+    }
+
+    /**
+     * Read a variable-length int at an absolute offset.
+     *
+     * @return the value in the lower and the number of bytes read in the upper 32 bits
+     */
+    private static long readVarInt(ByteBuffer buffer, int offset) {
+        int value = 0;
+        int shift = 0;
+        int i = offset;
+        byte b;
+        do {
+            b = buffer.get(i++);
+            value |= (b & 0x7f) << shift;
+            shift += 7;
+        } while (b < 0);
+        return ((long) (i - offset) << 32) | (value & 0xffffffffL);
+    }
+
+    private static void writeFully(FileChannel channel, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Decodes the URLs of a block with absolute reads, into a reused byte array.
+     */
+    private class BlockReader {
+
+        private final ByteBuffer segment;
+
+        private final int end;
+
+        private final byte[] bytes;
+
+        private int offset;
+
+        private int length;
+
+        private int position;
+
+        BlockReader(int block) {
+            long pos = index.getLong(block * 8);
+            this.segment = segments[(int) (pos >>> 32)];
+            this.offset = (int) pos;
+            this.position = block * blockSize - 1;
+            this.end = Math.min(block * blockSize + blockSize, size);
+            this.bytes = new byte[maxLength];
+        }
+
+        boolean hasNext() {
+            return position + 1 < end;
+        }
+
+        void next() {
+            int shared = 0;
+            if ((position + 1) % blockSize != 0) {
+                long v = readVarInt(segment, offset);
+                shared = (int) v;
+                offset += (int) (v >>> 32);
+            }
+            long v = readVarInt(segment, offset);
+            int suffix = (int) v;
+            offset += (int) (v >>> 32);
+            segment.get(offset, bytes, shared, suffix);
+            offset += suffix;
+            length = shared + suffix;
+            position++;
+        }
+
+        @Override
+        public String toString() {
+            return new String(bytes, 0, length, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Collects URLs, and builds a store.
+     *
+     * This class is not thread-safe.
+     */
+    public static class Builder {
+
+        private final List<byte[]> list;
+
+        private int blockSize;
+
+        private int segmentSize;
+
+        private Builder() {
+            this.list = new ArrayList<>();
+            this.blockSize = DEFAULT_BLOCK_SIZE;
+            this.segmentSize = DEFAULT_SEGMENT_SIZE;
+        }
+
+        /**
+         * Set the number of URLs in a block. Larger blocks compress better, smaller blocks have faster lookups.
+         *
+         * @param blockSize the block size
+         * @return this builder
+         */
+        public Builder blockSize(int blockSize) {
+            if (blockSize <= 0) {
+                throw new IllegalArgumentException("'blockSize' must be larger than 0");
+            }
+            this.blockSize = blockSize;
+            return this;
+        }
+
+        Builder segmentSize(int segmentSize) {
+            this.segmentSize = segmentSize;
+            return this;
+        }
+
+        public Builder add(URL url) {
+            return add(url.toExternalForm());
+        }
+
+        public Builder add(CharSequence externalForm) {
+            list.add(externalForm.toString().getBytes(StandardCharsets.UTF_8));
+            return this;
+        }
+
+        /**
+         * Sort the URLs, remove duplicates, and build the store.
+         *
+         * @return the store
+         */
+        public URLStore build() {
+            byte[][] entries = list.toArray(new byte[0][]);
+            Arrays.sort(entries, Arrays::compareUnsigned);
+            List<ByteBuffer> segments = new ArrayList<>();
+            BlockWriter segment = new BlockWriter();
+            BlockWriter block = new BlockWriter();
+            List<Long> positions = new ArrayList<>();
+            int count = 0;
+            int maxLength = 0;
+            byte[] previous = null;
+            for (byte[] entry : entries) {
+                if (previous != null && Arrays.equals(previous, entry)) {
+                    continue;
+                }
+                if (count % blockSize == 0) {
+                    if (count > 0) {
+                        segment = flush(block, segment, segments, positions);
+                    }
+                    block.writeVarInt(entry.length);
+                    block.write(entry, 0, entry.length);
+                } else {
+                    // the entries are sorted and distinct, so they differ at some index
+                    int shared = Arrays.mismatch(previous, entry);
+                    block.writeVarInt(shared);
+                    block.writeVarInt(entry.length - shared);
+                    block.write(entry, shared, entry.length - shared);
+                }
+                previous = entry;
+                maxLength = Math.max(maxLength, entry.length);
+                count++;
+            }
+            if (count > 0) {
+                segment = flush(block, segment, segments, positions);
+            }
+            if (segment.length > 0) {
+                segments.add(segment.toDirectBuffer());
+            }
+            ByteBuffer index = ByteBuffer.allocateDirect(positions.size() * 8).order(ByteOrder.BIG_ENDIAN);
+            for (int i = 0; i < positions.size(); i++) {
+                index.putLong(i * 8, positions.get(i));
+            }
+            return new URLStore(blockSize, count, maxLength, index, segments.toArray(new ByteBuffer[0]));
+        }
+
+        private BlockWriter flush(BlockWriter block, BlockWriter segment, List<ByteBuffer> segments,
+                                  List<Long> positions) {
+            BlockWriter current = segment;
+            if (current.length > 0 && (long) current.length + block.length > segmentSize) {
+                segments.add(current.toDirectBuffer());
+                current = new BlockWriter();
+            }
+            positions.add(((long) segments.size() << 32) | current.length);
+            current.write(block.bytes, 0, block.length);
+            block.length = 0;
+            return current;
+        }
+    }
+
+    /**
+     * A growable byte array.
+     */
+    private static class BlockWriter {
+
+        private byte[] bytes = new byte[256];
+
+        private int length;
+
+        void writeVarInt(int value) {
+            int v = value;
+            while ((v & ~0x7f) != 0) {
+                write((byte) ((v & 0x7f) | 0x80));
+                v >>>= 7;
+            }
+            write((byte) v);
+        }
+
+        void write(byte b) {
+            ensureCapacity(1);
+            bytes[length++] = b;
+        }
+
+        void write(byte[] b, int offset, int len) {
+            ensureCapacity(len);
+            System.arraycopy(b, offset, bytes, length, len);
+            length += len;
+        }
+
+        ByteBuffer toDirectBuffer() {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(length);
+            buffer.put(bytes, 0, length).flip();
+            return buffer;
+        }
+
+        private void ensureCapacity(int n) {
+            if (length + n > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + n));
+            }
+        }
+    }
+}
@@ -0,0 +1,447 @@
+package org.xbib.net;
+
+import java.nio.charset.Charset;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.MalformedInputException;
+import java.nio.charset.UnmappableCharacterException;
+import java.util.Locale;
+import org.xbib.net.scheme.Scheme;
+import org.xbib.net.scheme.SchemeRegistry;
+
+/**
+ * A flyweight, offset-based view of a URL input.
+ *
+ * The input is scanned once by {@link URLParser#view(CharSequence)}, and the boundaries of
+ * the URL components are recorded as int offsets into the input. No strings are created
+ * and nothing is percent-decoded while scanning. Component strings and decoded values are
+ * created on demand, when a getter is called, and are cached afterwards.
+ *
+ * The component rules are the same as in {@link URLParser#parse(String, boolean)} without
+ * host name resolution. In contrast to {@link URL}, the getters {@link #getPath()},
+ * {@link #getQuery()} and {@link #getFragment()} return the components as they appear
+ * in the input, the percent-encoding is not normalized. Use {@link #toURL()} to obtain
+ * a full {@link URL}.
+ *
+ * This class is not thread-safe.
+ */
+public class URLView {
+
+    private static final String EMPTY = "";
+
+    private static final long BACKSLASH_HIGH = CharScanner.highMask("\\");
+
+    private final CharSequence input;
+
+    private final Charset charset;
+
+    private final CodingErrorAction codingErrorAction;
+
+    private int schemeEnd;
+
+    private int schemeSpecificPartStart;
+
+    private int userInfoStart;
+
+    private int userInfoEnd;
+
+    private int hostStart;
+
+    private int hostEnd;
+
+    private Integer port;
+
+    private int pathStart;
+
+    private int pathEnd;
+
+    private int queryStart;
+
+    private int queryEnd;
+
+    private int fragmentStart;
+
+    private int fragmentEnd;
+
+    private boolean valid;
+
+    private boolean backslash;
+
+    private String scheme;
+
+    private String userInfo;
+
+    private String host;
+
+    private String path;
+
+    private String query;
+
+    private String fragment;
+
+    private Parameter queryParams;
+
+    URLView(CharSequence input, Charset charset, CodingErrorAction codingErrorAction) throws URLSyntaxException {
+        this.input = input;
+        this.charset = charset;
+        this.codingErrorAction = codingErrorAction;
+        this.schemeEnd = -1;
+        this.userInfoStart = -1;
+        this.hostStart = -1;
+        this.pathStart = -1;
+        this.queryStart = -1;
+        this.fragmentStart = -1;
+        scan();
+    }
+
+    private void scan() throws URLSyntaxException {
+        if (input == null || input.length() == 0) {
+            return;
+        }
+        int length = input.length();
+        int colon = -1;
+        for (int i = 0; i < length; i++) {
+            char c = input.charAt(i);
+            if (c == '\n' || c == '\t') {
+                return;
+            }
+            if (c == '\\') {
+                backslash = true;
+            } else if (c == URL.COLON_CHAR && colon < 0) {
+                colon = i;
+            }
+        }
+        valid = true;
+        int pos = 0;
+        if (colon >= 0) {
+            if (colon > 0) {
+                validateScheme(colon);
+                schemeEnd = colon;
+            }
+            pos = colon + 1;
+        }
+        schemeSpecificPartStart = pos;
+        if (startsWithDoubleSlash(pos)) {
+            Scheme s = schemeEnd > 0 ? SchemeRegistry.getInstance().getScheme(getScheme()) : null;
+            if (s == null || s.getDefaultPort() == -1) {
+                hostStart = pos;
+                hostEnd = pos;
+            } else {
+                pos = pos + 2;
+                int end = CharScanner.indexOfAny(input, pos, length, CharScanner.HOST_END_LOW,
+                        backslash ? CharScanner.HOST_END_HIGH | BACKSLASH_HIGH : CharScanner.HOST_END_HIGH);
+                if (end < 0) {
+                    end = length;
+                }
+                scanAuthority(pos, end);
+                pos = end;
+            }
+        }
+        if (pos < length) {
+            scanPathWithQueryAndFragment(pos, length);
+        }
+    }
+
+    private void scanAuthority(int start, int end) throws URLSyntaxException {
+        int hostBegin = start;
+        for (int i = end - 1; i > start; i--) {
+            if (input.charAt(i) == URL.AT_CHAR) {
+                userInfoStart = start;
+                userInfoEnd = i;
+                hostBegin = i + 1;
+                break;
+            }
+        }
+        int hostFinish = end;
+        if (hostBegin < end && input.charAt(hostBegin) == URL.LEFT_BRACKET_CHAR) {
+            for (int i = end - 1; i >= hostBegin; i--) {
+                if (input.charAt(i) == URL.RIGHT_BRACKET_CHAR) {
+                    port = parsePort(i + 1, end);
+                    hostBegin = hostBegin + 1;
+                    hostFinish = i;
+                    break;
+                }
+            }
+        } else {
+            for (int i = hostBegin; i < end; i++) {
+                if (input.charAt(i) == URL.COLON_CHAR) {
+                    port = parsePort(i, end);
+                    hostFinish = i;
+                    break;
+                }
+            }
+        }
+        hostStart = hostBegin;
+        hostEnd = hostFinish;
+    }
+
+    private void scanPathWithQueryAndFragment(int start, int end) {
+        int finish = end;
+        for (int i = end - 1; i >= start; i--) {
+            if (input.charAt(i) == URL.NUMBER_SIGN_CHAR) {
+                fragmentStart = i + 1;
+                fragmentEnd = end;
+                finish = i;
+                break;
+            }
+        }
+        for (int i = start; i < finish; i++) {
+            if (input.charAt(i) == URL.QUESTION_CHAR) {
+                queryStart = i + 1;
+                queryEnd = finish;
+                finish = i;
+                break;
+            }
+        }
+        pathStart = start;
+        pathEnd = finish;
+    }
+
+    private Integer parsePort(int start, int end) throws URLSyntaxException {
+        if (start >= end) {
+            return null;
+        }
+        int i = start;
+        for (int j = start; j < end; j++) {
+            if (input.charAt(j) == URL.COLON_CHAR) {
+                i = j + 1;
+                if (i == end) {
+                    return -1;
+                }
+                break;
+            }
+        }
+        return URLParser.parsePort(input, i, end);
+    }
+
+    private void validateScheme(int end) {
+        for (int i = 0; i < end; i++) {
+            char c = input.charAt(i);
+            boolean alpha = ('a' <= c && c <= 'z') || ('A' <= c && c <= 'Z');
+            boolean ok = i == 0 ? alpha :
+                    alpha || ('0' <= c && c <= '9') || c == '+' || c == '-' || c == '.';
+            if (!ok) {
+                throw new IllegalArgumentException("invalid scheme character in: " + input.subSequence(0, end));
+            }
+        }
+    }
+
+    private boolean startsWithDoubleSlash(int pos) {
+        return pos + 1 < input.length() && isSeparator(input.charAt(pos)) && isSeparator(input.charAt(pos + 1));
+    }
+
+    private boolean isSeparator(char c) {
+        return c == URL.SEPARATOR_CHAR || (backslash && c == '\\');
+    }
+
+    private String substring(int start, int end) {
+        String s = input.subSequence(start, end).toString();
+        return backslash ? s.replace('\\', URL.SEPARATOR_CHAR) : s;
+    }
+
+    private String decode(int start, int end) {
+        String s = substring(start, end);
+        if (CharScanner.indexOf(input, '%', start, end) < 0) {
+            return s;
+        }
+        try {
+            return PercentCodecs.get(charset, codingErrorAction).getDecoder().decode(s);
+        } catch (MalformedInputException | UnmappableCharacterException e) {
+            throw new IllegalArgumentException(e);
+        }
+    }
+
+    /**
+     * Return the input of this view.
+     * @return the input
+     */
+    public CharSequence getInput() {
+        return input;
+    }
+
+    /**
+     * Whether the input could be scanned. Empty inputs and inputs with line feeds or tabs are invalid.
+     * @return true if valid
+     */
+    public boolean isValid() {
+        return valid;
+    }
+
+    public String getScheme() {
+        if (scheme == null && schemeEnd > 0) {
+            scheme = input.subSequence(0, schemeEnd).toString();
+        }
+        return scheme;
+    }
+
+    public String getSchemeSpecificPart() {
+        return valid ? substring(schemeSpecificPartStart, input.length()) : null;
+    }
+
+    /**
+     * Get the percent-decoded user info.
+     * @return the user info, or null
+     */
+    public String getUserInfo() {
+        if (userInfo == null && userInfoStart >= 0) {
+            userInfo = decode(userInfoStart, userInfoEnd);
+        }
+        return userInfo;
+    }
+
+    public String getHost() {
+        if (host == null && hostStart >= 0) {
+            host = hostStart == hostEnd ? EMPTY : substring(hostStart, hostEnd).toLowerCase(Locale.ROOT);
+        }
+        return host;
+    }
+
+    public Integer getPort() {
+        return port;
+    }
+
+    /**
+     * Get the path as it appears in the input.
+     * @return the path, or null
+     */
+    public String getPath() {
+        if (path == null && pathStart >= 0) {
+            path = substring(pathStart, pathEnd);
+        }
+        return path;
+    }
+
+    public String getDecodedPath() {
+        return pathStart >= 0 ? decode(pathStart, pathEnd) : null;
+    }
+
+    /**
+     * Get the query as it appears in the input.
+     * @return the query, or null
+     */
+    public String getQuery() {
+        if (query == null && queryStart >= 0) {
+            query = substring(queryStart, queryEnd);
+        }
+        return query;
+    }
+
+    public String getDecodedQuery() {
+        return queryStart >= 0 ? decode(queryStart, queryEnd) : null;
+    }
+
+    /**
+     * Get the query parameters. The query is split into parameters and decoded on first call.
+     * @return the query parameters
+     */
+    public Parameter getQueryParams() {
+        if (queryParams == null) {
+            ParameterBuilder parameterBuilder = Parameter.builder();
+            if (queryStart >= 0) {
+                int start = queryStart;
+                while (start <= queryEnd) {
+                    int end = start;
+                    int equal = -1;
+                    while (end < queryEnd && input.charAt(end) != URL.AMPERSAND_CHAR) {
+                        if (equal < 0 && input.charAt(end) == URL.EQUAL_CHAR) {
+                            equal = end;
+                        }
+                        end++;
+                    }
+                    int keyEnd = equal >= 0 ? equal : end;
+                    if (keyEnd > start) {
+                        parameterBuilder.add(decode(start, keyEnd), equal >= 0 ? decode(equal + 1, end) : null);
+                    }
+                    start = end + 1;
+                }
+            }
+            queryParams = parameterBuilder.build();
+        }
+        return queryParams;
+    }
+
+    /**
+     * Get the fragment as it appears in the input.
+     * @return the fragment, or null
+     */
+    public String getFragment() {
+        if (fragment == null && fragmentStart >= 0 && fragmentEnd > fragmentStart) {
+            fragment = substring(fragmentStart, fragmentEnd);
+        }
+        return fragment;
+    }
+
+    public String getDecodedFragment() {
+        return fragmentStart >= 0 && fragmentEnd > fragmentStart ? decode(fragmentStart, fragmentEnd) : null;
+    }
+
+    public int getSchemeSpecificPartStart() {
+        return valid ? schemeSpecificPartStart : -1;
+    }
+
+    public int getUserInfoStart() {
+        return userInfoStart;
+    }
+
+    public int getUserInfoEnd() {
+        return userInfoStart >= 0 ? userInfoEnd : -1;
+    }
+
+    public int getHostStart() {
+        return hostStart;
+    }
+
+    public int getHostEnd() {
+        return hostStart >= 0 ? hostEnd : -1;
+    }
+
+    public int getPathStart() {
+        return pathStart;
+    }
+
+    public int getPathEnd() {
+        return pathStart >= 0 ? pathEnd : -1;
+    }
+
+    public int getQueryStart() {
+        return queryStart;
+    }
+
+    public int getQueryEnd() {
+        return queryStart >= 0 ? queryEnd : -1;
+    }
+
+    public int getFragmentStart() {
+        return fragmentStart;
+    }
+
+    public int getFragmentEnd() {
+        return fragmentStart >= 0 ? fragmentEnd : -1;
+    }
+
+    public boolean isAbsolute() {
+        return schemeEnd > 0;
+    }
+
+    public boolean isOpaque() {
+        return schemeEnd > 0 && schemeEnd + 1 < input.length() && hostStart < 0;
+    }
+
+    /**
+     * Materialize this view to a {@link URL}, with the same result as parsing the input without resolving.
+     * @return the URL
+     * @throws URLSyntaxException if the input is not a valid URL
+     * @throws MalformedInputException if the input is malformed
+     * @throws UnmappableCharacterException if the input contains unmappable characters
+     */
+    public URL toURL() throws URLSyntaxException, MalformedInputException, UnmappableCharacterException {
+        if (!valid) {
+            return URL.NULL_URL;
+        }
+        return URL.parser(charset, codingErrorAction).parse(input.toString(), false);
+    }
+
+    @Override
+    public String toString() {
+        return input != null ? input.toString() : EMPTY;
+    }
+}
@@ -0,0 +1,132 @@
+package org.xbib.net.buffer;
+
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A publisher of the content of an {@link AsynchronousFileChannel} from a position, in buffers of at most
+ * a chunk size. Positional reads are issued one at a time, and only while the subscriber has demand, so no more
+ * than one buffer beyond the delivered ones is ever allocated. A buffer that is read after the subscription is
+ * cancelled is released. The publisher accepts one subscriber. The channel is not closed.
+ */
+final class AsynchronousFileChannelPublisher implements Flow.Publisher<DataBuffer> {
+
+	private final AsynchronousFileChannel channel;
+
+	private final long position;
+
+	private final DataBufferFactory dataBufferFactory;
+
+	private final int chunkSize;
+
+	private final AtomicBoolean subscribed;
+
+	AsynchronousFileChannelPublisher(AsynchronousFileChannel channel, long position,
+			DataBufferFactory dataBufferFactory, int chunkSize) {
+		this.channel = channel;
+		this.position = position;
+		this.dataBufferFactory = dataBufferFactory;
+		this.chunkSize = chunkSize;
+		this.subscribed = new AtomicBoolean();
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super DataBuffer> subscriber) {
+		if (!this.subscribed.compareAndSet(false, true)) {
+			DataBufferUtil.rejectSubscriber(subscriber);
+			return;
+		}
+		subscriber.onSubscribe(new ReadSubscription(subscriber));
+	}
+
+	private final class ReadSubscription implements Flow.Subscription, CompletionHandler<Integer, DataBuffer> {
+
+		private final Flow.Subscriber<? super DataBuffer> subscriber;
+
+		private final AtomicLong demand;
+
+		private final AtomicBoolean reading;
+
+		private volatile long readPosition;
+
+		private volatile boolean done;
+
+		ReadSubscription(Flow.Subscriber<? super DataBuffer> subscriber) {
+			this.subscriber = subscriber;
+			this.demand = new AtomicLong();
+			this.reading = new AtomicBoolean();
+			this.readPosition = position;
+		}
+
+		@Override
+		public void request(long n) {
+			if (this.done) {
+				return;
+			}
+			if (n <= 0L) {
+				this.done = true;
+				this.subscriber.onError(new IllegalArgumentException("request " + n + " must be > 0"));
+				return;
+			}
+			DataBufferUtil.addDemand(this.demand, n);
+			read();
+		}
+
+		@Override
+		public void cancel() {
+			this.done = true;
+		}
+
+		@Override
+		public void completed(Integer read, DataBuffer dataBuffer) {
+			if (this.done) {
+				DataBufferUtil.release(dataBuffer);
+				return;
+			}
+			if (read < 0) {
+				DataBufferUtil.release(dataBuffer);
+				this.done = true;
+				this.subscriber.onComplete();
+				return;
+			}
+			dataBuffer.writePosition(read);
+			this.readPosition += read;
+			this.demand.decrementAndGet();
+			this.subscriber.onNext(dataBuffer);
+			this.reading.set(false);
+			read();
+		}
+
+		@Override
+		public void failed(Throwable throwable, DataBuffer dataBuffer) {
+			DataBufferUtil.release(dataBuffer);
+			if (!this.done) {
+				this.done = true;
+				this.subscriber.onError(throwable);
+			}
+		}
+
+		/**
+		 * Start a read, unless one is in progress. The demand is checked again after the read is claimed,
+		 * since a read that completed in between may have used up the demand.
+		 */
+		private void read() {
+			while (!this.done && this.demand.get() > 0L && this.reading.compareAndSet(false, true)) {
+				if (this.demand.get() > 0L) {
+					DataBuffer dataBuffer = dataBufferFactory.allocateBuffer(chunkSize);
+					try {
+						channel.read(dataBuffer.asByteBuffer(0, chunkSize), this.readPosition, dataBuffer, this);
+					}
+					catch (RuntimeException e) {
+						failed(e, dataBuffer);
+					}
+					return;
+				}
+				this.reading.set(false);
+			}
+		}
+	}
+}
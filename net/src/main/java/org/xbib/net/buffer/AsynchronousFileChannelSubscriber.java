@@ -0,0 +1,119 @@
+package org.xbib.net.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.CompletionHandler;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * A subscriber that writes buffers to an {@link AsynchronousFileChannel} from a position. Buffers are
+ * requested one at a time, written fully with positional writes and released. The future completes with
+ * the number of bytes written once the publisher has completed and the last write is done; cancelling it
+ * cancels the subscription. The channel is not closed.
+ */
+final class AsynchronousFileChannelSubscriber implements Flow.Subscriber<DataBuffer>,
+		CompletionHandler<Integer, ByteBuffer> {
+
+	private final AsynchronousFileChannel channel;
+
+	private final CompletableFuture<Long> future;
+
+	private Flow.Subscription subscription;
+
+	private DataBuffer current;
+
+	private volatile long position;
+
+	private volatile long written;
+
+	private volatile boolean writing;
+
+	private volatile boolean completed;
+
+	AsynchronousFileChannelSubscriber(AsynchronousFileChannel channel, long position) {
+		this.channel = channel;
+		this.future = new CompletableFuture<>();
+		this.position = position;
+	}
+
+	CompletableFuture<Long> getFuture() {
+		return this.future;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		this.future.whenComplete((result, throwable) -> {
+			if (this.future.isCancelled()) {
+				subscription.cancel();
+			}
+		});
+		subscription.request(1L);
+	}
+
+	@Override
+	public void onNext(DataBuffer dataBuffer) {
+		if (this.future.isDone()) {
+			DataBufferUtil.release(dataBuffer);
+			return;
+		}
+		this.current = dataBuffer;
+		this.writing = true;
+		write(dataBuffer.asByteBuffer());
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		this.future.completeExceptionally(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		this.completed = true;
+		if (!this.writing) {
+			this.future.complete(this.written);
+		}
+	}
+
+	@Override
+	public void completed(Integer n, ByteBuffer byteBuffer) {
+		this.position += n;
+		this.written += n;
+		if (byteBuffer.hasRemaining() && !this.future.isDone()) {
+			write(byteBuffer);
+			return;
+		}
+		DataBufferUtil.release(this.current);
+		this.current = null;
+		this.writing = false;
+		if (this.completed) {
+			this.future.complete(this.written);
+		}
+		else if (!this.future.isDone()) {
+			this.subscription.request(1L);
+		}
+	}
+
+	@Override
+	public void failed(Throwable throwable, ByteBuffer byteBuffer) {
+		DataBufferUtil.release(this.current);
+		this.current = null;
+		this.writing = false;
+		this.subscription.cancel();
+		this.future.completeExceptionally(throwable);
+	}
+
+	private void write(ByteBuffer byteBuffer) {
+		try {
+			this.channel.write(byteBuffer, this.position, byteBuffer, this);
+		}
+		catch (RuntimeException e) {
+			failed(e, byteBuffer);
+		}
+	}
+}
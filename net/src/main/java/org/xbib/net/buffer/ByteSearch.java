@@ -0,0 +1,172 @@
+package org.xbib.net.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Byte search over a range of a {@link ByteBuffer}, by absolute indices.
+ *
+ * <p>Single bytes are found eight at a time, by reading a {@code long} and testing all of its bytes at once
+ * ("SWAR"), which works for heap and direct buffers alike. Short needles, such as the CRLF of a header line, are
+ * found by scanning for their first byte and comparing the rest. Longer needles in longer ranges, such as
+ * MIME boundaries in a body, are found with the Boyer-Moore-Horspool algorithm, which skips up to the length of
+ * the needle per step.
+ */
+final class ByteSearch {
+
+	static final byte CR = '\r';
+
+	static final byte LF = '\n';
+
+	private static final long ONES = 0x0101010101010101L;
+
+	private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+
+	private static final int HORSPOOL_MINIMUM_NEEDLE = 8;
+
+	private static final int HORSPOOL_MINIMUM_RANGE = 256;
+
+	private ByteSearch() {
+	}
+
+	/**
+	 * Return the index of the first occurrence of a byte in a range.
+	 * @param buffer the buffer
+	 * @param value the byte
+	 * @param from the start of the range, inclusive
+	 * @param to the end of the range, exclusive
+	 * @return the index, or -1 if the byte does not occur in the range
+	 */
+	static int indexOf(ByteBuffer buffer, byte value, int from, int to) {
+		int i = from;
+		if (to - i >= Long.BYTES) {
+			boolean bigEndian = buffer.order() == ByteOrder.BIG_ENDIAN;
+			long pattern = (value & 0xFFL) * ONES;
+			for (; i <= to - Long.BYTES; i += Long.BYTES) {
+				long mask = zeroBytes(buffer.getLong(i) ^ pattern);
+				if (mask != 0L) {
+					return i + ((bigEndian ? Long.numberOfLeadingZeros(mask) : Long.numberOfTrailingZeros(mask)) >>> 3);
+				}
+			}
+		}
+		for (; i < to; i++) {
+			if (buffer.get(i) == value) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the index of the first occurrence of a byte sequence in a range.
+	 * @param buffer the buffer
+	 * @param needle the byte sequence
+	 * @param from the start of the range, inclusive
+	 * @param to the end of the range, exclusive
+	 * @return the index, or -1 if the sequence does not occur in the range
+	 */
+	static int indexOf(ByteBuffer buffer, byte[] needle, int from, int to) {
+		int length = needle.length;
+		if (length == 0) {
+			return from <= to ? from : -1;
+		}
+		if (length == 1) {
+			return indexOf(buffer, needle[0], from, to);
+		}
+		if (length >= HORSPOOL_MINIMUM_NEEDLE && to - from >= HORSPOOL_MINIMUM_RANGE) {
+			return horspool(buffer, needle, from, to);
+		}
+		byte first = needle[0];
+		int last = to - length;
+		for (int i = from; i <= last; i++) {
+			i = indexOf(buffer, first, i, last + 1);
+			if (i < 0) {
+				return -1;
+			}
+			if (matches(buffer, i + 1, needle, 1, length)) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the index of the first CRLF in a range.
+	 * @param buffer the buffer
+	 * @param from the start of the range, inclusive
+	 * @param to the end of the range, exclusive
+	 * @return the index of the CR, or -1 if there is no CRLF in the range
+	 */
+	static int indexOfCrlf(ByteBuffer buffer, int from, int to) {
+		for (int i = from; i < to - 1; i++) {
+			i = indexOf(buffer, CR, i, to - 1);
+			if (i < 0) {
+				return -1;
+			}
+			if (buffer.get(i + 1) == LF) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the index of the first CRLFCRLF, the end of a header block, in a range.
+	 * @param buffer the buffer
+	 * @param from the start of the range, inclusive
+	 * @param to the end of the range, exclusive
+	 * @return the index of the first CR, or -1 if there is no CRLFCRLF in the range
+	 */
+	static int indexOfCrlfCrlf(ByteBuffer buffer, int from, int to) {
+		int i = from;
+		while (i < to - 3) {
+			i = indexOfCrlf(buffer, i, to - 2);
+			if (i < 0) {
+				return -1;
+			}
+			if (buffer.get(i + 2) == CR && buffer.get(i + 3) == LF) {
+				return i;
+			}
+			// the byte after the CR is a LF, so the next candidate is the byte after that
+			i += 2;
+		}
+		return -1;
+	}
+
+	private static int horspool(ByteBuffer buffer, byte[] needle, int from, int to) {
+		int length = needle.length;
+		int last = length - 1;
+		int[] skip = new int[256];
+		Arrays.fill(skip, length);
+		for (int j = 0; j < last; j++) {
+			skip[needle[j] & 0xFF] = last - j;
+		}
+		byte lastByte = needle[last];
+		for (int i = from; i <= to - length; ) {
+			byte b = buffer.get(i + last);
+			if (b == lastByte && matches(buffer, i, needle, 0, last)) {
+				return i;
+			}
+			i += skip[b & 0xFF];
+		}
+		return -1;
+	}
+
+	private static boolean matches(ByteBuffer buffer, int index, byte[] needle, int from, int to) {
+		for (int j = from; j < to; j++, index++) {
+			if (buffer.get(index) != needle[j]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Return a mask with the high bit set in every byte of the given word that is zero, and no other bits.
+	 */
+	private static long zeroBytes(long word) {
+		long t = (word & LOW_BITS) + LOW_BITS;
+		return ~(t | word | LOW_BITS);
+	}
+}
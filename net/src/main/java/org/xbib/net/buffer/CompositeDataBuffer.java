@@ -0,0 +1,708 @@
+package org.xbib.net.buffer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+
+/**
+ * A {@link DataBuffer} that presents the readable bytes of several component buffers as one buffer,
+ * without copying them.
+ *
+ * <p>Components are added with {@link #addComponent(DataBuffer)}, and the composite takes over the
+ * responsibility to release them. Reads, searches, slices and conversions to strings work across component
+ * boundaries. Writes go to the writable space after the last component, which is allocated from the factory
+ * when needed. {@link #asByteBuffers()} exposes the readable bytes as one byte buffer per component, for
+ * gathering writes to a {@link java.nio.channels.GatheringByteChannel}. A contiguous view, as returned by
+ * {@link #asByteBuffer()} for a range that spans several components, consolidates the components into one
+ * buffer on first use.
+ *
+ * <p>The buffer is reference counted. Slices share the memory and the reference count of the composite.
+ * Components replaced by consolidation are kept until the composite is released, so slices stay valid.
+ * Components must not be modified after they are added.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class CompositeDataBuffer implements PooledDataBuffer {
+
+	private static final ByteBuffer[] EMPTY_VIEWS = new ByteBuffer[0];
+
+	private static final int MINIMUM_WRITABLE_CAPACITY = 256;
+
+	private final DataBufferFactory dataBufferFactory;
+
+	private final CompositeDataBuffer parent;
+
+	private final AtomicInteger refCount;
+
+	private final List<DataBuffer> owned;
+
+	private ByteBuffer[] views;
+
+	private int[] offsets;
+
+	private int count;
+
+	private int capacity;
+
+	private int readPosition;
+
+	private int writePosition;
+
+	private int lastComponent;
+
+	/**
+	 * Create an empty composite buffer.
+	 * @param dataBufferFactory the factory for the writable space of the composite
+	 */
+	public CompositeDataBuffer(DataBufferFactory dataBufferFactory) {
+		this.dataBufferFactory = Objects.requireNonNull(dataBufferFactory, "DataBufferFactory must not be null");
+		this.parent = null;
+		this.refCount = new AtomicInteger(1);
+		this.owned = new ArrayList<>();
+		this.views = new ByteBuffer[4];
+		this.offsets = new int[5];
+	}
+
+	/**
+	 * Create a composite buffer of the readable bytes of the given buffers.
+	 * @param dataBufferFactory the factory for the writable space of the composite
+	 * @param dataBuffers the component buffers, which are released when the composite is released
+	 */
+	public CompositeDataBuffer(DataBufferFactory dataBufferFactory, List<? extends DataBuffer> dataBuffers) {
+		this(dataBufferFactory);
+		addComponents(dataBuffers);
+	}
+
+	private CompositeDataBuffer(CompositeDataBuffer parent, ByteBuffer[] views, int length) {
+		this.dataBufferFactory = parent.dataBufferFactory;
+		this.parent = parent;
+		this.refCount = parent.refCount;
+		this.owned = null;
+		this.views = views;
+		this.count = views.length;
+		this.offsets = new int[views.length + 1];
+		for (int i = 0; i < views.length; i++) {
+			this.offsets[i + 1] = this.offsets[i] + views[i].remaining();
+		}
+		this.capacity = length;
+		this.writePosition = length;
+	}
+
+	/**
+	 * Add the readable bytes of a buffer after the written bytes of this composite. Writable space
+	 * after the written bytes is discarded. The buffer is released when the composite is released.
+	 * @param dataBuffer the buffer
+	 * @return this buffer
+	 */
+	public CompositeDataBuffer addComponent(DataBuffer dataBuffer) {
+		Objects.requireNonNull(dataBuffer, "DataBuffer must not be null");
+		assertRoot();
+		assertAllocated();
+		if (dataBuffer instanceof CompositeDataBuffer) {
+			CompositeDataBuffer composite = (CompositeDataBuffer) dataBuffer;
+			trim();
+			for (ByteBuffer view : composite.asByteBuffers()) {
+				append(view);
+			}
+			this.owned.add(composite);
+			this.writePosition = this.capacity;
+			return this;
+		}
+		this.owned.add(dataBuffer);
+		if (dataBuffer.readableByteCount() > 0) {
+			trim();
+			append(dataBuffer.asByteBuffer());
+			this.writePosition = this.capacity;
+		}
+		return this;
+	}
+
+	/**
+	 * Add the readable bytes of several buffers, as by {@link #addComponent(DataBuffer)}.
+	 * @param dataBuffers the buffers
+	 * @return this buffer
+	 */
+	public CompositeDataBuffer addComponents(List<? extends DataBuffer> dataBuffers) {
+		for (DataBuffer dataBuffer : dataBuffers) {
+			addComponent(dataBuffer);
+		}
+		return this;
+	}
+
+	/**
+	 * Return the number of components, including the writable space.
+	 * @return the number of components
+	 */
+	public int getComponentCount() {
+		return this.count;
+	}
+
+	@Override
+	public DataBufferFactory factory() {
+		return this.dataBufferFactory;
+	}
+
+	@Override
+	public int indexOf(IntPredicate predicate, int fromIndex) {
+		Objects.requireNonNull(predicate, "IntPredicate must not be null");
+		fromIndex = Math.max(fromIndex, 0);
+		if (fromIndex >= this.writePosition) {
+			return -1;
+		}
+		for (int c = component(fromIndex); c < this.count && this.offsets[c] < this.writePosition; c++) {
+			ByteBuffer view = this.views[c];
+			int offset = this.offsets[c];
+			int end = Math.min(this.offsets[c + 1], this.writePosition) - offset;
+			for (int i = Math.max(fromIndex - offset, 0); i < end; i++) {
+				if (predicate.test(view.get(i))) {
+					return offset + i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int lastIndexOf(IntPredicate predicate, int fromIndex) {
+		Objects.requireNonNull(predicate, "IntPredicate must not be null");
+		int index = Math.min(fromIndex, this.writePosition - 1);
+		if (index < 0) {
+			return -1;
+		}
+		for (int c = component(index); c >= 0; c--) {
+			ByteBuffer view = this.views[c];
+			int offset = this.offsets[c];
+			for (int i = Math.min(index - offset, view.remaining() - 1); i >= 0; i--) {
+				if (predicate.test(view.get(i))) {
+					return offset + i;
+				}
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int indexOf(byte b, int fromIndex) {
+		fromIndex = Math.max(fromIndex, 0);
+		if (fromIndex >= this.writePosition) {
+			return -1;
+		}
+		for (int c = component(fromIndex); c < this.count && this.offsets[c] < this.writePosition; c++) {
+			int offset = this.offsets[c];
+			int end = Math.min(this.offsets[c + 1], this.writePosition) - offset;
+			int i = ByteSearch.indexOf(this.views[c], b, Math.max(fromIndex - offset, 0), end);
+			if (i >= 0) {
+				return offset + i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int readableByteCount() {
+		return this.writePosition - this.readPosition;
+	}
+
+	@Override
+	public int writableByteCount() {
+		return this.capacity - this.writePosition;
+	}
+
+	@Override
+	public int capacity() {
+		return this.capacity;
+	}
+
+	/**
+	 * Increase the capacity by allocating writable space from the factory. Decreasing the capacity
+	 * is not supported.
+	 */
+	@Override
+	public CompositeDataBuffer capacity(int newCapacity) {
+		if (newCapacity < this.capacity) {
+			throw new UnsupportedOperationException("Decreasing the capacity of a composite buffer is not supported");
+		}
+		if (newCapacity > this.capacity) {
+			assertRoot();
+			assertAllocated();
+			DataBuffer dataBuffer = this.dataBufferFactory.allocateBuffer(newCapacity - this.capacity);
+			this.owned.add(dataBuffer);
+			append(dataBuffer.asByteBuffer(0, dataBuffer.capacity()));
+		}
+		return this;
+	}
+
+	@Override
+	public CompositeDataBuffer ensureCapacity(int length) {
+		int writable = writableByteCount();
+		if (length > writable) {
+			capacity(this.capacity + Math.max(length - writable, MINIMUM_WRITABLE_CAPACITY));
+		}
+		return this;
+	}
+
+	@Override
+	public int readPosition() {
+		return this.readPosition;
+	}
+
+	@Override
+	public CompositeDataBuffer readPosition(int readPosition) {
+		assertIndex(readPosition >= 0, "'readPosition' %d must be >= 0", readPosition);
+		assertIndex(readPosition <= this.writePosition, "'readPosition' %d must be <= %d",
+				readPosition, this.writePosition);
+		this.readPosition = readPosition;
+		return this;
+	}
+
+	@Override
+	public int writePosition() {
+		return this.writePosition;
+	}
+
+	@Override
+	public CompositeDataBuffer writePosition(int writePosition) {
+		assertIndex(writePosition >= this.readPosition, "'writePosition' %d must be >= %d",
+				writePosition, this.readPosition);
+		assertIndex(writePosition <= this.capacity, "'writePosition' %d must be <= %d",
+				writePosition, this.capacity);
+		this.writePosition = writePosition;
+		return this;
+	}
+
+	@Override
+	public byte getByte(int index) {
+		assertIndex(index >= 0, "index %d must be >= 0", index);
+		assertIndex(index <= this.writePosition - 1, "index %d must be <= %d", index, this.writePosition - 1);
+		int c = component(index);
+		return this.views[c].get(index - this.offsets[c]);
+	}
+
+	@Override
+	public byte read() {
+		assertIndex(this.readPosition <= this.writePosition - 1, "readPosition %d must be <= %d",
+				this.readPosition, this.writePosition - 1);
+		int c = component(this.readPosition);
+		byte b = this.views[c].get(this.readPosition - this.offsets[c]);
+		this.readPosition++;
+		return b;
+	}
+
+	@Override
+	public CompositeDataBuffer read(byte[] destination) {
+		Objects.requireNonNull(destination, "Byte array must not be null");
+		return read(destination, 0, destination.length);
+	}
+
+	@Override
+	public CompositeDataBuffer read(byte[] destination, int offset, int length) {
+		Objects.requireNonNull(destination, "Byte array must not be null");
+		assertIndex(this.readPosition <= this.writePosition - length,
+				"readPosition %d and length %d should be smaller than writePosition %d",
+				this.readPosition, length, this.writePosition);
+		copy(this.readPosition, destination, offset, length);
+		this.readPosition += length;
+		return this;
+	}
+
+	@Override
+	public CompositeDataBuffer write(byte b) {
+		ensureCapacity(1);
+		int c = component(this.writePosition);
+		this.views[c].put(this.writePosition - this.offsets[c], b);
+		this.writePosition++;
+		return this;
+	}
+
+	@Override
+	public CompositeDataBuffer write(byte[] source) {
+		Objects.requireNonNull(source, "Byte array must not be null");
+		return write(source, 0, source.length);
+	}
+
+	@Override
+	public CompositeDataBuffer write(byte[] source, int offset, int length) {
+		Objects.requireNonNull(source, "Byte array must not be null");
+		ensureCapacity(length);
+		int index = this.writePosition;
+		int end = index + length;
+		while (index < end) {
+			int c = component(index);
+			int n = Math.min(end, this.offsets[c + 1]) - index;
+			this.views[c].put(index - this.offsets[c], source, offset, n);
+			index += n;
+			offset += n;
+		}
+		this.writePosition = end;
+		return this;
+	}
+
+	/**
+	 * Copy the readable bytes of the given buffers to the writable space of this buffer. To add buffers
+	 * without copying, use {@link #addComponent(DataBuffer)}.
+	 */
+	@Override
+	public CompositeDataBuffer write(DataBuffer... buffers) {
+		if (buffers != null && buffers.length > 0) {
+			List<ByteBuffer> byteBuffers = new ArrayList<>();
+			for (DataBuffer buffer : buffers) {
+				if (buffer instanceof CompositeDataBuffer) {
+					byteBuffers.addAll(Arrays.asList(((CompositeDataBuffer) buffer).asByteBuffers()));
+				}
+				else {
+					byteBuffers.add(buffer.asByteBuffer());
+				}
+			}
+			write(byteBuffers.toArray(EMPTY_VIEWS));
+		}
+		return this;
+	}
+
+	@Override
+	public CompositeDataBuffer write(ByteBuffer... buffers) {
+		if (buffers != null && buffers.length > 0) {
+			ensureCapacity(Arrays.stream(buffers).mapToInt(ByteBuffer::remaining).sum());
+			for (ByteBuffer source : buffers) {
+				int index = this.writePosition;
+				int end = index + source.remaining();
+				while (index < end) {
+					int c = component(index);
+					int n = Math.min(end, this.offsets[c + 1]) - index;
+					this.views[c].put(index - this.offsets[c], source, source.position(), n);
+					source.position(source.position() + n);
+					index += n;
+				}
+				this.writePosition = end;
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * Return a slice that shares the memory and the reference count of this buffer.
+	 */
+	@Override
+	public CompositeDataBuffer slice(int index, int length) {
+		checkIndex(index, length);
+		return new CompositeDataBuffer(rootBuffer(), views(index, length), length);
+	}
+
+	@Override
+	public ByteBuffer asByteBuffer() {
+		return asByteBuffer(this.readPosition, readableByteCount());
+	}
+
+	/**
+	 * Return a contiguous view of a range of this buffer. If the range spans several components,
+	 * the components are consolidated into one buffer first. For a slice, the range is copied instead.
+	 */
+	@Override
+	public ByteBuffer asByteBuffer(int index, int length) {
+		checkIndex(index, length);
+		if (length == 0) {
+			return ByteBuffer.allocate(0);
+		}
+		int c = component(index);
+		if (index + length <= this.offsets[c + 1]) {
+			return this.views[c].slice(index - this.offsets[c], length);
+		}
+		if (this.parent != null) {
+			byte[] bytes = new byte[length];
+			copy(index, bytes, 0, length);
+			return ByteBuffer.wrap(bytes);
+		}
+		consolidate();
+		return this.views[0].slice(index, length);
+	}
+
+	/**
+	 * Return the readable bytes of this buffer as one byte buffer per component, e.g. for a
+	 * {@link java.nio.channels.GatheringByteChannel}. The byte buffers share the memory of this buffer,
+	 * but have their own positions.
+	 * @return the byte buffers
+	 */
+	public ByteBuffer[] asByteBuffers() {
+		return views(this.readPosition, readableByteCount());
+	}
+
+	@Override
+	public InputStream asInputStream() {
+		return new CompositeDataBufferInputStream();
+	}
+
+	@Override
+	public InputStream asInputStream(boolean releaseOnClose) {
+		if (!releaseOnClose) {
+			return asInputStream();
+		}
+		return new FilterInputStream(asInputStream()) {
+
+			private boolean closed;
+
+			@Override
+			public void close() throws IOException {
+				if (!closed) {
+					closed = true;
+					DataBufferUtil.release(CompositeDataBuffer.this);
+				}
+			}
+		};
+	}
+
+	@Override
+	public OutputStream asOutputStream() {
+		return new CompositeDataBufferOutputStream();
+	}
+
+	@Override
+	public String toString(int index, int length, Charset charset) {
+		checkIndex(index, length);
+		Objects.requireNonNull(charset, "Charset must not be null");
+		if (length == 0) {
+			return "";
+		}
+		int c = component(index);
+		ByteBuffer view = this.views[c];
+		if (index + length <= this.offsets[c + 1] && view.hasArray()) {
+			return new String(view.array(), view.arrayOffset() + index - this.offsets[c], length, charset);
+		}
+		byte[] bytes = new byte[length];
+		copy(index, bytes, 0, length);
+		return new String(bytes, charset);
+	}
+
+	@Override
+	public boolean isAllocated() {
+		return this.refCount.get() > 0;
+	}
+
+	@Override
+	public CompositeDataBuffer retain() {
+		int current;
+		do {
+			current = this.refCount.get();
+			if (current <= 0) {
+				throw new IllegalStateException("buffer is already released");
+			}
+		} while (!this.refCount.compareAndSet(current, current + 1));
+		return this;
+	}
+
+	@Override
+	public CompositeDataBuffer touch(Object hint) {
+		for (DataBuffer dataBuffer : rootBuffer().owned) {
+			if (dataBuffer instanceof PooledDataBuffer) {
+				((PooledDataBuffer) dataBuffer).touch(hint);
+			}
+		}
+		return this;
+	}
+
+	@Override
+	public boolean release() {
+		int current = this.refCount.decrementAndGet();
+		if (current > 0) {
+			return false;
+		}
+		if (current < 0) {
+			this.refCount.incrementAndGet();
+			throw new IllegalStateException("buffer is already released");
+		}
+		CompositeDataBuffer root = rootBuffer();
+		for (DataBuffer dataBuffer : root.owned) {
+			DataBufferUtil.release(dataBuffer);
+		}
+		root.owned.clear();
+		root.views = EMPTY_VIEWS;
+		root.offsets = new int[1];
+		root.count = 0;
+		root.capacity = 0;
+		root.readPosition = 0;
+		root.writePosition = 0;
+		root.lastComponent = 0;
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("CompositeDataBuffer (r: %d, w: %d, c: %d, components: %d)",
+				this.readPosition, this.writePosition, this.capacity, this.count);
+	}
+
+	/**
+	 * Return the index of the component that contains the given index. The last result is
+	 * remembered, since accesses are mostly sequential.
+	 */
+	private int component(int index) {
+		int c = this.lastComponent;
+		if (c < this.count && this.offsets[c] <= index && index < this.offsets[c + 1]) {
+			return c;
+		}
+		if (c + 1 < this.count && this.offsets[c + 1] <= index && index < this.offsets[c + 2]) {
+			this.lastComponent = c + 1;
+			return c + 1;
+		}
+		c = Arrays.binarySearch(this.offsets, 0, this.count + 1, index);
+		c = c >= 0 ? c : -c - 2;
+		while (c + 1 < this.count && this.offsets[c + 1] == index) {
+			c++;
+		}
+		c = Math.min(c, this.count - 1);
+		this.lastComponent = c;
+		return c;
+	}
+
+	private ByteBuffer[] views(int index, int length) {
+		if (length == 0) {
+			return EMPTY_VIEWS;
+		}
+		int end = index + length;
+		int first = component(index);
+		int last = component(end - 1);
+		ByteBuffer[] result = new ByteBuffer[last - first + 1];
+		for (int c = first; c <= last; c++) {
+			int from = Math.max(index, this.offsets[c]);
+			int to = Math.min(end, this.offsets[c + 1]);
+			result[c - first] = this.views[c].slice(from - this.offsets[c], to - from);
+		}
+		return result;
+	}
+
+	private void copy(int index, byte[] destination, int offset, int length) {
+		int end = index + length;
+		while (index < end) {
+			int c = component(index);
+			int n = Math.min(end, this.offsets[c + 1]) - index;
+			this.views[c].get(index - this.offsets[c], destination, offset, n);
+			index += n;
+			offset += n;
+		}
+	}
+
+	private void append(ByteBuffer view) {
+		if (this.count == this.views.length) {
+			this.views = Arrays.copyOf(this.views, this.count * 2);
+			this.offsets = Arrays.copyOf(this.offsets, this.count * 2 + 1);
+		}
+		ByteBuffer slice = view.slice();
+		this.views[this.count] = slice;
+		this.capacity += slice.remaining();
+		this.offsets[++this.count] = this.capacity;
+	}
+
+	/**
+	 * Discard the writable space after the written bytes, so a component can be added.
+	 */
+	private void trim() {
+		if (this.writePosition == this.capacity) {
+			return;
+		}
+		int c = this.writePosition == 0 ? 0 : component(this.writePosition - 1) + 1;
+		if (c > 0 && this.offsets[c] > this.writePosition) {
+			int length = this.writePosition - this.offsets[c - 1];
+			this.views[c - 1] = this.views[c - 1].slice(0, length);
+			this.offsets[c] = this.writePosition;
+		}
+		Arrays.fill(this.views, c, this.count, null);
+		this.count = c;
+		this.capacity = this.writePosition;
+		this.lastComponent = 0;
+	}
+
+	/**
+	 * Copy all components into one buffer. The previous components are kept until this buffer
+	 * is released, since slices may refer to them.
+	 */
+	private void consolidate() {
+		DataBuffer dataBuffer = this.dataBufferFactory.allocateBuffer(this.capacity);
+		ByteBuffer target = dataBuffer.asByteBuffer(0, this.capacity);
+		for (int c = 0; c < this.count; c++) {
+			ByteBuffer view = this.views[c];
+			target.put(this.offsets[c], view, 0, view.remaining());
+		}
+		this.owned.add(dataBuffer);
+		Arrays.fill(this.views, null);
+		this.views[0] = target;
+		this.offsets[1] = this.capacity;
+		this.count = 1;
+		this.lastComponent = 0;
+	}
+
+	private CompositeDataBuffer rootBuffer() {
+		return this.parent != null ? this.parent : this;
+	}
+
+	private void assertRoot() {
+		if (this.parent != null) {
+			throw new UnsupportedOperationException("Changing the components of a sliced buffer is not supported");
+		}
+	}
+
+	private void assertAllocated() {
+		if (!isAllocated()) {
+			throw new IllegalStateException("buffer is already released");
+		}
+	}
+
+	private void checkIndex(int index, int length) {
+		assertIndex(index >= 0, "index %d must be >= 0", index);
+		assertIndex(length >= 0, "length %d must be >= 0", length);
+		assertIndex(index <= this.capacity - length, "index %d and length %d must be <= %d",
+				index, length, this.capacity);
+	}
+
+	private void assertIndex(boolean expression, String format, Object... args) {
+		if (!expression) {
+			String message = String.format(format, args);
+			throw new IndexOutOfBoundsException(message);
+		}
+	}
+
+	private class CompositeDataBufferInputStream extends InputStream {
+
+		@Override
+		public int available() {
+			return readableByteCount();
+		}
+
+		@Override
+		public int read() {
+			return available() > 0 ? CompositeDataBuffer.this.read() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int off, int len) {
+			int available = available();
+			if (available > 0) {
+				len = Math.min(len, available);
+				CompositeDataBuffer.this.read(bytes, off, len);
+				return len;
+			}
+			else {
+				return -1;
+			}
+		}
+	}
+
+	private class CompositeDataBufferOutputStream extends OutputStream {
+
+		@Override
+		public void write(int b) {
+			CompositeDataBuffer.this.write((byte) b);
+		}
+
+		@Override
+		public void write(byte[] bytes, int off, int len) {
+			CompositeDataBuffer.this.write(bytes, off, len);
+		}
+	}
+}
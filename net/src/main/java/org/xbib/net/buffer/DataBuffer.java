@@ -58,6 +58,57 @@ public interface DataBuffer {
 	 */
 	int lastIndexOf(IntPredicate predicate, int fromIndex);
 
+	/**
+	 * Return the index of the first byte in this buffer that equals the given byte.
+	 * @param b the byte to search for
+	 * @param fromIndex the index to start the search from
+	 * @return the index of the first occurrence of {@code b};
+	 * or {@code -1} if there is none
+	 */
+	default int indexOf(byte b, int fromIndex) {
+		return indexOf(value -> value == b, fromIndex);
+	}
+
+	/**
+	 * Return the index of the first occurrence of the given byte sequence in this buffer.
+	 * @param needle the byte sequence to search for
+	 * @param fromIndex the index to start the search from
+	 * @return the index of the first byte of the first occurrence of {@code needle};
+	 * or {@code -1} if there is none
+	 */
+	default int indexOf(byte[] needle, int fromIndex) {
+		Objects.requireNonNull(needle, "Byte array must not be null");
+		int last = writePosition() - needle.length;
+		outer:
+		for (int i = Math.max(fromIndex, 0); i <= last; i++) {
+			for (int j = 0; j < needle.length; j++) {
+				if (getByte(i + j) != needle[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+
+	/**
+	 * Return the index of the first CRLF in this buffer, e.g. the end of a header line.
+	 * @param fromIndex the index to start the search from
+	 * @return the index of the CR of the first CRLF; or {@code -1} if there is none
+	 */
+	default int indexOfCrlf(int fromIndex) {
+		return indexOf(new byte[] { '\r', '\n' }, fromIndex);
+	}
+
+	/**
+	 * Return the index of the first CRLFCRLF in this buffer, e.g. the end of a header block.
+	 * @param fromIndex the index to start the search from
+	 * @return the index of the first CR of the first CRLFCRLF; or {@code -1} if there is none
+	 */
+	default int indexOfCrlfCrlf(int fromIndex) {
+		return indexOf(new byte[] { '\r', '\n', '\r', '\n' }, fromIndex);
+	}
+
 	/**
 	 * Return the number of bytes that can be read from this data buffer.
 	 * @return the readable byte count
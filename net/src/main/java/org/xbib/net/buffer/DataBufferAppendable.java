@@ -0,0 +1,54 @@
+package org.xbib.net.buffer;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * An {@code Appendable} that writes chars as bytes into a {@link DataBuffer}.
+ * US-ASCII chars, such as the output of a percent encoder, are written byte by byte,
+ * other chars are written in UTF-8.
+ */
+public final class DataBufferAppendable implements Appendable {
+
+	private final DataBuffer dataBuffer;
+
+	public DataBufferAppendable(DataBuffer dataBuffer) {
+		this.dataBuffer = dataBuffer;
+	}
+
+	/**
+	 * Return the data buffer that is written to.
+	 * @return the data buffer
+	 */
+	public DataBuffer getDataBuffer() {
+		return dataBuffer;
+	}
+
+	@Override
+	public Appendable append(CharSequence csq) {
+		return append(csq, 0, csq.length());
+	}
+
+	@Override
+	public Appendable append(CharSequence csq, int start, int end) {
+		this.dataBuffer.ensureCapacity(end - start);
+		for (int i = start; i < end; i++) {
+			char c = csq.charAt(i);
+			if (c >= 128) {
+				this.dataBuffer.write(csq.subSequence(i, end), StandardCharsets.UTF_8);
+				return this;
+			}
+			this.dataBuffer.write((byte) c);
+		}
+		return this;
+	}
+
+	@Override
+	public Appendable append(char c) {
+		if (c >= 128) {
+			this.dataBuffer.write(Character.toString(c), StandardCharsets.UTF_8);
+			return this;
+		}
+		this.dataBuffer.write((byte) c);
+		return this;
+	}
+}
@@ -2,7 +2,20 @@ package org.xbib.net.buffer;
 
 import java.io.IOException;
 import java.nio.ByteBuffer;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.FileChannel;
+import java.nio.channels.GatheringByteChannel;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.SelectableChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -69,4 +82,231 @@ public class DataBufferUtil {
             }
         }
     }
+
+    /**
+     * Map a file into read-only {@link FileRegionDataBuffer}s of at most {@code regionSize} bytes each,
+     * without reading the file. The file is closed when the last of the buffers is released.
+     * @param factory the factory of the buffers
+     * @param path the path of the file
+     * @param regionSize the maximum length of a buffer
+     * @return the buffers, in file order, or an empty list for an empty file
+     * @throws IOException if the file can not be opened
+     */
+    public static List<FileRegionDataBuffer> mapBuffers(DataBufferFactory factory,
+                                                        Path path,
+                                                        int regionSize) throws IOException {
+        return mapBuffers(factory, path, regionSize, false);
+    }
+
+    /**
+     * Map a file into read-only {@link FileRegionDataBuffer}s of at most {@code regionSize} bytes each,
+     * without reading the file. The file is closed when the last of the buffers is released.
+     * @param factory the factory of the buffers
+     * @param path the path of the file
+     * @param regionSize the maximum length of a buffer
+     * @param unmapOnRelease true to unmap a region right away when its buffer is released, see
+     * {@link FileRegionDataBuffer}
+     * @return the buffers, in file order, or an empty list for an empty file
+     * @throws IOException if the file can not be opened
+     */
+    public static List<FileRegionDataBuffer> mapBuffers(DataBufferFactory factory,
+                                                        Path path,
+                                                        int regionSize,
+                                                        boolean unmapOnRelease) throws IOException {
+        if (regionSize <= 0) {
+            throw new IllegalArgumentException("region size must be > 0");
+        }
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            int count = (int) ((size + regionSize - 1) / regionSize);
+            List<FileRegionDataBuffer> list = new ArrayList<>(count);
+            if (count == 0) {
+                channel.close();
+                return list;
+            }
+            FileRegionDataBuffer.FileHandle fileHandle = new FileRegionDataBuffer.FileHandle(channel, true,
+                    unmapOnRelease, count);
+            for (long position = 0L; position < size; position += regionSize) {
+                list.add(new FileRegionDataBuffer(factory, fileHandle, position,
+                        (int) Math.min(regionSize, size - position)));
+            }
+            return list;
+        }
+        catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Write the readable bytes of a buffer to a channel, and advance the read position of the buffer
+     * by the number of bytes written. File regions are transferred by the operating system, composite
+     * buffers are written with a gathering write, if the channel supports it.
+     * @param dataBuffer the buffer
+     * @param channel the channel
+     * @return the number of bytes written
+     * @throws IOException if writing fails
+     */
+    public static long transferTo(DataBuffer dataBuffer, WritableByteChannel channel) throws IOException {
+        if (dataBuffer instanceof FileRegionDataBuffer) {
+            return ((FileRegionDataBuffer) dataBuffer).transferTo(channel);
+        }
+        ByteBuffer[] byteBuffers = dataBuffer instanceof CompositeDataBuffer ?
+                ((CompositeDataBuffer) dataBuffer).asByteBuffers() : new ByteBuffer[] { dataBuffer.asByteBuffer() };
+        long written = 0L;
+        if (channel instanceof GatheringByteChannel) {
+            written = ((GatheringByteChannel) channel).write(byteBuffers);
+        }
+        else {
+            for (ByteBuffer byteBuffer : byteBuffers) {
+                written += channel.write(byteBuffer);
+                if (byteBuffer.hasRemaining()) {
+                    break;
+                }
+            }
+        }
+        dataBuffer.readPosition(dataBuffer.readPosition() + (int) written);
+        return written;
+    }
+
+    /**
+     * Return a publisher of the content of a blocking channel, in buffers of at most {@code chunkSize} bytes.
+     * A buffer is read only when the subscriber requests it, on the requesting thread. The publisher accepts
+     * one subscriber, and does not close the channel.
+     * @param channel the channel
+     * @param factory the factory of the buffers
+     * @param chunkSize the maximum number of bytes of a buffer
+     * @return the publisher
+     */
+    public static Flow.Publisher<DataBuffer> read(ReadableByteChannel channel,
+                                                  DataBufferFactory factory,
+                                                  int chunkSize) {
+        Objects.requireNonNull(channel, "ReadableByteChannel must not be null");
+        Objects.requireNonNull(factory, "DataBufferFactory must not be null");
+        assertBlocking(channel);
+        assertChunkSize(chunkSize);
+        return new ReadableByteChannelPublisher(channel, factory, chunkSize);
+    }
+
+    /**
+     * Return a publisher of the content of an asynchronous file channel, as by
+     * {@link #read(AsynchronousFileChannel, long, DataBufferFactory, int)} from position 0.
+     * @param channel the channel
+     * @param factory the factory of the buffers
+     * @param chunkSize the maximum number of bytes of a buffer
+     * @return the publisher
+     */
+    public static Flow.Publisher<DataBuffer> read(AsynchronousFileChannel channel,
+                                                  DataBufferFactory factory,
+                                                  int chunkSize) {
+        return read(channel, 0L, factory, chunkSize);
+    }
+
+    /**
+     * Return a publisher of the content of an asynchronous file channel from a position, in buffers of at most
+     * {@code chunkSize} bytes. Positional reads are issued one at a time while the subscriber has demand.
+     * Buffers read after cancellation are released. The publisher accepts one subscriber, and does not close
+     * the channel.
+     * @param channel the channel
+     * @param position the file position to start reading from
+     * @param factory the factory of the buffers
+     * @param chunkSize the maximum number of bytes of a buffer
+     * @return the publisher
+     */
+    public static Flow.Publisher<DataBuffer> read(AsynchronousFileChannel channel,
+                                                  long position,
+                                                  DataBufferFactory factory,
+                                                  int chunkSize) {
+        Objects.requireNonNull(channel, "AsynchronousFileChannel must not be null");
+        Objects.requireNonNull(factory, "DataBufferFactory must not be null");
+        if (position < 0L) {
+            throw new IllegalArgumentException("position must be >= 0");
+        }
+        assertChunkSize(chunkSize);
+        return new AsynchronousFileChannelPublisher(channel, position, factory, chunkSize);
+    }
+
+    /**
+     * Write the buffers of a publisher to a blocking channel. Buffers are requested one at a time, and
+     * released after they are written. The channel is not closed.
+     * @param source the publisher
+     * @param channel the channel
+     * @return a future of the number of bytes written, which completes exceptionally if the publisher
+     * or the channel fails; cancelling the future cancels the subscription
+     */
+    public static CompletableFuture<Long> write(Flow.Publisher<? extends DataBuffer> source,
+                                                WritableByteChannel channel) {
+        Objects.requireNonNull(source, "Publisher must not be null");
+        Objects.requireNonNull(channel, "WritableByteChannel must not be null");
+        assertBlocking(channel);
+        WritableByteChannelSubscriber subscriber = new WritableByteChannelSubscriber(channel);
+        source.subscribe(subscriber);
+        return subscriber.getFuture();
+    }
+
+    /**
+     * Write the buffers of a publisher to an asynchronous file channel, as by
+     * {@link #write(Flow.Publisher, AsynchronousFileChannel, long)} from position 0.
+     * @param source the publisher
+     * @param channel the channel
+     * @return a future of the number of bytes written
+     */
+    public static CompletableFuture<Long> write(Flow.Publisher<? extends DataBuffer> source,
+                                                AsynchronousFileChannel channel) {
+        return write(source, channel, 0L);
+    }
+
+    /**
+     * Write the buffers of a publisher to an asynchronous file channel from a position. Buffers are requested
+     * one at a time, written with positional writes, and released after they are written. The channel is
+     * not closed.
+     * @param source the publisher
+     * @param channel the channel
+     * @param position the file position to start writing at
+     * @return a future of the number of bytes written, which completes exceptionally if the publisher
+     * or the channel fails; cancelling the future cancels the subscription
+     */
+    public static CompletableFuture<Long> write(Flow.Publisher<? extends DataBuffer> source,
+                                                AsynchronousFileChannel channel,
+                                                long position) {
+        Objects.requireNonNull(source, "Publisher must not be null");
+        Objects.requireNonNull(channel, "AsynchronousFileChannel must not be null");
+        if (position < 0L) {
+            throw new IllegalArgumentException("position must be >= 0");
+        }
+        AsynchronousFileChannelSubscriber subscriber = new AsynchronousFileChannelSubscriber(channel, position);
+        source.subscribe(subscriber);
+        return subscriber.getFuture();
+    }
+
+    static void addDemand(AtomicLong demand, long n) {
+        demand.getAndUpdate(current -> current + n < 0L ? Long.MAX_VALUE : current + n);
+    }
+
+    static void rejectSubscriber(Flow.Subscriber<?> subscriber) {
+        subscriber.onSubscribe(new Flow.Subscription() {
+
+            @Override
+            public void request(long n) {
+            }
+
+            @Override
+            public void cancel() {
+            }
+        });
+        subscriber.onError(new IllegalStateException("the publisher accepts only one subscriber"));
+    }
+
+    private static void assertBlocking(Object channel) {
+        if (channel instanceof SelectableChannel && !((SelectableChannel) channel).isBlocking()) {
+            throw new IllegalArgumentException("channel must be in blocking mode");
+        }
+    }
+
+    private static void assertChunkSize(int chunkSize) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("chunk size must be > 0");
+        }
+    }
 }
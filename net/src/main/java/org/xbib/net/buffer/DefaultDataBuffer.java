@@ -8,6 +8,7 @@ import java.nio.charset.Charset;
 import java.util.Arrays;
 import java.util.Objects;
 import java.util.function.IntPredicate;
+import java.util.stream.Stream;
 
 /**
  * Default implementation of the {@link DataBuffer} interface that uses a
@@ -20,6 +21,8 @@ public class DefaultDataBuffer implements DataBuffer {
 
 	private static final int CAPACITY_THRESHOLD = 1024 * 1024 * 4;
 
+	private static final ByteBuffer EMPTY = ByteBuffer.allocate(0);
+
 	private final DefaultDataBufferFactory dataBufferFactory;
 
 	private ByteBuffer byteBuffer;
@@ -30,7 +33,7 @@ public class DefaultDataBuffer implements DataBuffer {
 
 	private int writePosition;
 
-	private DefaultDataBuffer(DefaultDataBufferFactory dataBufferFactory, ByteBuffer byteBuffer) {
+	protected DefaultDataBuffer(DefaultDataBufferFactory dataBufferFactory, ByteBuffer byteBuffer) {
 		Objects.requireNonNull(dataBufferFactory, "DefaultDataBufferFactory must not be null");
 		Objects.requireNonNull(byteBuffer, "ByteBuffer must not be null");
 		this.dataBufferFactory = dataBufferFactory;
@@ -66,10 +69,41 @@ public class DefaultDataBuffer implements DataBuffer {
 		this.capacity = byteBuffer.remaining();
 	}
 
-	private static ByteBuffer allocate(int capacity, boolean direct) {
+	/**
+	 * Allocate a byte buffer when the capacity of this buffer changes. The remaining bytes of the
+	 * returned byte buffer become the new capacity, so it may be larger than requested.
+	 * @param capacity the requested capacity
+	 * @param direct whether a direct byte buffer is requested
+	 * @return the byte buffer
+	 */
+	protected ByteBuffer allocate(int capacity, boolean direct) {
 		return (direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity));
 	}
 
+	/**
+	 * Called with the previous byte buffer after its content was copied to a byte buffer
+	 * of a new capacity. This implementation does nothing.
+	 * @param byteBuffer the previous byte buffer
+	 */
+	protected void deallocate(ByteBuffer byteBuffer) {
+	}
+
+	ByteBuffer getByteBuffer() {
+		return this.byteBuffer;
+	}
+
+	/**
+	 * Replace the byte buffer by an empty byte buffer and reset the positions.
+	 * @return the previous byte buffer
+	 */
+	ByteBuffer detachByteBuffer() {
+		ByteBuffer oldBuffer = this.byteBuffer;
+		setNativeBuffer(EMPTY);
+		this.readPosition = 0;
+		this.writePosition = 0;
+		return oldBuffer;
+	}
+
 	@Override
 	public DefaultDataBufferFactory factory() {
 		return this.dataBufferFactory;
@@ -106,6 +140,27 @@ public class DefaultDataBuffer implements DataBuffer {
 		return -1;
 	}
 
+	@Override
+	public int indexOf(byte b, int fromIndex) {
+		return ByteSearch.indexOf(this.byteBuffer, b, Math.max(fromIndex, 0), this.writePosition);
+	}
+
+	@Override
+	public int indexOf(byte[] needle, int fromIndex) {
+		Objects.requireNonNull(needle, "Byte array must not be null");
+		return ByteSearch.indexOf(this.byteBuffer, needle, Math.max(fromIndex, 0), this.writePosition);
+	}
+
+	@Override
+	public int indexOfCrlf(int fromIndex) {
+		return ByteSearch.indexOfCrlf(this.byteBuffer, Math.max(fromIndex, 0), this.writePosition);
+	}
+
+	@Override
+	public int indexOfCrlfCrlf(int fromIndex) {
+		return ByteSearch.indexOfCrlfCrlf(this.byteBuffer, Math.max(fromIndex, 0), this.writePosition);
+	}
+
 	@Override
 	public int readableByteCount() {
 		return this.writePosition - this.readPosition;
@@ -167,6 +222,7 @@ public class DefaultDataBuffer implements DataBuffer {
 			newBuffer.put(oldBuffer);
 			newBuffer.clear();
 			setNativeBuffer(newBuffer);
+			deallocate(oldBuffer);
 		}
 		else if (newCapacity < oldCapacity) {
 			ByteBuffer oldBuffer = this.byteBuffer;
@@ -186,6 +242,7 @@ public class DefaultDataBuffer implements DataBuffer {
 				writePosition(newCapacity);
 			}
 			setNativeBuffer(newBuffer);
+			deallocate(oldBuffer);
 		}
 		return this;
 	}
@@ -272,7 +329,11 @@ public class DefaultDataBuffer implements DataBuffer {
 	@Override
 	public DefaultDataBuffer write(DataBuffer... buffers) {
 		if (buffers != null && buffers.length > 0) {
-			write(Arrays.stream(buffers).map(DataBuffer::asByteBuffer).toArray(ByteBuffer[]::new));
+			write(Arrays.stream(buffers)
+					.flatMap(buffer -> buffer instanceof CompositeDataBuffer ?
+							Arrays.stream(((CompositeDataBuffer) buffer).asByteBuffers()) :
+							Stream.of(buffer.asByteBuffer()))
+					.toArray(ByteBuffer[]::new));
 		}
 		return this;
 	}
@@ -88,19 +88,18 @@ public class DefaultDataBufferFactory implements DataBufferFactory {
 	}
 
 	/**
-	 * This implementation creates a single {@link DefaultDataBuffer}
-	 * to contain the data in {@code dataBuffers}.
+	 * This implementation returns a single buffer as it is, and several buffers
+	 * as a {@link CompositeDataBuffer}, without copying the data in {@code dataBuffers}.
 	 */
 	@Override
-	public DefaultDataBuffer join(List<? extends DataBuffer> dataBuffers) {
+	public DataBuffer join(List<? extends DataBuffer> dataBuffers) {
 		if (dataBuffers == null || dataBuffers.isEmpty()) {
 			throw new IllegalArgumentException("DataBuffer List must not be empty");
 		}
-		int capacity = dataBuffers.stream().mapToInt(DataBuffer::readableByteCount).sum();
-		DefaultDataBuffer result = allocateBuffer(capacity);
-		dataBuffers.forEach(result::write);
-		dataBuffers.forEach(DataBufferUtil::release);
-		return result;
+		if (dataBuffers.size() == 1) {
+			return dataBuffers.get(0);
+		}
+		return new CompositeDataBuffer(this, dataBuffers);
 	}
 
 	@Override
@@ -0,0 +1,219 @@
+package org.xbib.net.buffer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A {@link DefaultDataBuffer} with a reference count, whose memory is taken from and returned to
+ * a {@link PooledDataBufferFactory}. Slices share the reference count of the buffer they are created from.
+ * Once a slice or a byte buffer view of a buffer was handed out, the memory that the buffer gives up when
+ * its capacity changes is left to the garbage collector instead of being returned to the pool, because
+ * the slice or the view may still refer to it.
+ */
+public class DefaultPooledDataBuffer extends DefaultDataBuffer implements PooledDataBuffer {
+
+	private static final Logger logger = Logger.getLogger(DefaultPooledDataBuffer.class.getName());
+
+	private static final Cleaner cleaner = Cleaner.create();
+
+	private final PooledDataBufferFactory pooledDataBufferFactory;
+
+	private final DefaultPooledDataBuffer parent;
+
+	private final AtomicInteger refCount;
+
+	private LeakRecord leakRecord;
+
+	/**
+	 * Set on the root buffer when a slice or a byte buffer view is created.
+	 */
+	private volatile boolean shared;
+
+	DefaultPooledDataBuffer(PooledDataBufferFactory dataBufferFactory, ByteBuffer byteBuffer) {
+		super(dataBufferFactory, byteBuffer);
+		this.pooledDataBufferFactory = dataBufferFactory;
+		this.parent = null;
+		this.refCount = new AtomicInteger(1);
+	}
+
+	private DefaultPooledDataBuffer(DefaultPooledDataBuffer parent, ByteBuffer byteBuffer, int length) {
+		super(parent.pooledDataBufferFactory, byteBuffer);
+		this.pooledDataBufferFactory = parent.pooledDataBufferFactory;
+		this.parent = parent;
+		this.refCount = parent.refCount;
+		writePosition(length);
+	}
+
+	@Override
+	public PooledDataBufferFactory factory() {
+		return this.pooledDataBufferFactory;
+	}
+
+	@Override
+	public boolean isAllocated() {
+		return this.refCount.get() > 0;
+	}
+
+	@Override
+	public DefaultPooledDataBuffer retain() {
+		int count;
+		do {
+			count = this.refCount.get();
+			if (count <= 0) {
+				throw new IllegalStateException("buffer is already released");
+			}
+		} while (!this.refCount.compareAndSet(count, count + 1));
+		return this;
+	}
+
+	@Override
+	public DefaultPooledDataBuffer touch(Object hint) {
+		LeakRecord record = root().leakRecord;
+		if (record != null) {
+			record.record(hint);
+		}
+		return this;
+	}
+
+	@Override
+	public boolean release() {
+		int count = this.refCount.decrementAndGet();
+		if (count > 0) {
+			return false;
+		}
+		if (count < 0) {
+			this.refCount.incrementAndGet();
+			throw new IllegalStateException("buffer is already released");
+		}
+		DefaultPooledDataBuffer root = root();
+		if (root.leakRecord != null) {
+			root.leakRecord.released = true;
+		}
+		this.pooledDataBufferFactory.release(root.detachByteBuffer());
+		return true;
+	}
+
+	/**
+	 * Return a slice that shares the content and the reference count of this buffer.
+	 */
+	@Override
+	public DefaultPooledDataBuffer slice(int index, int length) {
+		return new DefaultPooledDataBuffer(root(), asByteBuffer(index, length), length);
+	}
+
+	@Override
+	public ByteBuffer asByteBuffer(int index, int length) {
+		root().shared = true;
+		return super.asByteBuffer(index, length);
+	}
+
+	@Override
+	public DefaultPooledDataBuffer capacity(int newCapacity) {
+		if (this.parent != null) {
+			throw new UnsupportedOperationException("Changing the capacity of a sliced buffer is not supported");
+		}
+		super.capacity(newCapacity);
+		return this;
+	}
+
+	@Override
+	public InputStream asInputStream(boolean releaseOnClose) {
+		InputStream inputStream = asInputStream();
+		if (!releaseOnClose) {
+			return inputStream;
+		}
+		return new FilterInputStream(inputStream) {
+
+			private boolean closed;
+
+			@Override
+			public void close() throws IOException {
+				if (!closed) {
+					closed = true;
+					DataBufferUtil.release(DefaultPooledDataBuffer.this);
+				}
+			}
+		};
+	}
+
+	@Override
+	public String toString() {
+		return String.format("DefaultPooledDataBuffer (r: %d, w: %d, c: %d, refCount: %d)",
+				readPosition(), writePosition(), capacity(), this.refCount.get());
+	}
+
+	@Override
+	protected ByteBuffer allocate(int capacity, boolean direct) {
+		if (!isAllocated()) {
+			throw new IllegalStateException("buffer is already released");
+		}
+		return this.pooledDataBufferFactory.acquire(capacity);
+	}
+
+	@Override
+	protected void deallocate(ByteBuffer byteBuffer) {
+		if (!this.shared) {
+			this.pooledDataBufferFactory.release(byteBuffer);
+		}
+	}
+
+	/**
+	 * Track this buffer for leaks. The leak record must not refer to this buffer, so the buffer
+	 * can become unreachable.
+	 */
+	void track() {
+		LeakRecord record = new LeakRecord(toString());
+		this.leakRecord = record;
+		cleaner.register(this, record);
+	}
+
+	private DefaultPooledDataBuffer root() {
+		return this.parent != null ? this.parent : this;
+	}
+
+	/**
+	 * The allocation site and the last hints of a tracked buffer, reported if the buffer
+	 * is garbage collected before it is released.
+	 */
+	private static class LeakRecord implements Runnable {
+
+		private static final int MAXIMUM_HINTS = 8;
+
+		private final Throwable allocation;
+
+		private final ArrayDeque<String> hints;
+
+		private volatile boolean released;
+
+		LeakRecord(String description) {
+			this.allocation = new Throwable("allocation of " + description);
+			this.hints = new ArrayDeque<>();
+		}
+
+		synchronized void record(Object hint) {
+			if (hints.size() == MAXIMUM_HINTS) {
+				hints.removeFirst();
+			}
+			hints.addLast(String.valueOf(hint) + " on thread " + Thread.currentThread().getName());
+		}
+
+		@Override
+		public void run() {
+			if (!released) {
+				String recorded;
+				synchronized (this) {
+					recorded = String.join(", ", hints);
+				}
+				logger.log(Level.WARNING, "LEAK: pooled data buffer was garbage collected before it was released, " +
+						"hints: [" + recorded + "]", allocation);
+			}
+		}
+	}
+}
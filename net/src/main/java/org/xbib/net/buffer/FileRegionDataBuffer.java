@@ -0,0 +1,627 @@
+package org.xbib.net.buffer;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntPredicate;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A read-only {@link DataBuffer} of a region of a file.
+ *
+ * <p>The content is not copied to the heap. Reads, searches and views are served from a read-only memory mapping
+ * of the region, which is created on first use. {@link #transferTo(WritableByteChannel)} writes the readable bytes
+ * with {@link FileChannel#transferTo(long, long, WritableByteChannel)}, which lets the operating system send
+ * the file to a socket without mapping it at all. A region is at most {@link Integer#MAX_VALUE} bytes long,
+ * larger files are split into several regions by {@link DataBufferUtil#mapBuffers(DataBufferFactory,
+ * java.nio.file.Path, int)}.
+ *
+ * <p>The buffer is reference counted. Slices share the mapping and the reference count of the buffer they are
+ * created from. When the buffer is released, the mapping is dropped, and the file channel is closed if the buffer
+ * owns it. The buffer and its slices must not be used after release. By default, the mapping is unmapped by the
+ * garbage collector once it is no longer referenced, so byte buffers returned by {@link #asByteBuffer()} stay
+ * readable after release.
+ *
+ * <p>A buffer that is created with {@code unmapOnRelease} unmaps the mapping right away on release, with
+ * {@code sun.misc.Unsafe.invokeCleaner}, to free the address space without waiting for the garbage collector.
+ * Accessing an unmapped mapping crashes the JVM, so the mapping is only unmapped if no byte buffer view of it was
+ * ever returned by {@link #asByteBuffer(int, int)}, which is also used by {@link CompositeDataBuffer}, and
+ * the caller must make sure that no other thread reads the buffer when it is released.
+ *
+ * <p>This class is not thread-safe.
+ */
+public class FileRegionDataBuffer implements PooledDataBuffer {
+
+	private static final Logger logger = Logger.getLogger(FileRegionDataBuffer.class.getName());
+
+	private static final Unmapper unmapper = new Unmapper();
+
+	private final DataBufferFactory dataBufferFactory;
+
+	private final FileHandle fileHandle;
+
+	private final FileRegionDataBuffer parent;
+
+	private final AtomicInteger refCount;
+
+	private final long position;
+
+	private final int length;
+
+	private ByteBuffer mapping;
+
+	/**
+	 * True if a view of the mapping was returned, which may be used after release. Set on the root buffer.
+	 */
+	private volatile boolean viewsEscaped;
+
+	private ByteBuffer view;
+
+	private int readPosition;
+
+	private int writePosition;
+
+	/**
+	 * Create a buffer of a region of a file. The channel is not closed when the buffer is released.
+	 * @param dataBufferFactory the factory of this buffer
+	 * @param channel the file channel, which must be open for reading
+	 * @param position the position of the region in the file
+	 * @param length the length of the region
+	 */
+	public FileRegionDataBuffer(DataBufferFactory dataBufferFactory, FileChannel channel, long position, int length) {
+		this(dataBufferFactory, channel, position, length, false);
+	}
+
+	/**
+	 * Create a buffer of a region of a file. The channel is not closed when the buffer is released.
+	 * @param dataBufferFactory the factory of this buffer
+	 * @param channel the file channel, which must be open for reading
+	 * @param position the position of the region in the file
+	 * @param length the length of the region
+	 * @param unmapOnRelease true to unmap the region right away on release, if no byte buffer view of it was
+	 * returned, instead of leaving it to the garbage collector
+	 */
+	public FileRegionDataBuffer(DataBufferFactory dataBufferFactory, FileChannel channel, long position, int length,
+			boolean unmapOnRelease) {
+		this(dataBufferFactory, new FileHandle(Objects.requireNonNull(channel, "FileChannel must not be null"),
+				false, unmapOnRelease, 1), position, length);
+	}
+
+	FileRegionDataBuffer(DataBufferFactory dataBufferFactory, FileHandle fileHandle, long position, int length) {
+		if (position < 0L) {
+			throw new IllegalArgumentException("'position' " + position + " must be >= 0");
+		}
+		if (length < 0) {
+			throw new IllegalArgumentException("'length' " + length + " must be >= 0");
+		}
+		this.dataBufferFactory = Objects.requireNonNull(dataBufferFactory, "DataBufferFactory must not be null");
+		this.fileHandle = fileHandle;
+		this.parent = null;
+		this.refCount = new AtomicInteger(1);
+		this.position = position;
+		this.length = length;
+		this.writePosition = length;
+	}
+
+	private FileRegionDataBuffer(FileRegionDataBuffer parent, int index, int length) {
+		this.dataBufferFactory = parent.dataBufferFactory;
+		this.fileHandle = parent.fileHandle;
+		this.parent = parent;
+		this.refCount = parent.refCount;
+		this.position = parent.position + index;
+		this.length = length;
+		this.writePosition = length;
+	}
+
+	/**
+	 * Return the file channel of this buffer.
+	 * @return the file channel
+	 */
+	public FileChannel getChannel() {
+		return this.fileHandle.channel;
+	}
+
+	/**
+	 * Return the position of this buffer in the file.
+	 * @return the file position of index 0
+	 */
+	public long getFilePosition() {
+		return this.position;
+	}
+
+	/**
+	 * Write the readable bytes to a channel with {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+	 * and advance the read position by the number of bytes written. Fewer bytes than readable are written
+	 * if the channel is non-blocking and cannot take more bytes.
+	 * @param channel the target channel
+	 * @return the number of bytes written
+	 * @throws IOException if the transfer fails
+	 */
+	public long transferTo(WritableByteChannel channel) throws IOException {
+		Objects.requireNonNull(channel, "WritableByteChannel must not be null");
+		assertAllocated();
+		long transferred = 0L;
+		while (this.readPosition < this.writePosition) {
+			long n = this.fileHandle.channel.transferTo(this.position + this.readPosition,
+					this.writePosition - this.readPosition, channel);
+			if (n <= 0L) {
+				break;
+			}
+			this.readPosition += (int) n;
+			transferred += n;
+		}
+		return transferred;
+	}
+
+	@Override
+	public DataBufferFactory factory() {
+		return this.dataBufferFactory;
+	}
+
+	@Override
+	public int indexOf(IntPredicate predicate, int fromIndex) {
+		Objects.requireNonNull(predicate, "IntPredicate must not be null");
+		if (fromIndex < 0) {
+			fromIndex = 0;
+		}
+		else if (fromIndex >= this.writePosition) {
+			return -1;
+		}
+		ByteBuffer view = view();
+		for (int i = fromIndex; i < this.writePosition; i++) {
+			if (predicate.test(view.get(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int lastIndexOf(IntPredicate predicate, int fromIndex) {
+		Objects.requireNonNull(predicate, "IntPredicate must not be null");
+		int index = Math.min(fromIndex, this.writePosition - 1);
+		if (index < 0) {
+			return -1;
+		}
+		ByteBuffer view = view();
+		for (int i = index; i >= 0; i--) {
+			if (predicate.test(view.get(i))) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	@Override
+	public int indexOf(byte b, int fromIndex) {
+		return ByteSearch.indexOf(view(), b, Math.max(fromIndex, 0), this.writePosition);
+	}
+
+	@Override
+	public int indexOf(byte[] needle, int fromIndex) {
+		Objects.requireNonNull(needle, "Byte array must not be null");
+		return ByteSearch.indexOf(view(), needle, Math.max(fromIndex, 0), this.writePosition);
+	}
+
+	@Override
+	public int indexOfCrlf(int fromIndex) {
+		return ByteSearch.indexOfCrlf(view(), Math.max(fromIndex, 0), this.writePosition);
+	}
+
+	@Override
+	public int indexOfCrlfCrlf(int fromIndex) {
+		return ByteSearch.indexOfCrlfCrlf(view(), Math.max(fromIndex, 0), this.writePosition);
+	}
+
+	@Override
+	public int readableByteCount() {
+		return this.writePosition - this.readPosition;
+	}
+
+	@Override
+	public int writableByteCount() {
+		return this.length - this.writePosition;
+	}
+
+	@Override
+	public int capacity() {
+		return this.length;
+	}
+
+	/**
+	 * Changing the capacity of a file region is not supported.
+	 */
+	@Override
+	public FileRegionDataBuffer capacity(int capacity) {
+		if (capacity != this.length) {
+			throw new UnsupportedOperationException("Changing the capacity of a file region is not supported");
+		}
+		return this;
+	}
+
+	@Override
+	public int readPosition() {
+		return this.readPosition;
+	}
+
+	@Override
+	public FileRegionDataBuffer readPosition(int readPosition) {
+		assertIndex(readPosition >= 0, "'readPosition' %d must be >= 0", readPosition);
+		assertIndex(readPosition <= this.writePosition, "'readPosition' %d must be <= %d",
+				readPosition, this.writePosition);
+		this.readPosition = readPosition;
+		return this;
+	}
+
+	@Override
+	public int writePosition() {
+		return this.writePosition;
+	}
+
+	@Override
+	public FileRegionDataBuffer writePosition(int writePosition) {
+		assertIndex(writePosition >= this.readPosition, "'writePosition' %d must be >= %d",
+				writePosition, this.readPosition);
+		assertIndex(writePosition <= this.length, "'writePosition' %d must be <= %d",
+				writePosition, this.length);
+		this.writePosition = writePosition;
+		return this;
+	}
+
+	@Override
+	public byte getByte(int index) {
+		assertIndex(index >= 0, "index %d must be >= 0", index);
+		assertIndex(index <= this.writePosition - 1, "index %d must be <= %d", index, this.writePosition - 1);
+		return view().get(index);
+	}
+
+	@Override
+	public byte read() {
+		assertIndex(this.readPosition <= this.writePosition - 1, "readPosition %d must be <= %d",
+				this.readPosition, this.writePosition - 1);
+		return view().get(this.readPosition++);
+	}
+
+	@Override
+	public FileRegionDataBuffer read(byte[] destination) {
+		Objects.requireNonNull(destination, "Byte array must not be null");
+		return read(destination, 0, destination.length);
+	}
+
+	@Override
+	public FileRegionDataBuffer read(byte[] destination, int offset, int length) {
+		Objects.requireNonNull(destination, "Byte array must not be null");
+		assertIndex(this.readPosition <= this.writePosition - length,
+				"readPosition %d and length %d should be smaller than writePosition %d",
+				this.readPosition, length, this.writePosition);
+		view().get(this.readPosition, destination, offset, length);
+		this.readPosition += length;
+		return this;
+	}
+
+	@Override
+	public FileRegionDataBuffer write(byte b) {
+		throw readOnly();
+	}
+
+	@Override
+	public FileRegionDataBuffer write(byte[] source) {
+		throw readOnly();
+	}
+
+	@Override
+	public FileRegionDataBuffer write(byte[] source, int offset, int length) {
+		throw readOnly();
+	}
+
+	@Override
+	public FileRegionDataBuffer write(DataBuffer... buffers) {
+		throw readOnly();
+	}
+
+	@Override
+	public FileRegionDataBuffer write(ByteBuffer... buffers) {
+		throw readOnly();
+	}
+
+	@Override
+	public FileRegionDataBuffer write(CharSequence charSequence, Charset charset) {
+		throw readOnly();
+	}
+
+	/**
+	 * Return a slice that shares the mapping and the reference count of this buffer.
+	 */
+	@Override
+	public FileRegionDataBuffer slice(int index, int length) {
+		checkIndex(index, length);
+		return new FileRegionDataBuffer(root(), (int) (this.position - root().position) + index, length);
+	}
+
+	@Override
+	public ByteBuffer asByteBuffer() {
+		return asByteBuffer(this.readPosition, readableByteCount());
+	}
+
+	/**
+	 * Return a read-only view of the mapping of a range of this buffer. The view is not bound to the reference
+	 * count, so it must not be used after the buffer is released. Once a view is returned, the region is no longer
+	 * unmapped on release, even if the buffer was created with {@code unmapOnRelease}, but left to the garbage
+	 * collector, because reading an unmapped view would crash the JVM.
+	 */
+	@Override
+	public ByteBuffer asByteBuffer(int index, int length) {
+		checkIndex(index, length);
+		ByteBuffer view = view();
+		root().viewsEscaped = true;
+		return view.slice(index, length);
+	}
+
+	@Override
+	public InputStream asInputStream() {
+		return new FileRegionDataBufferInputStream();
+	}
+
+	@Override
+	public InputStream asInputStream(boolean releaseOnClose) {
+		if (!releaseOnClose) {
+			return asInputStream();
+		}
+		return new FilterInputStream(asInputStream()) {
+
+			private boolean closed;
+
+			@Override
+			public void close() throws IOException {
+				if (!closed) {
+					closed = true;
+					DataBufferUtil.release(FileRegionDataBuffer.this);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Writing to a file region is not supported.
+	 */
+	@Override
+	public OutputStream asOutputStream() {
+		throw readOnly();
+	}
+
+	@Override
+	public String toString(int index, int length, Charset charset) {
+		checkIndex(index, length);
+		Objects.requireNonNull(charset, "Charset must not be null");
+		if (length == 0) {
+			return "";
+		}
+		byte[] bytes = new byte[length];
+		view().get(index, bytes, 0, length);
+		return new String(bytes, charset);
+	}
+
+	@Override
+	public boolean isAllocated() {
+		return this.refCount.get() > 0;
+	}
+
+	@Override
+	public FileRegionDataBuffer retain() {
+		int current;
+		do {
+			current = this.refCount.get();
+			if (current <= 0) {
+				throw new IllegalStateException("buffer is already released");
+			}
+		} while (!this.refCount.compareAndSet(current, current + 1));
+		return this;
+	}
+
+	@Override
+	public FileRegionDataBuffer touch(Object hint) {
+		return this;
+	}
+
+	/**
+	 * Decrease the reference count, and drop the mapping once the count reaches zero. The mapping is unmapped
+	 * right away if the buffer was created with {@code unmapOnRelease} and no view of it was returned.
+	 * The file channel is closed if this buffer owns it and no other region of the file is left.
+	 */
+	@Override
+	public boolean release() {
+		int current = this.refCount.decrementAndGet();
+		if (current > 0) {
+			return false;
+		}
+		if (current < 0) {
+			this.refCount.incrementAndGet();
+			throw new IllegalStateException("buffer is already released");
+		}
+		FileRegionDataBuffer root = root();
+		ByteBuffer mapping;
+		synchronized (root) {
+			mapping = root.mapping;
+			root.mapping = null;
+		}
+		if (mapping != null && this.fileHandle.unmapOnRelease && !root.viewsEscaped) {
+			unmapper.unmap(mapping);
+		}
+		this.fileHandle.release();
+		return true;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("FileRegionDataBuffer (r: %d, w: %d, c: %d, position: %d)",
+				this.readPosition, this.writePosition, this.length, this.position);
+	}
+
+	/**
+	 * Return the view of the mapping for this buffer, mapping the region of the root buffer on first use.
+	 */
+	private ByteBuffer view() {
+		assertAllocated();
+		ByteBuffer view = this.view;
+		if (view == null) {
+			FileRegionDataBuffer root = root();
+			view = root.map().slice((int) (this.position - root.position), this.length);
+			this.view = view;
+		}
+		return view;
+	}
+
+	private synchronized ByteBuffer map() {
+		if (this.mapping == null) {
+			if (this.length == 0) {
+				this.mapping = ByteBuffer.allocate(0).asReadOnlyBuffer();
+			}
+			else {
+				try {
+					this.mapping = this.fileHandle.channel.map(FileChannel.MapMode.READ_ONLY, this.position, this.length);
+				}
+				catch (IOException e) {
+					throw new UncheckedIOException(e);
+				}
+			}
+		}
+		return this.mapping;
+	}
+
+	private FileRegionDataBuffer root() {
+		return this.parent != null ? this.parent : this;
+	}
+
+	private void assertAllocated() {
+		if (!isAllocated()) {
+			throw new IllegalStateException("buffer is already released");
+		}
+	}
+
+	private static UnsupportedOperationException readOnly() {
+		return new UnsupportedOperationException("A file region is read-only");
+	}
+
+	private void checkIndex(int index, int length) {
+		assertIndex(index >= 0, "index %d must be >= 0", index);
+		assertIndex(length >= 0, "length %d must be >= 0", length);
+		assertIndex(index <= this.length - length, "index %d and length %d must be <= %d",
+				index, length, this.length);
+	}
+
+	private void assertIndex(boolean expression, String format, Object... args) {
+		if (!expression) {
+			String message = String.format(format, args);
+			throw new IndexOutOfBoundsException(message);
+		}
+	}
+
+	private class FileRegionDataBufferInputStream extends InputStream {
+
+		@Override
+		public int available() {
+			return readableByteCount();
+		}
+
+		@Override
+		public int read() {
+			return available() > 0 ? FileRegionDataBuffer.this.read() & 0xFF : -1;
+		}
+
+		@Override
+		public int read(byte[] bytes, int off, int len) {
+			int available = available();
+			if (available > 0) {
+				len = Math.min(len, available);
+				FileRegionDataBuffer.this.read(bytes, off, len);
+				return len;
+			}
+			else {
+				return -1;
+			}
+		}
+	}
+
+	/**
+	 * A file channel shared by the regions of a file, which is closed after the last region is released
+	 * if it is owned by the regions.
+	 */
+	static final class FileHandle {
+
+		private final FileChannel channel;
+
+		private final boolean closeChannel;
+
+		private final boolean unmapOnRelease;
+
+		private final AtomicInteger regions;
+
+		FileHandle(FileChannel channel, boolean closeChannel, boolean unmapOnRelease, int regions) {
+			this.channel = channel;
+			this.closeChannel = closeChannel;
+			this.unmapOnRelease = unmapOnRelease;
+			this.regions = new AtomicInteger(regions);
+		}
+
+		void release() {
+			if (this.regions.decrementAndGet() == 0 && this.closeChannel) {
+				try {
+					this.channel.close();
+				}
+				catch (IOException e) {
+					logger.log(Level.WARNING, "failed to close file channel", e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Unmaps mappings with {@code sun.misc.Unsafe.invokeCleaner}, if it is available.
+	 */
+	private static final class Unmapper {
+
+		private final Object unsafe;
+
+		private final Method invokeCleaner;
+
+		Unmapper() {
+			Object unsafe = null;
+			Method invokeCleaner = null;
+			try {
+				Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+				Field field = unsafeClass.getDeclaredField("theUnsafe");
+				field.setAccessible(true);
+				unsafe = field.get(null);
+				invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+			}
+			catch (ReflectiveOperationException | RuntimeException e) {
+				logger.log(Level.FINE, "unmapping is not available, mappings are released by the garbage collector", e);
+			}
+			this.unsafe = unsafe;
+			this.invokeCleaner = invokeCleaner;
+		}
+
+		void unmap(ByteBuffer mapping) {
+			if (this.invokeCleaner != null && mapping.isDirect()) {
+				try {
+					this.invokeCleaner.invoke(this.unsafe, mapping);
+				}
+				catch (IllegalAccessException | InvocationTargetException e) {
+					logger.log(Level.FINE, "failed to unmap " + mapping, e);
+				}
+			}
+		}
+	}
+}
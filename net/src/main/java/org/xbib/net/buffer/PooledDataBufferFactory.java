@@ -0,0 +1,384 @@
+package org.xbib.net.buffer;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link DataBufferFactory} that allocates {@link PooledDataBuffer}s from a pool of byte buffers.
+ *
+ * <p>Capacities are rounded up to power-of-two size classes, from {@link #MINIMUM_POOLED_CAPACITY}
+ * up to a maximum pooled capacity. Released byte buffers are kept in a cache of the releasing thread,
+ * and move to a shared arena in batches when the thread cache of a size class is full. Allocations
+ * take from the thread cache first, then from the arena, and allocate new memory only if both are empty.
+ * Direct byte buffers are allocated in blocks of several byte buffers of a size class, to reduce the
+ * number of native allocations. Capacities above the maximum pooled capacity are allocated and
+ * dropped without pooling. The arena is bounded in bytes; byte buffers released beyond the bound
+ * are left to the garbage collector.
+ *
+ * <p>Buffers are reference counted, starting at one, and return their memory to the pool when the
+ * count reaches zero. Slices share the reference count of their buffer. A buffer must not be used after
+ * it is released, and slices become invalid when the capacity of their buffer changes.
+ *
+ * <p>Optionally, a sample of the buffers is tracked for leaks: if a tracked buffer is garbage
+ * collected without being released, a warning with the allocation site and the hints given to
+ * {@link PooledDataBuffer#touch(Object)} is logged.
+ *
+ * <p>This class is thread-safe.
+ */
+public class PooledDataBufferFactory extends DefaultDataBufferFactory {
+
+	/**
+	 * The smallest size class.
+	 */
+	public static final int MINIMUM_POOLED_CAPACITY = 64;
+
+	public static final int DEFAULT_MAXIMUM_POOLED_CAPACITY = 1024 * 1024;
+
+	public static final long DEFAULT_ARENA_CAPACITY = 64L * 1024 * 1024;
+
+	public static final int DEFAULT_THREAD_CACHE_SIZE = 32;
+
+	/**
+	 * The maximum number of bytes in the cache of a thread for one size class.
+	 */
+	private static final int THREAD_CACHE_BYTES_PER_SIZE_CLASS = 256 * 1024;
+
+	private static final int MINIMUM_SHIFT = Integer.numberOfTrailingZeros(MINIMUM_POOLED_CAPACITY);
+
+	private static final PooledDataBufferFactory INSTANCE = builder().build();
+
+	private final boolean preferDirect;
+
+	private final int maximumPooledCapacity;
+
+	private final long arenaCapacity;
+
+	private final int leakDetectionSamplingInterval;
+
+	private final int[] threadCacheCapacities;
+
+	private final List<ArrayDeque<ByteBuffer>> arena;
+
+	private final AtomicLong arenaByteCount;
+
+	private final AtomicLong allocationCount;
+
+	private final ThreadLocal<ThreadCache> threadCache;
+
+	private PooledDataBufferFactory(Builder builder) {
+		super(builder.preferDirect, builder.defaultInitialCapacity);
+		this.preferDirect = builder.preferDirect;
+		this.maximumPooledCapacity = Integer.highestOneBit(builder.maximumPooledCapacity - 1) << 1;
+		this.arenaCapacity = builder.arenaCapacity;
+		this.leakDetectionSamplingInterval = builder.leakDetectionSamplingInterval;
+		int sizeClasses = sizeClass(maximumPooledCapacity) + 1;
+		this.threadCacheCapacities = new int[sizeClasses];
+		this.arena = new ArrayList<>(sizeClasses);
+		for (int i = 0; i < sizeClasses; i++) {
+			threadCacheCapacities[i] = Math.min(builder.threadCacheSize,
+					Math.max(1, THREAD_CACHE_BYTES_PER_SIZE_CLASS >> (i + MINIMUM_SHIFT)));
+			arena.add(new ArrayDeque<>());
+		}
+		this.arenaByteCount = new AtomicLong();
+		this.allocationCount = new AtomicLong();
+		this.threadCache = ThreadLocal.withInitial(() -> new ThreadCache(threadCacheCapacities));
+	}
+
+	/**
+	 * Return a shared instance with default settings, which allocates heap buffers.
+	 * @return the shared instance
+	 */
+	public static PooledDataBufferFactory getInstance() {
+		return INSTANCE;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	@Override
+	public DefaultPooledDataBuffer allocateBuffer() {
+		return (DefaultPooledDataBuffer) super.allocateBuffer();
+	}
+
+	@Override
+	public DefaultPooledDataBuffer allocateBuffer(int initialCapacity) {
+		if (initialCapacity < 0) {
+			throw new IllegalArgumentException("'initialCapacity' must not be negative");
+		}
+		DefaultPooledDataBuffer dataBuffer =
+				new DefaultPooledDataBuffer(this, acquire(initialCapacity));
+		if (this.leakDetectionSamplingInterval > 0 &&
+				ThreadLocalRandom.current().nextInt(this.leakDetectionSamplingInterval) == 0) {
+			dataBuffer.track();
+		}
+		return dataBuffer;
+	}
+
+	/**
+	 * Return the number of bytes of the byte buffers in the shared arena.
+	 * @return the number of bytes
+	 */
+	public long getArenaByteCount() {
+		return this.arenaByteCount.get();
+	}
+
+	/**
+	 * Return the number of allocations of new memory, i.e. allocations that could not be served
+	 * from the pool.
+	 * @return the number of allocations
+	 */
+	public long getAllocationCount() {
+		return this.allocationCount.get();
+	}
+
+	@Override
+	public String toString() {
+		return "PooledDataBufferFactory (preferDirect=" + this.preferDirect +
+				", maximumPooledCapacity=" + this.maximumPooledCapacity + ")";
+	}
+
+	/**
+	 * Take a cleared byte buffer of at least the given capacity from the pool, or allocate one.
+	 */
+	ByteBuffer acquire(int capacity) {
+		if (capacity > this.maximumPooledCapacity) {
+			this.allocationCount.incrementAndGet();
+			return this.preferDirect ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+		}
+		int sizeClass = sizeClass(capacity);
+		ThreadCache cache = this.threadCache.get();
+		ByteBuffer byteBuffer = cache.poll(sizeClass);
+		if (byteBuffer == null) {
+			refill(cache, sizeClass);
+			byteBuffer = cache.poll(sizeClass);
+		}
+		byteBuffer.clear();
+		return byteBuffer;
+	}
+
+	/**
+	 * Return a byte buffer to the pool. Byte buffers that are not of a size class of this factory
+	 * are dropped.
+	 */
+	void release(ByteBuffer byteBuffer) {
+		int capacity = byteBuffer.capacity();
+		if (capacity > this.maximumPooledCapacity || capacity < MINIMUM_POOLED_CAPACITY ||
+				Integer.bitCount(capacity) != 1 || byteBuffer.isDirect() != this.preferDirect) {
+			return;
+		}
+		int sizeClass = sizeClass(capacity);
+		ThreadCache cache = this.threadCache.get();
+		if (!cache.offer(sizeClass, byteBuffer)) {
+			spill(cache, sizeClass);
+			cache.offer(sizeClass, byteBuffer);
+		}
+	}
+
+	/**
+	 * Move a batch of byte buffers from the arena to the thread cache, or allocate new byte buffers
+	 * if the arena is empty.
+	 */
+	private void refill(ThreadCache cache, int sizeClass) {
+		int batch = Math.max(1, this.threadCacheCapacities[sizeClass] / 2);
+		int size = MINIMUM_POOLED_CAPACITY << sizeClass;
+		ArrayDeque<ByteBuffer> deque = this.arena.get(sizeClass);
+		int count = 0;
+		synchronized (deque) {
+			ByteBuffer byteBuffer;
+			while (count < batch && (byteBuffer = deque.poll()) != null) {
+				cache.offer(sizeClass, byteBuffer);
+				count++;
+			}
+		}
+		if (count > 0) {
+			this.arenaByteCount.addAndGet(-(long) count * size);
+			return;
+		}
+		this.allocationCount.incrementAndGet();
+		if (this.preferDirect) {
+			ByteBuffer block = ByteBuffer.allocateDirect(size * batch);
+			for (int i = 0; i < batch; i++) {
+				cache.offer(sizeClass, block.slice(i * size, size));
+			}
+		}
+		else {
+			cache.offer(sizeClass, ByteBuffer.allocate(size));
+		}
+	}
+
+	/**
+	 * Move half of the byte buffers of a full thread cache to the arena, as long as the arena
+	 * has capacity. The remaining byte buffers are dropped.
+	 */
+	private void spill(ThreadCache cache, int sizeClass) {
+		int size = MINIMUM_POOLED_CAPACITY << sizeClass;
+		int count = Math.max(1, this.threadCacheCapacities[sizeClass] / 2);
+		ArrayDeque<ByteBuffer> deque = this.arena.get(sizeClass);
+		synchronized (deque) {
+			for (int i = 0; i < count; i++) {
+				ByteBuffer byteBuffer = cache.poll(sizeClass);
+				if (byteBuffer == null) {
+					break;
+				}
+				if (this.arenaByteCount.addAndGet(size) <= this.arenaCapacity) {
+					deque.push(byteBuffer);
+				}
+				else {
+					this.arenaByteCount.addAndGet(-size);
+				}
+			}
+		}
+	}
+
+	private static int sizeClass(int capacity) {
+		if (capacity <= MINIMUM_POOLED_CAPACITY) {
+			return 0;
+		}
+		return 32 - Integer.numberOfLeadingZeros(capacity - 1) - MINIMUM_SHIFT;
+	}
+
+	/**
+	 * The byte buffers cached by one thread, as a stack per size class.
+	 */
+	private static class ThreadCache {
+
+		private final ByteBuffer[][] stacks;
+
+		private final int[] sizes;
+
+		ThreadCache(int[] capacities) {
+			this.stacks = new ByteBuffer[capacities.length][];
+			for (int i = 0; i < capacities.length; i++) {
+				stacks[i] = new ByteBuffer[capacities[i]];
+			}
+			this.sizes = new int[capacities.length];
+		}
+
+		ByteBuffer poll(int sizeClass) {
+			int size = sizes[sizeClass];
+			if (size == 0) {
+				return null;
+			}
+			ByteBuffer[] stack = stacks[sizeClass];
+			ByteBuffer byteBuffer = stack[--size];
+			stack[size] = null;
+			sizes[sizeClass] = size;
+			return byteBuffer;
+		}
+
+		boolean offer(int sizeClass, ByteBuffer byteBuffer) {
+			ByteBuffer[] stack = stacks[sizeClass];
+			int size = sizes[sizeClass];
+			if (size == stack.length) {
+				return false;
+			}
+			stack[size] = byteBuffer;
+			sizes[sizeClass] = size + 1;
+			return true;
+		}
+	}
+
+	/**
+	 * A builder for {@link PooledDataBufferFactory}.
+	 */
+	public static class Builder {
+
+		private boolean preferDirect;
+
+		private int defaultInitialCapacity;
+
+		private int maximumPooledCapacity;
+
+		private long arenaCapacity;
+
+		private int threadCacheSize;
+
+		private int leakDetectionSamplingInterval;
+
+		private Builder() {
+			this.defaultInitialCapacity = DEFAULT_INITIAL_CAPACITY;
+			this.maximumPooledCapacity = DEFAULT_MAXIMUM_POOLED_CAPACITY;
+			this.arenaCapacity = DEFAULT_ARENA_CAPACITY;
+			this.threadCacheSize = DEFAULT_THREAD_CACHE_SIZE;
+		}
+
+		/**
+		 * Set whether direct buffers are allocated.
+		 * @param preferDirect {@code true} if direct buffers are to be preferred
+		 * @return this builder
+		 */
+		public Builder preferDirect(boolean preferDirect) {
+			this.preferDirect = preferDirect;
+			return this;
+		}
+
+		public Builder defaultInitialCapacity(int defaultInitialCapacity) {
+			this.defaultInitialCapacity = defaultInitialCapacity;
+			return this;
+		}
+
+		/**
+		 * Set the largest capacity that is pooled. It is rounded up to a power of two.
+		 * @param maximumPooledCapacity the maximum pooled capacity
+		 * @return this builder
+		 */
+		public Builder maximumPooledCapacity(int maximumPooledCapacity) {
+			if (maximumPooledCapacity < MINIMUM_POOLED_CAPACITY || maximumPooledCapacity > 1 << 30) {
+				throw new IllegalArgumentException("'maximumPooledCapacity' must be between " +
+						MINIMUM_POOLED_CAPACITY + " and " + (1 << 30));
+			}
+			this.maximumPooledCapacity = maximumPooledCapacity;
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of bytes kept in the shared arena.
+		 * @param arenaCapacity the arena capacity in bytes
+		 * @return this builder
+		 */
+		public Builder arenaCapacity(long arenaCapacity) {
+			if (arenaCapacity < 0L) {
+				throw new IllegalArgumentException("'arenaCapacity' must not be negative");
+			}
+			this.arenaCapacity = arenaCapacity;
+			return this;
+		}
+
+		/**
+		 * Set the maximum number of byte buffers per size class in the cache of a thread.
+		 * Larger size classes cache fewer byte buffers.
+		 * @param threadCacheSize the thread cache size
+		 * @return this builder
+		 */
+		public Builder threadCacheSize(int threadCacheSize) {
+			if (threadCacheSize <= 0) {
+				throw new IllegalArgumentException("'threadCacheSize' must be larger than 0");
+			}
+			this.threadCacheSize = threadCacheSize;
+			return this;
+		}
+
+		/**
+		 * Track one of every {@code leakDetectionSamplingInterval} buffers for leaks. With 1, every buffer
+		 * is tracked, with 0, leak detection is disabled, which is the default.
+		 * @param leakDetectionSamplingInterval the sampling interval
+		 * @return this builder
+		 */
+		public Builder leakDetectionSamplingInterval(int leakDetectionSamplingInterval) {
+			if (leakDetectionSamplingInterval < 0) {
+				throw new IllegalArgumentException("'leakDetectionSamplingInterval' must not be negative");
+			}
+			this.leakDetectionSamplingInterval = leakDetectionSamplingInterval;
+			return this;
+		}
+
+		public PooledDataBufferFactory build() {
+			return new PooledDataBufferFactory(this);
+		}
+	}
+}
@@ -0,0 +1,121 @@
+package org.xbib.net.buffer;
+
+import java.io.IOException;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A publisher of the content of a blocking {@link ReadableByteChannel}, in buffers of at most a chunk size.
+ * A chunk is read only when the subscriber has requested it, on the thread that requested it, so no more than
+ * the requested buffers are ever allocated. The publisher accepts one subscriber. The channel is not closed.
+ */
+final class ReadableByteChannelPublisher implements Flow.Publisher<DataBuffer> {
+
+	private final ReadableByteChannel channel;
+
+	private final DataBufferFactory dataBufferFactory;
+
+	private final int chunkSize;
+
+	private final AtomicBoolean subscribed;
+
+	ReadableByteChannelPublisher(ReadableByteChannel channel, DataBufferFactory dataBufferFactory, int chunkSize) {
+		this.channel = channel;
+		this.dataBufferFactory = dataBufferFactory;
+		this.chunkSize = chunkSize;
+		this.subscribed = new AtomicBoolean();
+	}
+
+	@Override
+	public void subscribe(Flow.Subscriber<? super DataBuffer> subscriber) {
+		if (!this.subscribed.compareAndSet(false, true)) {
+			DataBufferUtil.rejectSubscriber(subscriber);
+			return;
+		}
+		subscriber.onSubscribe(new ReadSubscription(subscriber));
+	}
+
+	private final class ReadSubscription implements Flow.Subscription {
+
+		private final Flow.Subscriber<? super DataBuffer> subscriber;
+
+		private final AtomicLong demand;
+
+		private final AtomicInteger work;
+
+		private volatile boolean done;
+
+		ReadSubscription(Flow.Subscriber<? super DataBuffer> subscriber) {
+			this.subscriber = subscriber;
+			this.demand = new AtomicLong();
+			this.work = new AtomicInteger();
+		}
+
+		@Override
+		public void request(long n) {
+			if (this.done) {
+				return;
+			}
+			if (n <= 0L) {
+				this.done = true;
+				this.subscriber.onError(new IllegalArgumentException("request " + n + " must be > 0"));
+				return;
+			}
+			DataBufferUtil.addDemand(this.demand, n);
+			drain();
+		}
+
+		@Override
+		public void cancel() {
+			this.done = true;
+		}
+
+		/**
+		 * Emit chunks while there is demand. Requests from within {@code onNext} only add demand,
+		 * so the loop runs on one thread at a time and does not recurse.
+		 */
+		private void drain() {
+			if (this.work.getAndIncrement() != 0) {
+				return;
+			}
+			do {
+				while (!this.done && this.demand.get() > 0L) {
+					DataBuffer dataBuffer = read();
+					if (dataBuffer == null) {
+						break;
+					}
+					this.demand.decrementAndGet();
+					this.subscriber.onNext(dataBuffer);
+				}
+			} while (this.work.decrementAndGet() != 0);
+		}
+
+		private DataBuffer read() {
+			DataBuffer dataBuffer = dataBufferFactory.allocateBuffer(chunkSize);
+			try {
+				int read = channel.read(dataBuffer.asByteBuffer(0, chunkSize));
+				if (read >= 0 && !this.done) {
+					dataBuffer.writePosition(read);
+					return dataBuffer;
+				}
+				DataBufferUtil.release(dataBuffer);
+				if (read < 0 && !this.done) {
+					this.done = true;
+					this.subscriber.onComplete();
+				}
+				return null;
+			}
+			catch (IOException | RuntimeException e) {
+				DataBufferUtil.release(dataBuffer);
+				if (!this.done) {
+					this.done = true;
+					this.subscriber.onError(e);
+				}
+				return null;
+			}
+		}
+	}
+}
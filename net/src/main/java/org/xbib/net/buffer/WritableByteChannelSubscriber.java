@@ -0,0 +1,78 @@
+package org.xbib.net.buffer;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Flow;
+
+/**
+ * A subscriber that writes buffers to a blocking {@link WritableByteChannel}. Buffers are requested one
+ * at a time, written fully with {@link DataBufferUtil#transferTo(DataBuffer, WritableByteChannel)} and released.
+ * The future completes with the number of bytes written; cancelling it cancels the subscription. The channel
+ * is not closed.
+ */
+final class WritableByteChannelSubscriber implements Flow.Subscriber<DataBuffer> {
+
+	private final WritableByteChannel channel;
+
+	private final CompletableFuture<Long> future;
+
+	private Flow.Subscription subscription;
+
+	private long written;
+
+	WritableByteChannelSubscriber(WritableByteChannel channel) {
+		this.channel = channel;
+		this.future = new CompletableFuture<>();
+	}
+
+	CompletableFuture<Long> getFuture() {
+		return this.future;
+	}
+
+	@Override
+	public void onSubscribe(Flow.Subscription subscription) {
+		if (this.subscription != null) {
+			subscription.cancel();
+			return;
+		}
+		this.subscription = subscription;
+		this.future.whenComplete((result, throwable) -> {
+			if (this.future.isCancelled()) {
+				subscription.cancel();
+			}
+		});
+		subscription.request(1L);
+	}
+
+	@Override
+	public void onNext(DataBuffer dataBuffer) {
+		try {
+			if (this.future.isDone()) {
+				return;
+			}
+			while (dataBuffer.readableByteCount() > 0) {
+				this.written += DataBufferUtil.transferTo(dataBuffer, this.channel);
+			}
+		}
+		catch (IOException | RuntimeException e) {
+			this.subscription.cancel();
+			this.future.completeExceptionally(e);
+			return;
+		}
+		finally {
+			DataBufferUtil.release(dataBuffer);
+		}
+		this.subscription.request(1L);
+	}
+
+	@Override
+	public void onError(Throwable throwable) {
+		this.future.completeExceptionally(throwable);
+	}
+
+	@Override
+	public void onComplete() {
+		this.future.complete(this.written);
+	}
+}
@@ -34,4 +34,9 @@ class HttpScheme extends AbstractScheme {
                 .fragment(url.getFragment())
                 .build();
     }
+
+    @Override
+    public boolean isNormalizingPath() {
+        return true;
+    }
 }
@@ -45,4 +45,13 @@ public interface Scheme {
     int getDefaultPort();
 
     URL normalize(URL url);
+
+    /**
+     * Whether {@link #normalize(URL)} removes the dot-segments of the path.
+     *
+     * @return true if the path is normalized
+     */
+    default boolean isNormalizingPath() {
+        return false;
+    }
 }
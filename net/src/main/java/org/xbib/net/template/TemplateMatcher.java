@@ -0,0 +1,505 @@
+package org.xbib.net.template;
+
+import org.xbib.net.PercentCodecs;
+import org.xbib.net.PercentDecoder;
+import org.xbib.net.template.expression.ExpressionType;
+import org.xbib.net.template.expression.TemplateExpression;
+import org.xbib.net.template.expression.TemplateLiteral;
+import org.xbib.net.template.expression.URITemplateExpression;
+import org.xbib.net.template.vars.Variables;
+import org.xbib.net.template.vars.specs.VariableSpec;
+import org.xbib.net.template.vars.values.ScalarValue;
+
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * The compiled matcher of a URI template, for extracting the variables of levels 1 to 3 of RFC 6570
+ * from an expanded template.
+ *
+ * The matcher is a sequence of steps. A literal step matches its literal. An expression step matches
+ * a span of the characters that the expansion of the expression may produce, which starts with the prefix
+ * of the expression type, or is empty if none of the variables are defined. The spans are tried longest
+ * first, and a shorter span is only tried if the rest of the template does not match. A span is split into
+ * the values of the variables, which are percent-decoded, as soon as it is chosen.
+ *
+ * A failed attempt to match the remaining steps from a position is remembered, so it is not tried again.
+ * Since the outcome only depends on the step, the position and the values of the variables that occur
+ * both before and after the step, the matcher takes at most quadratic time per step in the length of
+ * the input if no variable occurs more than once.
+ *
+ * A variable with a prefix modifier matches values up to the prefix length. A variable that occurs more
+ * than once must have the same value everywhere, where a value that reaches the prefix length only needs
+ * to be a prefix of the others. Explode modifiers, and therefore list and map values, are not supported.
+ */
+final class TemplateMatcher {
+
+    private final Step[] steps;
+
+    /**
+     * For each step, the names of the variables that occur both before the step and in the step or after it.
+     */
+    private final String[][] sharedNames;
+
+    private final String literalPrefix;
+
+    private TemplateMatcher(Step[] steps) {
+        this.steps = steps;
+        this.sharedNames = new String[steps.length + 1][];
+        Set<String> before = new HashSet<>();
+        for (int k = 0; k <= steps.length; k++) {
+            Set<String> shared = new LinkedHashSet<>();
+            for (int i = k; i < steps.length; i++) {
+                if (steps[i].names != null) {
+                    for (String name : steps[i].names) {
+                        if (before.contains(name)) {
+                            shared.add(name);
+                        }
+                    }
+                }
+            }
+            sharedNames[k] = shared.toArray(new String[0]);
+            if (k < steps.length && steps[k].names != null) {
+                before.addAll(Arrays.asList(steps[k].names));
+            }
+        }
+        this.literalPrefix = steps.length > 0 && steps[0].literal != null ? steps[0].literal : "";
+    }
+
+    static TemplateMatcher compile(List<URITemplateExpression> expressions) {
+        List<Step> steps = new ArrayList<>();
+        StringBuilder literal = new StringBuilder();
+        for (URITemplateExpression expression : expressions) {
+            if (expression instanceof TemplateLiteral) {
+                literal.append(((TemplateLiteral) expression).getLiteral());
+            } else if (expression instanceof TemplateExpression) {
+                if (literal.length() > 0) {
+                    steps.add(new Step(literal.toString()));
+                    literal.setLength(0);
+                }
+                TemplateExpression templateExpression = (TemplateExpression) expression;
+                for (VariableSpec variableSpec : templateExpression.getVariableSpecs()) {
+                    if (variableSpec.isExploded()) {
+                        throw new IllegalArgumentException("explode modifier is not supported for matching: " +
+                                variableSpec);
+                    }
+                }
+                steps.add(new Step(templateExpression.getExpressionType(), templateExpression.getVariableSpecs()));
+            } else {
+                throw new IllegalArgumentException("unknown expression: " + expression);
+            }
+        }
+        if (literal.length() > 0) {
+            steps.add(new Step(literal.toString()));
+        }
+        return new TemplateMatcher(steps.toArray(new Step[0]));
+    }
+
+    /**
+     * Get the literal the template starts with.
+     *
+     * @return the literal prefix, or the empty string if the template starts with an expression
+     */
+    String getLiteralPrefix() {
+        return literalPrefix;
+    }
+
+    /**
+     * Match an input.
+     *
+     * @param input the input
+     * @return the variables, or null if the input does not match
+     */
+    Variables match(CharSequence input) {
+        Matching matching = new Matching(input);
+        if (!matching.match(0, 0)) {
+            return null;
+        }
+        Variables.Builder builder = Variables.builder();
+        for (Map.Entry<String, Binding> entry : matching.bindings.entrySet()) {
+            builder.add(entry.getKey(), new ScalarValue(entry.getValue().value));
+        }
+        return builder.build();
+    }
+
+    /**
+     * The state of matching one input: the values bound so far, a journal to undo bindings when
+     * backtracking, and the failed attempts.
+     */
+    private final class Matching {
+
+        private final CharSequence input;
+
+        private final int length;
+
+        private final PercentDecoder decoder;
+
+        private final Map<String, Binding> bindings;
+
+        private final List<String> journalNames;
+
+        private final List<Binding> journalBindings;
+
+        private final BitSet failed;
+
+        private final Set<List<Object>> failedWithBindings;
+
+        Matching(CharSequence input) {
+            this.input = input;
+            this.length = input.length();
+            this.decoder = PercentCodecs.get(StandardCharsets.UTF_8, CodingErrorAction.REPORT).getDecoder();
+            this.bindings = new LinkedHashMap<>();
+            this.journalNames = new ArrayList<>();
+            this.journalBindings = new ArrayList<>();
+            this.failed = new BitSet();
+            this.failedWithBindings = new HashSet<>();
+        }
+
+        /**
+         * Match the steps from the given step on against the input from the given position.
+         */
+        boolean match(int index, int pos) {
+            if (index == steps.length) {
+                return pos == length;
+            }
+            if (hasFailed(index, pos)) {
+                return false;
+            }
+            if (tryMatch(index, pos)) {
+                return true;
+            }
+            if (sharedNames[index].length == 0) {
+                failed.set(index * (length + 1) + pos);
+            } else {
+                failedWithBindings.add(key(index, pos));
+            }
+            return false;
+        }
+
+        private boolean tryMatch(int index, int pos) {
+            Step step = steps[index];
+            if (step.literal != null) {
+                return regionMatches(input, pos, step.literal) && match(index + 1, pos + step.literal.length());
+            }
+            int max = pos;
+            if (pos < length && (step.prefix == 0 || input.charAt(pos) == step.prefix)) {
+                max = step.prefix == 0 ? pos : pos + 1;
+                while (max < length && step.allows(input.charAt(max))) {
+                    max++;
+                }
+            }
+            if (index == steps.length - 1) {
+                // the last step must match the rest of the input
+                return (max == length || pos == length) && tryEnd(step, index, pos, length);
+            }
+            Step next = steps[index + 1];
+            for (int end = max; end >= pos; end--) {
+                if (next.literal != null && (end == length || input.charAt(end) != next.literal.charAt(0))) {
+                    continue;
+                }
+                if (sharedNames[index + 1].length == 0 && failed.get((index + 1) * (length + 1) + end)) {
+                    continue;
+                }
+                if (tryEnd(step, index, pos, end)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Bind the span of an expression step, and match the remaining steps. The bindings are undone
+         * if the remaining steps do not match.
+         */
+        private boolean tryEnd(Step step, int index, int pos, int end) {
+            int mark = journalNames.size();
+            try {
+                if ((end == pos || step.assign(this, pos + (step.prefix == 0 ? 0 : 1), end)) &&
+                        match(index + 1, end)) {
+                    return true;
+                }
+            } catch (CharacterCodingException e) {
+                // not a valid expansion
+            }
+            undo(mark);
+            return false;
+        }
+
+        /**
+         * Bind a value to a variable, or check it against the value bound before.
+         *
+         * @return true if the value is consistent with the value bound before
+         */
+        boolean bind(String name, String value, int prefixLength) {
+            int count = value.codePointCount(0, value.length());
+            if (prefixLength != -1 && count > prefixLength) {
+                return false;
+            }
+            Binding binding = new Binding(value, prefixLength == -1 || count < prefixLength);
+            Binding previous = bindings.get(name);
+            if (previous != null) {
+                binding = previous.merge(binding);
+                if (binding == null) {
+                    return false;
+                }
+                if (binding.equals(previous)) {
+                    return true;
+                }
+            }
+            journalNames.add(name);
+            journalBindings.add(previous);
+            bindings.put(name, binding);
+            return true;
+        }
+
+        private void undo(int mark) {
+            for (int i = journalNames.size() - 1; i >= mark; i--) {
+                Binding previous = journalBindings.remove(i);
+                String name = journalNames.remove(i);
+                if (previous == null) {
+                    bindings.remove(name);
+                } else {
+                    bindings.put(name, previous);
+                }
+            }
+        }
+
+        private boolean hasFailed(int index, int pos) {
+            return sharedNames[index].length == 0 ? failed.get(index * (length + 1) + pos) :
+                    failedWithBindings.contains(key(index, pos));
+        }
+
+        private List<Object> key(int index, int pos) {
+            String[] names = sharedNames[index];
+            Object[] key = new Object[names.length + 2];
+            key[0] = index;
+            key[1] = pos;
+            for (int i = 0; i < names.length; i++) {
+                key[i + 2] = bindings.get(names[i]);
+            }
+            return Arrays.asList(key);
+        }
+    }
+
+    /**
+     * The value bound to a variable. A value is incomplete if it was matched by a variable with a prefix
+     * modifier and reaches the prefix length, so the value of the variable may be longer.
+     */
+    private static final class Binding {
+
+        private final String value;
+
+        private final boolean complete;
+
+        Binding(String value, boolean complete) {
+            this.value = value;
+            this.complete = complete;
+        }
+
+        /**
+         * Merge with another binding of the same variable.
+         *
+         * @return the merged binding, or null if the bindings are inconsistent
+         */
+        Binding merge(Binding other) {
+            if (complete && other.complete) {
+                return value.equals(other.value) ? this : null;
+            }
+            if (complete) {
+                return value.startsWith(other.value) ? this : null;
+            }
+            if (other.complete) {
+                return other.value.startsWith(value) ? other : null;
+            }
+            if (value.length() >= other.value.length()) {
+                return value.startsWith(other.value) ? this : null;
+            }
+            return other.value.startsWith(value) ? other : null;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Binding)) {
+                return false;
+            }
+            Binding binding = (Binding) o;
+            return complete == binding.complete && value.equals(binding.value);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * value.hashCode() + (complete ? 1 : 0);
+        }
+    }
+
+    private static boolean regionMatches(CharSequence input, int pos, String literal) {
+        if (input.length() - pos < literal.length()) {
+            return false;
+        }
+        for (int i = 0; i < literal.length(); i++) {
+            if (input.charAt(pos + i) != literal.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A literal, or an expression with the set of characters its expansion may contain after the prefix.
+     */
+    private static final class Step {
+
+        private static final String UNRESERVED = "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-._~%";
+
+        private static final String RESERVED = ":/?#[]@!$&'()*+,;=";
+
+        private final String literal;
+
+        private final String[] names;
+
+        private final int[] prefixLengths;
+
+        private final char prefix;
+
+        private final char separator;
+
+        private final boolean named;
+
+        /**
+         * True if values may contain the separator, because the separator is not percent-encoded.
+         */
+        private final boolean separatorInValues;
+
+        private final long low;
+
+        private final long high;
+
+        Step(String literal) {
+            this.literal = literal;
+            this.names = null;
+            this.prefixLengths = null;
+            this.prefix = 0;
+            this.separator = 0;
+            this.named = false;
+            this.separatorInValues = false;
+            this.low = 0L;
+            this.high = 0L;
+        }
+
+        Step(ExpressionType expressionType, List<VariableSpec> variableSpecs) {
+            this.literal = null;
+            this.names = new String[variableSpecs.size()];
+            this.prefixLengths = new int[variableSpecs.size()];
+            for (int i = 0; i < names.length; i++) {
+                names[i] = variableSpecs.get(i).getName();
+                prefixLengths[i] = variableSpecs.get(i).getPrefixLength();
+            }
+            this.prefix = expressionType.getPrefix().isEmpty() ? 0 : expressionType.getPrefix().charAt(0);
+            this.separator = expressionType.getSeparator();
+            this.named = expressionType.isNamed();
+            boolean reserved = expressionType == ExpressionType.RESERVED || expressionType == ExpressionType.FRAGMENT;
+            this.separatorInValues = reserved || UNRESERVED.indexOf(separator) >= 0;
+            String chars = UNRESERVED + separator + (named ? "=" : "") + (reserved ? RESERVED : "");
+            long low = 0L;
+            long high = 0L;
+            for (int i = 0; i < chars.length(); i++) {
+                char c = chars.charAt(i);
+                if (c < 64) {
+                    low |= 1L << c;
+                } else {
+                    high |= 1L << (c - 64);
+                }
+            }
+            this.low = low;
+            this.high = high;
+        }
+
+        boolean allows(char c) {
+            return c < 64 ? (low & (1L << c)) != 0 : c < 128 && (high & (1L << (c - 64))) != 0;
+        }
+
+        /**
+         * Split the span of this expression into the values of its variables, and bind them.
+         *
+         * @return true if the span is a valid expansion of this expression
+         */
+        boolean assign(Matching matching, int start, int end) throws CharacterCodingException {
+            CharSequence input = matching.input;
+            PercentDecoder decoder = matching.decoder;
+            if (named) {
+                boolean[] assigned = new boolean[names.length];
+                int next = 0;
+                int itemStart = start;
+                while (itemStart <= end) {
+                    int itemEnd = indexOf(input, separator, itemStart, end);
+                    int eq = indexOf(input, '=', itemStart, itemEnd);
+                    int i = indexOfName(input, itemStart, eq, next, assigned);
+                    if (i < 0) {
+                        return false;
+                    }
+                    assigned[i] = true;
+                    next = i + 1;
+                    String value = eq < itemEnd ? decoder.decode(input.subSequence(eq + 1, itemEnd)) : "";
+                    if (!matching.bind(names[i], value, prefixLengths[i])) {
+                        return false;
+                    }
+                    itemStart = itemEnd + 1;
+                }
+                return true;
+            }
+            int itemStart = start;
+            for (int i = 0; i < names.length; i++) {
+                int itemEnd = i < names.length - 1 ? indexOf(input, separator, itemStart, end) : end;
+                CharSequence item = input.subSequence(itemStart, itemEnd);
+                if (!separatorInValues && indexOf(item, separator, 0, item.length()) < item.length()) {
+                    return false;
+                }
+                if (!matching.bind(names[i], decoder.decode(item), prefixLengths[i])) {
+                    return false;
+                }
+                if (itemEnd == end) {
+                    break;
+                }
+                itemStart = itemEnd + 1;
+            }
+            return true;
+        }
+
+        /**
+         * Find the variable of a named item. A name may occur more than once in an expression, so the
+         * occurrences that are not assigned yet are searched, starting after the variable of the previous item,
+         * which is the next variable of an expansion in order.
+         */
+        private int indexOfName(CharSequence input, int start, int end, int next, boolean[] assigned) {
+            for (int n = 0; n < names.length; n++) {
+                int i = (next + n) % names.length;
+                if (!assigned[i] && names[i].length() == end - start && regionMatches(input, start, names[i])) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        private static int indexOf(CharSequence input, char c, int start, int end) {
+            for (int i = start; i < end; i++) {
+                if (input.charAt(i) == c) {
+                    return i;
+                }
+            }
+            return end;
+        }
+    }
+}
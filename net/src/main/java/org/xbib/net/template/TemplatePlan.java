@@ -0,0 +1,311 @@
+package org.xbib.net.template;
+
+import org.xbib.net.PercentCodecs;
+import org.xbib.net.PercentEncoder;
+import org.xbib.net.template.expression.ExpressionType;
+import org.xbib.net.template.expression.TemplateExpression;
+import org.xbib.net.template.expression.TemplateLiteral;
+import org.xbib.net.template.expression.URITemplateExpression;
+import org.xbib.net.template.vars.Variables;
+import org.xbib.net.template.vars.specs.VariableSpec;
+import org.xbib.net.template.vars.values.VariableValue;
+
+import java.io.IOException;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The compiled form of a URI template, a flat array of instructions, for expanding a template
+ * into an {@link Appendable} without intermediate strings or lists.
+ *
+ * An instruction is either a literal, or a variable reference with the prefix, the separator and the
+ * naming rules of its expression. The expansion follows the renderers in
+ * {@link org.xbib.net.template.render}: the rendered items of the variables of an expression are
+ * joined by the separator, and the prefix is written before the first item.
+ * Values are percent-encoded by the encoders of the current thread.
+ */
+final class TemplatePlan {
+
+    private final Instruction[] instructions;
+
+    private TemplatePlan(Instruction[] instructions) {
+        this.instructions = instructions;
+    }
+
+    static TemplatePlan compile(List<URITemplateExpression> expressions) {
+        int count = 0;
+        for (URITemplateExpression expression : expressions) {
+            count += expression instanceof TemplateExpression ?
+                    ((TemplateExpression) expression).getVariableSpecs().size() : 1;
+        }
+        Instruction[] instructions = new Instruction[count];
+        int i = 0;
+        for (URITemplateExpression expression : expressions) {
+            if (expression instanceof TemplateExpression) {
+                TemplateExpression templateExpression = (TemplateExpression) expression;
+                boolean first = true;
+                for (VariableSpec variableSpec : templateExpression.getVariableSpecs()) {
+                    instructions[i++] = new Instruction(templateExpression.getExpressionType(), variableSpec, first);
+                    first = false;
+                }
+            } else if (expression instanceof TemplateLiteral) {
+                instructions[i++] = new Instruction(((TemplateLiteral) expression).getLiteral());
+            } else {
+                throw new IllegalArgumentException("unknown expression: " + expression);
+            }
+        }
+        return new TemplatePlan(instructions);
+    }
+
+    void expand(Variables vars, Appendable appendable) throws IOException {
+        PercentCodecs codecs = PercentCodecs.get(StandardCharsets.UTF_8, CodingErrorAction.REPORT);
+        Output output = new Output(appendable);
+        for (Instruction instruction : instructions) {
+            if (instruction.literal != null) {
+                appendable.append(instruction.literal);
+                continue;
+            }
+            if (instruction.first) {
+                output.begin(instruction);
+            }
+            VariableValue value = vars.get(instruction.name);
+            if (value == null) {
+                continue;
+            }
+            output.encoder = instruction.reserved ? codecs.getQueryEncoder() : codecs.getUnreservedEncoder();
+            switch (value.getType()) {
+                case SCALAR:
+                    expandScalar(instruction, value.getScalarValue(), output);
+                    break;
+                case ARRAY:
+                    checkPrefix(instruction);
+                    expandList(instruction, value, output);
+                    break;
+                case MAP:
+                    checkPrefix(instruction);
+                    expandMap(instruction, value, output);
+                    break;
+                default:
+                    break;
+            }
+        }
+    }
+
+    private static void expandScalar(Instruction instruction, String value, Output output) throws IOException {
+        output.item();
+        if (value == null) {
+            return;
+        }
+        if (instruction.named) {
+            output.append(instruction.name);
+            if (value.isEmpty()) {
+                output.append(instruction.ifEmpty);
+                return;
+            }
+            output.append('=');
+        }
+        if (instruction.prefixLength == -1 || value.codePointCount(0, value.length()) <= instruction.prefixLength) {
+            output.encode(value);
+        } else {
+            output.encode(value.substring(0, value.offsetByCodePoints(0, instruction.prefixLength)));
+        }
+    }
+
+    private static void expandList(Instruction instruction, VariableValue value, Output output) throws IOException {
+        List<String> list = value.getListValue();
+        if (instruction.exploded) {
+            for (String element : list) {
+                output.item();
+                if (instruction.named) {
+                    output.append(instruction.name);
+                    if (element.isEmpty()) {
+                        output.append(instruction.ifEmpty);
+                        continue;
+                    }
+                    output.append('=');
+                }
+                output.encode(element);
+            }
+            return;
+        }
+        if (!beginNormal(instruction, value, output)) {
+            return;
+        }
+        boolean first = true;
+        for (String element : list) {
+            if (!first) {
+                output.append(',');
+            }
+            output.encode(element);
+            first = false;
+        }
+    }
+
+    private static void expandMap(Instruction instruction, VariableValue value, Output output) throws IOException {
+        Map<String, String> map = value.getMapValue();
+        if (instruction.exploded) {
+            for (Map.Entry<String, String> entry : map.entrySet()) {
+                output.item();
+                output.encode(entry.getKey());
+                if (instruction.named && entry.getValue().isEmpty()) {
+                    output.append(instruction.ifEmpty);
+                } else {
+                    output.append('=');
+                    output.encode(entry.getValue());
+                }
+            }
+            return;
+        }
+        if (!beginNormal(instruction, value, output)) {
+            return;
+        }
+        Iterator<Map.Entry<String, String>> it = map.entrySet().iterator();
+        while (it.hasNext()) {
+            Map.Entry<String, String> entry = it.next();
+            output.encode(entry.getKey());
+            output.append(',');
+            output.encode(entry.getValue());
+            if (it.hasNext()) {
+                output.append(',');
+            }
+        }
+    }
+
+    /**
+     * Begin the single item of a list or map that is not exploded.
+     *
+     * @return true if the elements of the value must be written
+     */
+    private static boolean beginNormal(Instruction instruction, VariableValue value, Output output)
+            throws IOException {
+        if (instruction.named) {
+            output.item();
+            output.append(instruction.name);
+            if (value.isEmpty()) {
+                output.append(instruction.ifEmpty);
+                return false;
+            }
+            output.append('=');
+            return true;
+        }
+        if (value.isEmpty()) {
+            return false;
+        }
+        output.item();
+        return true;
+    }
+
+    private static void checkPrefix(Instruction instruction) {
+        if (instruction.prefixLength != -1) {
+            throw new IllegalArgumentException("incompatible var spec value");
+        }
+    }
+
+    /**
+     * A literal, or a variable reference of an expression.
+     */
+    private static final class Instruction {
+
+        private final String literal;
+
+        private final String name;
+
+        private final int prefixLength;
+
+        private final boolean exploded;
+
+        private final boolean first;
+
+        private final String prefix;
+
+        private final char separator;
+
+        private final boolean named;
+
+        private final String ifEmpty;
+
+        private final boolean reserved;
+
+        Instruction(String literal) {
+            this.literal = literal;
+            this.name = null;
+            this.prefixLength = -1;
+            this.exploded = false;
+            this.first = false;
+            this.prefix = null;
+            this.separator = 0;
+            this.named = false;
+            this.ifEmpty = null;
+            this.reserved = false;
+        }
+
+        Instruction(ExpressionType expressionType, VariableSpec variableSpec, boolean first) {
+            this.literal = null;
+            this.name = variableSpec.getName();
+            this.prefixLength = variableSpec.getPrefixLength();
+            this.exploded = variableSpec.isExploded();
+            this.first = first;
+            this.prefix = expressionType.getPrefix();
+            this.separator = expressionType.getSeparator();
+            this.named = expressionType.isNamed();
+            this.ifEmpty = expressionType.getIfEmpty();
+            this.reserved = expressionType == ExpressionType.RESERVED || expressionType == ExpressionType.FRAGMENT;
+        }
+    }
+
+    /**
+     * The output of an expansion, which writes the prefix before the first item of an expression
+     * and the separator between items.
+     */
+    private static final class Output {
+
+        private final Appendable appendable;
+
+        private PercentEncoder encoder;
+
+        private String prefix;
+
+        private char separator;
+
+        private boolean empty;
+
+        Output(Appendable appendable) {
+            this.appendable = appendable;
+        }
+
+        void begin(Instruction instruction) {
+            this.prefix = instruction.prefix;
+            this.separator = instruction.separator;
+            this.empty = true;
+        }
+
+        void item() throws IOException {
+            if (empty) {
+                appendable.append(prefix);
+                empty = false;
+            } else {
+                appendable.append(separator);
+            }
+        }
+
+        void append(String s) throws IOException {
+            appendable.append(s);
+        }
+
+        void append(char c) throws IOException {
+            appendable.append(c);
+        }
+
+        void encode(String s) throws IOException {
+            try {
+                encoder.encode(s, appendable);
+            } catch (CharacterCodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+    }
+}
@@ -1,21 +1,65 @@
 package org.xbib.net.template;
 
 import org.xbib.net.URL;
+import org.xbib.net.buffer.DataBuffer;
+import org.xbib.net.buffer.DataBufferAppendable;
 import org.xbib.net.template.expression.URITemplateExpression;
 import org.xbib.net.template.parse.URITemplateParser;
 import org.xbib.net.template.vars.Variables;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * URI templates.
+ *
+ * A template is parsed and compiled once, when it is created. Templates are immutable and thread-safe,
+ * so a template should be reused, for example by obtaining it with {@link #of(String)}.
  */
 public class URITemplate {
 
+    /**
+     * The maximum number of templates in the template cache.
+     */
+    public static final int MAXIMUM_CACHE_SIZE = 4096;
+
+    private static final Map<String, URITemplate> CACHE = new ConcurrentHashMap<>();
+
     private final List<URITemplateExpression> expressions;
 
+    private final TemplatePlan plan;
+
+    private volatile TemplateMatcher matcher;
+
     public URITemplate(String input) {
         this.expressions = URITemplateParser.parse(input);
+        this.plan = TemplatePlan.compile(expressions);
+    }
+
+    /**
+     * Get the template for a template text from the template cache, or create the template.
+     * If the cache is full, the template is created but not cached.
+     *
+     * @param input the template text
+     * @return the template
+     */
+    public static URITemplate of(String input) {
+        URITemplate template = CACHE.get(input);
+        if (template != null) {
+            return template;
+        }
+        template = new URITemplate(input);
+        if (CACHE.size() < MAXIMUM_CACHE_SIZE) {
+            URITemplate existing = CACHE.putIfAbsent(input, template);
+            if (existing != null) {
+                return existing;
+            }
+        }
+        return template;
     }
 
     public List<URITemplateExpression> expressions() {
@@ -30,12 +74,64 @@ public class URITemplate {
      */
     public String toString(Variables vars) {
         StringBuilder sb = new StringBuilder();
-        for (URITemplateExpression expression : expressions) {
-            sb.append(expression.expand(vars));
+        try {
+            plan.expand(vars, sb);
+        } catch (IOException e) {
+            // never thrown by a string builder
+            throw new UncheckedIOException(e);
         }
         return sb.toString();
     }
 
+    /**
+     * Expand this template into an appendable given a set of variables.
+     *
+     * @param vars the variables
+     * @param appendable the appendable
+     * @throws IOException if the appendable fails
+     */
+    public void expand(Variables vars, Appendable appendable) throws IOException {
+        plan.expand(vars, appendable);
+    }
+
+    /**
+     * Expand this template into a data buffer given a set of variables. Literals that are not US-ASCII
+     * are written in UTF-8.
+     *
+     * @param vars the variables
+     * @param dataBuffer the data buffer
+     */
+    public void expand(Variables vars, DataBuffer dataBuffer) {
+        try {
+            plan.expand(vars, new DataBufferAppendable(dataBuffer));
+        } catch (IOException e) {
+            // never thrown by a data buffer appendable
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Match an input against this template, and extract the variables from the input.
+     * Expressions of levels 1 to 3 of RFC 6570 can be matched. The values of the variables are
+     * percent-decoded scalar values. A variable that is not defined in the input is not in the variables.
+     *
+     * @param input the input, for example a path with a query
+     * @return the variables, or an empty optional if the input does not match
+     * @throws IllegalArgumentException if the template contains an explode modifier
+     */
+    public Optional<Variables> match(CharSequence input) {
+        return Optional.ofNullable(matcher().match(input));
+    }
+
+    TemplateMatcher matcher() {
+        TemplateMatcher templateMatcher = matcher;
+        if (templateMatcher == null) {
+            templateMatcher = TemplateMatcher.compile(expressions);
+            matcher = templateMatcher;
+        }
+        return templateMatcher;
+    }
+
     /**
      * Expand this template to a URL given a set of variables.
      *
@@ -0,0 +1,196 @@
+package org.xbib.net.template;
+
+import org.xbib.net.template.vars.Variables;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+
+/**
+ * A set of URI templates for matching an input against many templates.
+ *
+ * The templates are indexed by a trie of the literals they start with. An input is only matched against
+ * the templates whose literal prefix is a prefix of the input, so the cost of a match depends on the
+ * length of the input and on the number of templates that share a prefix with it, not on the size of the set.
+ * Templates with a longer literal prefix are tried first, templates with the same literal prefix in the
+ * order they were added. The first template that matches wins.
+ *
+ * A set is immutable and thread-safe.
+ */
+public final class URITemplateSet {
+
+    private final Node root;
+
+    private final int size;
+
+    private URITemplateSet(Builder builder) {
+        this.root = new Node();
+        for (URITemplate template : builder.templates) {
+            root.add(template, template.matcher());
+        }
+        this.size = builder.templates.size();
+    }
+
+    /**
+     * Create a new builder for this class.
+     *
+     * @return a {@link Builder}
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Get the number of templates in this set.
+     *
+     * @return the number of templates
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Match an input against the templates of this set.
+     *
+     * @param input the input
+     * @return the match of the first matching template, or an empty optional if no template matches
+     */
+    public Optional<Match> match(CharSequence input) {
+        Node[] candidates = new Node[8];
+        int count = 0;
+        Node node = root;
+        int i = 0;
+        while (node != null) {
+            if (node.templates.length > 0) {
+                if (count == candidates.length) {
+                    candidates = Arrays.copyOf(candidates, count * 2);
+                }
+                candidates[count++] = node;
+            }
+            node = i < input.length() ? node.child(input.charAt(i++)) : null;
+        }
+        while (count > 0) {
+            Node candidate = candidates[--count];
+            for (int j = 0; j < candidate.templates.length; j++) {
+                Variables variables = candidate.matchers[j].match(input);
+                if (variables != null) {
+                    return Optional.of(new Match(candidate.templates[j], variables));
+                }
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * The template that matched an input, and the variables extracted from the input.
+     */
+    public static final class Match {
+
+        private final URITemplate template;
+
+        private final Variables variables;
+
+        private Match(URITemplate template, Variables variables) {
+            this.template = template;
+            this.variables = variables;
+        }
+
+        public URITemplate getTemplate() {
+            return template;
+        }
+
+        public Variables getVariables() {
+            return variables;
+        }
+    }
+
+    /**
+     * A builder for template sets.
+     */
+    public static class Builder {
+
+        private final List<URITemplate> templates = new ArrayList<>();
+
+        Builder() {
+        }
+
+        /**
+         * Add a template.
+         *
+         * @param template the template text
+         * @return this
+         * @throws IllegalArgumentException if the template is not valid, or contains an explode modifier
+         */
+        public Builder add(String template) {
+            return add(URITemplate.of(template));
+        }
+
+        /**
+         * Add a template.
+         *
+         * @param template the template
+         * @return this
+         * @throws IllegalArgumentException if the template contains an explode modifier
+         */
+        public Builder add(URITemplate template) {
+            template.matcher();
+            templates.add(template);
+            return this;
+        }
+
+        public URITemplateSet build() {
+            return new URITemplateSet(this);
+        }
+    }
+
+    /**
+     * A trie node, with the children sorted by their keys, and the templates whose literal prefix ends here.
+     */
+    private static final class Node {
+
+        private char[] keys = new char[0];
+
+        private Node[] children = new Node[0];
+
+        private URITemplate[] templates = new URITemplate[0];
+
+        private TemplateMatcher[] matchers = new TemplateMatcher[0];
+
+        Node child(char c) {
+            int i = Arrays.binarySearch(keys, c);
+            return i >= 0 ? children[i] : null;
+        }
+
+        void add(URITemplate template, TemplateMatcher matcher) {
+            String prefix = matcher.getLiteralPrefix();
+            Node node = this;
+            for (int i = 0; i < prefix.length(); i++) {
+                char c = prefix.charAt(i);
+                int pos = Arrays.binarySearch(node.keys, c);
+                if (pos < 0) {
+                    pos = -pos - 1;
+                    node.keys = insert(node.keys, pos, c);
+                    Node[] children = new Node[node.children.length + 1];
+                    System.arraycopy(node.children, 0, children, 0, pos);
+                    System.arraycopy(node.children, pos, children, pos + 1, node.children.length - pos);
+                    children[pos] = new Node();
+                    node.children = children;
+                }
+                node = node.children[pos];
+            }
+            node.templates = Arrays.copyOf(node.templates, node.templates.length + 1);
+            node.templates[node.templates.length - 1] = template;
+            node.matchers = Arrays.copyOf(node.matchers, node.matchers.length + 1);
+            node.matchers[node.matchers.length - 1] = matcher;
+        }
+
+        private static char[] insert(char[] keys, int pos, char c) {
+            char[] newKeys = new char[keys.length + 1];
+            System.arraycopy(keys, 0, newKeys, 0, pos);
+            System.arraycopy(keys, pos, newKeys, pos + 1, keys.length - pos);
+            newKeys[pos] = c;
+            return newKeys;
+        }
+    }
+}
@@ -28,6 +28,14 @@ public class TemplateExpression implements URITemplateExpression {
         }
     }
 
+    public ExpressionType getExpressionType() {
+        return expressionType;
+    }
+
+    public List<VariableSpec> getVariableSpecs() {
+        return variableSpecs;
+    }
+
     @Override
     public String expand(Variables vars)  {
         List<String> expansions = new ArrayList<>();
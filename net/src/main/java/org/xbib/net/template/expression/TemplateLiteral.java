@@ -14,6 +14,10 @@ class TemplateLiteral implements URITemplateExpression {
         this.literal = literal;
     }
 
+    public String getLiteral() {
+        return literal;
+    }
+
     @Override
     public String expand(Variables vars) {
         return literal;
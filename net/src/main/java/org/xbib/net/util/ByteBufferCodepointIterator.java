@@ -0,0 +1,180 @@
+package org.xbib.net.util;
+
+import java.nio.ByteBuffer;
+import java.util.NoSuchElementException;
+
+/**
+ * A codepoint iterator that decodes UTF-8 from the bytes of a {@link ByteBuffer} while iterating.
+ *
+ * Positions and the limit are byte indices of the buffer. The buffer position and limit are not changed.
+ * Malformed input, i.e. invalid lead bytes, missing continuation bytes, overlong forms, encoded surrogates and
+ * codepoints above U+10FFFF, is reported by an {@link InvalidCharacterException} with the offending byte.
+ */
+class ByteBufferCodepointIterator extends CodepointIterator {
+
+    private final ByteBuffer buffer;
+
+    private int pendingLowSurrogate;
+
+    private int decodedLength;
+
+    ByteBufferCodepointIterator(ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.limit());
+    }
+
+    ByteBufferCodepointIterator(ByteBuffer buffer, int n, int e) {
+        this.buffer = buffer;
+        this.position = n;
+        this.limit = Math.min(buffer.limit(), e);
+        this.pendingLowSurrogate = -1;
+    }
+
+    /**
+     * Get the next char. A supplementary codepoint is returned as a high surrogate, followed by the low
+     * surrogate on the next call.
+     * @return char
+     */
+    @Override
+    protected char get() {
+        if (pendingLowSurrogate >= 0) {
+            char c = (char) pendingLowSurrogate;
+            pendingLowSurrogate = -1;
+            return c;
+        }
+        int cp = decode(position);
+        position += decodedLength;
+        if (CharUtils.isSupplementary(cp)) {
+            pendingLowSurrogate = CharUtils.getLowSurrogate(cp);
+            return CharUtils.getHighSurrogate(cp);
+        }
+        return (char) cp;
+    }
+
+    /**
+     * Get the char of the codepoint starting at the specified byte index. For a supplementary codepoint,
+     * this is the high surrogate.
+     * @param index index
+     * @return char
+     */
+    @Override
+    protected char get(int index) {
+        if (index < 0 || index >= limit) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        int cp = decode(index);
+        return CharUtils.isSupplementary(cp) ? CharUtils.getHighSurrogate(cp) : (char) cp;
+    }
+
+    @Override
+    public boolean hasNext() {
+        return pendingLowSurrogate >= 0 || position < limit;
+    }
+
+    @Override
+    public char[] nextChars() {
+        if (!hasNext()) {
+            return null;
+        }
+        if (pendingLowSurrogate >= 0) {
+            return new char[]{get()};
+        }
+        return Character.toChars(nextCodepoint());
+    }
+
+    @Override
+    public char[] peekChars() {
+        return position < limit ? Character.toChars(decode(position)) : null;
+    }
+
+    @Override
+    public Codepoint next() {
+        if (position >= limit) {
+            throw new NoSuchElementException();
+        }
+        return new Codepoint(nextCodepoint());
+    }
+
+    @Override
+    public Codepoint peek() {
+        return peek(position);
+    }
+
+    @Override
+    public Codepoint peek(int index) {
+        return index < 0 || index >= limit ? null : new Codepoint(decode(index));
+    }
+
+    @Override
+    public void position(int n) {
+        super.position(n);
+        pendingLowSurrogate = -1;
+    }
+
+    @Override
+    public boolean isLow(int index) {
+        if (index < 0 || index > limit()) {
+            throw new ArrayIndexOutOfBoundsException(index);
+        }
+        return false;
+    }
+
+    /**
+     * Return the next codepoint value, without creating a {@link Codepoint}.
+     * @return the codepoint value
+     */
+    int nextCodepoint() {
+        int cp = decode(position);
+        position += decodedLength;
+        return cp;
+    }
+
+    /**
+     * Decode the codepoint starting at the given byte index and store the number of its bytes in
+     * {@code decodedLength}.
+     */
+    private int decode(int index) {
+        int b0 = buffer.get(index);
+        if (b0 >= 0) {
+            decodedLength = 1;
+            return b0;
+        }
+        b0 &= 0xff;
+        if (b0 < 0xc2) {
+            throw new InvalidCharacterException(b0);
+        }
+        if (b0 < 0xe0) {
+            decodedLength = 2;
+            return ((b0 & 0x1f) << 6) | continuation(index + 1, 0x80, 0xbf);
+        }
+        if (b0 < 0xf0) {
+            int b1 = continuation(index + 1, b0 == 0xe0 ? 0xa0 : 0x80, b0 == 0xed ? 0x9f : 0xbf);
+            int b2 = continuation(index + 2, 0x80, 0xbf);
+            decodedLength = 3;
+            return ((b0 & 0x0f) << 12) | (b1 << 6) | b2;
+        }
+        if (b0 < 0xf5) {
+            int b1 = continuation(index + 1, b0 == 0xf0 ? 0x90 : 0x80, b0 == 0xf4 ? 0x8f : 0xbf);
+            int b2 = continuation(index + 2, 0x80, 0xbf);
+            int b3 = continuation(index + 3, 0x80, 0xbf);
+            decodedLength = 4;
+            return ((b0 & 0x07) << 18) | (b1 << 12) | (b2 << 6) | b3;
+        }
+        throw new InvalidCharacterException(b0);
+    }
+
+    /**
+     * Return the six payload bits of a continuation byte, which must be in the given range. The range is
+     * narrower than 0x80..0xbf after lead bytes that would otherwise allow overlong forms, surrogates, or
+     * codepoints above U+10FFFF.
+     */
+    private int continuation(int index, int low, int high) {
+        if (index >= limit) {
+            throw new InvalidCharacterException(buffer.get(index - 1) & 0xff);
+        }
+        int b = buffer.get(index) & 0xff;
+        if (b < low || b > high) {
+            throw new InvalidCharacterException(b);
+        }
+        return b & 0x3f;
+    }
+}
@@ -85,19 +85,19 @@ public abstract class CharMatcher {
         }
 
         @Override
-        int indexIn(CharSequence sequence) {
+        public int indexIn(CharSequence sequence) {
             return sequence.length() == 0 ? -1 : 0;
         }
 
         @Override
-        int indexIn(CharSequence sequence, int start) {
+        public int indexIn(CharSequence sequence, int start) {
             int length = sequence.length();
             checkPositionIndex(start, length);
             return start == length ? -1 : start;
         }
 
         @Override
-        int lastIndexIn(CharSequence sequence) {
+        public int lastIndexIn(CharSequence sequence) {
             return sequence.length() - 1;
         }
 
@@ -126,7 +126,7 @@ public abstract class CharMatcher {
         }
 
         @Override
-        int countIn(CharSequence sequence) {
+        public int countIn(CharSequence sequence) {
             return sequence.length();
         }
 
@@ -154,20 +154,20 @@ public abstract class CharMatcher {
         }
 
         @Override
-        int indexIn(CharSequence sequence) {
+        public int indexIn(CharSequence sequence) {
             checkNotNull(sequence);
             return -1;
         }
 
         @Override
-        int indexIn(CharSequence sequence, int start) {
+        public int indexIn(CharSequence sequence, int start) {
             int length = sequence.length();
             checkPositionIndex(start, length);
             return -1;
         }
 
         @Override
-        int lastIndexIn(CharSequence sequence) {
+        public int lastIndexIn(CharSequence sequence) {
             checkNotNull(sequence);
             return -1;
         }
@@ -194,7 +194,7 @@ public abstract class CharMatcher {
         }
 
         @Override
-        int countIn(CharSequence sequence) {
+        public int countIn(CharSequence sequence) {
             checkNotNull(sequence);
             return 0;
         }
@@ -367,6 +367,13 @@ public abstract class CharMatcher {
         return new Or(this, other);
     }
 
+    /**
+     * Flatten this matcher into a table. A set of three or more chars, where the chars above ASCII either all match
+     * or none of them match, becomes an ASCII mask. Otherwise, the set or its complement, whichever is smaller,
+     * becomes a small hash table or a bit set table.
+     *
+     * @return the precomputed matcher
+     */
     public CharMatcher precomputed() {
         return precomputedInternal();
     }
@@ -375,6 +382,14 @@ public abstract class CharMatcher {
         BitSet table = new BitSet();
         setBits(table);
         int totalCharacters = table.cardinality();
+        int asciiCharacters = table.get(0, 128).cardinality();
+        int nonAsciiCharacters = totalCharacters - asciiCharacters;
+        if (totalCharacters > 2 && totalCharacters < DISTINCT_CHARS - 2 &&
+                (nonAsciiCharacters == 0 || nonAsciiCharacters == DISTINCT_CHARS - 128)) {
+            long[] words = table.get(0, 128).toLongArray();
+            return new AsciiMaskMatcher(words.length > 0 ? words[0] : 0L, words.length > 1 ? words[1] : 0L,
+                    nonAsciiCharacters > 0);
+        }
         if (totalCharacters * 2 <= DISTINCT_CHARS) {
             return precomputedPositive(totalCharacters, table);
         } else {
@@ -430,7 +445,7 @@ public abstract class CharMatcher {
         return indexIn(sequence) == -1;
     }
 
-    int indexIn(CharSequence sequence) {
+    public int indexIn(CharSequence sequence) {
         int length = sequence.length();
         for (int i = 0; i < length; i++) {
             if (matches(sequence.charAt(i))) {
@@ -440,7 +455,7 @@ public abstract class CharMatcher {
         return -1;
     }
 
-    int indexIn(CharSequence sequence, int start) {
+    public int indexIn(CharSequence sequence, int start) {
         int length = sequence.length();
         checkPositionIndex(start, length);
         for (int i = start; i < length; i++) {
@@ -451,7 +466,7 @@ public abstract class CharMatcher {
         return -1;
     }
 
-    int lastIndexIn(CharSequence sequence) {
+    public int lastIndexIn(CharSequence sequence) {
         for (int i = sequence.length() - 1; i >= 0; i--) {
             if (matches(sequence.charAt(i))) {
                 return i;
@@ -460,7 +475,7 @@ public abstract class CharMatcher {
         return -1;
     }
 
-    int countIn(CharSequence sequence) {
+    public int countIn(CharSequence sequence) {
         int count = 0;
         for (int i = 0; i < sequence.length(); i++) {
             if (matches(sequence.charAt(i))) {
@@ -470,6 +485,125 @@ public abstract class CharMatcher {
         return count;
     }
 
+    /**
+     * Return the index of the first matching char in a range of a char array.
+     *
+     * @param chars the char array
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the index, or -1 if no char in the range matches
+     */
+    public int indexIn(char[] chars, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (matches(chars[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the index of the last matching char in a range of a char array.
+     *
+     * @param chars the char array
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the index, or -1 if no char in the range matches
+     */
+    public int lastIndexIn(char[] chars, int start, int end) {
+        for (int i = end - 1; i >= start; i--) {
+            if (matches(chars[i])) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Return the number of matching chars in a range of a char array.
+     *
+     * @param chars the char array
+     * @param start the start of the range
+     * @param end the end of the range
+     * @return the number of matching chars
+     */
+    public int countIn(char[] chars, int start, int end) {
+        int count = 0;
+        for (int i = start; i < end; i++) {
+            if (matches(chars[i])) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Return a string without the leading and trailing matching chars of a sequence.
+     *
+     * @param sequence the sequence
+     * @return the trimmed string
+     */
+    public String trimFrom(CharSequence sequence) {
+        int length = sequence.length();
+        int first = 0;
+        while (first < length && matches(sequence.charAt(first))) {
+            first++;
+        }
+        int last = length - 1;
+        while (last > first && matches(sequence.charAt(last))) {
+            last--;
+        }
+        return sequence.subSequence(first, last + 1).toString();
+    }
+
+    public String trimLeadingFrom(CharSequence sequence) {
+        int length = sequence.length();
+        int first = 0;
+        while (first < length && matches(sequence.charAt(first))) {
+            first++;
+        }
+        return sequence.subSequence(first, length).toString();
+    }
+
+    public String trimTrailingFrom(CharSequence sequence) {
+        int last = sequence.length() - 1;
+        while (last >= 0 && matches(sequence.charAt(last))) {
+            last--;
+        }
+        return sequence.subSequence(0, last + 1).toString();
+    }
+
+    /**
+     * Return a string where each run of matching chars of a sequence is replaced by a single replacement char.
+     * If the sequence has no matching chars, the string of the sequence is returned.
+     *
+     * @param sequence the sequence
+     * @param replacement the replacement char
+     * @return the collapsed string
+     */
+    public String collapseFrom(CharSequence sequence, char replacement) {
+        int length = sequence.length();
+        int pos = indexIn(sequence);
+        if (pos == -1) {
+            return sequence.toString();
+        }
+        StringBuilder sb = new StringBuilder(length).append(sequence, 0, pos);
+        boolean inMatchingRun = false;
+        for (int i = pos; i < length; i++) {
+            char c = sequence.charAt(i);
+            if (matches(c)) {
+                if (!inMatchingRun) {
+                    sb.append(replacement);
+                    inMatchingRun = true;
+                }
+            } else {
+                sb.append(c);
+                inMatchingRun = false;
+            }
+        }
+        return sb.toString();
+    }
+
     String removeFrom(CharSequence sequence) {
         String string = sequence.toString();
         int pos = indexIn(string);
@@ -560,7 +694,7 @@ public abstract class CharMatcher {
         }
 
         @Override
-        int countIn(CharSequence sequence) {
+        public int countIn(CharSequence sequence) {
             return sequence.length() - original.countIn(sequence);
         }
 
@@ -638,23 +772,199 @@ public abstract class CharMatcher {
     }
 
     private static class BitSetMatcher extends FastMatcher {
-        private final BitSet table;
+
+        private final long[] words;
 
         private BitSetMatcher(BitSet table) {
-            if (table.length() + Long.SIZE < table.size()) {
-                table = (BitSet) table.clone();
-            }
-            this.table = table;
+            this.words = table.toLongArray();
         }
 
         @Override
         public boolean matches(char c) {
-            return table.get(c);
+            int word = c >>> 6;
+            return word < words.length && (words[word] & (1L << c)) != 0;
+        }
+
+        @Override
+        public int indexIn(CharSequence sequence) {
+            return indexIn(sequence, 0);
+        }
+
+        @Override
+        public int indexIn(CharSequence sequence, int start) {
+            int length = sequence.length();
+            checkPositionIndex(start, length);
+            long[] words = this.words;
+            for (int i = start; i < length; i++) {
+                char c = sequence.charAt(i);
+                int word = c >>> 6;
+                if (word < words.length && (words[word] & (1L << c)) != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexIn(CharSequence sequence) {
+            long[] words = this.words;
+            for (int i = sequence.length() - 1; i >= 0; i--) {
+                char c = sequence.charAt(i);
+                int word = c >>> 6;
+                if (word < words.length && (words[word] & (1L << c)) != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int countIn(CharSequence sequence) {
+            long[] words = this.words;
+            int count = 0;
+            int length = sequence.length();
+            for (int i = 0; i < length; i++) {
+                char c = sequence.charAt(i);
+                int word = c >>> 6;
+                if (word < words.length && (words[word] & (1L << c)) != 0) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public int indexIn(char[] chars, int start, int end) {
+            long[] words = this.words;
+            for (int i = start; i < end; i++) {
+                char c = chars[i];
+                int word = c >>> 6;
+                if (word < words.length && (words[word] & (1L << c)) != 0) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int countIn(char[] chars, int start, int end) {
+            long[] words = this.words;
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                char c = chars[i];
+                int word = c >>> 6;
+                if (word < words.length && (words[word] & (1L << c)) != 0) {
+                    count++;
+                }
+            }
+            return count;
         }
 
         @Override
         void setBits(BitSet bitSet) {
-            bitSet.or(table);
+            bitSet.or(BitSet.valueOf(words));
+        }
+    }
+
+    /**
+     * A matcher for chars below 128 by a mask of two longs, and for all other chars by a flag.
+     */
+    private static final class AsciiMaskMatcher extends FastMatcher {
+
+        private final long low;
+
+        private final long high;
+
+        private final boolean nonAscii;
+
+        private AsciiMaskMatcher(long low, long high, boolean nonAscii) {
+            this.low = low;
+            this.high = high;
+            this.nonAscii = nonAscii;
+        }
+
+        @Override
+        public boolean matches(char c) {
+            // a shift of a long uses the low six bits of the distance
+            return c < 64 ? (low & (1L << c)) != 0 : c < 128 ? (high & (1L << c)) != 0 : nonAscii;
+        }
+
+        @Override
+        public int indexIn(CharSequence sequence) {
+            return indexIn(sequence, 0);
+        }
+
+        @Override
+        public int indexIn(CharSequence sequence, int start) {
+            int length = sequence.length();
+            checkPositionIndex(start, length);
+            for (int i = start; i < length; i++) {
+                char c = sequence.charAt(i);
+                if (c < 64 ? (low & (1L << c)) != 0 : c < 128 ? (high & (1L << c)) != 0 : nonAscii) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int lastIndexIn(CharSequence sequence) {
+            for (int i = sequence.length() - 1; i >= 0; i--) {
+                char c = sequence.charAt(i);
+                if (c < 64 ? (low & (1L << c)) != 0 : c < 128 ? (high & (1L << c)) != 0 : nonAscii) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int countIn(CharSequence sequence) {
+            int count = 0;
+            int length = sequence.length();
+            for (int i = 0; i < length; i++) {
+                char c = sequence.charAt(i);
+                if (c < 64 ? (low & (1L << c)) != 0 : c < 128 ? (high & (1L << c)) != 0 : nonAscii) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public int indexIn(char[] chars, int start, int end) {
+            for (int i = start; i < end; i++) {
+                char c = chars[i];
+                if (c < 64 ? (low & (1L << c)) != 0 : c < 128 ? (high & (1L << c)) != 0 : nonAscii) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public int countIn(char[] chars, int start, int end) {
+            int count = 0;
+            for (int i = start; i < end; i++) {
+                char c = chars[i];
+                if (c < 64 ? (low & (1L << c)) != 0 : c < 128 ? (high & (1L << c)) != 0 : nonAscii) {
+                    count++;
+                }
+            }
+            return count;
+        }
+
+        @Override
+        public CharMatcher negate() {
+            return new AsciiMaskMatcher(~low, ~high, !nonAscii);
+        }
+
+        @Override
+        void setBits(BitSet table) {
+            table.or(BitSet.valueOf(new long[] { low, high }));
+            if (nonAscii) {
+                table.set(128, DISTINCT_CHARS);
+            }
         }
     }
 
@@ -1,5 +1,9 @@
 package org.xbib.net.util;
 
+import org.xbib.net.buffer.DataBuffer;
+
+import java.nio.ByteBuffer;
+
 /**
  * General utilities for dealing with Unicode characters.
  */
@@ -594,4 +598,30 @@ public final class CharUtils {
         verify(CodepointIterator.forCharSequence(s), profile);
     }
 
+    /**
+     * Verifies the remaining UTF-8 bytes of a byte buffer using the specified profile, without decoding
+     * them to a string.
+     * @param buffer byte buffer
+     * @param profile profile
+     */
+    public static void verify(ByteBuffer buffer, Profile profile) {
+        if (buffer == null) {
+            return;
+        }
+        verify(CodepointIterator.forByteBuffer(buffer), profile);
+    }
+
+    /**
+     * Verifies the readable UTF-8 bytes of a data buffer using the specified profile, without decoding
+     * them to a string.
+     * @param dataBuffer data buffer
+     * @param profile profile
+     */
+    public static void verify(DataBuffer dataBuffer, Profile profile) {
+        if (dataBuffer == null) {
+            return;
+        }
+        verify(CodepointIterator.forDataBuffer(dataBuffer), profile);
+    }
+
 }
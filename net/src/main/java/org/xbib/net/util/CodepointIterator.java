@@ -1,5 +1,8 @@
 package org.xbib.net.util;
 
+import org.xbib.net.buffer.DataBuffer;
+
+import java.nio.ByteBuffer;
 import java.util.Iterator;
 import java.util.NoSuchElementException;
 
@@ -33,6 +36,26 @@ public abstract class CodepointIterator implements Iterator<Codepoint> {
         return new CharSequenceCodepointIterator(seq);
     }
 
+    /**
+     * Get a CodepointIterator that decodes the remaining UTF-8 bytes of the specified byte buffer.
+     * Positions are byte indices, and the position of the byte buffer is not changed.
+     * @param buffer byte buffer
+     * @return code point iterator
+     */
+    public static CodepointIterator forByteBuffer(ByteBuffer buffer) {
+        return new ByteBufferCodepointIterator(buffer);
+    }
+
+    /**
+     * Get a CodepointIterator that decodes the readable UTF-8 bytes of the specified data buffer.
+     * Positions are byte indices relative to the read position, and the read position is not changed.
+     * @param dataBuffer data buffer
+     * @return code point iterator
+     */
+    public static CodepointIterator forDataBuffer(DataBuffer dataBuffer) {
+        return new ByteBufferCodepointIterator(dataBuffer.asByteBuffer());
+    }
+
     public static CodepointIterator restrict(CodepointIterator ci, CodepointFilter filter) {
         return new RestrictedCodepointIterator(ci, filter, false);
     }
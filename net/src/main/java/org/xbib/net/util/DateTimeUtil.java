@@ -1,40 +1,114 @@
 package org.xbib.net.util;
 
+import java.nio.charset.StandardCharsets;
 import java.time.Instant;
-import java.time.ZoneId;
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
-import java.util.Locale;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+/**
+ * Formatting and parsing of HTTP dates.
+ *
+ * Dates are formatted and parsed by hand-written code for the fixed layouts of HTTP, without
+ * {@link DateTimeFormatter}, without intermediate date objects, and without exceptions for input that is not a date.
+ * The current date of the HTTP {@code Date} header is cached, see {@link #currentHttpDate()}.
+ */
 public class DateTimeUtil {
 
-    private static final ZoneId ZONE_UTC = ZoneId.of("UTC");
+    /**
+     * The result of {@link #parseHttpDate(CharSequence, int, int)} for input that is not a date.
+     */
+    public static final long INVALID_DATE = Long.MIN_VALUE;
 
-    private static final Locale ROOT_LOCALE = Locale.ROOT;
+    private static final String[] DAYS = { "Sun", "Mon", "Tue", "Wed", "Thu", "Fri", "Sat" };
 
-    private static final String RFC1036_PATTERN = "EEE, dd-MMM-yyyy HH:mm:ss zzz";
+    private static final String[] LONG_DAYS = { "Sunday", "Monday", "Tuesday", "Wednesday", "Thursday", "Friday",
+            "Saturday" };
 
-    private static final String ASCIITIME_PATTERN = "EEE MMM d HH:mm:ss yyyyy";
+    private static final String[] MONTHS = { "Jan", "Feb", "Mar", "Apr", "May", "Jun", "Jul", "Aug", "Sep", "Oct",
+            "Nov", "Dec" };
+
+    private static final AtomicBoolean UPDATING = new AtomicBoolean();
+
+    private static volatile CachedDate cachedDate = new CachedDate(Long.MIN_VALUE, null);
 
     private DateTimeUtil() {
     }
 
     public static String formatRfc1123(Instant instant) {
-        return DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(instant, ZoneOffset.UTC));
+        return formatRfc1123(instant.getEpochSecond(), false);
     }
 
     public static String formatRfc1123(long millis) {
-        return formatRfc1123(Instant.ofEpochMilli(millis));
+        return formatRfc1123(Math.floorDiv(millis, 1000L), false);
+    }
+
+    /**
+     * Format a date as an HTTP date in the IMF-fixdate layout of RFC 7231, for example
+     * {@code Sun, 06 Nov 1994 08:49:37 GMT}. Unlike {@link #formatRfc1123(long)}, the day of the month
+     * always has two digits.
+     *
+     * @param millis the date in milliseconds since the epoch
+     * @return the HTTP date
+     */
+    public static String formatHttpDate(long millis) {
+        return formatRfc1123(Math.floorDiv(millis, 1000L), true);
     }
 
-    // RFC 2616 allows RFC 1123, RFC 1036, ASCII time
-    private static final DateTimeFormatter[] dateTimeFormatters = {
-            DateTimeFormatter.RFC_1123_DATE_TIME.withLocale(ROOT_LOCALE).withZone(ZONE_UTC),
-            DateTimeFormatter.ofPattern(RFC1036_PATTERN).withLocale(ROOT_LOCALE).withZone(ZONE_UTC),
-            DateTimeFormatter.ofPattern(ASCIITIME_PATTERN).withLocale(ROOT_LOCALE).withZone(ZONE_UTC)
-    };
+    /**
+     * Get the current date as an HTTP date, for the {@code Date} header of responses.
+     *
+     * The value is cached for the current second. When the second has passed, one thread formats the new value
+     * while the other threads keep reading the previous value, so reading the value never blocks and allocates
+     * nothing, and the value may be late by the time it takes to format a date.
+     *
+     * @return the current HTTP date
+     */
+    public static String currentHttpDate() {
+        return current().value;
+    }
+
+    /**
+     * Get the current date as an HTTP date, in US-ASCII bytes.
+     *
+     * @return the current HTTP date, as a byte array that is shared and must not be modified
+     * @see #currentHttpDate()
+     */
+    public static byte[] currentHttpDateBytes() {
+        return current().bytes;
+    }
+
+    /**
+     * Parse a date in one of the layouts allowed by RFC 7231 for HTTP dates: the RFC 1123 layout
+     * {@code Sun, 06 Nov 1994 08:49:37 GMT}, the RFC 850 layout {@code Sunday, 06-Nov-94 08:49:37 GMT}, or the
+     * asctime layout {@code Sun Nov  6 08:49:37 1994}.
+     *
+     * Names are matched case-insensitively, and the day of the week is optional in the RFC 1123 layout, but not
+     * checked against the date. A day of the month with one digit, a missing second, and a numeric zone offset are
+     * accepted as in RFC 1123. A two-digit year is in the past 50 years or the next 49 years. Whitespace around
+     * the date is ignored, and so is a semicolon and anything after it.
+     *
+     * @param input the input
+     * @param start the start of the date in the input
+     * @param end the end of the date in the input
+     * @return the date in seconds since the epoch, or {@link #INVALID_DATE} if the input is not a date
+     */
+    public static long parseHttpDate(CharSequence input, int start, int end) {
+        return new DateParser(input, null, start, end).parse();
+    }
+
+    /**
+     * Parse a date in US-ASCII bytes, as by {@link #parseHttpDate(CharSequence, int, int)}.
+     *
+     * @param bytes the bytes
+     * @param start the start of the date in the bytes
+     * @param end the end of the date in the bytes
+     * @return the date in seconds since the epoch, or {@link #INVALID_DATE} if the bytes are not a date
+     */
+    public static long parseHttpDate(byte[] bytes, int start, int end) {
+        return new DateParser(null, bytes, start, end).parse();
+    }
 
     public static Instant parseDate(String date, int start, int end) {
         int length = end - start;
@@ -46,22 +120,425 @@ public class DateTimeUtil {
             throw new IllegalArgumentException("Can't parse more than 64 chars," +
                     "looks like a user error or a malformed header");
         }
-        return parseDate(date.substring(start, end));
+        long seconds = parseHttpDate(date, start, end);
+        return seconds != INVALID_DATE ? Instant.ofEpochSecond(seconds) : null;
     }
 
     public static Instant parseDate(String input) {
         if (input == null) {
             return null;
         }
-        int semicolonIndex = input.indexOf(';');
-        String trimmedDate = semicolonIndex >= 0 ? input.substring(0, semicolonIndex) : input;
-        for (DateTimeFormatter formatter : dateTimeFormatters) {
+        long seconds = parseHttpDate(input, 0, input.length());
+        return seconds != INVALID_DATE ? Instant.ofEpochSecond(seconds) : null;
+    }
+
+    /**
+     * Evaluate an {@code If-Modified-Since} header against the last modification date of a resource.
+     *
+     * @param lastModifiedMillis the last modification date of the resource in milliseconds since the epoch
+     * @param ifModifiedSince the value of the header, or null
+     * @return false if the header is a date, and the resource has not been modified after that date,
+     * with a precision of seconds, otherwise true
+     */
+    public static boolean isModifiedSince(long lastModifiedMillis, CharSequence ifModifiedSince) {
+        if (ifModifiedSince == null) {
+            return true;
+        }
+        long seconds = parseHttpDate(ifModifiedSince, 0, ifModifiedSince.length());
+        return seconds == INVALID_DATE || Math.floorDiv(lastModifiedMillis, 1000L) > seconds;
+    }
+
+    private static CachedDate current() {
+        long second = Math.floorDiv(System.currentTimeMillis(), 1000L);
+        CachedDate date = cachedDate;
+        if (date.second != second && UPDATING.compareAndSet(false, true)) {
             try {
-                return Instant.from(formatter.parse(trimmedDate));
-            } catch (DateTimeParseException e) {
-                //
+                date = new CachedDate(second, formatRfc1123(second, true));
+                cachedDate = date;
+            } finally {
+                UPDATING.set(false);
+            }
+        }
+        if (date.value == null) {
+            // another thread is formatting the first value
+            return new CachedDate(second, formatRfc1123(second, true));
+        }
+        return date;
+    }
+
+    private static String formatRfc1123(long seconds, boolean twoDigitDay) {
+        long days = Math.floorDiv(seconds, 86400L);
+        int secondOfDay = (int) Math.floorMod(seconds, 86400L);
+        // the civil date from the days since the epoch, by the algorithm of Howard Hinnant
+        long z = days + 719468L;
+        long era = Math.floorDiv(z, 146097L);
+        int dayOfEra = (int) (z - era * 146097L);
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int mp = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * mp + 2) / 5 + 1;
+        int month = mp < 10 ? mp + 3 : mp - 9;
+        long year = yearOfEra + era * 400L + (month <= 2 ? 1 : 0);
+        if (year < 0L || year > 9999L) {
+            return DateTimeFormatter.RFC_1123_DATE_TIME
+                    .format(ZonedDateTime.ofInstant(Instant.ofEpochSecond(seconds), ZoneOffset.UTC));
+        }
+        char[] chars = new char[29];
+        int i = 0;
+        String dayName = DAYS[(int) Math.floorMod(days + 4L, 7L)];
+        chars[i++] = dayName.charAt(0);
+        chars[i++] = dayName.charAt(1);
+        chars[i++] = dayName.charAt(2);
+        chars[i++] = ',';
+        chars[i++] = ' ';
+        if (day >= 10 || twoDigitDay) {
+            chars[i++] = (char) ('0' + day / 10);
+        }
+        chars[i++] = (char) ('0' + day % 10);
+        chars[i++] = ' ';
+        String monthName = MONTHS[month - 1];
+        chars[i++] = monthName.charAt(0);
+        chars[i++] = monthName.charAt(1);
+        chars[i++] = monthName.charAt(2);
+        chars[i++] = ' ';
+        int y = (int) year;
+        chars[i++] = (char) ('0' + y / 1000);
+        chars[i++] = (char) ('0' + y / 100 % 10);
+        chars[i++] = (char) ('0' + y / 10 % 10);
+        chars[i++] = (char) ('0' + y % 10);
+        chars[i++] = ' ';
+        i = twoDigits(chars, i, secondOfDay / 3600);
+        chars[i++] = ':';
+        i = twoDigits(chars, i, secondOfDay / 60 % 60);
+        chars[i++] = ':';
+        i = twoDigits(chars, i, secondOfDay % 60);
+        chars[i++] = ' ';
+        chars[i++] = 'G';
+        chars[i++] = 'M';
+        chars[i++] = 'T';
+        return new String(chars, 0, i);
+    }
+
+    private static int twoDigits(char[] chars, int i, int value) {
+        chars[i] = (char) ('0' + value / 10);
+        chars[i + 1] = (char) ('0' + value % 10);
+        return i + 2;
+    }
+
+    /**
+     * Compute the days since the epoch of a civil date, by the algorithm of Howard Hinnant.
+     */
+    private static long daysFromCivil(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468L;
+    }
+
+    private static boolean isValidDay(int year, int month, int day) {
+        if (day < 1 || day > 31) {
+            return false;
+        }
+        switch (month) {
+            case 2:
+                boolean leap = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return day <= (leap ? 29 : 28);
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return day <= 30;
+            default:
+                return true;
+        }
+    }
+
+    private static final class CachedDate {
+
+        private final long second;
+
+        private final String value;
+
+        private final byte[] bytes;
+
+        CachedDate(long second, String value) {
+            this.second = second;
+            this.value = value;
+            this.bytes = value != null ? value.getBytes(StandardCharsets.US_ASCII) : null;
+        }
+    }
+
+    /**
+     * A parser for the fixed layouts of HTTP dates, over chars or bytes. Every method returns a negative value
+     * if the input does not match.
+     */
+    private static final class DateParser {
+
+        private final CharSequence chars;
+
+        private final byte[] bytes;
+
+        private int pos;
+
+        private final int end;
+
+        DateParser(CharSequence chars, byte[] bytes, int start, int end) {
+            this.chars = chars;
+            this.bytes = bytes;
+            this.pos = start;
+            this.end = end;
+        }
+
+        long parse() {
+            skipSpaces();
+            if (pos == end) {
+                return INVALID_DATE;
+            }
+            if (isDigit(peek())) {
+                return parseRfc1123();
+            }
+            int nameStart = pos;
+            while (pos < end && isLetter(peek())) {
+                pos++;
+            }
+            int nameLength = pos - nameStart;
+            if (!matchesAny(nameStart, nameLength, DAYS) && !matchesAny(nameStart, nameLength, LONG_DAYS)) {
+                return INVALID_DATE;
+            }
+            if (pos < end && peek() == ',') {
+                pos++;
+                skipSpaces();
+                return parseRfc1123();
+            }
+            if (!expect(' ')) {
+                return INVALID_DATE;
+            }
+            return parseAsctime();
+        }
+
+        /**
+         * Parse {@code 06 Nov 1994 08:49:37 GMT} or {@code 06-Nov-94 08:49:37 GMT}.
+         */
+        private long parseRfc1123() {
+            int day = parseNumber(1, 2);
+            if (day < 0 || pos == end) {
+                return INVALID_DATE;
+            }
+            char separator = peek();
+            if (separator != ' ' && separator != '-') {
+                return INVALID_DATE;
+            }
+            pos++;
+            int month = parseMonth();
+            if (month < 0 || !expect(separator)) {
+                return INVALID_DATE;
+            }
+            int yearStart = pos;
+            int year = parseNumber(2, 4);
+            if (year < 0) {
+                return INVALID_DATE;
             }
+            if (pos - yearStart == 2) {
+                year = twoDigitYear(year);
+            } else if (pos - yearStart != 4) {
+                return INVALID_DATE;
+            }
+            if (!expect(' ')) {
+                return INVALID_DATE;
+            }
+            int secondOfDay = parseTime();
+            if (secondOfDay < 0 || !expect(' ')) {
+                return INVALID_DATE;
+            }
+            int offset = parseZone();
+            if (offset == Integer.MIN_VALUE || !atEnd()) {
+                return INVALID_DATE;
+            }
+            return toEpochSecond(year, month, day, secondOfDay, offset);
+        }
+
+        /**
+         * Parse {@code Nov  6 08:49:37 1994}.
+         */
+        private long parseAsctime() {
+            int month = parseMonth();
+            if (month < 0 || !expect(' ')) {
+                return INVALID_DATE;
+            }
+            if (pos < end && peek() == ' ') {
+                pos++;
+            }
+            int day = parseNumber(1, 2);
+            if (day < 0 || !expect(' ')) {
+                return INVALID_DATE;
+            }
+            int secondOfDay = parseTime();
+            if (secondOfDay < 0 || !expect(' ')) {
+                return INVALID_DATE;
+            }
+            int yearStart = pos;
+            int year = parseNumber(4, 4);
+            if (year < 0 || pos - yearStart != 4 || !atEnd()) {
+                return INVALID_DATE;
+            }
+            return toEpochSecond(year, month, day, secondOfDay, 0);
+        }
+
+        private long toEpochSecond(int year, int month, int day, int secondOfDay, int offset) {
+            if (!isValidDay(year, month, day)) {
+                return INVALID_DATE;
+            }
+            return daysFromCivil(year, month, day) * 86400L + secondOfDay - offset;
+        }
+
+        /**
+         * Parse {@code HH:mm:ss} or {@code HH:mm}.
+         *
+         * @return the second of the day
+         */
+        private int parseTime() {
+            int hour = parseNumber(2, 2);
+            if (hour < 0 || hour > 23 || !expect(':')) {
+                return -1;
+            }
+            int minute = parseNumber(2, 2);
+            if (minute < 0 || minute > 59) {
+                return -1;
+            }
+            int second = 0;
+            if (pos < end && peek() == ':') {
+                pos++;
+                second = parseNumber(2, 2);
+                if (second < 0 || second > 59) {
+                    return -1;
+                }
+            }
+            return hour * 3600 + minute * 60 + second;
+        }
+
+        /**
+         * Parse {@code GMT}, {@code UT}, {@code UTC}, {@code Z}, or an offset like {@code +0100}.
+         *
+         * @return the offset in seconds, or {@link Integer#MIN_VALUE}
+         */
+        private int parseZone() {
+            if (pos == end) {
+                return Integer.MIN_VALUE;
+            }
+            char c = peek();
+            if (c == '+' || c == '-') {
+                pos++;
+                int start = pos;
+                int hhmm = parseNumber(4, 4);
+                if (hhmm < 0 || pos - start != 4 || hhmm / 100 > 18 || hhmm % 100 > 59) {
+                    return Integer.MIN_VALUE;
+                }
+                int offset = hhmm / 100 * 3600 + hhmm % 100 * 60;
+                return c == '-' ? -offset : offset;
+            }
+            int start = pos;
+            while (pos < end && isLetter(peek())) {
+                pos++;
+            }
+            int length = pos - start;
+            if (matches(start, length, "GMT") || matches(start, length, "UT") || matches(start, length, "UTC") ||
+                    matches(start, length, "Z")) {
+                return 0;
+            }
+            return Integer.MIN_VALUE;
+        }
+
+        private int parseMonth() {
+            int start = pos;
+            while (pos < end && isLetter(peek())) {
+                pos++;
+            }
+            for (int i = 0; i < MONTHS.length; i++) {
+                if (matches(start, pos - start, MONTHS[i])) {
+                    return i + 1;
+                }
+            }
+            return -1;
+        }
+
+        private int parseNumber(int minDigits, int maxDigits) {
+            int value = 0;
+            int digits = 0;
+            while (pos < end && digits < maxDigits && isDigit(peek())) {
+                value = value * 10 + (peek() - '0');
+                pos++;
+                digits++;
+            }
+            return digits >= minDigits ? value : -1;
+        }
+
+        /**
+         * Interpret a two-digit year as in RFC 7231, as the year with the same last two digits that is not
+         * more than 50 years in the future.
+         */
+        private static int twoDigitYear(int year) {
+            long days = Math.floorDiv(System.currentTimeMillis(), 86400000L);
+            int currentYear = 1970 + (int) Math.floorDiv(days * 400L, 146097L);
+            int candidate = currentYear - currentYear % 100 + year;
+            return candidate > currentYear + 50 ? candidate - 100 : candidate;
+        }
+
+        private boolean atEnd() {
+            skipSpaces();
+            return pos == end || peek() == ';';
+        }
+
+        private boolean expect(char c) {
+            if (pos < end && peek() == c) {
+                pos++;
+                return true;
+            }
+            return false;
+        }
+
+        private void skipSpaces() {
+            while (pos < end && (peek() == ' ' || peek() == '\t')) {
+                pos++;
+            }
+        }
+
+        private boolean matchesAny(int start, int length, String[] names) {
+            for (String name : names) {
+                if (matches(start, length, name)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        private boolean matches(int start, int length, String name) {
+            if (length != name.length()) {
+                return false;
+            }
+            for (int i = 0; i < length; i++) {
+                if ((charAt(start + i) | 0x20) != (name.charAt(i) | 0x20)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private char peek() {
+            return charAt(pos);
+        }
+
+        private char charAt(int i) {
+            return chars != null ? chars.charAt(i) : (char) (bytes[i] & 0xff);
+        }
+
+        private static boolean isDigit(char c) {
+            return c >= '0' && c <= '9';
+        }
+
+        private static boolean isLetter(char c) {
+            return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z');
         }
-        return null;
     }
 }
@@ -0,0 +1,745 @@
+package org.xbib.net.util;
+
+import org.xbib.net.buffer.DataBuffer;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.math.BigInteger;
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Objects;
+
+/**
+ * An event-based pull parser for JSON.
+ *
+ * Each call of {@link #next()} reads the next event of the document from the input. The parser reads the input
+ * in chunks, so a document does not have to be in memory as a whole. A document is a single JSON value, and
+ * content after the value is an error.
+ *
+ * The text of a key or a string value is available as a string, by {@link #getString()}, or without copying,
+ * by {@link #getText()} or by {@link #getTextCharacters()}, {@link #getTextOffset()} and {@link #getTextLength()}.
+ * A string without escapes that is within the current chunk of the input is not copied. The text is only valid
+ * until the next call of {@link #next()}. Numbers are available as primitive values by {@link #getLong()} and
+ * {@link #getDouble()}.
+ *
+ * Syntax errors are reported as {@link IOException}. A parser is not thread-safe.
+ */
+public class JsonPullParser implements Closeable {
+
+    /**
+     * The default maximum nesting depth of objects and arrays.
+     */
+    public static final int DEFAULT_MAXIMUM_DEPTH = 1000;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private static final int EOS = -1;
+
+    private static final byte OBJECT = 1;
+
+    private static final byte ARRAY = 2;
+
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    /**
+     * The events of a document.
+     */
+    public enum Event {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, KEY_NAME, VALUE_STRING, VALUE_NUMBER,
+        VALUE_TRUE, VALUE_FALSE, VALUE_NULL
+    }
+
+    private final Reader reader;
+
+    private final char[] buffer;
+
+    private int pos;
+
+    private int limit;
+
+    private int maximumDepth;
+
+    private byte[] containers;
+
+    private int depth;
+
+    private boolean first;
+
+    private boolean afterKey;
+
+    private boolean done;
+
+    private Event event;
+
+    private char[] textCharacters;
+
+    private int textOffset;
+
+    private int textLength;
+
+    private char[] scratch;
+
+    private boolean integral;
+
+    private boolean overflow;
+
+    private long longValue;
+
+    private double doubleValue;
+
+    /**
+     * Create a parser for a reader.
+     *
+     * @param reader the reader
+     */
+    public JsonPullParser(Reader reader) {
+        this(Objects.requireNonNull(reader), new char[BUFFER_SIZE], 0);
+    }
+
+    /**
+     * Create a parser for an input stream of UTF-8.
+     *
+     * @param inputStream the input stream
+     */
+    public JsonPullParser(InputStream inputStream) {
+        this(new InputStreamReader(inputStream, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Create a parser for the readable bytes of a data buffer, in UTF-8. The read position of the data buffer
+     * is advanced as the input is read.
+     *
+     * @param dataBuffer the data buffer
+     */
+    public JsonPullParser(DataBuffer dataBuffer) {
+        this(dataBuffer.asInputStream());
+    }
+
+    /**
+     * Create a parser for a character sequence. The whole input is in the buffer of the parser,
+     * so the text of strings without escapes is never copied.
+     *
+     * @param input the input
+     */
+    public JsonPullParser(CharSequence input) {
+        this(null, toCharArray(input), input.length());
+    }
+
+    private JsonPullParser(Reader reader, char[] buffer, int limit) {
+        this.reader = reader;
+        this.buffer = buffer;
+        this.limit = limit;
+        this.maximumDepth = DEFAULT_MAXIMUM_DEPTH;
+        this.containers = new byte[16];
+        this.scratch = new char[64];
+    }
+
+    /**
+     * Set the maximum nesting depth of objects and arrays. A deeper document is an error.
+     *
+     * @param maximumDepth the maximum depth
+     * @return this parser
+     */
+    public JsonPullParser maximumDepth(int maximumDepth) {
+        if (maximumDepth <= 0) {
+            throw new IllegalArgumentException("'maximumDepth' must be larger than 0");
+        }
+        this.maximumDepth = maximumDepth;
+        return this;
+    }
+
+    /**
+     * Read the next event.
+     *
+     * @return the event, or null at the end of the document
+     * @throws IOException if the input can not be read or is not valid JSON
+     */
+    public Event next() throws IOException {
+        int c = skipWhitespace();
+        if (depth == 0) {
+            if (done) {
+                if (c != EOS) {
+                    throw error("unexpected content after end of document");
+                }
+                event = null;
+                return null;
+            }
+            return event = value(c);
+        }
+        if (containers[depth - 1] == OBJECT) {
+            if (afterKey) {
+                // the colon is read here, and not with the key, so the buffer is not refilled while the text
+                // of the key may still be in it
+                expect(c, ':');
+                pos++;
+                afterKey = false;
+                return event = value(skipWhitespace());
+            }
+            if (c == '}') {
+                pos++;
+                pop();
+                return event = Event.END_OBJECT;
+            }
+            if (!first) {
+                expect(c, ',');
+                pos++;
+                c = skipWhitespace();
+            }
+            expect(c, '"');
+            pos++;
+            parseString();
+            first = false;
+            afterKey = true;
+            return event = Event.KEY_NAME;
+        }
+        if (c == ']') {
+            pos++;
+            pop();
+            return event = Event.END_ARRAY;
+        }
+        if (!first) {
+            expect(c, ',');
+            pos++;
+            c = skipWhitespace();
+        }
+        first = false;
+        return event = value(c);
+    }
+
+    /**
+     * Get the current event.
+     *
+     * @return the event of the last call of {@link #next()}
+     */
+    public Event getEvent() {
+        return event;
+    }
+
+    /**
+     * Get the nesting depth of the current event. The depth of the events of the top level is 0,
+     * and the start and the end of an object or an array are on the level outside of the object or the array.
+     *
+     * @return the depth
+     */
+    public int getDepth() {
+        return event == Event.START_OBJECT || event == Event.START_ARRAY ? depth - 1 : depth;
+    }
+
+    /**
+     * Skip the children of the current object or array, so that the current event is the end of it.
+     * For other events, nothing is skipped.
+     *
+     * @throws IOException if the input can not be read or is not valid JSON
+     */
+    public void skipChildren() throws IOException {
+        if (event != Event.START_OBJECT && event != Event.START_ARRAY) {
+            return;
+        }
+        int level = depth;
+        while (depth >= level) {
+            if (next() == null) {
+                throw error("unexpected end of input");
+            }
+        }
+    }
+
+    /**
+     * Get the text of a key, a string, or a number as a character sequence. The character sequence
+     * is a view of the parser buffers and is only valid until the next call of {@link #next()}.
+     *
+     * @return the text
+     */
+    public CharSequence getText() {
+        checkText();
+        return CharBuffer.wrap(textCharacters, textOffset, textLength);
+    }
+
+    /**
+     * Get the characters of the text of a key, a string, or a number. The array is a buffer of the parser,
+     * the text is at {@link #getTextOffset()} with length {@link #getTextLength()}. The characters
+     * are only valid until the next call of {@link #next()}.
+     *
+     * @return the characters
+     */
+    public char[] getTextCharacters() {
+        checkText();
+        return textCharacters;
+    }
+
+    public int getTextOffset() {
+        checkText();
+        return textOffset;
+    }
+
+    public int getTextLength() {
+        checkText();
+        return textLength;
+    }
+
+    /**
+     * Get the text of a key, a string, or a number as a string.
+     *
+     * @return the text
+     */
+    public String getString() {
+        checkText();
+        return new String(textCharacters, textOffset, textLength);
+    }
+
+    /**
+     * Compare the text of a key, a string, or a number to a string, without copying the text.
+     *
+     * @param s the string
+     * @return true if the text is equal to the string
+     */
+    public boolean textEquals(String s) {
+        checkText();
+        if (s.length() != textLength) {
+            return false;
+        }
+        for (int i = 0; i < textLength; i++) {
+            if (textCharacters[textOffset + i] != s.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Tell whether the current number is an integral number, that is, without fraction and exponent.
+     *
+     * @return true if the number is integral
+     */
+    public boolean isIntegral() {
+        checkNumber();
+        return integral;
+    }
+
+    /**
+     * Get the current number as a long. A number with a fraction or an exponent is truncated.
+     *
+     * @return the number
+     * @throws ArithmeticException if the number is integral, but out of the range of a long
+     */
+    public long getLong() {
+        checkNumber();
+        if (!integral) {
+            return (long) doubleValue;
+        }
+        if (overflow) {
+            throw new ArithmeticException("number out of range of long: " + getString());
+        }
+        return longValue;
+    }
+
+    /**
+     * Get the current number as a double.
+     *
+     * @return the number
+     */
+    public double getDouble() {
+        checkNumber();
+        if (integral) {
+            return overflow ? Double.parseDouble(getString()) : longValue;
+        }
+        return doubleValue;
+    }
+
+    /**
+     * Get the current number as an object, which is a {@link Long} for integral numbers
+     * in the range of a long, a {@link BigInteger} for larger integral numbers, or a {@link Double}.
+     *
+     * @return the number
+     */
+    public Number getNumber() {
+        checkNumber();
+        if (integral) {
+            return overflow ? new BigInteger(getString()) : (Number) longValue;
+        }
+        return doubleValue;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (reader != null) {
+            reader.close();
+        }
+    }
+
+    private Event value(int c) throws IOException {
+        switch (c) {
+            case '{':
+                pos++;
+                push(OBJECT);
+                return Event.START_OBJECT;
+            case '[':
+                pos++;
+                push(ARRAY);
+                return Event.START_ARRAY;
+            case '"':
+                pos++;
+                parseString();
+                completeValue();
+                return Event.VALUE_STRING;
+            case '-':
+            case '0':
+            case '1':
+            case '2':
+            case '3':
+            case '4':
+            case '5':
+            case '6':
+            case '7':
+            case '8':
+            case '9':
+                parseNumber();
+                completeValue();
+                return Event.VALUE_NUMBER;
+            case 't':
+                parseLiteral("true");
+                completeValue();
+                return Event.VALUE_TRUE;
+            case 'f':
+                parseLiteral("false");
+                completeValue();
+                return Event.VALUE_FALSE;
+            case 'n':
+                parseLiteral("null");
+                completeValue();
+                return Event.VALUE_NULL;
+            case EOS:
+                throw error("unexpected end of input");
+            default:
+                throw error("illegal character: " + (char) c);
+        }
+    }
+
+    private void push(byte container) throws IOException {
+        if (depth == maximumDepth) {
+            throw error("maximum depth exceeded: " + maximumDepth);
+        }
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+        }
+        containers[depth++] = container;
+        first = true;
+        afterKey = false;
+    }
+
+    private void pop() {
+        depth--;
+        first = false;
+        afterKey = false;
+        completeValue();
+    }
+
+    private void completeValue() {
+        if (depth == 0) {
+            done = true;
+        }
+    }
+
+    /**
+     * Parse a string after the opening quote. A string without escapes that is within the buffer
+     * is not copied.
+     */
+    private void parseString() throws IOException {
+        int start = pos;
+        int i = pos;
+        while (i < limit) {
+            char ch = buffer[i];
+            if (ch == '"') {
+                textCharacters = buffer;
+                textOffset = start;
+                textLength = i - start;
+                pos = i + 1;
+                return;
+            }
+            if (ch == '\\' || ch < 32) {
+                break;
+            }
+            i++;
+        }
+        // copy the string to the scratch buffer, because of escapes or because it spans chunks of the input
+        int length = 0;
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw error("unterminated string");
+            }
+            char ch = buffer[pos++];
+            if (ch == '"') {
+                break;
+            }
+            if (ch < 32) {
+                throw error("illegal control char: " + (int) ch);
+            }
+            if (ch == '\\') {
+                ch = unescape();
+            }
+            if (length == scratch.length) {
+                scratch = Arrays.copyOf(scratch, length * 2);
+            }
+            scratch[length++] = ch;
+        }
+        textCharacters = scratch;
+        textOffset = 0;
+        textLength = length;
+    }
+
+    private char unescape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw error("invalid hex char");
+                    }
+                    value = value << 4 | digit;
+                }
+                return (char) value;
+            default:
+                throw error("illegal escape char: " + (char) c);
+        }
+    }
+
+    /**
+     * Parse a number into the scratch buffer. The value is computed while the digits are read. A decimal
+     * with at most 15 significant digits and a small exponent is converted exactly by one multiplication or
+     * division with a power of ten, other decimals by {@link Double#parseDouble(String)}.
+     */
+    private void parseNumber() throws IOException {
+        int length = 0;
+        boolean negative = false;
+        long mantissa = 0L;
+        int digits = 0;
+        int scale = 0;
+        overflow = false;
+        integral = true;
+        int c = peek();
+        if (c == '-') {
+            negative = true;
+            scratch[length++] = '-';
+            pos++;
+            c = peek();
+        }
+        if (c < '0' || c > '9') {
+            throw error("isolated minus");
+        }
+        if (c == '0') {
+            scratch[length++] = '0';
+            pos++;
+            c = peek();
+        } else {
+            while (c >= '0' && c <= '9') {
+                length = append(length, c);
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0L) {
+                        digits++;
+                    }
+                } else {
+                    overflow = true;
+                    scale++;
+                }
+                pos++;
+                c = peek();
+            }
+        }
+        if (c == '.') {
+            integral = false;
+            length = append(length, c);
+            pos++;
+            c = peek();
+            if (c < '0' || c > '9') {
+                throw error("no digit after dot");
+            }
+            while (c >= '0' && c <= '9') {
+                length = append(length, c);
+                if (digits < 18) {
+                    mantissa = mantissa * 10 + (c - '0');
+                    if (mantissa != 0L) {
+                        digits++;
+                    }
+                    scale--;
+                } else {
+                    overflow = true;
+                }
+                pos++;
+                c = peek();
+            }
+        }
+        int exponent = 0;
+        if (c == 'e' || c == 'E') {
+            integral = false;
+            length = append(length, c);
+            pos++;
+            c = peek();
+            boolean negativeExponent = false;
+            if (c == '-' || c == '+') {
+                negativeExponent = c == '-';
+                length = append(length, c);
+                pos++;
+                c = peek();
+            }
+            if (c < '0' || c > '9') {
+                throw error("invalid exponent");
+            }
+            while (c >= '0' && c <= '9') {
+                length = append(length, c);
+                if (exponent < 100000) {
+                    exponent = exponent * 10 + (c - '0');
+                }
+                pos++;
+                c = peek();
+            }
+            if (negativeExponent) {
+                exponent = -exponent;
+            }
+        }
+        textCharacters = scratch;
+        textOffset = 0;
+        textLength = length;
+        if (integral) {
+            if (overflow) {
+                // at least 19 digits, parse exactly to find out if it fits into a long
+                try {
+                    longValue = Long.parseLong(new String(scratch, 0, length));
+                    overflow = false;
+                } catch (NumberFormatException e) {
+                    // keep the overflow flag
+                }
+            } else {
+                longValue = negative ? -mantissa : mantissa;
+            }
+            return;
+        }
+        scale += exponent;
+        if (!overflow && digits <= 15 && scale >= -22 && scale <= 22) {
+            double value = scale < 0 ? mantissa / POWERS_OF_TEN[-scale] : mantissa * POWERS_OF_TEN[scale];
+            doubleValue = negative ? -value : value;
+        } else {
+            doubleValue = Double.parseDouble(new String(scratch, 0, length));
+        }
+    }
+
+    private int append(int length, int c) {
+        if (length == scratch.length) {
+            scratch = Arrays.copyOf(scratch, length * 2);
+        }
+        scratch[length] = (char) c;
+        return length + 1;
+    }
+
+    private void parseLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            int c = read();
+            if (c != literal.charAt(i)) {
+                throw error("expected " + literal);
+            }
+        }
+    }
+
+    private int skipWhitespace() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                return EOS;
+            }
+            char ch = buffer[pos];
+            if (ch != ' ' && ch != '\t' && ch != '\n' && ch != '\r') {
+                return ch;
+            }
+            pos++;
+        }
+    }
+
+    private void expect(int c, char expected) throws IOException {
+        if (c != expected) {
+            throw error("expected char " + expected + " but got " + (c == EOS ? "end of input" : (char) c));
+        }
+    }
+
+    private int peek() throws IOException {
+        if (pos == limit && !fill()) {
+            return EOS;
+        }
+        return buffer[pos];
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return EOS;
+        }
+        return buffer[pos++];
+    }
+
+    /**
+     * Read the next chunk of the input into the buffer.
+     *
+     * @return false if there is no more input
+     */
+    private boolean fill() throws IOException {
+        if (reader == null) {
+            return false;
+        }
+        int n = reader.read(buffer, 0, buffer.length);
+        while (n == 0) {
+            n = reader.read(buffer, 0, buffer.length);
+        }
+        if (n < 0) {
+            return false;
+        }
+        pos = 0;
+        limit = n;
+        return true;
+    }
+
+    private void checkText() {
+        if (event != Event.KEY_NAME && event != Event.VALUE_STRING && event != Event.VALUE_NUMBER) {
+            throw new IllegalStateException("no text for event " + event);
+        }
+    }
+
+    private void checkNumber() {
+        if (event != Event.VALUE_NUMBER) {
+            throw new IllegalStateException("no number for event " + event);
+        }
+    }
+
+    private IOException error(String message) {
+        return new IOException("malformed json: " + message);
+    }
+
+    private static char[] toCharArray(CharSequence input) {
+        if (input instanceof String) {
+            return ((String) input).toCharArray();
+        }
+        char[] chars = new char[input.length()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = input.charAt(i);
+        }
+        return chars;
+    }
+}
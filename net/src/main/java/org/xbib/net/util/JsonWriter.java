@@ -0,0 +1,283 @@
+package org.xbib.net.util;
+
+import java.io.BufferedWriter;
+import java.io.Closeable;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * A streaming writer for JSON.
+ *
+ * The writer appends the document to an {@link Appendable}, or to an {@link OutputStream} in UTF-8,
+ * while it is written, without building the document as a string. Separators are written automatically,
+ * and the structure is checked: a key is only allowed in an object, and a value in an object must follow a key.
+ * Structure errors are reported as {@link IOException}. A writer is not thread-safe.
+ */
+public class JsonWriter implements Closeable, Flushable {
+
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static final byte OBJECT = 1;
+
+    private static final byte ARRAY = 2;
+
+    private final Appendable appendable;
+
+    private byte[] containers;
+
+    private int depth;
+
+    private boolean first;
+
+    private boolean afterKey;
+
+    /**
+     * Create a writer for an appendable.
+     *
+     * @param appendable the appendable
+     */
+    public JsonWriter(Appendable appendable) {
+        this.appendable = Objects.requireNonNull(appendable);
+        this.containers = new byte[16];
+        this.first = true;
+    }
+
+    /**
+     * Create a writer for an output stream. The document is written in UTF-8. The output is buffered,
+     * so the writer must be flushed or closed.
+     *
+     * @param outputStream the output stream
+     */
+    public JsonWriter(OutputStream outputStream) {
+        this(new BufferedWriter(new OutputStreamWriter(outputStream, StandardCharsets.UTF_8)));
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        beginValue();
+        push(OBJECT);
+        appendable.append('{');
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        if (depth == 0 || containers[depth - 1] != OBJECT || afterKey) {
+            throw new IOException("no object to close");
+        }
+        depth--;
+        appendable.append('}');
+        first = false;
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        beginValue();
+        push(ARRAY);
+        appendable.append('[');
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        if (depth == 0 || containers[depth - 1] != ARRAY) {
+            throw new IOException("no array to close");
+        }
+        depth--;
+        appendable.append(']');
+        first = false;
+        return this;
+    }
+
+    public JsonWriter key(CharSequence key) throws IOException {
+        if (depth == 0 || containers[depth - 1] != OBJECT || afterKey) {
+            throw new IOException("key is not allowed here: " + key);
+        }
+        if (!first) {
+            appendable.append(',');
+        }
+        first = false;
+        writeString(key != null ? key : "null");
+        appendable.append(':');
+        afterKey = true;
+        return this;
+    }
+
+    public JsonWriter value(CharSequence value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        beginValue();
+        writeString(value);
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        beginValue();
+        appendable.append(Long.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(double value) throws IOException {
+        beginValue();
+        appendable.append(Double.toString(value));
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        beginValue();
+        appendable.append(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        beginValue();
+        appendable.append("null");
+        return this;
+    }
+
+    /**
+     * Write an object value. Maps, collections, character sequences, booleans, numbers, instants and null
+     * are supported.
+     *
+     * @param object the value
+     * @return this writer
+     * @throws IOException if the value can not be written
+     * @throws IllegalArgumentException if the class of the value is not supported
+     */
+    @SuppressWarnings("unchecked")
+    public JsonWriter value(Object object) throws IOException {
+        if (object == null) {
+            return nullValue();
+        } else if (object instanceof Map) {
+            return map((Map<String, Object>) object);
+        } else if (object instanceof Collection) {
+            beginArray();
+            for (Object element : (Collection<Object>) object) {
+                value(element);
+            }
+            return endArray();
+        } else if (object instanceof CharSequence) {
+            return value((CharSequence) object);
+        } else if (object instanceof Boolean) {
+            return value((boolean) (Boolean) object);
+        } else if (object instanceof Long || object instanceof Integer || object instanceof Short ||
+                object instanceof Byte) {
+            return value(((Number) object).longValue());
+        } else if (object instanceof Number) {
+            beginValue();
+            appendable.append(object.toString());
+            return this;
+        } else if (object instanceof Instant) {
+            return value(object.toString());
+        }
+        throw new IllegalArgumentException("unable to write object class " + object.getClass());
+    }
+
+    /**
+     * Write a map as an object.
+     *
+     * @param map the map
+     * @return this writer
+     * @throws IOException if the map can not be written
+     */
+    public JsonWriter map(Map<String, ?> map) throws IOException {
+        beginObject();
+        for (Map.Entry<String, ?> entry : map.entrySet()) {
+            key(entry.getKey());
+            value(entry.getValue());
+        }
+        return endObject();
+    }
+
+    @Override
+    public void flush() throws IOException {
+        if (appendable instanceof Flushable) {
+            ((Flushable) appendable).flush();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (appendable instanceof Closeable) {
+            ((Closeable) appendable).close();
+        }
+    }
+
+    private void beginValue() throws IOException {
+        if (depth == 0) {
+            return;
+        }
+        if (containers[depth - 1] == OBJECT) {
+            if (!afterKey) {
+                throw new IOException("value in object without key");
+            }
+            afterKey = false;
+            return;
+        }
+        if (!first) {
+            appendable.append(',');
+        }
+        first = false;
+    }
+
+    private void push(byte container) {
+        if (depth == containers.length) {
+            containers = Arrays.copyOf(containers, depth * 2);
+        }
+        containers[depth++] = container;
+        first = true;
+        afterKey = false;
+    }
+
+    /**
+     * Write a quoted string. Runs of characters without escapes are appended without copying.
+     */
+    private void writeString(CharSequence string) throws IOException {
+        appendable.append('"');
+        int start = 0;
+        int length = string.length();
+        for (int i = 0; i < length; i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\' || c < 32) {
+                if (i > start) {
+                    appendable.append(string, start, i);
+                }
+                start = i + 1;
+                writeEscaped(c);
+            }
+        }
+        if (length > start) {
+            appendable.append(string, start, length);
+        }
+        appendable.append('"');
+    }
+
+    private void writeEscaped(char c) throws IOException {
+        switch (c) {
+            case '\n':
+                appendable.append("\\n");
+                break;
+            case '\r':
+                appendable.append("\\r");
+                break;
+            case '\t':
+                appendable.append("\\t");
+                break;
+            case '\\':
+                appendable.append("\\\\");
+                break;
+            case '"':
+                appendable.append("\\\"");
+                break;
+            default:
+                appendable.append("\\u00").append(HEX[c >> 4]).append(HEX[c & 0xf]);
+                break;
+        }
+    }
+}
@@ -38,11 +38,12 @@ class RestrictedCodepointIterator extends DelegatingCodepointIterator {
 
     @Override
     public Codepoint next() {
+        int p = super.position();
         Codepoint cp = super.next();
         int v = cp.getValue();
         if (v != -1 && check(v)) {
             if (scanningOnly) {
-                super.position(super.position() - 1);
+                super.position(p);
                 return null;
             } else {
                 throw new InvalidCharacterException(v);
@@ -57,11 +58,12 @@ class RestrictedCodepointIterator extends DelegatingCodepointIterator {
 
     @Override
     public char[] nextChars() {
+        int p = super.position();
         char[] chars = super.nextChars();
         if (chars != null && chars.length > 0) {
             if (chars.length == 1 && check(chars[0])) {
                 if (scanningOnly) {
-                    super.position(super.position() - 1);
+                    super.position(p);
                     return null;
                 } else {
                     throw new InvalidCharacterException(chars[0]);
@@ -70,7 +72,7 @@ class RestrictedCodepointIterator extends DelegatingCodepointIterator {
                 int cp = CharUtils.toSupplementary(chars[0], chars[1]).getValue();
                 if (check(cp)) {
                     if (scanningOnly) {
-                        super.position(super.position() - 2);
+                        super.position(p);
                         return null;
                     } else {
                         throw new InvalidCharacterException(cp);
@@ -0,0 +1,56 @@
+package org.xbib.net;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CharScannerTest {
+
+    @Test
+    void testMatches() {
+        long low = CharScanner.lowMask("/?#;&=");
+        long high = CharScanner.highMask("/?#;&=");
+        for (char c = 0; c < 256; c++) {
+            assertEquals("/?#;&=".indexOf(c) >= 0, CharScanner.matches(c, low, high), "char " + (int) c);
+        }
+        assertFalse(CharScanner.matches((char) ('/' + 128), low, high));
+        assertFalse(CharScanner.matches('\u2603', low, high));
+    }
+
+    @Test
+    void testIndexOf() {
+        assertEquals(5, CharScanner.indexOf("abcde%20", '%', 0, 8));
+        assertEquals(-1, CharScanner.indexOf("abcde%20", '%', 0, 5));
+        assertEquals(5, CharScanner.indexOf(new StringBuilder("abcde%20"), '%', 2, 8));
+        assertEquals(-1, CharScanner.indexOf(new StringBuilder("abcde%20"), '%', 0, 5));
+    }
+
+    @Test
+    void testIndexOfAny() {
+        String s = "aaaaaaaaaaaaaaaaaaaaaaaaaaaaaa?b/c";
+        for (int i = 0; i < s.length(); i++) {
+            int expected = i <= 30 ? 30 : i <= 32 ? 32 : -1;
+            assertEquals(expected, CharScanner.indexOfAny(s, i, s.length(),
+                    CharScanner.HOST_END_LOW, CharScanner.HOST_END_HIGH));
+        }
+        assertEquals(-1, CharScanner.indexOfAny(s, 0, 30, CharScanner.HOST_END_LOW, CharScanner.HOST_END_HIGH));
+        assertEquals(-1, CharScanner.indexOfAny("", 0, 0, CharScanner.HOST_END_LOW, CharScanner.HOST_END_HIGH));
+    }
+
+    @Test
+    void testIndexOfNone() {
+        boolean[] table = new boolean[128];
+        for (int c = 'a'; c <= 'z'; c++) {
+            table[c] = true;
+        }
+        long low = CharScanner.lowMask(table);
+        long high = CharScanner.highMask(table);
+        assertTrue(CharScanner.matches('q', low, high));
+        assertEquals(-1, CharScanner.indexOfNone("abcdefghijklmnopqrstuvwxyz", 0, 26, low, high));
+        assertEquals(9, CharScanner.indexOfNone("abcdefghi\u00e4jklm", 0, 14, low, high));
+        assertEquals(2, CharScanner.indexOfNone("ab c", 0, 4, low, high));
+        assertEquals(-1, CharScanner.indexOfNone("ab c", 3, 4, low, high));
+    }
+}
@@ -0,0 +1,159 @@
+package org.xbib.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HostResolverTest {
+
+    @Test
+    void testCache() throws Exception {
+        CountingResolver counting = new CountingResolver();
+        CachingHostResolver resolver = new CachingHostResolver(counting);
+        InetAddress address = resolver.resolve("Example.com");
+        assertEquals("192.0.2.1", address.getHostAddress());
+        assertSame(address, resolver.resolve("example.com"));
+        assertEquals(1, counting.count.get());
+    }
+
+    @Test
+    void testNegativeCache() {
+        CountingResolver counting = new CountingResolver();
+        CachingHostResolver resolver = new CachingHostResolver(counting);
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("unknown.invalid"));
+        assertThrows(UnknownHostException.class, () -> resolver.resolve("unknown.invalid"));
+        assertEquals(1, counting.count.get());
+    }
+
+    @Test
+    void testExpiry() throws Exception {
+        CountingResolver counting = new CountingResolver();
+        CachingHostResolver resolver = new CachingHostResolver(counting, 10, Duration.ZERO, Duration.ZERO);
+        resolver.resolve("example.com");
+        resolver.resolve("example.com");
+        assertEquals(2, counting.count.get());
+    }
+
+    @Test
+    void testBounded() throws Exception {
+        CountingResolver counting = new CountingResolver();
+        CachingHostResolver resolver = new CachingHostResolver(counting, 2, Duration.ofMinutes(1L), Duration.ofMinutes(1L));
+        resolver.resolve("a.example.com");
+        resolver.resolve("b.example.com");
+        resolver.resolve("c.example.com");
+        assertEquals(2, resolver.size());
+        resolver.resolve("a.example.com");
+        assertEquals(4, counting.count.get());
+    }
+
+    @Test
+    void testCoalescing() throws Exception {
+        CompletableFuture<InetAddress> pending = new CompletableFuture<>();
+        AtomicInteger count = new AtomicInteger();
+        HostResolver slow = new HostResolver() {
+            @Override
+            public InetAddress resolve(String hostname) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<InetAddress> resolveAsync(String hostname) {
+                count.incrementAndGet();
+                return pending;
+            }
+        };
+        CachingHostResolver resolver = new CachingHostResolver(slow);
+        CompletableFuture<InetAddress> f1 = resolver.resolveAsync("example.com");
+        CompletableFuture<InetAddress> f2 = resolver.resolveAsync("example.com");
+        assertFalse(f1.isDone());
+        pending.complete(InetAddress.getByAddress("example.com", new byte[] { (byte) 192, 0, 2, 1 }));
+        assertSame(f1.get(), f2.get());
+        assertEquals(1, count.get());
+    }
+
+    @Test
+    void testResolveOnCallingThread() throws Exception {
+        Thread caller = Thread.currentThread();
+        HostResolver sync = new HostResolver() {
+            @Override
+            public InetAddress resolve(String hostname) throws UnknownHostException {
+                assertSame(caller, Thread.currentThread());
+                return InetAddress.getByAddress(hostname, new byte[] { (byte) 192, 0, 2, 1 });
+            }
+
+            @Override
+            public CompletableFuture<InetAddress> resolveAsync(String hostname) {
+                throw new UnsupportedOperationException();
+            }
+        };
+        CachingHostResolver resolver = new CachingHostResolver(sync);
+        InetAddress address = resolver.resolve("example.com");
+        assertEquals("192.0.2.1", address.getHostAddress());
+        assertSame(address, resolver.resolveAsync("example.com").get());
+    }
+
+    @Test
+    void testAsyncDelegateThrows() {
+        AtomicInteger count = new AtomicInteger();
+        HostResolver failing = new HostResolver() {
+            @Override
+            public InetAddress resolve(String hostname) {
+                throw new UnsupportedOperationException();
+            }
+
+            @Override
+            public CompletableFuture<InetAddress> resolveAsync(String hostname) {
+                count.incrementAndGet();
+                throw new IllegalStateException("no resolver");
+            }
+        };
+        CachingHostResolver resolver = new CachingHostResolver(failing, 10, Duration.ofMinutes(1L), Duration.ZERO);
+        CompletableFuture<InetAddress> future = resolver.resolveAsync("example.com");
+        assertTrue(future.isCompletedExceptionally());
+        ExecutionException e = assertThrows(ExecutionException.class, future::get);
+        assertTrue(e.getCause() instanceof UnknownHostException);
+        assertTrue(resolver.resolveAsync("example.com").isCompletedExceptionally());
+        assertEquals(2, count.get());
+    }
+
+    @Test
+    void testParseAsync() throws Exception {
+        CompletableFuture<URL> future = URL.parser()
+                .hostResolver(new CountingResolver())
+                .parseAsync("http://example.com/path?a=b");
+        URL url = future.get();
+        assertEquals("example.com", url.getHost());
+        assertEquals(ProtocolVersion.IPV4, url.getProtocolVersion());
+        assertEquals("/path", url.getPath());
+        url = URL.parser().hostResolver(new CountingResolver()).parseAsync("http://unknown.invalid/").get();
+        assertEquals("unknown.invalid", url.getHost());
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> URL.parser().parseAsync("http://host:x/").get());
+        assertTrue(e.getCause() instanceof URLSyntaxException);
+    }
+
+    private static class CountingResolver implements HostResolver {
+
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public InetAddress resolve(String hostname) throws UnknownHostException {
+            count.incrementAndGet();
+            if (hostname.endsWith(".invalid")) {
+                throw new UnknownHostException(hostname);
+            }
+            return InetAddress.getByAddress(hostname, new byte[] { (byte) 192, 0, 2, 1 });
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package org.xbib.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.net.InetAddress;
+import java.net.SocketException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NetworkSnapshotTest {
+
+    @Test
+    void testLookups() throws SocketException {
+        NetworkSnapshot snapshot = NetworkSnapshot.capture();
+        for (NetworkSnapshot.InterfaceState state : snapshot.getInterfaces()) {
+            assertSame(state, snapshot.getInterface(state.getName()));
+            for (InetAddress address : state.getAddresses()) {
+                assertSame(state, snapshot.getInterface(address));
+                assertTrue(snapshot.isLocalAddress(address));
+                assertTrue(snapshot.getAddresses().contains(address));
+            }
+        }
+        assertEquals(snapshot.getAddresses().size(), snapshot.getAddresses(NetworkProtocolVersion.IPV4).size() +
+                snapshot.getAddresses(NetworkProtocolVersion.IPV6).size());
+        assertEquals(snapshot.getInterfaces().size(), snapshot.getInterfaces(NetworkProtocolVersion.IPV46).size() +
+                (int) snapshot.getInterfaces().stream().filter(s -> s.getAddresses().isEmpty()).count());
+    }
+
+    @Test
+    void testDiff() throws SocketException {
+        NetworkSnapshot snapshot = NetworkSnapshot.capture();
+        assertTrue(snapshot.diff(snapshot).isEmpty());
+        NetworkSnapshot.Diff diff = snapshot.diff(NetworkSnapshot.EMPTY);
+        assertEquals(snapshot.getInterfaces(), diff.getAddedInterfaces());
+        assertEquals(snapshot.getAddresses(), diff.getAddedAddresses());
+        assertTrue(diff.getRemovedInterfaces().isEmpty());
+        NetworkSnapshot.Diff reverse = NetworkSnapshot.EMPTY.diff(snapshot);
+        assertEquals(snapshot.getInterfaces(), reverse.getRemovedInterfaces());
+        assertEquals(snapshot.getAddresses(), reverse.getRemovedAddresses());
+        assertEquals(snapshot.getInterfaces().isEmpty(), diff.isEmpty());
+    }
+
+    @Test
+    void testChangedInterface() {
+        NetworkSnapshot.InterfaceState up = new NetworkSnapshot.InterfaceState(null, "eth0", "eth0", 2,
+                true, false, false, List.of(InetAddress.getLoopbackAddress()), List.of());
+        NetworkSnapshot.InterfaceState down = new NetworkSnapshot.InterfaceState(null, "eth0", "eth0", 2,
+                false, false, false, List.of(), List.of());
+        NetworkSnapshot before = new NetworkSnapshot(List.of(up), Instant.EPOCH);
+        NetworkSnapshot after = new NetworkSnapshot(List.of(down), Instant.now());
+        NetworkSnapshot.Diff diff = after.diff(before);
+        assertEquals(List.of(down), diff.getChangedInterfaces());
+        assertEquals(List.of(InetAddress.getLoopbackAddress()), diff.getRemovedAddresses());
+        assertTrue(diff.getAddedInterfaces().isEmpty());
+        assertEquals(NetworkProtocolVersion.NONE, after.getActiveProtocols());
+        assertFalse(after.getInterface(2).isUp());
+    }
+
+    @Test
+    void testNetworkUtils() {
+        List<NetworkSnapshot.Diff> diffs = new ArrayList<>();
+        NetworkSnapshot.Listener listener = diffs::add;
+        NetworkUtils.refreshNetworkSnapshot(NetworkSnapshot.EMPTY);
+        NetworkUtils.addNetworkListener(listener);
+        try {
+            NetworkUtils.setNetworkSnapshotMaxAge(Duration.ofMinutes(1L));
+            NetworkSnapshot snapshot = NetworkUtils.refreshNetworkSnapshot();
+            assertSame(snapshot, NetworkUtils.getNetworkSnapshot());
+            assertEquals(snapshot.getAddresses(), NetworkUtils.getAllAvailableAddresses());
+            assertEquals(snapshot.getAvailableProtocols(), NetworkUtils.findAvailableProtocols());
+            // every interface of the host is new compared to the empty snapshot
+            assertEquals(snapshot.getInterfaces().isEmpty() ? 0 : 1, diffs.size());
+            if (!diffs.isEmpty()) {
+                assertEquals(snapshot.getInterfaces(), diffs.get(0).getAddedInterfaces());
+            }
+        } finally {
+            NetworkUtils.removeNetworkListener(listener);
+            NetworkUtils.setNetworkSnapshotMaxAge(NetworkUtils.DEFAULT_NETWORK_SNAPSHOT_MAX_AGE);
+        }
+    }
+
+    @Test
+    void testNetworkListener() {
+        NetworkSnapshot.InterfaceState up = new NetworkSnapshot.InterfaceState(null, "eth0", "eth0", 2,
+                true, false, false, List.of(InetAddress.getLoopbackAddress()), List.of());
+        NetworkSnapshot.InterfaceState down = new NetworkSnapshot.InterfaceState(null, "eth0", "eth0", 2,
+                false, false, false, List.of(), List.of());
+        NetworkSnapshot before = new NetworkSnapshot(List.of(up), Instant.EPOCH);
+        NetworkSnapshot after = new NetworkSnapshot(List.of(down), Instant.now());
+        List<NetworkSnapshot.Diff> diffs = new ArrayList<>();
+        NetworkSnapshot.Listener listener = diffs::add;
+        NetworkUtils.refreshNetworkSnapshot(before);
+        NetworkUtils.addNetworkListener(listener);
+        try {
+            NetworkUtils.setNetworkSnapshotMaxAge(Duration.ofMinutes(1L));
+            assertSame(after, NetworkUtils.refreshNetworkSnapshot(after));
+            assertSame(after, NetworkUtils.getNetworkSnapshot());
+            assertEquals(1, diffs.size());
+            assertEquals(List.of(down), diffs.get(0).getChangedInterfaces());
+            assertEquals(List.of(InetAddress.getLoopbackAddress()), diffs.get(0).getRemovedAddresses());
+            NetworkUtils.refreshNetworkSnapshot(after);
+            assertEquals(1, diffs.size());
+        } finally {
+            NetworkUtils.removeNetworkListener(listener);
+            NetworkUtils.setNetworkSnapshotMaxAge(NetworkUtils.DEFAULT_NETWORK_SNAPSHOT_MAX_AGE);
+            NetworkUtils.refreshNetworkSnapshot();
+        }
+    }
+
+    @Test
+    void testConcurrentQueries() throws Exception {
+        NetworkSnapshot first = NetworkUtils.refreshNetworkSnapshot();
+        NetworkUtils.setNetworkSnapshotMaxAge(Duration.ZERO);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<NetworkSnapshot>> futures = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                futures.add(executorService.submit(NetworkUtils::getNetworkSnapshot));
+            }
+            for (Future<NetworkSnapshot> future : futures) {
+                assertEquals(first.getInterfaces().size(), future.get(30L, TimeUnit.SECONDS).getInterfaces().size());
+            }
+        } finally {
+            executorService.shutdown();
+            NetworkUtils.setNetworkSnapshotMaxAge(NetworkUtils.DEFAULT_NETWORK_SNAPSHOT_MAX_AGE);
+        }
+    }
+}
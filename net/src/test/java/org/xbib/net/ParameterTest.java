@@ -1,11 +1,17 @@
 package org.xbib.net;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
+import org.xbib.net.buffer.DataBuffer;
+import org.xbib.net.buffer.DefaultDataBufferFactory;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
@@ -146,6 +152,74 @@ public class ParameterTest {
         });
     }
 
+    @Test
+    void testParseBodyStream() throws IOException {
+        String body = "a=b&c=d+e&f&=g&h=%C3%A4%2B&i=j=k&l=%4&m=%zz&n=";
+        Parameter expected = Parameter.builder().enableDuplicates().addPercentEncodedBody(body).build();
+        assertEquals("[a=b, c=d e, f=null, h=\u00e4+, i=j=k, l=4, m=\ufffd, n=]", expected.toString());
+        byte[] bytes = body.getBytes(StandardCharsets.US_ASCII);
+        assertEquals(expected, Parameter.builder().enableDuplicates()
+                .addPercentEncodedBody(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8).build());
+        assertEquals(expected, Parameter.builder().enableDuplicates()
+                .addPercentEncodedBody(Channels.newChannel(new ByteArrayInputStream(bytes)), StandardCharsets.UTF_8)
+                .build());
+        DataBuffer dataBuffer = DefaultDataBufferFactory.getInstance().wrap(bytes);
+        assertEquals(expected, Parameter.builder().enableDuplicates()
+                .addPercentEncodedBody(dataBuffer, StandardCharsets.UTF_8).build());
+        assertEquals(0, dataBuffer.readableByteCount());
+        // one byte at a time, percent-encoded bytes are split across reads
+        InputStream inputStream = new ByteArrayInputStream(bytes) {
+            @Override
+            public int read(byte[] b) {
+                return read(b, 0, 1);
+            }
+        };
+        assertEquals(expected, Parameter.builder().enableDuplicates()
+                .addPercentEncodedBody(inputStream, StandardCharsets.UTF_8).build());
+    }
+
+    @Test
+    void testParseBodyStreamMalformed() throws IOException {
+        String[] bodies = { "a=Ab%%", "a=Ab%", "a=Ab%4", "b=%\u00e4", "c=%\u00e4b", "d=%4\u00e4&e=x", "f%%=1",
+                "g=%%41", "h=%+4+", "i=%zz%41%", "%=j", "k=%C3%%A4", "l=x%=%3D", "m=%\u00e4%C3%A4%" };
+        for (String body : bodies) {
+            Parameter expected = Parameter.builder().enableDuplicates().addPercentEncodedBody(body).build();
+            byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+            assertEquals(expected, Parameter.builder().enableDuplicates()
+                    .addPercentEncodedBody(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8).build(), body);
+            assertEquals(expected, Parameter.builder().enableDuplicates()
+                    .addPercentEncodedBody(DefaultDataBufferFactory.getInstance().wrap(bytes), StandardCharsets.UTF_8)
+                    .build(), body);
+            InputStream inputStream = new ByteArrayInputStream(bytes) {
+                @Override
+                public int read(byte[] b) {
+                    return read(b, 0, 1);
+                }
+            };
+            assertEquals(expected, Parameter.builder().enableDuplicates()
+                    .addPercentEncodedBody(inputStream, StandardCharsets.UTF_8).build(), body);
+        }
+        assertEquals("[a=Ab]", Parameter.builder().addPercentEncodedBody(new ByteArrayInputStream(
+                "a=Ab%%".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8).build().toString());
+        assertEquals("[b=\u00e4]", Parameter.builder().addPercentEncodedBody(new ByteArrayInputStream(
+                "b=%\u00e4".getBytes(StandardCharsets.UTF_8)), StandardCharsets.UTF_8).build().toString());
+    }
+
+    @Test
+    void testParseBodyStreamLimits() {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            sb.append("a").append(i).append("=b").append(i).append('&');
+        }
+        byte[] bytes = sb.toString().getBytes(StandardCharsets.US_ASCII);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Parameter.builder().limit(100)
+                .addPercentEncodedBody(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> Parameter.builder().byteLimit(1000)
+                .addPercentEncodedBody(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+        Assertions.assertDoesNotThrow(() -> Parameter.builder().byteLimit(bytes.length)
+                .addPercentEncodedBody(new ByteArrayInputStream(bytes), StandardCharsets.UTF_8));
+    }
+
     @Test
     void testSubDomains() {
         Parameter p1 = Parameter.builder().domain("A").add("a", "a").build();
@@ -160,4 +234,44 @@ public class ParameterTest {
         assertEquals("[b]", p.get("B", "b").toString());
         assertEquals("[c]", p.get("C", "c").toString());
     }
+
+    @Test
+    void testManyParameters() {
+        ParameterBuilder builder = Parameter.builder().enableDuplicates();
+        for (int i = 0; i < 100; i++) {
+            builder.add("k" + (i % 30), "v" + i);
+        }
+        Parameter parameter = builder.add((String) null, "n").build();
+        assertTrue(parameter.containsKey("DEFAULT", "k0"));
+        assertFalse(parameter.containsKey("DEFAULT", "k30"));
+        assertEquals("v5", parameter.get("DEFAULT", "k5"));
+        assertEquals("[v5, v35, v65, v95]", parameter.getAll("DEFAULT", "k5").toString());
+        assertEquals("[v29, v59, v89]", parameter.getAll("DEFAULT", "k29").toString());
+        assertEquals("[]", parameter.getAll("DEFAULT", "k30").toString());
+        assertEquals(null, parameter.get("DEFAULT", "k30"));
+    }
+
+    @Test
+    void testDeduplicateParameters() {
+        ParameterBuilder builder = Parameter.builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add("k" + (i % 50), "v" + (i % 100));
+        }
+        Parameter parameter = builder.build();
+        assertEquals(100, parameter.stream("DEFAULT").count());
+        assertEquals("[v1, v51]", parameter.getAll("DEFAULT", "k1").toString());
+    }
+
+    @Test
+    void testSortedParameters() {
+        ParameterBuilder builder = Parameter.builder().enableSort();
+        for (int i = 20; i > 0; i--) {
+            builder.add("k" + (char) ('a' + i), "v" + i);
+        }
+        Parameter parameter = builder.build();
+        assertEquals("v1", parameter.get("DEFAULT", "kb"));
+        assertEquals("v20", parameter.get("DEFAULT", "ku"));
+        builder.add("kb", "v1").add("kb", "v0");
+        assertEquals("[v1, v0]", builder.build().getAll("DEFAULT", "kb").toString());
+    }
 }
@@ -4,6 +4,7 @@ import org.junit.jupiter.api.Test;
 import org.xbib.net.PathNormalizer;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class PathNormalizerTest {
 
@@ -72,4 +73,52 @@ class PathNormalizerTest {
     void doNotnormalizeEmbeddedSemicolon() {
         assertEquals("/auth/cert;foo=bar/smartcard.xhtml", PathNormalizer.normalize("/auth/cert;foo=bar/smartcard.xhtml"));
     }
+
+    @Test
+    void normalizeRelativePath() {
+        assertEquals("", PathNormalizer.normalize("."));
+        assertEquals("", PathNormalizer.normalize("a/.."));
+        assertEquals("a/", PathNormalizer.normalize("a/b/.."));
+        assertEquals("b", PathNormalizer.normalize("../b"));
+        assertEquals("y", PathNormalizer.normalize("x/../../y"));
+    }
+
+    @Test
+    void normalizeDirectoryPath() {
+        assertEquals("/a/", PathNormalizer.normalize("/a/./"));
+        assertEquals("/a", PathNormalizer.normalize("/a/."));
+        assertEquals("/a/", PathNormalizer.normalize("/a/b/.."));
+        assertEquals("/a/", PathNormalizer.normalize("/a/b/..//"));
+        assertEquals("/a/c/d/", PathNormalizer.normalize("//a//b/./../c/d/"));
+    }
+
+    @Test
+    void doNotCopyNormalPath() {
+        String path = "/a/b;c=d/e.html";
+        assertSame(path, PathNormalizer.normalize(path));
+        path = "a/b/";
+        assertSame(path, PathNormalizer.normalize(path));
+    }
+
+    @Test
+    void normalizeInPlace() {
+        char[] chars = "xx//a/./b/../c/yy".toCharArray();
+        int length = PathNormalizer.normalize(chars, 2, chars.length - 4);
+        assertEquals("/a/c/", new String(chars, 2, length));
+        chars = "/a/b".toCharArray();
+        assertEquals(4, PathNormalizer.normalize(chars, 0, chars.length));
+        assertEquals(0, PathNormalizer.normalize(chars, 0, 0));
+    }
+
+    @Test
+    void normalizeSegments() {
+        PathNormalizer.Segments segments = PathNormalizer.segments("//api/./v1/../v2/users/");
+        assertEquals("/api/v2/users/", segments.getPath());
+        assertEquals(3, segments.getCount());
+        assertEquals("api", segments.get(0));
+        assertEquals("v2", segments.get(1));
+        assertEquals(8, segments.getStart(2));
+        assertEquals(13, segments.getEnd(2));
+        assertEquals(0, PathNormalizer.segments(null).getCount());
+    }
 }
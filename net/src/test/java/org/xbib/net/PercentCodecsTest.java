@@ -0,0 +1,45 @@
+package org.xbib.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class PercentCodecsTest {
+
+    @Test
+    void testThreadConfined() throws Exception {
+        PercentCodecs codecs = PercentCodecs.get(StandardCharsets.UTF_8, CodingErrorAction.REPORT);
+        assertSame(codecs, PercentCodecs.get(StandardCharsets.UTF_8, CodingErrorAction.REPORT));
+        assertSame(codecs.getPathEncoder(), codecs.getPathEncoder());
+        assertNotSame(codecs, PercentCodecs.get(StandardCharsets.UTF_8, CodingErrorAction.REPLACE));
+        assertNotSame(codecs, PercentCodecs.get(StandardCharsets.ISO_8859_1, CodingErrorAction.REPORT));
+        PercentCodecs other = CompletableFuture.supplyAsync(() ->
+                PercentCodecs.get(StandardCharsets.UTF_8, CodingErrorAction.REPORT)).get();
+        assertNotSame(codecs, other);
+    }
+
+    @Test
+    void testEncodeDecode() throws Exception {
+        PercentCodecs codecs = PercentCodecs.get(StandardCharsets.UTF_8, CodingErrorAction.REPORT);
+        assertEquals("a%20b", codecs.getPathEncoder().encode("a b"));
+        assertEquals("a%3Db", codecs.getQueryParamEncoder().encode("a=b"));
+        assertEquals("a b", codecs.getDecoder().decode("a%20b"));
+    }
+
+    @Test
+    void testEviction() {
+        PercentCodecs codecs = PercentCodecs.get(StandardCharsets.UTF_16, CodingErrorAction.IGNORE);
+        PercentCodecs.get(StandardCharsets.UTF_16BE, CodingErrorAction.IGNORE);
+        PercentCodecs.get(StandardCharsets.UTF_16LE, CodingErrorAction.IGNORE);
+        PercentCodecs.get(StandardCharsets.US_ASCII, CodingErrorAction.IGNORE);
+        PercentCodecs.get(StandardCharsets.ISO_8859_1, CodingErrorAction.IGNORE);
+        assertEquals(StandardCharsets.UTF_16, codecs.getCharset());
+        assertEquals(CodingErrorAction.IGNORE, codecs.getCodingErrorAction());
+    }
+}
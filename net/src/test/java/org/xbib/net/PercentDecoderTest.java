@@ -3,6 +3,7 @@ package org.xbib.net;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.StandardCharsets;
 import java.nio.charset.UnmappableCharacterException;
@@ -112,6 +113,52 @@ class PercentDecoderTest {
         }
     }
 
+    @Test
+    void testUnchangedInputIsReturned() throws Exception {
+        String s = "asdf\u2603";
+        Assertions.assertSame(s, decoder.decode(s));
+    }
+
+    @Test
+    void testDecodeMixedAsciiAndMultiByte() throws Exception {
+        assertEquals("a \u2603=\ud834\udd1e/", decoder.decode("a%20%E2%98%83%3D%F0%9D%84%9E%2f"));
+    }
+
+    @Test
+    void testDecodeLatin1() throws Exception {
+        PercentDecoder latin1 = new PercentDecoder(StandardCharsets.ISO_8859_1.newDecoder());
+        assertEquals("\u00e4 b", latin1.decode("%E4%20b"));
+    }
+
+    @Test
+    void testDecodeToAppendable() throws Exception {
+        StringBuilder sb = new StringBuilder("x=");
+        decoder.decode("a%20b%E2%98%83", sb);
+        assertEquals("x=a b\u2603", sb.toString());
+    }
+
+    @Test
+    void testDecodeToByteBuffer() throws Exception {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(16);
+        decoder.decode("a%20%ff\u00e4", byteBuffer);
+        byteBuffer.flip();
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(bytes);
+        assertEquals(List.of("61", "20", "ff", "c3", "a4"), toHex(bytes));
+    }
+
+    @Test
+    void testDecodeNonAsciiRunsToByteBuffer() throws Exception {
+        String input = "\u00e4\u00f6\u00fc".repeat(5) + "\ud83d\ude00%20\ud83d/\u20ac";
+        ByteBuffer byteBuffer = ByteBuffer.allocate(64);
+        decoder.decode(input, byteBuffer);
+        byteBuffer.flip();
+        byte[] bytes = new byte[byteBuffer.remaining()];
+        byteBuffer.get(bytes);
+        String expected = input.replace("%20", " ");
+        assertEquals(toHex(expected.getBytes(StandardCharsets.UTF_8)), toHex(bytes));
+    }
+
     private static List<String> toHex(byte[] bytes) {
         List<String> list = new ArrayList<>();
         for (byte b: bytes) {
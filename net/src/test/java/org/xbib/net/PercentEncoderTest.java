@@ -3,11 +3,13 @@ package org.xbib.net;
 import org.junit.jupiter.api.BeforeAll;
 import org.junit.jupiter.api.Test;
 
+import java.nio.ByteBuffer;
 import java.nio.charset.StandardCharsets;
 import java.util.BitSet;
 
 import static java.nio.charset.CodingErrorAction.REPLACE;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class PercentEncoderTest {
 
@@ -74,4 +76,36 @@ class PercentEncoderTest {
     void testUrlEncodedUtf16SurrogatePair() throws Exception {
         assertEquals("clef%D8%34%DD%1E", alnum16.encode("clef\ud834\udd1e"));
     }
+
+    @Test
+    void testUnchangedInputIsReturned() throws Exception {
+        String s = "abc123";
+        assertSame(s, alnum.encode(s));
+    }
+
+    @Test
+    void testEncodeAsciiUtf16() throws Exception {
+        assertEquals("abc%00%20123", alnum16.encode("abc 123"));
+    }
+
+    @Test
+    void testEncodeToAppendable() throws Exception {
+        StringBuilder sb = new StringBuilder("x=");
+        alnum.encode("a b\u2603", sb);
+        assertEquals("x=a%20b%E2%98%83", sb.toString());
+    }
+
+    @Test
+    void testEncodeToByteBuffer() throws Exception {
+        ByteBuffer byteBuffer = ByteBuffer.allocate(32);
+        alnum.encode("clef\ud834\udd1e", byteBuffer);
+        byteBuffer.flip();
+        assertEquals("clef%F0%9D%84%9E", StandardCharsets.US_ASCII.decode(byteBuffer).toString());
+    }
+
+    @Test
+    void testEncodeTableMatchesBitSet() throws Exception {
+        PercentEncoder pe = PercentEncoders.getQueryParamEncoder(StandardCharsets.UTF_8);
+        assertEquals("a%3Db%26c%2Bd/e?f", pe.encode("a=b&c+d/e?f"));
+    }
 }
@@ -0,0 +1,125 @@
+package org.xbib.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class URLCacheTest {
+
+    @Test
+    void testParse() throws Exception {
+        URLCache cache = new URLCache();
+        URL url = cache.parse("http://example.com/a?b=c#d");
+        assertEquals("http://example.com/a?b=c#d", url.toString());
+        assertSame(url, cache.parse("http://example.com/a?b=c#d"));
+        assertEquals(1, cache.size());
+        assertEquals(1L, cache.hitCount());
+        assertEquals(1L, cache.missCount());
+        assertEquals(26L, cache.weight());
+        assertEquals(url, URL.create("http://example.com/a?b=c#d"));
+    }
+
+    @Test
+    void testSizeEviction() throws Exception {
+        URLCache cache = new URLCache(2, 1000L);
+        URL a = cache.parse("http://a.example.com");
+        cache.parse("http://b.example.com");
+        // a gets a second chance
+        assertSame(a, cache.parse("http://a.example.com"));
+        cache.parse("http://c.example.com");
+        assertEquals(2, cache.size());
+        assertEquals(1L, cache.evictionCount());
+        assertNotNull(cache.get("http://a.example.com"));
+        assertNull(cache.get("http://b.example.com"));
+    }
+
+    @Test
+    void testWeightEviction() throws Exception {
+        URLCache cache = new URLCache(100, 40L);
+        cache.parse("http://a.example.com/1");
+        cache.parse("http://b.example.com/2");
+        assertEquals(1, cache.size());
+        assertEquals(22L, cache.weight());
+        assertEquals(1L, cache.evictionCount());
+        cache.clear();
+        assertEquals(0, cache.size());
+        assertEquals(0L, cache.weight());
+    }
+
+    @Test
+    void testInvalidArguments() {
+        assertThrows(IllegalArgumentException.class, () -> new URLCache(0, 1L));
+        assertThrows(IllegalArgumentException.class, () -> new URLCache(1, 0L));
+    }
+
+    @Test
+    void testGlobalCache() throws Exception {
+        URLCache cache = new URLCache();
+        URL.setCache(cache);
+        try {
+            URL url = URL.create("http://example.com/path");
+            assertSame(url, URL.create("http://example.com/path"));
+            URL resolved = URL.base("http://example.com/").resolve("/path");
+            assertEquals("http://example.com/path", resolved.toString());
+            assertTrue(cache.hitCount() >= 1L);
+        } finally {
+            URL.setCache(null);
+        }
+    }
+
+    @Test
+    void testResolveWithCacheResolvesHosts() throws Exception {
+        URLResolver resolver = URL.base("http://example.com/a/");
+        List<String> specs = List.of("http://127.0.0.1:8080/x", "//127.0.0.1/y", "b/c?d=e", "../f#g");
+        List<URL> expected = new ArrayList<>();
+        for (String spec : specs) {
+            expected.add(resolver.resolve(spec));
+        }
+        URLCache cache = new URLCache();
+        URL.setCache(cache);
+        try {
+            for (int i = 0; i < specs.size(); i++) {
+                URL url = resolver.resolve(specs.get(i));
+                assertEquals(expected.get(i).toExternalForm(), url.toExternalForm());
+                assertEquals(expected.get(i).getProtocolVersion(), url.getProtocolVersion());
+            }
+            // specifications with a host are not parsed by the cache
+            assertEquals(2, cache.size());
+            assertNull(cache.get("http://127.0.0.1:8080/x"));
+            assertNotNull(cache.get("b/c?d=e"));
+        } finally {
+            URL.setCache(null);
+        }
+    }
+
+    @Test
+    void testConcurrentParse() throws Exception {
+        URLCache cache = new URLCache(64, 100000L);
+        ExecutorService executorService = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<URL>> futures = new ArrayList<>();
+            for (int i = 0; i < 1000; i++) {
+                String input = "http://example.com/" + (i % 100);
+                futures.add(executorService.submit(() -> cache.parse(input)));
+            }
+            for (int i = 0; i < futures.size(); i++) {
+                assertEquals("http://example.com/" + (i % 100), futures.get(i).get().toString());
+            }
+        } finally {
+            executorService.shutdown();
+        }
+        assertTrue(cache.size() <= 64);
+        assertEquals(1000L, cache.hitCount() + cache.missCount());
+    }
+}
@@ -5,8 +5,15 @@ import org.junit.jupiter.api.Test;
 import java.net.URI;
 import java.nio.charset.MalformedInputException;
 import java.nio.charset.UnmappableCharacterException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 
 class URLResolverTest {
 
@@ -102,6 +109,53 @@ class URLResolverTest {
         resolve("http://a/b/c/d;p?q", "http://e/f/g/h", "http://e/f/g/h");
     }
 
+    @Test
+    void testResolveAll() throws Exception {
+        URLResolver resolver = URL.base("http://a/b/c/d;p?q");
+        List<String> specs = Arrays.asList("g", "./g", "g/", "/g", "//g", "?y", "g?y", "#s", "g#s",
+                "", ".", "./", "..", "../", "../g", "../..", "../../g", "../../../g", "/./g", "g;x=1/../y",
+                "g?y/./x", "g#s/../x", "http:g", "http://e/f/g/h", "mailto:joe@example.org");
+        List<URL> urls = resolver.resolveAll(specs);
+        assertEquals(specs.size(), urls.size());
+        for (int i = 0; i < specs.size(); i++) {
+            assertEquals(resolver.resolve(specs.get(i)).toExternalForm(), urls.get(i).toExternalForm());
+        }
+        assertEquals(urls.stream().map(URL::toExternalForm).collect(Collectors.toList()),
+                resolver.resolveAll(specs.stream()).map(URL::toExternalForm).collect(Collectors.toList()));
+    }
+
+    @Test
+    void testResolveAllInvalid() {
+        URLResolver resolver = URL.base("http://a/b/c/d;p?q");
+        List<URL> urls = resolver.resolveAll(Arrays.asList("g", "http://a:port/", null, ""));
+        assertEquals("http://a/b/c/g", urls.get(0).toExternalForm());
+        assertNull(urls.get(1));
+        assertNull(urls.get(2));
+        assertSame(resolver.resolveAll(List.of("")).get(0), urls.get(3));
+    }
+
+    @Test
+    void testResolveAllParallel() {
+        URLResolver resolver = URL.base("http://example.org/a/b/index.html");
+        List<String> specs = new ArrayList<>();
+        for (int i = 0; i < 5000; i++) {
+            specs.add(i % 2 == 0 ? "../page" + i + ".html" : "/docs/" + i + "?q=" + i);
+        }
+        List<String> expected = resolver.resolveAll(specs).stream()
+                .map(URL::toExternalForm).collect(Collectors.toList());
+        assertEquals("http://example.org/a/page0.html", expected.get(0));
+        assertEquals("http://example.org/docs/1?q=1", expected.get(1));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, resolver.resolveAll(specs, pool).stream()
+                    .map(URL::toExternalForm).collect(Collectors.toList()));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(expected, resolver.resolveAll(specs.parallelStream())
+                .map(URL::toExternalForm).collect(Collectors.toList()));
+    }
+
     private void resolve(String inputBase, String spec, String expected)
             throws URLSyntaxException, MalformedInputException, UnmappableCharacterException {
         assertEquals(expected, URL.base(inputBase).resolve(spec).toExternalForm());
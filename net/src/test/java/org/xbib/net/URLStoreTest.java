@@ -0,0 +1,97 @@
+package org.xbib.net;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeSet;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class URLStoreTest {
+
+    private static TreeSet<String> inputs() {
+        TreeSet<String> set = new TreeSet<>();
+        for (int i = 0; i < 1000; i++) {
+            set.add("http://example.com/path/" + i + "/resource?id=" + (i * 7));
+            set.add("https://www.example.org/" + (i % 37) + "/" + i + ".html");
+        }
+        set.add("http://example.com/path/1");
+        set.add("http://example.com/path/1/");
+        set.add("http://example.com/\u00e4\u00f6\u00fc");
+        return set;
+    }
+
+    @Test
+    void testLookup() {
+        TreeSet<String> set = inputs();
+        URLStore.Builder builder = URLStore.builder();
+        for (String s : set) {
+            builder.add(s);
+            // duplicates are removed
+            builder.add(s);
+        }
+        URLStore store = builder.build();
+        assertEquals(set.size(), store.size());
+        int i = 0;
+        for (String s : set) {
+            assertEquals(i, store.indexOf(s), s);
+            assertEquals(s, store.get(i));
+            i++;
+        }
+        assertTrue(store.contains(URL.create("http://example.com/path/1")));
+        assertFalse(store.contains("http://example.com/path/"));
+        assertFalse(store.contains("http://example.com/path/1000/resource?id=7000"));
+        assertFalse(store.contains("a"));
+        assertFalse(store.contains("zzz"));
+        assertTrue(store.sizeInBytes() < set.size() * 25L);
+    }
+
+    @Test
+    void testIterator() {
+        TreeSet<String> set = inputs();
+        URLStore.Builder builder = URLStore.builder().blockSize(5);
+        set.descendingSet().forEach(builder::add);
+        URLStore store = builder.build();
+        List<String> list = new ArrayList<>();
+        for (URLView view : store) {
+            list.add(view.toString());
+        }
+        assertEquals(new ArrayList<>(set), list);
+        assertEquals("example.com", store.getURL(0).getHost());
+    }
+
+    @Test
+    void testEmpty() {
+        URLStore store = URLStore.builder().build();
+        assertEquals(0, store.size());
+        assertEquals(-1, store.indexOf("http://example.com"));
+        assertFalse(store.iterator().hasNext());
+    }
+
+    @Test
+    void testPersistence() throws Exception {
+        TreeSet<String> set = inputs();
+        URLStore.Builder builder = URLStore.builder().segmentSize(4096);
+        set.forEach(builder::add);
+        URLStore store = builder.build();
+        Path path = Files.createTempFile("urls", ".store");
+        try {
+            store.writeTo(path);
+            URLStore mapped = URLStore.open(path);
+            assertEquals(store.size(), mapped.size());
+            assertEquals(store.sizeInBytes(), mapped.sizeInBytes());
+            int i = 0;
+            for (String s : set) {
+                assertEquals(i, mapped.indexOf(s), s);
+                i++;
+            }
+        } finally {
+            Files.delete(path);
+        }
+    }
+}
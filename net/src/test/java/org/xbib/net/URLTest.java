@@ -5,7 +5,11 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import org.junit.jupiter.api.Test;
+import org.xbib.net.buffer.DataBuffer;
+import org.xbib.net.buffer.DefaultDataBufferFactory;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.text.Normalizer;
 import java.util.ArrayList;
 import java.util.List;
@@ -282,4 +286,48 @@ class URLTest {
         assertEquals(null, iri.getQuery());
         assertEquals(null, iri.getFragment());
     }
+
+    @Test
+    void testWriteTo() throws Exception {
+        String[] inputs = {
+                "http://user@example.org:8080/a%20b/c;m=1?x=y&z#frag",
+                "https://example.org",
+                "http://[2001:db8::1]/",
+                "urn:isbn:0451450523",
+                "/relative/path?q",
+                "http://example.com/\u00fc?a=\u00e4"
+        };
+        for (String input : inputs) {
+            URL url = URL.from(input);
+            StringBuilder sb = new StringBuilder();
+            url.writeTo(sb);
+            assertEquals(url.toExternalForm(), sb.toString());
+            ByteBuffer byteBuffer = ByteBuffer.allocate(256);
+            url.writeTo(byteBuffer);
+            byteBuffer.flip();
+            assertEquals(url.toExternalForm(), StandardCharsets.UTF_8.decode(byteBuffer).toString());
+            DataBuffer dataBuffer = DefaultDataBufferFactory.getInstance().allocateBuffer(4);
+            url.writeTo(dataBuffer);
+            assertEquals(url.toExternalForm(), dataBuffer.toString(StandardCharsets.UTF_8));
+        }
+    }
+
+    @Test
+    void testWriteToOriginForm() throws Exception {
+        URL url = URL.from("http://user@example.org:8080/a%20b/c?x=y#frag");
+        StringBuilder sb = new StringBuilder();
+        url.writeTo(sb, true);
+        assertEquals("/a%20b/c?x=y", sb.toString());
+        sb.setLength(0);
+        URL.from("http://example.org").writeTo(sb, true);
+        assertEquals("/", sb.toString());
+        ByteBuffer byteBuffer = ByteBuffer.allocate(64);
+        URL.from("http://example.org/p?q=\u00e4").writeTo(byteBuffer, true);
+        byteBuffer.flip();
+        // a parsed query is not encoded again, the non-ASCII chars are written in UTF-8
+        assertEquals("/p?q=\u00e4", StandardCharsets.UTF_8.decode(byteBuffer).toString());
+        DataBuffer dataBuffer = DefaultDataBufferFactory.getInstance().allocateBuffer(4);
+        URL.from("http://example.org/index.html").writeTo(dataBuffer, true);
+        assertEquals("/index.html", dataBuffer.toString(StandardCharsets.US_ASCII));
+    }
 }
@@ -0,0 +1,114 @@
+package org.xbib.net.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ByteSearchTest {
+
+	private static final byte[] CRLF = { '\r', '\n' };
+
+	private static final byte[] CRLFCRLF = { '\r', '\n', '\r', '\n' };
+
+	private final DataBufferFactory factory = DefaultDataBufferFactory.getInstance();
+
+	@Test
+	void testIndexOfByte() {
+		DataBuffer dataBuffer = factory.wrap("Hello, world".getBytes(StandardCharsets.US_ASCII));
+		assertEquals(4, dataBuffer.indexOf((byte) 'o', 0));
+		assertEquals(8, dataBuffer.indexOf((byte) 'o', 5));
+		assertEquals(11, dataBuffer.indexOf((byte) 'd', -1));
+		assertEquals(-1, dataBuffer.indexOf((byte) 'x', 0));
+		assertEquals(-1, dataBuffer.indexOf((byte) 'd', 12));
+		assertEquals(-1, factory.wrap(new byte[] { (byte) 0x80 }).indexOf((byte) 0, 0));
+		assertEquals(0, factory.wrap(new byte[] { (byte) 0x80 }).indexOf((byte) 0x80, 0));
+	}
+
+	@Test
+	void testIndexOfNeedle() {
+		DataBuffer dataBuffer = factory.wrap("Hello, world".getBytes(StandardCharsets.US_ASCII));
+		assertEquals(7, dataBuffer.indexOf("world".getBytes(StandardCharsets.US_ASCII), 0));
+		assertEquals(-1, dataBuffer.indexOf("worlds".getBytes(StandardCharsets.US_ASCII), 0));
+		assertEquals(3, dataBuffer.indexOf(new byte[0], 3));
+		assertEquals(-1, dataBuffer.indexOf(new byte[0], 13));
+	}
+
+	@Test
+	void testMimeBoundary() {
+		byte[] boundary = "\r\n--simple boundary".getBytes(StandardCharsets.US_ASCII);
+		StringBuilder sb = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			sb.append("-- not a boundary\r\n");
+		}
+		int index = sb.length();
+		sb.append("\r\n--simple boundary--\r\n");
+		DataBuffer dataBuffer = factory.wrap(sb.toString().getBytes(StandardCharsets.US_ASCII));
+		assertEquals(index, dataBuffer.indexOf(boundary, 0));
+		assertEquals(-1, dataBuffer.indexOf(boundary, index + 1));
+	}
+
+	@Test
+	void testHeaders() {
+		DataBuffer dataBuffer = factory.wrap("Host: example.org\r\nAccept: */*\r\n\r\nbody\r\n\r\n"
+				.getBytes(StandardCharsets.US_ASCII));
+		assertEquals(17, dataBuffer.indexOfCrlf(0));
+		assertEquals(30, dataBuffer.indexOfCrlf(18));
+		assertEquals(30, dataBuffer.indexOfCrlfCrlf(0));
+		assertEquals(38, dataBuffer.indexOfCrlfCrlf(31));
+		assertEquals(-1, factory.wrap("\r\r\n\r".getBytes(StandardCharsets.US_ASCII)).indexOfCrlfCrlf(0));
+		assertEquals(1, factory.wrap("\r\r\n\r\n".getBytes(StandardCharsets.US_ASCII)).indexOfCrlfCrlf(0));
+	}
+
+	@Test
+	void testRandom() {
+		Random random = new Random(42L);
+		for (int n = 0; n < 2000; n++) {
+			byte[] bytes = new byte[random.nextInt(600)];
+			for (int i = 0; i < bytes.length; i++) {
+				bytes[i] = (byte) "ab\r\n-\u0080".charAt(random.nextInt(6));
+			}
+			byte[] needle = new byte[1 + random.nextInt(12)];
+			for (int i = 0; i < needle.length; i++) {
+				needle[i] = (byte) "ab\r\n-\u0080".charAt(random.nextInt(4));
+			}
+			int from = random.nextInt(bytes.length + 2) - 1;
+			ByteBuffer littleEndian = ByteBuffer.wrap(bytes).order(ByteOrder.LITTLE_ENDIAN);
+			ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+			int start = Math.max(from, 0);
+			for (ByteBuffer byteBuffer : List.of(ByteBuffer.wrap(bytes), littleEndian, direct)) {
+				assertEquals(reference(bytes, new byte[] { needle[0] }, from),
+						ByteSearch.indexOf(byteBuffer, needle[0], start, bytes.length));
+				assertEquals(reference(bytes, needle, from),
+						ByteSearch.indexOf(byteBuffer, needle, start, bytes.length));
+				assertEquals(reference(bytes, CRLF, from), ByteSearch.indexOfCrlf(byteBuffer, start, bytes.length));
+				assertEquals(reference(bytes, CRLFCRLF, from),
+						ByteSearch.indexOfCrlfCrlf(byteBuffer, start, bytes.length));
+			}
+			DataBuffer dataBuffer = new CompositeDataBuffer(factory, List.of(
+					factory.wrap(bytes).slice(0, bytes.length / 2),
+					factory.wrap(bytes).slice(bytes.length / 2, bytes.length - bytes.length / 2)));
+			assertEquals(reference(bytes, needle, from), dataBuffer.indexOf(needle, from));
+			assertEquals(reference(bytes, new byte[] { needle[0] }, from), dataBuffer.indexOf(needle[0], from));
+			assertEquals(reference(bytes, CRLFCRLF, from), dataBuffer.indexOfCrlfCrlf(from));
+		}
+	}
+
+	private static int reference(byte[] bytes, byte[] needle, int from) {
+		outer:
+		for (int i = Math.max(from, 0); i <= bytes.length - needle.length; i++) {
+			for (int j = 0; j < needle.length; j++) {
+				if (bytes[i + j] != needle[j]) {
+					continue outer;
+				}
+			}
+			return i;
+		}
+		return -1;
+	}
+}
@@ -0,0 +1,119 @@
+package org.xbib.net.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CompositeDataBufferTest {
+
+	private final DataBufferFactory factory = DefaultDataBufferFactory.getInstance();
+
+	private DataBuffer buffer(String s) {
+		return factory.wrap(s.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	void testJoin() {
+		DataBuffer dataBuffer = factory.join(List.of(buffer("Hello, "), buffer("w\u00f6"), buffer("rld")));
+		assertTrue(dataBuffer instanceof CompositeDataBuffer);
+		assertEquals(3, ((CompositeDataBuffer) dataBuffer).getComponentCount());
+		assertEquals(13, dataBuffer.readableByteCount());
+		assertEquals("Hello, w\u00f6rld", dataBuffer.toString(StandardCharsets.UTF_8));
+		assertEquals("o, w\u00f6r", dataBuffer.toString(4, 7, StandardCharsets.UTF_8));
+		assertEquals(7, dataBuffer.indexOf(b -> b == 'w', 0));
+		assertEquals(10, dataBuffer.indexOf(b -> b == 'r', 9));
+		assertEquals(4, dataBuffer.lastIndexOf(b -> b == 'o', 8));
+		assertEquals(-1, dataBuffer.indexOf(b -> b == 'x', 0));
+	}
+
+	@Test
+	void testRead() throws IOException {
+		DataBuffer dataBuffer = factory.join(List.of(buffer("abc"), buffer("def"), buffer("ghi")));
+		assertEquals('a', dataBuffer.read());
+		byte[] bytes = new byte[5];
+		dataBuffer.read(bytes);
+		assertEquals("bcdef", new String(bytes, StandardCharsets.US_ASCII));
+		assertEquals('g', dataBuffer.getByte(6));
+		try (InputStream inputStream = dataBuffer.asInputStream()) {
+			assertEquals("ghi", new String(inputStream.readAllBytes(), StandardCharsets.US_ASCII));
+		}
+		assertEquals(0, dataBuffer.readableByteCount());
+	}
+
+	@Test
+	void testSlice() {
+		CompositeDataBuffer dataBuffer = new CompositeDataBuffer(factory, List.of(buffer("abc"), buffer("def")));
+		CompositeDataBuffer slice = dataBuffer.slice(2, 3);
+		assertEquals("cde", slice.toString(StandardCharsets.US_ASCII));
+		assertEquals(2, slice.getComponentCount());
+		assertEquals("d", slice.slice(1, 1).toString(StandardCharsets.US_ASCII));
+		assertEquals("cde", StandardCharsets.US_ASCII.decode(slice.asByteBuffer()).toString());
+		assertEquals(2, dataBuffer.getComponentCount());
+	}
+
+	@Test
+	void testByteBuffers() {
+		CompositeDataBuffer dataBuffer = new CompositeDataBuffer(factory, List.of(buffer("abc"), buffer("def")));
+		dataBuffer.readPosition(1);
+		ByteBuffer[] byteBuffers = dataBuffer.asByteBuffers();
+		assertEquals(2, byteBuffers.length);
+		assertEquals("bc", StandardCharsets.US_ASCII.decode(byteBuffers[0]).toString());
+		assertEquals("def", StandardCharsets.US_ASCII.decode(byteBuffers[1]).toString());
+		assertEquals(1, dataBuffer.readPosition());
+	}
+
+	@Test
+	void testConsolidate() {
+		CompositeDataBuffer dataBuffer = new CompositeDataBuffer(factory, List.of(buffer("abc"), buffer("def")));
+		assertEquals("bc", StandardCharsets.US_ASCII.decode(dataBuffer.asByteBuffer(1, 2)).toString());
+		assertEquals(2, dataBuffer.getComponentCount());
+		assertEquals("abcdef", StandardCharsets.US_ASCII.decode(dataBuffer.asByteBuffer()).toString());
+		assertEquals(1, dataBuffer.getComponentCount());
+		assertEquals("abcdef", dataBuffer.toString(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void testWrite() {
+		CompositeDataBuffer dataBuffer = new CompositeDataBuffer(factory, List.of(buffer("abc")));
+		byte[] bytes = new byte[300];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) ('a' + i % 26);
+		}
+		dataBuffer.write(bytes);
+		dataBuffer.write((byte) '!');
+		assertEquals(304, dataBuffer.readableByteCount());
+		assertTrue(dataBuffer.writableByteCount() > 0);
+		dataBuffer.addComponent(buffer("xyz"));
+		assertEquals(0, dataBuffer.writableByteCount());
+		String s = dataBuffer.toString(StandardCharsets.US_ASCII);
+		assertEquals("abc" + new String(bytes, StandardCharsets.US_ASCII) + "!xyz", s);
+		DataBuffer target = factory.allocateBuffer(4);
+		target.write(dataBuffer);
+		assertEquals(s, target.toString(StandardCharsets.US_ASCII));
+	}
+
+	@Test
+	void testRelease() {
+		PooledDataBufferFactory pooledFactory = PooledDataBufferFactory.builder().build();
+		DefaultPooledDataBuffer first = pooledFactory.allocateBuffer(8);
+		first.write("foo", StandardCharsets.US_ASCII);
+		DefaultPooledDataBuffer second = pooledFactory.allocateBuffer(8);
+		second.write("bar", StandardCharsets.US_ASCII);
+		CompositeDataBuffer dataBuffer = new CompositeDataBuffer(pooledFactory, List.of(first, second));
+		DataBuffer slice = dataBuffer.retainedSlice(2, 2);
+		assertFalse(dataBuffer.release());
+		assertEquals("ob", slice.toString(StandardCharsets.US_ASCII));
+		assertTrue(DataBufferUtil.release(slice));
+		assertFalse(dataBuffer.isAllocated());
+		assertFalse(first.isAllocated());
+		assertFalse(second.isAllocated());
+	}
+}
@@ -0,0 +1,183 @@
+package org.xbib.net.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Flow;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DataBufferUtilTest {
+
+	private final PooledDataBufferFactory factory = PooledDataBufferFactory.builder().build();
+
+	@Test
+	void testReadOnDemand() throws Exception {
+		Flow.Publisher<DataBuffer> publisher = DataBufferUtil.read(Channels.newChannel(
+				new ByteArrayInputStream("abcdefghij".getBytes(StandardCharsets.US_ASCII))), factory, 4);
+		TestSubscriber subscriber = new TestSubscriber();
+		publisher.subscribe(subscriber);
+		assertTrue(subscriber.buffers.isEmpty());
+		subscriber.subscription.request(1L);
+		assertEquals(List.of("abcd"), subscriber.strings());
+		subscriber.subscription.request(Long.MAX_VALUE);
+		assertTrue(subscriber.done.await(5L, TimeUnit.SECONDS));
+		assertEquals(List.of("abcd", "efgh", "ij"), subscriber.strings());
+		assertNull(subscriber.error);
+		TestSubscriber second = new TestSubscriber();
+		publisher.subscribe(second);
+		assertTrue(second.error instanceof IllegalStateException);
+		subscriber.buffers.forEach(DataBufferUtil::release);
+	}
+
+	@Test
+	void testWriteReleases() throws Exception {
+		List<DataBuffer> dataBuffers = new ArrayList<>();
+		for (String s : List.of("Hello", ", ", "world")) {
+			dataBuffers.add(factory.allocateBuffer(8).write(s, StandardCharsets.US_ASCII));
+		}
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		long written = DataBufferUtil.write(new ListPublisher(dataBuffers), Channels.newChannel(outputStream))
+				.get(5L, TimeUnit.SECONDS);
+		assertEquals(12L, written);
+		assertEquals("Hello, world", outputStream.toString(StandardCharsets.US_ASCII));
+		for (DataBuffer dataBuffer : dataBuffers) {
+			assertFalse(((PooledDataBuffer) dataBuffer).isAllocated());
+		}
+	}
+
+	@Test
+	void testAsynchronousFileChannel() throws Exception {
+		byte[] bytes = new byte[100000];
+		new Random(42L).nextBytes(bytes);
+		Path path = Files.createTempFile("flow", ".bin");
+		path.toFile().deleteOnExit();
+		try (AsynchronousFileChannel target = AsynchronousFileChannel.open(path, StandardOpenOption.WRITE)) {
+			Flow.Publisher<DataBuffer> publisher = DataBufferUtil.read(Channels.newChannel(
+					new ByteArrayInputStream(bytes)), factory, 4096);
+			long written = DataBufferUtil.write(publisher, target, 10L).get(5L, TimeUnit.SECONDS);
+			assertEquals(100000L, written);
+		}
+		assertEquals(100010L, Files.size(path));
+		try (AsynchronousFileChannel source = AsynchronousFileChannel.open(path, StandardOpenOption.READ)) {
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			Flow.Publisher<DataBuffer> publisher = DataBufferUtil.read(source, 10L, factory, 3000);
+			long written = DataBufferUtil.write(publisher, Channels.newChannel(outputStream))
+					.get(5L, TimeUnit.SECONDS);
+			assertEquals(100000L, written);
+			assertArrayEquals(bytes, outputStream.toByteArray());
+		}
+	}
+
+	@Test
+	void testCancel() throws Exception {
+		Path path = Files.createTempFile("flow", ".txt");
+		path.toFile().deleteOnExit();
+		Files.write(path, "abcdefghij".getBytes(StandardCharsets.US_ASCII));
+		try (AsynchronousFileChannel source = AsynchronousFileChannel.open(path, StandardOpenOption.READ)) {
+			TestSubscriber subscriber = new TestSubscriber() {
+				@Override
+				public void onNext(DataBuffer dataBuffer) {
+					super.onNext(dataBuffer);
+					subscription.cancel();
+					done.countDown();
+				}
+			};
+			DataBufferUtil.read(source, factory, 2).subscribe(subscriber);
+			subscriber.subscription.request(3L);
+			assertTrue(subscriber.done.await(5L, TimeUnit.SECONDS));
+			Thread.sleep(50L);
+			assertEquals(List.of("ab"), subscriber.strings());
+			subscriber.buffers.forEach(DataBufferUtil::release);
+		}
+	}
+
+	private static class TestSubscriber implements Flow.Subscriber<DataBuffer> {
+
+		final List<DataBuffer> buffers = new ArrayList<>();
+
+		final CountDownLatch done = new CountDownLatch(1);
+
+		volatile Flow.Subscription subscription;
+
+		volatile Throwable error;
+
+		@Override
+		public void onSubscribe(Flow.Subscription subscription) {
+			this.subscription = subscription;
+		}
+
+		@Override
+		public synchronized void onNext(DataBuffer dataBuffer) {
+			buffers.add(dataBuffer);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+			this.error = throwable;
+			done.countDown();
+		}
+
+		@Override
+		public void onComplete() {
+			done.countDown();
+		}
+
+		synchronized List<String> strings() {
+			List<String> list = new ArrayList<>();
+			for (DataBuffer dataBuffer : buffers) {
+				list.add(dataBuffer.toString(StandardCharsets.US_ASCII));
+			}
+			return list;
+		}
+	}
+
+	private static class ListPublisher implements Flow.Publisher<DataBuffer> {
+
+		private final Iterator<DataBuffer> iterator;
+
+		private boolean completed;
+
+		ListPublisher(List<DataBuffer> dataBuffers) {
+			this.iterator = dataBuffers.iterator();
+		}
+
+		@Override
+		public void subscribe(Flow.Subscriber<? super DataBuffer> subscriber) {
+			subscriber.onSubscribe(new Flow.Subscription() {
+
+				@Override
+				public void request(long n) {
+					for (long i = 0; i < n && iterator.hasNext(); i++) {
+						subscriber.onNext(iterator.next());
+					}
+					if (!iterator.hasNext() && !completed) {
+						completed = true;
+						subscriber.onComplete();
+					}
+				}
+
+				@Override
+				public void cancel() {
+				}
+			});
+		}
+	}
+}
@@ -0,0 +1,133 @@
+package org.xbib.net.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class FileRegionDataBufferTest {
+
+	private final DataBufferFactory factory = DefaultDataBufferFactory.getInstance();
+
+	private Path file(String content) throws IOException {
+		Path path = Files.createTempFile("region", ".txt");
+		Files.write(path, content.getBytes(StandardCharsets.UTF_8));
+		path.toFile().deleteOnExit();
+		return path;
+	}
+
+	@Test
+	void testRead() throws IOException {
+		Path path = file("Hello, w\u00f6rld");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			FileRegionDataBuffer dataBuffer = new FileRegionDataBuffer(factory, channel, 7L, 6);
+			assertEquals(6, dataBuffer.readableByteCount());
+			assertEquals(0, dataBuffer.writableByteCount());
+			assertEquals("w\u00f6rld", dataBuffer.toString(StandardCharsets.UTF_8));
+			assertEquals((byte) 'w', dataBuffer.read());
+			assertEquals(4, dataBuffer.indexOf(b -> b == 'l', 0));
+			assertEquals(4, dataBuffer.lastIndexOf(b -> b == 'l', 5));
+			byte[] bytes = new byte[2];
+			dataBuffer.read(bytes);
+			assertArrayEquals("\u00f6".getBytes(StandardCharsets.UTF_8), bytes);
+			assertTrue(dataBuffer.asByteBuffer().isReadOnly());
+			assertThrows(UnsupportedOperationException.class, () -> dataBuffer.write((byte) 'x'));
+			assertThrows(UnsupportedOperationException.class, () -> dataBuffer.capacity(10));
+			assertTrue(dataBuffer.release());
+			assertFalse(dataBuffer.isAllocated());
+			assertThrows(IllegalStateException.class, () -> dataBuffer.getByte(0));
+			assertTrue(channel.isOpen());
+		}
+	}
+
+	@Test
+	void testSlice() throws IOException {
+		Path path = file("Hello, world");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			FileRegionDataBuffer dataBuffer = new FileRegionDataBuffer(factory, channel, 0L, 12);
+			FileRegionDataBuffer slice = dataBuffer.slice(7, 5);
+			assertEquals(7L, slice.getFilePosition());
+			assertEquals("world", slice.toString(StandardCharsets.UTF_8));
+			assertEquals("or", slice.slice(1, 2).toString(StandardCharsets.UTF_8));
+			slice.retain();
+			assertFalse(dataBuffer.release());
+			assertEquals("world", slice.toString(StandardCharsets.UTF_8));
+			assertTrue(slice.release());
+			assertFalse(dataBuffer.isAllocated());
+		}
+	}
+
+	@Test
+	void testUnmapOnRelease() throws IOException {
+		Path path = file("Hello, world");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			FileRegionDataBuffer dataBuffer = new FileRegionDataBuffer(factory, channel, 0L, 12, true);
+			assertEquals("Hello, world", dataBuffer.toString(StandardCharsets.UTF_8));
+			assertTrue(dataBuffer.release());
+			assertThrows(IllegalStateException.class, () -> dataBuffer.getByte(0));
+			assertThrows(IllegalStateException.class, dataBuffer::asByteBuffer);
+		}
+	}
+
+	@Test
+	void testEscapedViewSurvivesRelease() throws IOException {
+		Path path = file("Hello, world");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			FileRegionDataBuffer dataBuffer = new FileRegionDataBuffer(factory, channel, 0L, 12, true);
+			DataBuffer other = factory.wrap("!".getBytes(StandardCharsets.UTF_8));
+			CompositeDataBuffer composite = (CompositeDataBuffer) factory.join(List.of(dataBuffer, other));
+			ByteBuffer byteBuffer = composite.asByteBuffers()[0];
+			ByteBuffer slice = dataBuffer.slice(7, 5).asByteBuffer();
+			DataBufferUtil.release(composite);
+			assertFalse(dataBuffer.isAllocated());
+			assertEquals((byte) 'H', byteBuffer.get(0));
+			assertEquals((byte) 'w', slice.get(0));
+		}
+	}
+
+	@Test
+	void testTransferTo() throws IOException {
+		Path path = file("Hello, world");
+		try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+			FileRegionDataBuffer dataBuffer = new FileRegionDataBuffer(factory, channel, 0L, 12);
+			dataBuffer.readPosition(7);
+			ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+			assertEquals(5L, DataBufferUtil.transferTo(dataBuffer, Channels.newChannel(outputStream)));
+			assertEquals("world", outputStream.toString(StandardCharsets.UTF_8));
+			assertEquals(0, dataBuffer.readableByteCount());
+			DataBufferUtil.release(dataBuffer);
+		}
+	}
+
+	@Test
+	void testMapBuffers() throws IOException {
+		Path path = file("Hello, world");
+		List<FileRegionDataBuffer> dataBuffers = DataBufferUtil.mapBuffers(factory, path, 5);
+		assertEquals(3, dataBuffers.size());
+		StringBuilder sb = new StringBuilder();
+		for (FileRegionDataBuffer dataBuffer : dataBuffers) {
+			try (InputStream inputStream = dataBuffer.asInputStream(true)) {
+				sb.append(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8));
+			}
+		}
+		assertEquals("Hello, world", sb.toString());
+		FileChannel channel = dataBuffers.get(0).getChannel();
+		assertFalse(channel.isOpen());
+		assertTrue(DataBufferUtil.mapBuffers(factory, file(""), 5).isEmpty());
+	}
+}
@@ -0,0 +1,130 @@
+package org.xbib.net.buffer;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class PooledDataBufferFactoryTest {
+
+	@Test
+	void testSizeClasses() {
+		PooledDataBufferFactory factory = PooledDataBufferFactory.builder().build();
+		assertEquals(64, factory.allocateBuffer(0).capacity());
+		assertEquals(64, factory.allocateBuffer(64).capacity());
+		assertEquals(128, factory.allocateBuffer(65).capacity());
+		assertEquals(4096, factory.allocateBuffer(4000).capacity());
+		int large = PooledDataBufferFactory.DEFAULT_MAXIMUM_POOLED_CAPACITY + 1;
+		assertEquals(large, factory.allocateBuffer(large).capacity());
+	}
+
+	@Test
+	void testReuse() {
+		for (boolean direct : new boolean[] { false, true }) {
+			PooledDataBufferFactory factory = PooledDataBufferFactory.builder().preferDirect(direct).build();
+			for (int i = 0; i < 1000; i++) {
+				DefaultPooledDataBuffer dataBuffer = factory.allocateBuffer(1000);
+				dataBuffer.write("hello", StandardCharsets.UTF_8);
+				assertEquals("hello", dataBuffer.toString(StandardCharsets.UTF_8));
+				assertTrue(dataBuffer.release());
+			}
+			assertEquals(1, factory.getAllocationCount());
+		}
+	}
+
+	@Test
+	void testArena() throws InterruptedException {
+		PooledDataBufferFactory factory = PooledDataBufferFactory.builder().threadCacheSize(4).build();
+		List<DefaultPooledDataBuffer> dataBuffers = new ArrayList<>();
+		for (int i = 0; i < 16; i++) {
+			dataBuffers.add(factory.allocateBuffer(100));
+		}
+		long allocations = factory.getAllocationCount();
+		Thread thread = new Thread(() -> dataBuffers.forEach(DataBufferUtil::release));
+		thread.start();
+		thread.join();
+		assertTrue(factory.getArenaByteCount() > 0L);
+		for (int i = 0; i < 8; i++) {
+			factory.allocateBuffer(100);
+		}
+		assertEquals(allocations, factory.getAllocationCount());
+	}
+
+	@Test
+	void testRefCount() {
+		PooledDataBufferFactory factory = PooledDataBufferFactory.builder().build();
+		DefaultPooledDataBuffer dataBuffer = factory.allocateBuffer(16);
+		dataBuffer.write("abcdef", StandardCharsets.US_ASCII);
+		DataBuffer slice = dataBuffer.retainedSlice(1, 3);
+		assertEquals("bcd", slice.toString(StandardCharsets.US_ASCII));
+		assertFalse(dataBuffer.release());
+		assertTrue(dataBuffer.isAllocated());
+		assertTrue(DataBufferUtil.release(slice));
+		assertFalse(dataBuffer.isAllocated());
+		assertEquals(0, dataBuffer.capacity());
+		assertThrows(IllegalStateException.class, dataBuffer::release);
+		assertThrows(IllegalStateException.class, dataBuffer::retain);
+		assertThrows(IllegalStateException.class, () -> dataBuffer.write((byte) 1));
+		assertFalse(DataBufferUtil.release(dataBuffer));
+	}
+
+	@Test
+	void testGrow() {
+		PooledDataBufferFactory factory = PooledDataBufferFactory.builder().build();
+		DefaultPooledDataBuffer dataBuffer = factory.allocateBuffer(64);
+		byte[] bytes = new byte[1000];
+		for (int i = 0; i < bytes.length; i++) {
+			bytes[i] = (byte) i;
+		}
+		dataBuffer.write(bytes);
+		assertEquals(1024, dataBuffer.capacity());
+		byte[] result = new byte[1000];
+		dataBuffer.read(result);
+		assertEquals(Arrays.toString(bytes), Arrays.toString(result));
+		assertTrue(dataBuffer.release());
+		long allocations = factory.getAllocationCount();
+		factory.allocateBuffer(64).release();
+		factory.allocateBuffer(1024).release();
+		assertEquals(allocations, factory.getAllocationCount());
+	}
+
+	@Test
+	void testGrowSliced() {
+		PooledDataBufferFactory factory = PooledDataBufferFactory.builder().build();
+		DefaultPooledDataBuffer dataBuffer = factory.allocateBuffer(64);
+		dataBuffer.write("hello", StandardCharsets.US_ASCII);
+		DataBuffer slice = dataBuffer.retainedSlice(0, 5);
+		dataBuffer.write(new byte[1000]);
+		assertEquals(1024, dataBuffer.capacity());
+		long allocations = factory.getAllocationCount();
+		DefaultPooledDataBuffer other = factory.allocateBuffer(64);
+		other.write("world", StandardCharsets.US_ASCII);
+		assertEquals(allocations + 1, factory.getAllocationCount());
+		assertEquals("hello", slice.toString(StandardCharsets.US_ASCII));
+		assertTrue(other.release());
+		assertFalse(DataBufferUtil.release(slice));
+		assertTrue(dataBuffer.release());
+	}
+
+	@Test
+	void testJoin() {
+		PooledDataBufferFactory factory = PooledDataBufferFactory.builder().build();
+		DefaultPooledDataBuffer first = factory.allocateBuffer(8);
+		first.write("foo", StandardCharsets.US_ASCII);
+		DefaultPooledDataBuffer second = factory.allocateBuffer(8);
+		second.write("bar", StandardCharsets.US_ASCII);
+		DataBuffer joined = factory.join(List.of(first, second));
+		assertEquals("foobar", joined.toString(StandardCharsets.US_ASCII));
+		assertTrue(first.isAllocated());
+		assertTrue(DataBufferUtil.release(joined));
+		assertFalse(first.isAllocated());
+		assertFalse(second.isAllocated());
+	}
+}
@@ -0,0 +1,4 @@
+/**
+ * Classes for testing data buffers.
+ */
+package org.xbib.net.buffer;
@@ -5,6 +5,8 @@ import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.ObjectReader;
 import org.junit.jupiter.api.Test;
+import org.xbib.net.buffer.DataBuffer;
+import org.xbib.net.buffer.DefaultDataBufferFactory;
 import org.xbib.net.template.expression.ExpressionType;
 import org.xbib.net.template.expression.TemplateExpression;
 import org.xbib.net.template.expression.URITemplateExpression;
@@ -24,6 +26,7 @@ import org.xbib.net.template.vars.values.ScalarValue;
 import org.xbib.net.template.vars.values.VariableValue;
 
 import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
@@ -34,7 +37,9 @@ import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.junit.jupiter.api.Assertions.fail;
 
@@ -375,6 +380,132 @@ class URITemplateTest {
         }
     }
 
+    @Test
+    void testExpandAppendable() throws Exception {
+        Variables vars = Variables.builder()
+                .add("var", new ScalarValue("val\u00fcue"))
+                .add("list", ListValue.copyOf(Arrays.asList("red", "green")))
+                .build();
+        String[] templates = { "/x{?var,list*}", "{+var}/{#list}", "{/list*}{;var:3}", "X{.var}" };
+        for (String s : templates) {
+            URITemplate template = URITemplate.of(s);
+            assertSame(template, URITemplate.of(s));
+            StringBuilder sb = new StringBuilder();
+            template.expand(vars, sb);
+            assertEquals(template.toString(vars), sb.toString());
+            DataBuffer dataBuffer = DefaultDataBufferFactory.getInstance().allocateBuffer();
+            template.expand(vars, dataBuffer);
+            assertEquals(template.toString(vars), dataBuffer.toString(StandardCharsets.US_ASCII));
+        }
+    }
+
+    @Test
+    void testMatch() {
+        Variables vars = URITemplate.of("/users/{id}/posts{/post}{?q,lang}").match("/users/j%C3%B6rg/posts/42?lang=de")
+                .orElseThrow();
+        assertEquals("j\u00f6rg", vars.get("id").getScalarValue());
+        assertEquals("42", vars.get("post").getScalarValue());
+        assertEquals("de", vars.get("lang").getScalarValue());
+        assertNull(vars.get("q"));
+        vars = URITemplate.of("{+base}/hooks{#frag}").match("http://example.com/a/b/hooks#x,y").orElseThrow();
+        assertEquals("http://example.com/a/b", vars.get("base").getScalarValue());
+        assertEquals("x,y", vars.get("frag").getScalarValue());
+        vars = URITemplate.of("map{?x,y}").match("map?y=768&x=1024").orElseThrow();
+        assertEquals("1024", vars.get("x").getScalarValue());
+        assertEquals("768", vars.get("y").getScalarValue());
+        vars = URITemplate.of("X{.x,y}{;empty}").match("X.a.b.c;empty").orElseThrow();
+        assertEquals("a", vars.get("x").getScalarValue());
+        assertEquals("b.c", vars.get("y").getScalarValue());
+        assertEquals("", vars.get("empty").getScalarValue());
+        vars = URITemplate.of("/{a}/{a}").match("/x/x").orElseThrow();
+        assertEquals("x", vars.get("a").getScalarValue());
+        assertFalse(URITemplate.of("/{a}/{a}").match("/x/y").isPresent());
+        assertFalse(URITemplate.of("/users/{id}").match("/users/1/posts").isPresent());
+        assertFalse(URITemplate.of("/users/{id}").match("/groups/1").isPresent());
+        assertFalse(URITemplate.of("{?q}").match("?other=1").isPresent());
+        assertFalse(URITemplate.of("/{var:3}").match("/value").isPresent());
+        assertFalse(URITemplate.of("/{var}").match("/%zz").isPresent());
+    }
+
+    @Test
+    void testMatchExpansion() {
+        Variables vars = Variables.builder()
+                .add("var", "value")
+                .add("hello", "Hello World!")
+                .add("path", "/foo/bar")
+                .add("x", "1024")
+                .add("empty", "")
+                .build();
+        String[] templates = { "{var}", "{hello}", "{+hello}", "{+path}/here", "here?ref={+path}", "X{#var}",
+                "map?{x,var}", "{x,hello,y}", "{+x,hello,y}", "{#path,x}/here", "X{.var}", "X{.x,var}",
+                "{/var,x}/here", "{;x,empty}", "{?x,hello,empty}", "?fixed=yes{&x}", "{var:3}/{hello}" };
+        for (String s : templates) {
+            URITemplate template = URITemplate.of(s);
+            String expanded = template.toString(vars);
+            Variables matched = template.match(expanded).orElseThrow();
+            assertEquals(expanded, template.toString(matched), s);
+        }
+    }
+
+    @Test
+    void testMatchRepeatedVariables() {
+        Variables vars = URITemplate.of("{&a,a:3}").match("&a=hello&a=hel").orElseThrow();
+        assertEquals("hello", vars.get("a").getScalarValue());
+        vars = URITemplate.of("{&b}{/b:2}").match("&b=hello/he").orElseThrow();
+        assertEquals("hello", vars.get("b").getScalarValue());
+        vars = URITemplate.of("{/b:2}{&b}").match("/he&b=hello").orElseThrow();
+        assertEquals("hello", vars.get("b").getScalarValue());
+        vars = URITemplate.of("{/b:2}{/b:3}").match("/he/hel").orElseThrow();
+        assertEquals("hel", vars.get("b").getScalarValue());
+        assertFalse(URITemplate.of("{&a,a:3}").match("&a=hello&a=abc").isPresent());
+        assertFalse(URITemplate.of("{&b}{/b:2}").match("&b=hello/ab").isPresent());
+        assertFalse(URITemplate.of("{&b}{/b:2}").match("&b=h/he").isPresent());
+        assertFalse(URITemplate.of("{/b:2}{/b:3}").match("/he/abc").isPresent());
+    }
+
+    @Test
+    void testMatchBacktrackingIsBounded() {
+        URITemplate template = URITemplate.of("/api/{a}.{b}.{c}.{d}.json");
+        assertEquals("a.b", template.match("/api/a.b.c.d.e.json").orElseThrow().get("a").getScalarValue());
+        String input = "/api/" + "a.".repeat(4000) + "x";
+        long t0 = System.nanoTime();
+        assertFalse(template.match(input).isPresent());
+        long millis = (System.nanoTime() - t0) / 1000000L;
+        assertTrue(millis < 5000L, "matching took " + millis + " ms");
+    }
+
+    @Test
+    void testMatchExplodeNotSupported() {
+        assertThrows(IllegalArgumentException.class, () -> URITemplate.of("{/list*}").match("/a/b"));
+        assertThrows(IllegalArgumentException.class, () -> URITemplateSet.builder().add("{?keys*}"));
+    }
+
+    @Test
+    void testTemplateSet() {
+        URITemplateSet.Builder builder = URITemplateSet.builder();
+        for (int i = 0; i < 1000; i++) {
+            builder.add("/tenants/" + i + "/hooks/{hook}");
+        }
+        builder.add("/users/{id}")
+                .add("/users/{id}/posts{/post}")
+                .add("/users/me")
+                .add("{+any}");
+        URITemplateSet set = builder.build();
+        assertEquals(1004, set.size());
+        URITemplateSet.Match match = set.match("/tenants/42/hooks/push").orElseThrow();
+        assertSame(URITemplate.of("/tenants/42/hooks/{hook}"), match.getTemplate());
+        assertEquals("push", match.getVariables().get("hook").getScalarValue());
+        match = set.match("/users/7/posts/3").orElseThrow();
+        assertSame(URITemplate.of("/users/{id}/posts{/post}"), match.getTemplate());
+        assertEquals("7", match.getVariables().get("id").getScalarValue());
+        assertEquals("3", match.getVariables().get("post").getScalarValue());
+        match = set.match("/users/me").orElseThrow();
+        assertSame(URITemplate.of("/users/me"), match.getTemplate());
+        match = set.match("/other").orElseThrow();
+        assertSame(URITemplate.of("{+any}"), match.getTemplate());
+        assertFalse(URITemplateSet.builder().add("/users/{id}").build().match("/users/1/2").isPresent());
+    }
+
     private JsonNode fromResource(String path) throws Exception {
         ObjectMapper mapper = new ObjectMapper();
         ObjectReader reader = mapper.configure(JsonParser.Feature.AUTO_CLOSE_SOURCE, true)
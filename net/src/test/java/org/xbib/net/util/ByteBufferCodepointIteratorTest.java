@@ -0,0 +1,100 @@
+package org.xbib.net.util;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.net.buffer.DataBuffer;
+import org.xbib.net.buffer.DefaultDataBufferFactory;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ByteBufferCodepointIteratorTest {
+
+    @Test
+    void testDecode() {
+        String s = "a\u00e9\u20ac\ud83d\ude00z";
+        CodepointIterator ci = CodepointIterator.forByteBuffer(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+        int[] expected = s.codePoints().toArray();
+        for (int cp : expected) {
+            assertEquals(cp, ci.peek().getValue());
+            assertEquals(cp, ci.next().getValue());
+        }
+        assertFalse(ci.hasNext());
+        assertNull(ci.peek());
+    }
+
+    @Test
+    void testChars() {
+        String s = "\u00e9\ud83d\ude00";
+        CodepointIterator ci = CodepointIterator.forByteBuffer(ByteBuffer.wrap(s.getBytes(StandardCharsets.UTF_8)));
+        assertArrayEquals(new char[] { '\u00e9' }, ci.nextChars());
+        assertArrayEquals(new char[] { '\ud83d', '\ude00' }, ci.nextChars());
+        assertNull(ci.nextChars());
+        ci.position(0);
+        StringBuilder sb = new StringBuilder();
+        while (ci.hasNext()) {
+            sb.append(ci.get());
+        }
+        assertEquals(s, sb.toString());
+    }
+
+    @Test
+    void testBufferPositionUnchanged() {
+        ByteBuffer buffer = ByteBuffer.wrap("xx/p\u00e4th".getBytes(StandardCharsets.UTF_8));
+        buffer.position(2);
+        CodepointIterator ci = CodepointIterator.forByteBuffer(buffer);
+        assertEquals('/', ci.next().getValue());
+        assertEquals(3, ci.position());
+        assertEquals(2, buffer.position());
+    }
+
+    @Test
+    void testMalformed() {
+        byte[][] malformed = {
+                { (byte) 0x80 },
+                { (byte) 0xc0, (byte) 0xaf },
+                { (byte) 0xe0, (byte) 0x80, (byte) 0xaf },
+                { (byte) 0xed, (byte) 0xa0, (byte) 0x80 },
+                { (byte) 0xf4, (byte) 0x90, (byte) 0x80, (byte) 0x80 },
+                { (byte) 0xf5, (byte) 0x80, (byte) 0x80, (byte) 0x80 },
+                { 'a', (byte) 0xe2, (byte) 0x82 },
+                { (byte) 0xc3, 'a' }
+        };
+        for (byte[] bytes : malformed) {
+            CodepointIterator ci = CodepointIterator.forByteBuffer(ByteBuffer.wrap(bytes));
+            assertThrows(InvalidCharacterException.class, () -> {
+                while (ci.hasNext()) {
+                    ci.next();
+                }
+            });
+        }
+    }
+
+    @Test
+    void testVerify() {
+        DataBuffer dataBuffer = DefaultDataBufferFactory.getInstance()
+                .wrap("/a/b%20c/\u00e4".getBytes(StandardCharsets.UTF_8));
+        CharUtils.verify(dataBuffer, Profile.IPATH);
+        assertEquals(0, dataBuffer.readPosition());
+        ByteBuffer buffer = ByteBuffer.wrap("/a b".getBytes(StandardCharsets.UTF_8));
+        assertThrows(InvalidCharacterException.class, () -> CharUtils.verify(buffer, Profile.IPATH));
+    }
+
+    @Test
+    void testScanning() {
+        ByteBuffer buffer = ByteBuffer.wrap("\u00e4bc def".getBytes(StandardCharsets.UTF_8));
+        CodepointIterator ci = CodepointIterator.forByteBuffer(buffer).restrict(Profile.IPATH.filter(), true);
+        int count = 0;
+        while (ci.hasNext()) {
+            ci.next();
+            count++;
+        }
+        assertEquals(3, count);
+        assertEquals(4, ci.position());
+    }
+}
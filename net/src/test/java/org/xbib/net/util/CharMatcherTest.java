@@ -0,0 +1,54 @@
+package org.xbib.net.util;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+
+class CharMatcherTest {
+
+    @Test
+    void testPrecomputed() {
+        CharMatcher[] matchers = {
+                CharMatcher.anyOf(":/?#[]{}"),
+                CharMatcher.anyOf(":/?#[]{}").negate(),
+                CharMatcher.inRange('a', 'z').or(CharMatcher.inRange('0', '9')).or(CharMatcher.is('_')),
+                CharMatcher.inRange('a', 'z').and(CharMatcher.isNot('q')),
+                CharMatcher.inRange('a', 'z').or(CharMatcher.inRange('\u00e0', '\u00ff')),
+                CharMatcher.anyOf("\u3000\u2028x-").negate(),
+                CharMatcher.ascii().negate().or(CharMatcher.anyOf("abc")),
+                CharMatcher.LITERALS,
+                CharMatcher.HEXDIGIT
+        };
+        for (CharMatcher matcher : matchers) {
+            CharMatcher precomputed = matcher.precomputed();
+            assertSame(precomputed, precomputed.precomputed());
+            for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+                assertEquals(matcher.matches((char) c), precomputed.matches((char) c));
+                assertEquals(!matcher.matches((char) c), precomputed.negate().matches((char) c));
+            }
+        }
+    }
+
+    @Test
+    void testBulk() {
+        CharMatcher matcher = CharMatcher.anyOf(":/?#[]{}").precomputed();
+        String s = "/a/b?c=d#e\u00e4";
+        assertEquals(0, matcher.indexIn(s));
+        assertEquals(2, matcher.indexIn(s, 1));
+        assertEquals(8, matcher.lastIndexIn(s));
+        assertEquals(4, matcher.countIn(s));
+        char[] chars = s.toCharArray();
+        assertEquals(2, matcher.indexIn(chars, 1, chars.length));
+        assertEquals(4, matcher.lastIndexIn(chars, 0, 8));
+        assertEquals(2, matcher.countIn(chars, 1, 5));
+        assertEquals(-1, matcher.indexIn(chars, 5, 8));
+        CharMatcher whitespace = CharMatcher.anyOf(" \t\n").precomputed();
+        assertEquals("a  b", whitespace.trimFrom(" \t a  b\n"));
+        assertEquals("a  b\n", whitespace.trimLeadingFrom(" \t a  b\n"));
+        assertEquals(" \t a  b", whitespace.trimTrailingFrom(" \t a  b\n"));
+        assertEquals("", whitespace.trimFrom(" \t "));
+        assertEquals("-a-b-", whitespace.collapseFrom(" \t a  b\n", '-'));
+        assertEquals("ab", whitespace.collapseFrom("ab", '-'));
+    }
+}
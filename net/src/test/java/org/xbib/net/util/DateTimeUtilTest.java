@@ -0,0 +1,78 @@
+package org.xbib.net.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class DateTimeUtilTest {
+
+    private static final long SECONDS = 784111777L;
+
+    @Test
+    void testFormat() {
+        assertEquals("Sun, 6 Nov 1994 08:49:37 GMT", DateTimeUtil.formatRfc1123(SECONDS * 1000L + 999L));
+        assertEquals("Sun, 06 Nov 1994 08:49:37 GMT", DateTimeUtil.formatHttpDate(SECONDS * 1000L));
+        assertEquals("Thu, 1 Jan 1970 00:00:00 GMT", DateTimeUtil.formatRfc1123(Instant.EPOCH));
+        Random random = new Random(1L);
+        for (int i = 0; i < 10000; i++) {
+            long millis = (long) (random.nextDouble() * 253402300799000L);
+            assertEquals(DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.ofInstant(Instant.ofEpochMilli(millis),
+                    ZoneOffset.UTC)), DateTimeUtil.formatRfc1123(millis));
+        }
+    }
+
+    @Test
+    void testCurrentHttpDate() {
+        long before = System.currentTimeMillis() / 1000L;
+        String date = DateTimeUtil.currentHttpDate();
+        long after = System.currentTimeMillis() / 1000L;
+        long seconds = DateTimeUtil.parseHttpDate(date, 0, date.length());
+        assertTrue(seconds >= before && seconds <= after);
+        assertEquals(29, date.length());
+        byte[] bytes = DateTimeUtil.currentHttpDateBytes();
+        assertTrue(DateTimeUtil.parseHttpDate(bytes, 0, bytes.length) >= seconds);
+    }
+
+    @Test
+    void testParse() {
+        String[] dates = { "Sun, 06 Nov 1994 08:49:37 GMT", "Sun, 6 Nov 1994 08:49:37 GMT",
+                "Sunday, 06-Nov-94 08:49:37 GMT", "Sun Nov  6 08:49:37 1994", "Sun Nov 06 08:49:37 1994",
+                "06 Nov 1994 08:49:37 GMT", "sun, 06 nov 1994 08:49:37 gmt", "Sun, 06 Nov 1994 09:49:37 +0100",
+                " Sun, 06 Nov 1994 08:49:37 GMT; length=1234", "Sun, 06-Nov-1994 08:49:37 GMT" };
+        for (String date : dates) {
+            assertEquals(SECONDS, DateTimeUtil.parseHttpDate(date, 0, date.length()));
+            byte[] bytes = ("x" + date + "x").getBytes(StandardCharsets.US_ASCII);
+            assertEquals(SECONDS, DateTimeUtil.parseHttpDate(bytes, 1, bytes.length - 1));
+            assertEquals(Instant.ofEpochSecond(SECONDS), DateTimeUtil.parseDate(date));
+        }
+        assertEquals(SECONDS - 37L, DateTimeUtil.parseHttpDate("Sun, 06 Nov 1994 08:49 GMT", 0, 26));
+        String[] invalid = { "", "Sun", "Sun, 06 Nov 1994", "Sun, 06 Nov 1994 08:49:37", "Sun, 31 Nov 1994 08:49:37 GMT",
+                "Sun, 06 Nov 1994 24:00:00 GMT", "Sun, 06 Foo 1994 08:49:37 GMT", "Son, 06 Nov 1994 08:49:37 GMT",
+                "Sun, 06 Nov 1994 08:49:37 CET", "Sun, 06 Nov 994 08:49:37 GMT", "Sun Nov  6 08:49:37 94",
+                "Sun, 06 Nov 1994 08:49:37 GMT x", "1994-11-06T08:49:37Z" };
+        for (String date : invalid) {
+            assertEquals(DateTimeUtil.INVALID_DATE, DateTimeUtil.parseHttpDate(date, 0, date.length()));
+            assertNull(DateTimeUtil.parseDate(date));
+        }
+    }
+
+    @Test
+    void testIsModifiedSince() {
+        long lastModified = SECONDS * 1000L + 500L;
+        assertFalse(DateTimeUtil.isModifiedSince(lastModified, "Sun, 06 Nov 1994 08:49:37 GMT"));
+        assertFalse(DateTimeUtil.isModifiedSince(lastModified, "Sun, 06 Nov 1994 08:49:38 GMT"));
+        assertTrue(DateTimeUtil.isModifiedSince(lastModified, "Sun, 06 Nov 1994 08:49:36 GMT"));
+        assertTrue(DateTimeUtil.isModifiedSince(lastModified, "invalid"));
+        assertTrue(DateTimeUtil.isModifiedSince(lastModified, null));
+    }
+}
@@ -0,0 +1,166 @@
+package org.xbib.net.util;
+
+import org.junit.jupiter.api.Test;
+import org.xbib.net.buffer.DataBuffer;
+import org.xbib.net.buffer.DefaultDataBufferFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class JsonUtilTest {
+
+    private static final String JSON = "{\"access_token\":\"2YotnFZFEjr1zCsicMWpAA\",\"token_type\":\"Bearer\"," +
+            "\"expires_in\":3600,\"scope\":[\"read\",\"write\"],\"ratio\":-1.5e-3,\"active\":true," +
+            "\"refresh\":null,\"nested\":{\"a\\\"b\":\"x\\u00e4\\n\"},\"big\":123456789012345678901}";
+
+    @Test
+    void testToMap() throws IOException {
+        Map<String, Object> map = JsonUtil.toMap(JSON);
+        assertEquals("2YotnFZFEjr1zCsicMWpAA", map.get("access_token"));
+        assertEquals(3600L, map.get("expires_in"));
+        assertEquals(Arrays.asList("read", "write"), map.get("scope"));
+        assertEquals(-1.5e-3, map.get("ratio"));
+        assertEquals(Boolean.TRUE, map.get("active"));
+        assertTrue(map.containsKey("refresh"));
+        assertNull(map.get("refresh"));
+        assertEquals(Map.of("a\"b", "x\u00e4\n"), map.get("nested"));
+        assertEquals(new BigInteger("123456789012345678901"), map.get("big"));
+        assertEquals(map, JsonUtil.toMap(JsonUtil.toString(map)));
+    }
+
+    @Test
+    void testSources() throws IOException {
+        Map<String, Object> expected = JsonUtil.toMap(JSON);
+        byte[] bytes = JSON.getBytes(StandardCharsets.UTF_8);
+        assertEquals(expected, JsonUtil.toMap(new ByteArrayInputStream(bytes)));
+        DataBuffer dataBuffer = DefaultDataBufferFactory.getInstance().wrap(bytes);
+        assertEquals(expected, JsonUtil.toMap(dataBuffer));
+        // a reader that returns one char at a time, so tokens span chunks of the input
+        Reader reader = new StringReader(JSON) {
+            @Override
+            public int read(char[] cbuf, int off, int len) throws IOException {
+                return super.read(cbuf, off, Math.min(len, 1));
+            }
+        };
+        assertEquals(expected, JsonUtil.toMap(reader));
+    }
+
+    @Test
+    void testPullParser() throws IOException {
+        JsonPullParser parser = new JsonPullParser("{\"keys\":[{\"kid\":\"a\",\"n\":\"xyz\",\"x5c\":[\"c\"]}," +
+                "{\"kid\":\"b\",\"e\":65537}],\"d\":0.1}");
+        assertEquals(JsonPullParser.Event.START_OBJECT, parser.next());
+        assertEquals(JsonPullParser.Event.KEY_NAME, parser.next());
+        assertTrue(parser.textEquals("keys"));
+        assertEquals(JsonPullParser.Event.START_ARRAY, parser.next());
+        assertEquals(JsonPullParser.Event.START_OBJECT, parser.next());
+        assertEquals(2, parser.getDepth());
+        parser.skipChildren();
+        assertEquals(JsonPullParser.Event.END_OBJECT, parser.getEvent());
+        assertEquals(JsonPullParser.Event.START_OBJECT, parser.next());
+        assertEquals(JsonPullParser.Event.KEY_NAME, parser.next());
+        assertEquals(JsonPullParser.Event.VALUE_STRING, parser.next());
+        assertEquals("b", parser.getText().toString());
+        assertEquals(JsonPullParser.Event.KEY_NAME, parser.next());
+        assertEquals(JsonPullParser.Event.VALUE_NUMBER, parser.next());
+        assertTrue(parser.isIntegral());
+        assertEquals(65537L, parser.getLong());
+        assertEquals(JsonPullParser.Event.END_OBJECT, parser.next());
+        assertEquals(JsonPullParser.Event.END_ARRAY, parser.next());
+        assertEquals(JsonPullParser.Event.KEY_NAME, parser.next());
+        assertEquals(JsonPullParser.Event.VALUE_NUMBER, parser.next());
+        assertFalse(parser.isIntegral());
+        assertEquals(0.1d, parser.getDouble());
+        assertEquals(JsonPullParser.Event.END_OBJECT, parser.next());
+        assertNull(parser.next());
+    }
+
+    @Test
+    void testNumbers() throws IOException {
+        String[] numbers = { "0", "-0", "1", "-1", "9223372036854775807", "-9223372036854775808", "0.5", "-0.0",
+                "1e3", "1E-3", "2.5e+10", "123456789012345.25", "1.7976931348623157e308", "4.9e-324",
+                "0.30000000000000004", "1234567890123456789e-10", "0.000000000000000000000000001" };
+        for (String number : numbers) {
+            JsonPullParser parser = new JsonPullParser("[" + number + "]");
+            parser.next();
+            assertEquals(JsonPullParser.Event.VALUE_NUMBER, parser.next());
+            assertEquals(number, parser.getString());
+            if (parser.isIntegral()) {
+                assertEquals(Long.parseLong(number), parser.getLong(), number);
+            } else {
+                assertEquals(Double.parseDouble(number), parser.getDouble(), number);
+            }
+        }
+    }
+
+    @Test
+    void testMalformed() {
+        String[] inputs = { "", "{", "{\"a\"}", "{\"a\":}", "{\"a\":1,}", "[1,]", "[1 2]", "{} {}", "[01]",
+                "[-]", "[1.]", "[1e]", "[tru]", "[\"a\\x\"]", "[\"a\nb\"]", "{\"a\":\"b" };
+        for (String input : inputs) {
+            assertThrows(IOException.class, () -> JsonUtil.toMap(input));
+        }
+        assertThrows(IllegalArgumentException.class, () -> JsonUtil.toMap("[1]"));
+        StringBuilder deep = new StringBuilder();
+        for (int i = 0; i < 10; i++) {
+            deep.append('[');
+        }
+        assertThrows(IOException.class, () -> {
+            JsonPullParser parser = new JsonPullParser(deep).maximumDepth(5);
+            while (parser.next() != null) {
+                parser.getEvent();
+            }
+        });
+    }
+
+    @Test
+    void testWriter() throws IOException {
+        Map<String, Object> map = new LinkedHashMap<>();
+        map.put("s", "a\"b\\c\n\u0001");
+        map.put("l", List.of(1, 2L, 1.5d));
+        map.put("m", Map.of("k", true));
+        map.put("n", null);
+        String expected = "{\"s\":\"a\\\"b\\\\c\\n\\u0001\",\"l\":[1,2,1.5],\"m\":{\"k\":true},\"n\":null}";
+        assertEquals(expected, JsonUtil.toString(map));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonUtil.write(map, out);
+        assertEquals(expected, out.toString(StandardCharsets.UTF_8));
+        StringBuilder sb = new StringBuilder();
+        JsonWriter writer = new JsonWriter(sb);
+        writer.beginArray().value("x").beginObject().key("a").value(1L).endObject().nullValue().endArray();
+        assertEquals("[\"x\",{\"a\":1},null]", sb.toString());
+        assertThrows(IOException.class, () -> new JsonWriter(new StringBuilder()).beginObject().value(1L));
+        assertThrows(IOException.class, () -> new JsonWriter(new StringBuilder()).beginArray().key("a"));
+        assertThrows(IOException.class, () -> new JsonWriter(new StringBuilder()).beginArray().endObject());
+    }
+
+    @Test
+    void testZeroCopy() throws IOException {
+        String json = "{\"key\":\"value\"}";
+        JsonPullParser parser = new JsonPullParser(json);
+        parser.next();
+        parser.next();
+        char[] chars = parser.getTextCharacters();
+        assertEquals(2, parser.getTextOffset());
+        assertEquals(3, parser.getTextLength());
+        parser.next();
+        assertSame(chars, parser.getTextCharacters());
+        assertEquals("value", new String(chars, parser.getTextOffset(), parser.getTextLength()));
+    }
+}
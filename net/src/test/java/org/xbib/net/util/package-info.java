@@ -0,0 +1,4 @@
+/**
+ * Classes for testing utilities.
+ */
+package org.xbib.net.util;